@@ -1,27 +1,133 @@
 package net.awords.agriecombackend.config;
 
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.springframework.boot.autoconfigure.cache.RedisCacheManagerBuilderCustomizer;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.awords.agriecombackend.dto.product.ProductDtos;
+import net.awords.agriecombackend.dto.shop.ShopDtos;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CachingConfigurer;
+import org.springframework.cache.interceptor.CacheErrorHandler;
+import org.springframework.cache.interceptor.LoggingCacheErrorHandler;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.cache.RedisCacheManager;
+import org.springframework.data.redis.cache.RedisCacheWriter;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 
 import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
- * Redis 缓存配置：统一指定序列化方式与热点数据的 TTL，避免缓存穿透。
+ * 缓存配置：Redis 统一指定序列化方式与热点数据的 TTL，避免缓存穿透；
+ * 详情与列表缓存按各自的值类型使用 {@link CacheValueCodec} 编码，可按缓存开启压缩；
+ * 其前再套一层本地一级缓存（{@link TwoLevelCacheManager}），命中时不再访问 Redis。
+ * 未命中时同一 key 只加载一次：本节点内合并并发请求，跨节点以 {@link CacheRebuildLock} 协调。
+ * 详情缓存按缓存名配置软 TTL（见 {@link RefreshAheadPolicy}），到期后先返回旧值再后台刷新；
+ * Redis 中的硬 TTL 随机延长至多 {@code cache.ttl-jitter} 比例，避免同一批写入的 key 同时过期。
+ * Redis 出错或变慢时由 {@link CircuitBreaker} 熔断，读取回退到一级缓存与数据库；
+ * 缓存注解遇到的其余缓存异常只记录日志，照常执行被注解的方法。
+ * 详情缓存的读取经 {@link HotKeyDetector} 抽样统计，热点 key 可通过 {@code /actuator/hotkeys} 查看。
+ * 测试环境以进程内缓存代替 Redis，仍经过两级缓存与进程内失效广播。
  */
 @Configuration
-@Profile("!test")
-@ConditionalOnBean(RedisConnectionFactory.class)
-public class CacheConfig {
+public class CacheConfig implements CachingConfigurer {
+
+    @Value("${cache.local.maximum-size:10000}")
+    private long localMaximumSize;
+
+    @Value("${cache.local.ttl-ms:30000}")
+    private long localTtlMs;
+
+    @Value("${cache.rebuild-lock.enabled:true}")
+    private boolean rebuildLockEnabled;
+
+    @Value("${cache.rebuild-lock.ttl-ms:5000}")
+    private long rebuildLockTtlMs;
+
+    @Value("${cache.rebuild-lock.wait-ms:3000}")
+    private long rebuildLockWaitMs;
+
+    @Value("${cache.codec.format:SMILE}")
+    private CacheValueCodec.Format codecFormat;
+
+    @Value("${cache.codec.compression:DEFLATE}")
+    private CacheValueCodec.Compression codecCompression;
+
+    @Value("${cache.codec.compression-threshold-bytes:2048}")
+    private int codecCompressionThreshold;
+
+    @Value("${cache.codec.compressed-caches:shop:detail,product:list}")
+    private Set<String> compressedCaches;
+
+    @Value("${cache.ttl-jitter:0.1}")
+    private double ttlJitter;
+
+    @Value("${cache.refresh-ahead.soft-ttl-ms:product:detail=1200000,shop:detail=420000}")
+    private List<String> softTtls;
+
+    @Value("${cache.refresh-ahead.threads:2}")
+    private int refreshThreads;
+
+    @Value("${cache.circuit-breaker.failure-threshold:5}")
+    private int breakerFailureThreshold;
+
+    @Value("${cache.circuit-breaker.slow-call-ms:200}")
+    private long breakerSlowCallMs;
+
+    @Value("${cache.circuit-breaker.open-ms:10000}")
+    private long breakerOpenMs;
+
+    @Value("${cache.hot-key.caches:product:detail,shop:detail}")
+    private Set<String> hotKeyCaches;
+
+    @Value("${cache.hot-key.sample-rate:0.1}")
+    private double hotKeySampleRate;
+
+    @Value("${cache.hot-key.threshold:500}")
+    private long hotKeyThreshold;
+
+    @Value("${cache.hot-key.max-keys:100}")
+    private int hotKeyMaxKeys;
+
+    @Value("${cache.hot-key.window-ms:10000}")
+    private long hotKeyWindowMs;
+
+    @Value("${cache.hot-key.sketch-width:4096}")
+    private int hotKeySketchWidth;
+
+    @Value("${existence-filter.inactive-shop-ttl-ms:60000}")
+    private long inactiveShopTtlMs;
+
+    @Override
+    public CacheErrorHandler errorHandler() {
+        return new LoggingCacheErrorHandler();
+    }
+
+    @Bean
+    public CircuitBreaker cacheCircuitBreaker(MeterRegistry meterRegistry) {
+        return new CircuitBreaker("redis", breakerFailureThreshold, Duration.ofMillis(breakerSlowCallMs),
+                Duration.ofMillis(breakerOpenMs), meterRegistry);
+    }
 
     @Bean
+    public HotKeyDetector hotKeyDetector(MeterRegistry meterRegistry) {
+        return new HotKeyDetector(hotKeyCaches, hotKeySampleRate, hotKeyThreshold, hotKeyMaxKeys,
+                Duration.ofMillis(hotKeyWindowMs), hotKeySketchWidth, meterRegistry);
+    }
+
+    @Bean
+    @Profile("!test")
     public RedisCacheConfiguration redisCacheConfiguration(ObjectMapper objectMapper) {
         GenericJackson2JsonRedisSerializer serializer = new GenericJackson2JsonRedisSerializer(objectMapper);
         return RedisCacheConfiguration.defaultCacheConfig()
@@ -30,9 +136,89 @@ public class CacheConfig {
     }
 
     @Bean
-    public RedisCacheManagerBuilderCustomizer redisCacheManagerBuilderCustomizer(RedisCacheConfiguration baseConfig) {
-        return builder -> builder
-                .withCacheConfiguration("product:detail", baseConfig.entryTtl(Duration.ofMinutes(5)))
-                .withCacheConfiguration("shop:detail", baseConfig.entryTtl(Duration.ofMinutes(10)));
+    @Profile("!test")
+    public CacheManager cacheManager(RedisConnectionFactory connectionFactory, RedisCacheConfiguration baseConfig,
+                                     ObjectMapper objectMapper, CacheInvalidationBus bus, CacheRebuildLock rebuildLock,
+                                     CircuitBreaker breaker, HotKeyDetector hotKeys, MeterRegistry meterRegistry) {
+        JavaType productDetail = objectMapper.constructType(ProductDtos.Detail.class);
+        JavaType shopDetail = objectMapper.constructType(ShopDtos.PublicDetail.class);
+        JavaType productPage = objectMapper.getTypeFactory()
+                .constructParametricType(ProductDtos.PageResult.class, ProductDtos.PublicSummary.class);
+        RedisCacheManager redisCacheManager = RedisCacheManager.builder(connectionFactory)
+                .cacheDefaults(baseConfig)
+                .withCacheConfiguration("product:detail",
+                        typed(baseConfig, objectMapper, "product:detail", productDetail, Duration.ofMinutes(30)))
+                .withCacheConfiguration("shop:detail",
+                        typed(baseConfig, objectMapper, "shop:detail", shopDetail, Duration.ofMinutes(10)))
+                .withCacheConfiguration("product:list",
+                        typed(baseConfig, objectMapper, "product:list", productPage, Duration.ofMinutes(2)))
+                .withCacheConfiguration("shop:inactive", baseConfig.entryTtl(Duration.ofMillis(inactiveShopTtlMs)))
+                .build();
+        redisCacheManager.afterPropertiesSet();
+        return twoLevel(redisCacheManager, bus, rebuildLock, breaker, hotKeys, meterRegistry);
+    }
+
+    @Bean
+    @Profile("test")
+    public CacheManager testCacheManager(CacheInvalidationBus bus, CacheRebuildLock rebuildLock,
+                                         CircuitBreaker breaker, HotKeyDetector hotKeys,
+                                         MeterRegistry meterRegistry) {
+        return twoLevel(new ConcurrentMapCacheManager(), bus, rebuildLock, breaker, hotKeys, meterRegistry);
+    }
+
+    /**
+     * 开启提前刷新的缓存在 Redis 中保存 {@link RefreshAheadEntry}，与旧格式不兼容，因此改用新的 key 前缀，旧条目自然过期。
+     */
+    private RedisCacheConfiguration typed(RedisCacheConfiguration baseConfig, ObjectMapper objectMapper,
+                                          String cacheName, JavaType type, Duration ttl) {
+        boolean refreshAhead = refreshAheadPolicies().containsKey(cacheName);
+        JavaType storedType = refreshAhead
+                ? objectMapper.getTypeFactory().constructParametricType(RefreshAheadEntry.class, type)
+                : type;
+        CacheValueCodec.Compression compression = compressedCaches.contains(cacheName)
+                ? codecCompression : CacheValueCodec.Compression.NONE;
+        CacheValueCodec codec = new CacheValueCodec(objectMapper, storedType, codecFormat, compression,
+                codecCompressionThreshold);
+        RedisCacheConfiguration config = baseConfig
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(codec))
+                .entryTtl(jittered(ttl));
+        return refreshAhead ? config.computePrefixWith(name -> name + "::ra::") : config;
+    }
+
+    private RedisCacheWriter.TtlFunction jittered(Duration ttl) {
+        return (key, value) -> ttlJitter > 0
+                ? ttl.plusMillis((long) (ttl.toMillis() * ttlJitter * ThreadLocalRandom.current().nextDouble()))
+                : ttl;
+    }
+
+    /**
+     * 解析 {@code 缓存名=软TTL毫秒} 列表；缓存名本身含冒号，因此以最后一个等号分隔。
+     */
+    private Map<String, RefreshAheadPolicy> refreshAheadPolicies() {
+        Map<String, RefreshAheadPolicy> policies = new HashMap<>();
+        for (String entry : softTtls) {
+            int separator = entry.lastIndexOf('=');
+            if (separator <= 0) {
+                continue;
+            }
+            long softTtlMs = Long.parseLong(entry.substring(separator + 1).trim());
+            if (softTtlMs > 0) {
+                policies.put(entry.substring(0, separator).trim(),
+                        new RefreshAheadPolicy(Duration.ofMillis(softTtlMs), ttlJitter));
+            }
+        }
+        return policies;
+    }
+
+    private CacheManager twoLevel(CacheManager remote, CacheInvalidationBus bus, CacheRebuildLock rebuildLock,
+                                  CircuitBreaker breaker, HotKeyDetector hotKeys, MeterRegistry meterRegistry) {
+        return new TwoLevelCacheManager(remote, bus, meterRegistry,
+                TwoLevelCacheOptions.builder(localMaximumSize, Duration.ofMillis(localTtlMs))
+                        .rebuildLock(rebuildLockEnabled ? rebuildLock : null,
+                                Duration.ofMillis(rebuildLockTtlMs), Duration.ofMillis(rebuildLockWaitMs))
+                        .refreshAhead(refreshAheadPolicies(), refreshThreads)
+                        .circuitBreaker(breaker)
+                        .hotKeys(hotKeys)
+                        .build());
     }
 }
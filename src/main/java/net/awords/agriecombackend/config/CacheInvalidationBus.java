@@ -0,0 +1,21 @@
+package net.awords.agriecombackend.config;
+
+import java.util.function.Consumer;
+
+/**
+ * 在各节点之间广播一级缓存失效消息。
+ */
+public interface CacheInvalidationBus {
+
+    void publish(CacheInvalidation invalidation);
+
+    void subscribe(Consumer<CacheInvalidation> listener);
+
+    /**
+     * @param origin    发出消息的节点，节点忽略自己发出的消息
+     * @param cacheName 缓存名
+     * @param key       失效的 key（字符串形式），为 null 表示清空整个缓存
+     */
+    record CacheInvalidation(String origin, String cacheName, String key) {
+    }
+}
@@ -0,0 +1,16 @@
+package net.awords.agriecombackend.config;
+
+import java.time.Duration;
+
+/**
+ * 跨节点的缓存重建锁：同一 key 未命中时只有持锁节点查询数据库，其他节点等待其写回远端缓存。
+ */
+public interface CacheRebuildLock {
+
+    /**
+     * @param token 持锁凭证，释放时校验，避免误删其他节点在锁过期后获得的锁
+     */
+    boolean tryAcquire(String key, String token, Duration ttl);
+
+    void release(String key, String token);
+}
@@ -0,0 +1,148 @@
+package net.awords.agriecombackend.config;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Redis 缓存值的编解码：按缓存声明的值类型直接（反）序列化，不在每个值中写入类名。
+ * <p>
+ * 二进制格式以 1 字节头区分：{@code 0x01} 为 Smile，{@code 0x02} 为 deflate 压缩后的 Smile（仅超过阈值时压缩）。
+ * 旧格式为 GenericJackson2JsonRedisSerializer 写入的 JSON 文本，首字节总是 {@code '{'} 或 {@code '['}，
+ * 与二进制头不冲突，因此读取总是同时兼容两种格式。
+ * 滚动升级时先以 {@link Format#JSON} 写入，全部节点都能读取二进制格式后再切换为 {@link Format#SMILE}。
+ */
+public class CacheValueCodec implements RedisSerializer<Object> {
+
+    /**
+     * 写入格式。
+     */
+    public enum Format {
+        JSON,
+        SMILE
+    }
+
+    /**
+     * 超过阈值时使用的压缩方式。
+     */
+    public enum Compression {
+        NONE,
+        DEFLATE
+    }
+
+    static final byte SMILE_HEADER = 0x01;
+    static final byte SMILE_DEFLATE_HEADER = 0x02;
+
+    private final ObjectMapper jsonMapper;
+    private final ObjectMapper smileMapper;
+    private final JavaType type;
+    private final Format format;
+    private final Compression compression;
+    private final int compressionThreshold;
+
+    public CacheValueCodec(ObjectMapper objectMapper, JavaType type, Format format,
+                           Compression compression, int compressionThreshold) {
+        this.jsonMapper = objectMapper;
+        this.smileMapper = smileMapper(objectMapper);
+        this.type = type;
+        this.format = format;
+        this.compression = compression;
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * 复用应用 ObjectMapper 的模块与特性；开启字符串值共享，店铺详情中重复的分类、产地、店铺名只写一次。
+     */
+    static ObjectMapper smileMapper(ObjectMapper objectMapper) {
+        SmileFactory factory = SmileFactory.builder()
+                .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+                .build();
+        return objectMapper.copyWith(factory);
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return null;
+        }
+        try {
+            if (format == Format.JSON) {
+                return jsonMapper.writeValueAsBytes(value);
+            }
+            byte[] smile = smileMapper.writeValueAsBytes(value);
+            if (compression == Compression.DEFLATE && smile.length >= compressionThreshold) {
+                return withHeader(SMILE_DEFLATE_HEADER, deflate(smile));
+            }
+            return withHeader(SMILE_HEADER, smile);
+        } catch (IOException ex) {
+            throw new SerializationException("无法序列化缓存值: " + type, ex);
+        }
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        try {
+            return switch (bytes[0]) {
+                case SMILE_HEADER -> smileMapper.readValue(bytes, 1, bytes.length - 1, type);
+                case SMILE_DEFLATE_HEADER -> smileMapper.readValue(inflate(bytes), type);
+                default -> jsonMapper.readValue(bytes, type);
+            };
+        } catch (IOException | DataFormatException ex) {
+            throw new SerializationException("无法反序列化缓存值: " + type, ex);
+        }
+    }
+
+    private static byte[] withHeader(byte header, byte[] body) {
+        byte[] out = new byte[body.length + 1];
+        out[0] = header;
+        System.arraycopy(body, 0, out, 1, body.length);
+        return out;
+    }
+
+    private static byte[] deflate(byte[] input) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 2 + 16);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] bytes) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, 1, bytes.length - 1);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("压缩数据不完整");
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package net.awords.agriecombackend.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * 保护远端依赖（Redis）的熔断器。
+ * <p>
+ * 连续失败达到阈值后打开，打开期间的调用直接走降级逻辑，不再等待连接超时；耗时超过慢调用阈值的成功调用同样计为失败。
+ * 打开时长过后只放行一次探测调用（半开），成功则关闭并通知监听者（用于重放积压的失效），失败则重新打开。
+ */
+public class CircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final List<Runnable> closeListeners = new CopyOnWriteArrayList<>();
+    private final Counter rejected;
+    private final MeterRegistry meterRegistry;
+    private volatile long openedAt;
+
+    public CircuitBreaker(String name, int failureThreshold, Duration slowCallThreshold, Duration openDuration,
+                          MeterRegistry meterRegistry) {
+        this.name = name;
+        this.failureThreshold = Math.max(failureThreshold, 1);
+        this.slowCallNanos = slowCallThreshold.toNanos();
+        this.openNanos = openDuration.toNanos();
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("cache.circuit.state", state, s -> s.get().ordinal())
+                .description("熔断器状态：0 关闭，1 打开，2 半开")
+                .tag("breaker", name)
+                .register(meterRegistry);
+        this.rejected = Counter.builder("cache.circuit.rejected")
+                .description("熔断器打开期间直接降级的调用次数")
+                .tag("breaker", name)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 执行受保护的调用；熔断器打开或调用失败时返回降级结果，异常只记录不抛出。
+     */
+    public <T> T execute(Supplier<T> call, Supplier<T> fallback) {
+        if (!tryAcquirePermission()) {
+            rejected.increment();
+            return fallback.get();
+        }
+        long start = System.nanoTime();
+        T result;
+        try {
+            result = call.get();
+        } catch (RuntimeException ex) {
+            onFailure();
+            log.debug("Call guarded by circuit breaker {} failed: {}", name, ex.getMessage());
+            return fallback.get();
+        }
+        onSuccess(System.nanoTime() - start);
+        return result;
+    }
+
+    public void run(Runnable call, Runnable fallback) {
+        execute(() -> {
+            call.run();
+            return null;
+        }, () -> {
+            fallback.run();
+            return null;
+        });
+    }
+
+    public State state() {
+        return state.get();
+    }
+
+    public boolean isClosed() {
+        return state.get() == State.CLOSED;
+    }
+
+    /**
+     * 注册关闭（由半开探测成功恢复）时的回调，在探测调用的线程上执行。
+     */
+    public void onClose(Runnable listener) {
+        closeListeners.add(listener);
+    }
+
+    /**
+     * 打开期间拒绝；打开时长已过时只有一个调用能把状态切到半开并作为探测放行。
+     */
+    private boolean tryAcquirePermission() {
+        State current = state.get();
+        if (current == State.CLOSED) {
+            return true;
+        }
+        if (current == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            return transition(State.OPEN, State.HALF_OPEN);
+        }
+        return false;
+    }
+
+    private void onSuccess(long elapsedNanos) {
+        if (elapsedNanos > slowCallNanos) {
+            onFailure();
+            return;
+        }
+        consecutiveFailures.set(0);
+        if (transition(State.HALF_OPEN, State.CLOSED)) {
+            closeListeners.forEach(Runnable::run);
+        }
+    }
+
+    private void onFailure() {
+        if (state.get() == State.HALF_OPEN) {
+            open(State.HALF_OPEN);
+            return;
+        }
+        if (consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            open(State.CLOSED);
+        }
+    }
+
+    private void open(State from) {
+        openedAt = System.nanoTime();
+        if (transition(from, State.OPEN)) {
+            consecutiveFailures.set(0);
+        }
+    }
+
+    private boolean transition(State from, State to) {
+        if (!state.compareAndSet(from, to)) {
+            return false;
+        }
+        Counter.builder("cache.circuit.transitions")
+                .description("熔断器状态切换次数")
+                .tag("breaker", name)
+                .tag("to", to.name().toLowerCase())
+                .register(meterRegistry)
+                .increment();
+        if (to == State.OPEN) {
+            log.warn("Circuit breaker {} opened, calls fall back for {} ms", name, openNanos / 1_000_000);
+        } else if (to == State.CLOSED) {
+            log.info("Circuit breaker {} closed", name);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,62 @@
+package net.awords.agriecombackend.config;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Count-Min Sketch：以固定内存估计各 key 的出现次数，只会高估不会低估，误差随宽度增大而减小。
+ * 每行以双重哈希取一个计数器，估计值取各行的最小值；{@link #halve()} 将全部计数减半，使旧的访问逐步衰减。
+ * 计数器为原子整数，可并发递增；减半与递增并发时个别计数可能少算一次，对热点判断无影响。
+ */
+public class CountMinSketch {
+
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+
+    private final int depth;
+    private final int width;
+    private final AtomicIntegerArray counters;
+
+    /**
+     * @param width 每行计数器个数，向上取整为 2 的幂
+     */
+    public CountMinSketch(int depth, int width) {
+        this.depth = Math.max(depth, 1);
+        this.width = Integer.highestOneBit(Math.max(width, 2) - 1) << 1;
+        this.counters = new AtomicIntegerArray(this.depth * this.width);
+    }
+
+    /**
+     * 计数加一并返回新的估计值。
+     */
+    public int increment(String key) {
+        long h1 = mix(key.hashCode());
+        long h2 = mix(h1 ^ SEED) | 1;
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int index = row * width + (int) ((h1 + row * h2) & (width - 1));
+            estimate = Math.min(estimate, counters.incrementAndGet(index));
+        }
+        return estimate;
+    }
+
+    public int estimate(String key) {
+        long h1 = mix(key.hashCode());
+        long h2 = mix(h1 ^ SEED) | 1;
+        int estimate = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.get(row * width + (int) ((h1 + row * h2) & (width - 1))));
+        }
+        return estimate;
+    }
+
+    public void halve() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.getAndUpdate(i, count -> count >>> 1);
+        }
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+}
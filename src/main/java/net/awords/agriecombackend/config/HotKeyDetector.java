@@ -0,0 +1,150 @@
+package net.awords.agriecombackend.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 本节点的热点 key 探测：按比例抽样缓存读取，以 {@link CountMinSketch} 估计各 key 的访问次数，
+ * 估计值（按抽样比例折算）达到阈值的 key 记为热点，每个缓存至多保留固定个数，超出时替换估计值最小的一个。
+ * <p>
+ * 每过一个窗口所有计数减半并剔除已低于阈值的热点，估计值约等于最近两个窗口的访问量。
+ * 窗口切换由读取线程顺带完成，无需定时任务。
+ */
+public class HotKeyDetector {
+
+    private static final int SKETCH_DEPTH = 4;
+
+    public record HotKey(String key, long estimatedAccesses) {
+    }
+
+    private final double sampleRate;
+    private final int sampledThreshold;
+    private final int maxHotKeys;
+    private final long windowNanos;
+    private final Map<String, Tracker> trackers;
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+
+    /**
+     * @param threshold 每个窗口内的访问次数阈值（未抽样前）
+     */
+    public HotKeyDetector(Set<String> cacheNames, double sampleRate, long threshold, int maxHotKeys,
+                          Duration window, int sketchWidth, MeterRegistry meterRegistry) {
+        this.sampleRate = Math.min(Math.max(sampleRate, 0), 1);
+        this.sampledThreshold = (int) Math.max(1, Math.round(threshold * this.sampleRate));
+        this.maxHotKeys = maxHotKeys;
+        this.windowNanos = window.toNanos();
+        this.trackers = cacheNames.stream().collect(Collectors.toUnmodifiableMap(Function.identity(),
+                name -> new Tracker(new CountMinSketch(SKETCH_DEPTH, sketchWidth))));
+        trackers.forEach((name, tracker) -> Gauge.builder("cache.hot.keys", tracker.hot, Map::size)
+                .description("当前判定为热点的 key 数")
+                .tag("cache", name)
+                .register(meterRegistry));
+    }
+
+    public boolean tracks(String cacheName) {
+        return trackers.containsKey(cacheName);
+    }
+
+    public Set<String> trackedCaches() {
+        return trackers.keySet();
+    }
+
+    /**
+     * 记录一次读取；未跟踪的缓存直接忽略。
+     */
+    public void record(String cacheName, String key) {
+        Tracker tracker = trackers.get(cacheName);
+        if (tracker == null) {
+            return;
+        }
+        maybeRotate();
+        if (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return;
+        }
+        int estimate = tracker.sketch.increment(key);
+        if (estimate >= sampledThreshold) {
+            tracker.promote(key, estimate);
+        }
+    }
+
+    public boolean isHot(String cacheName, String key) {
+        Tracker tracker = trackers.get(cacheName);
+        return tracker != null && tracker.hot.containsKey(key);
+    }
+
+    /**
+     * @return 按估计访问次数从高到低排列；未跟踪的缓存返回 null
+     */
+    public List<HotKey> hotKeys(String cacheName) {
+        Tracker tracker = trackers.get(cacheName);
+        if (tracker == null) {
+            return null;
+        }
+        return tracker.hot.entrySet().stream()
+                .map(entry -> new HotKey(entry.getKey(), Math.round(entry.getValue() / sampleRate)))
+                .sorted(Comparator.comparingLong(HotKey::estimatedAccesses).reversed())
+                .toList();
+    }
+
+    private void maybeRotate() {
+        long start = windowStart.get();
+        long now = System.nanoTime();
+        if (now - start >= windowNanos && windowStart.compareAndSet(start, now)) {
+            rotate();
+        }
+    }
+
+    /**
+     * 计数减半，重新估计现有热点并剔除低于阈值的 key。
+     */
+    void rotate() {
+        for (Tracker tracker : trackers.values()) {
+            tracker.sketch.halve();
+            tracker.hot.replaceAll((key, estimate) -> tracker.sketch.estimate(key));
+            tracker.hot.values().removeIf(estimate -> estimate < sampledThreshold);
+        }
+    }
+
+    private final class Tracker {
+
+        private final CountMinSketch sketch;
+        private final ConcurrentMap<String, Integer> hot = new ConcurrentHashMap<>();
+
+        private Tracker(CountMinSketch sketch) {
+            this.sketch = sketch;
+        }
+
+        /**
+         * 热点已满时替换估计值最小的 key；并发加入时个数可能略超上限，之后只替换不再增加。
+         */
+        private void promote(String key, int estimate) {
+            if (hot.replace(key, estimate) != null) {
+                return;
+            }
+            if (hot.size() < maxHotKeys) {
+                hot.put(key, estimate);
+                return;
+            }
+            hot.entrySet().stream()
+                    .min(Map.Entry.comparingByValue())
+                    .filter(coldest -> coldest.getValue() < estimate)
+                    .ifPresent(coldest -> {
+                        if (hot.remove(coldest.getKey(), coldest.getValue())) {
+                            hot.put(key, estimate);
+                        }
+                    });
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package net.awords.agriecombackend.config;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * {@code /actuator/hotkeys}：列出本节点各跟踪缓存当前的热点 key（见 {@link HotKeyDetector}），
+ * {@code /actuator/hotkeys/{cache}} 只列出一个缓存。仅统计本节点的访问，集群视图需汇总各节点。
+ */
+@Component
+@Endpoint(id = "hotkeys")
+public class HotKeysEndpoint {
+
+    private final HotKeyDetector hotKeys;
+
+    public HotKeysEndpoint(HotKeyDetector hotKeys) {
+        this.hotKeys = hotKeys;
+    }
+
+    @ReadOperation
+    public Map<String, List<HotKeyDetector.HotKey>> hotKeys() {
+        Map<String, List<HotKeyDetector.HotKey>> result = new TreeMap<>();
+        hotKeys.trackedCaches().forEach(cache -> result.put(cache, hotKeys.hotKeys(cache)));
+        return result;
+    }
+
+    /**
+     * @return 未跟踪的缓存返回 null，即 404
+     */
+    @ReadOperation
+    public List<HotKeyDetector.HotKey> hotKeysOf(@Selector String cache) {
+        return hotKeys.hotKeys(cache);
+    }
+}
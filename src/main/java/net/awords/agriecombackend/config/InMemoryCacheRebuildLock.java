@@ -0,0 +1,35 @@
+package net.awords.agriecombackend.config;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内的重建锁，语义与 {@link RedisCacheRebuildLock} 一致，供测试环境替代 Redis。
+ */
+@Component
+@Profile("test")
+public class InMemoryCacheRebuildLock implements CacheRebuildLock {
+
+    private final Map<String, Holder> holders = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean tryAcquire(String key, String token, Duration ttl) {
+        Holder fresh = new Holder(token, System.nanoTime() + ttl.toNanos());
+        return holders.compute(key, (k, current) -> current == null || current.expired() ? fresh : current) == fresh;
+    }
+
+    @Override
+    public void release(String key, String token) {
+        holders.computeIfPresent(key, (k, current) -> current.token().equals(token) ? null : current);
+    }
+
+    private record Holder(String token, long expiresAtNanos) {
+        boolean expired() {
+            return System.nanoTime() - expiresAtNanos > 0;
+        }
+    }
+}
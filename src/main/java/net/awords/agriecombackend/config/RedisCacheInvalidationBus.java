@@ -0,0 +1,74 @@
+package net.awords.agriecombackend.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 通过 Redis 发布/订阅频道广播一级缓存失效。消息不持久化：订阅断开期间丢失的失效由一级缓存的 TTL 兜底。
+ */
+@Component
+@Profile("!test")
+public class RedisCacheInvalidationBus implements CacheInvalidationBus {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisCacheInvalidationBus.class);
+    private static final ChannelTopic CHANNEL = new ChannelTopic("cache:invalidation");
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final RedisMessageListenerContainer container;
+    private final List<Consumer<CacheInvalidation>> listeners = new CopyOnWriteArrayList<>();
+
+    public RedisCacheInvalidationBus(StringRedisTemplate redisTemplate,
+                                     RedisConnectionFactory connectionFactory,
+                                     ObjectMapper objectMapper) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.container = new RedisMessageListenerContainer();
+        this.container.setConnectionFactory(connectionFactory);
+        this.container.addMessageListener((message, pattern) -> dispatch(message.getBody()), CHANNEL);
+        this.container.afterPropertiesSet();
+        this.container.start();
+    }
+
+    @PreDestroy
+    public void stop() throws Exception {
+        container.destroy();
+    }
+
+    @Override
+    public void publish(CacheInvalidation invalidation) {
+        try {
+            redisTemplate.convertAndSend(CHANNEL.getTopic(), objectMapper.writeValueAsString(invalidation));
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("无法序列化缓存失效消息", ex);
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<CacheInvalidation> listener) {
+        listeners.add(listener);
+    }
+
+    private void dispatch(byte[] body) {
+        try {
+            CacheInvalidation invalidation = objectMapper.readValue(new String(body, StandardCharsets.UTF_8), CacheInvalidation.class);
+            listeners.forEach(listener -> listener.accept(invalidation));
+        } catch (JsonProcessingException ex) {
+            log.warn("Ignoring malformed cache invalidation message", ex);
+        }
+    }
+}
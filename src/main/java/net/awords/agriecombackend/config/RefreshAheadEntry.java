@@ -0,0 +1,9 @@
+package net.awords.agriecombackend.config;
+
+/**
+ * 开启提前刷新的缓存在远端保存的条目：缓存值及其软过期时间，各节点据此判断是否需要后台刷新。
+ *
+ * @param refreshAt 软过期时间（epoch 毫秒），此后读取仍返回该值，同时触发一次后台刷新
+ */
+public record RefreshAheadEntry<T>(T value, long refreshAt) {
+}
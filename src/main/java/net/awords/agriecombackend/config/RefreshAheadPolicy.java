@@ -0,0 +1,17 @@
+package net.awords.agriecombackend.config;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 单个缓存的提前刷新策略：条目写入后超过软 TTL 即视为陈旧，读取时先返回旧值并在后台刷新；
+ * 软 TTL 随机缩短至多 jitter 比例，避免同一批写入的条目同时到期。硬 TTL 仍由远端缓存控制。
+ */
+public record RefreshAheadPolicy(Duration softTtl, double jitter) {
+
+    long nextRefreshAt(long nowMs) {
+        long ttl = softTtl.toMillis();
+        long reduction = jitter > 0 ? (long) (ttl * jitter * ThreadLocalRandom.current().nextDouble()) : 0;
+        return nowMs + ttl - reduction;
+    }
+}
@@ -1,6 +1,7 @@
 package net.awords.agriecombackend.config;
 
 import net.awords.agriecombackend.security.JwtAuthFilter;
+import net.awords.agriecombackend.security.RoleConstants;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -23,6 +24,8 @@ public class SecurityConfig {
             "/swagger-ui.html",
             "/swagger-ui/**",
             "/actuator/health",
+            "/actuator/health/liveness",
+            "/actuator/health/readiness",
             "/api/v1/health",
             "/api/v1/connectivity",
             "/api/v1/auth/**"
@@ -45,6 +48,7 @@ public class SecurityConfig {
                         .requestMatchers(OPEN_API).permitAll()
                         .requestMatchers(HttpMethod.GET, "/").permitAll()
             .requestMatchers(HttpMethod.GET, "/api/v1/shops/**").permitAll()
+                        .requestMatchers("/actuator/hotkeys/**").hasRole(RoleConstants.ADMIN)
                         .anyRequest().authenticated()
                 )
                 .addFilterBefore(jwtAuthFilter, UsernamePasswordAuthenticationFilter.class);
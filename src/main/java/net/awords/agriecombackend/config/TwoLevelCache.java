@@ -0,0 +1,495 @@
+package net.awords.agriecombackend.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * 两级缓存：本地一级缓存（Caffeine，容量与 TTL 受限）在前，远端缓存（Redis）在后。
+ * <p>
+ * 读取先查一级缓存，未命中再查远端并回填；写入同时写两级；失效与清空作用于两级并广播给其他节点，
+ * 各节点收到后只丢弃自己的一级缓存。广播与回填之间存在竞态，一级缓存的 TTL 短于远端 TTL，用于限定最长不一致时间。
+ * 一级缓存的 key 统一转为字符串，与广播消息及 Redis key 的表示一致。
+ * <p>
+ * {@link #get(Object, Callable)}（即 {@code @Cacheable(sync = true)}）对同一 key 的未命中只在本节点执行一次加载，
+ * 并发请求等待同一个结果；配置了 {@link CacheRebuildLock} 时，各节点再争抢一把远端锁，
+ * 未抢到的节点轮询远端缓存等待持锁节点写回，超过等待时间后才自行加载。
+ * <p>
+ * 配置了 {@link RefreshAheadPolicy} 的缓存在远端以 {@link RefreshAheadEntry} 保存软过期时间：
+ * 超过软 TTL 的条目仍直接返回，同时交给后台线程刷新，同一 key 在本节点只刷新一次，跨节点由重建锁去重，
+ * 未抢到锁的节点继续返回旧值，稍后读取时采用持锁节点写回的新值；超过硬 TTL 的条目已被远端删除，按未命中同步加载。
+ * <p>
+ * 配置了 {@link CircuitBreaker} 时，远端读写、重建锁与失效广播都经过熔断器：远端出错或变慢导致熔断后，
+ * 读取按远端未命中处理，由一级缓存与加载方法（数据库）兜底，写入只写一级缓存；失效只作用于本节点一级缓存，
+ * 远端失效记入待重放集合，熔断器恢复后由 {@link TwoLevelCacheManager} 统一重放。待重放的 key 过多时改为恢复后清空整个缓存。
+ * <p>
+ * 配置了 {@link HotKeyDetector} 的缓存在每次读取时记录访问，用于找出热点 key。
+ */
+public class TwoLevelCache implements Cache {
+
+    private static final Logger log = LoggerFactory.getLogger(TwoLevelCache.class);
+
+    private static final long REBUILD_POLL_MS = 20;
+
+    private static final int MAX_DEFERRED_EVICTIONS = 10_000;
+
+    private final String name;
+    private final Cache remote;
+    private final com.github.benmanes.caffeine.cache.Cache<String, ValueWrapper> local;
+    private final CacheInvalidationBus bus;
+    private final String nodeId;
+    private final Counter localHits;
+    private final Counter localMisses;
+    private final Counter remoteHits;
+    private final Counter remoteMisses;
+    private final CacheRebuildLock rebuildLock;
+    private final Duration rebuildLockTtl;
+    private final Duration rebuildLockWait;
+    private final Counter loads;
+    private final Counter coalesced;
+    private final Counter rebuiltElsewhere;
+    private final RefreshAheadPolicy refreshAhead;
+    private final Executor refreshExecutor;
+    private final Counter staleServed;
+    private final Counter refreshed;
+    private final Counter refreshAdopted;
+    private final Counter refreshSkipped;
+    private final Counter refreshFailed;
+    private final ConcurrentMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Boolean> refreshing = new ConcurrentHashMap<>();
+    private final CircuitBreaker breaker;
+    private final Set<Object> deferredEvictions = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean deferredClear = new AtomicBoolean();
+    private final HotKeyDetector hotKeys;
+
+    TwoLevelCache(String name, Cache remote, com.github.benmanes.caffeine.cache.Cache<String, ValueWrapper> local,
+                  CacheInvalidationBus bus, String nodeId, MeterRegistry meterRegistry,
+                  TwoLevelCacheOptions options, Executor refreshExecutor) {
+        this.name = name;
+        this.breaker = options.breaker();
+        this.hotKeys = options.hotKeys() != null && options.hotKeys().tracks(name) ? options.hotKeys() : null;
+        this.remote = remote;
+        this.local = local;
+        this.bus = bus;
+        this.nodeId = nodeId;
+        this.rebuildLock = options.rebuildLock();
+        this.rebuildLockTtl = options.rebuildLockTtl();
+        this.rebuildLockWait = options.rebuildLockWait();
+        this.refreshAhead = options.refreshAhead().get(name);
+        this.refreshExecutor = refreshExecutor;
+        this.staleServed = Counter.builder("cache.stale.served")
+                .description("超过软 TTL 仍直接返回旧值的读取次数")
+                .tag("cache", name)
+                .register(meterRegistry);
+        this.refreshed = refreshCounter(meterRegistry, "refreshed");
+        this.refreshAdopted = refreshCounter(meterRegistry, "adopted");
+        this.refreshSkipped = refreshCounter(meterRegistry, "skipped");
+        this.refreshFailed = refreshCounter(meterRegistry, "failed");
+        this.loads = loadCounter(meterRegistry, "loaded");
+        this.coalesced = loadCounter(meterRegistry, "coalesced");
+        this.rebuiltElsewhere = loadCounter(meterRegistry, "remote");
+        this.localHits = counter(meterRegistry, "l1", "hit");
+        this.localMisses = counter(meterRegistry, "l1", "miss");
+        this.remoteHits = counter(meterRegistry, "l2", "hit");
+        this.remoteMisses = counter(meterRegistry, "l2", "miss");
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return remote.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        String localKey = localKey(key);
+        if (hotKeys != null) {
+            hotKeys.record(name, localKey);
+        }
+        ValueWrapper cached = local.getIfPresent(localKey);
+        if (cached != null) {
+            localHits.increment();
+            return cached;
+        }
+        localMisses.increment();
+        ValueWrapper loaded = remoteGet(key);
+        if (loaded != null) {
+            remoteHits.increment();
+            local.put(localKey, loaded);
+        } else {
+            remoteMisses.increment();
+        }
+        return loaded;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("缓存值类型不匹配: " + type.getName());
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper wrapper = get(key);
+        String localKey = localKey(key);
+        if (wrapper != null) {
+            if (wrapper instanceof StampedValue stamped && stamped.isStale(System.currentTimeMillis())) {
+                staleServed.increment();
+                refreshInBackground(key, localKey, valueLoader);
+            }
+            return (T) wrapper.get();
+        }
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(localKey, flight);
+        if (existing != null) {
+            coalesced.increment();
+            return (T) join(existing);
+        }
+        try {
+            Object value = loadOnce(key, localKey, valueLoader);
+            flight.complete(value);
+            return (T) value;
+        } catch (RuntimeException | Error ex) {
+            flight.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(localKey, flight);
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        store(key, localKey(key), value);
+    }
+
+    @Override
+    public void evict(Object key) {
+        String localKey = localKey(key);
+        boolean evicted = guarded(() -> {
+            remote.evict(key);
+            bus.publish(new CacheInvalidationBus.CacheInvalidation(nodeId, name, localKey));
+            return true;
+        }, () -> false);
+        local.invalidate(localKey);
+        if (!evicted) {
+            deferEviction(key);
+        }
+    }
+
+    @Override
+    public void clear() {
+        boolean cleared = guarded(() -> {
+            remote.clear();
+            bus.publish(new CacheInvalidationBus.CacheInvalidation(nodeId, name, null));
+            return true;
+        }, () -> false);
+        local.invalidateAll();
+        if (!cleared) {
+            deferredClear.set(true);
+        }
+    }
+
+    /**
+     * 熔断器恢复后重放熔断期间未能作用于远端的失效；重放时再次熔断的 key 会重新记入待重放集合。
+     */
+    void replayDeferredEvictions() {
+        if (deferredClear.getAndSet(false)) {
+            deferredEvictions.clear();
+            clear();
+            return;
+        }
+        for (Object key : deferredEvictions) {
+            if (deferredEvictions.remove(key)) {
+                evict(key);
+            }
+        }
+    }
+
+    private void deferEviction(Object key) {
+        if (deferredClear.get()) {
+            return;
+        }
+        if (deferredEvictions.size() >= MAX_DEFERRED_EVICTIONS) {
+            deferredClear.set(true);
+            deferredEvictions.clear();
+            return;
+        }
+        deferredEvictions.add(key);
+    }
+
+    /**
+     * 由本节点的领头请求执行：先复查一级缓存（上一轮加载可能刚刚完成），再按需争抢重建锁后加载。
+     */
+    private Object loadOnce(Object key, String localKey, Callable<?> valueLoader) {
+        ValueWrapper cached = local.getIfPresent(localKey);
+        if (cached != null) {
+            return cached.get();
+        }
+        if (rebuildLock == null || remoteUnavailable()) {
+            return loadAndStore(key, localKey, valueLoader);
+        }
+        String lockKey = name + "::" + localKey;
+        String token = nodeId + ":" + UUID.randomUUID();
+        long deadline = System.nanoTime() + rebuildLockWait.toNanos();
+        while (true) {
+            if (tryAcquire(lockKey, token)) {
+                try {
+                    ValueWrapper rebuilt = remoteGet(key);
+                    if (rebuilt != null) {
+                        rebuiltElsewhere.increment();
+                        return fillLocal(localKey, rebuilt);
+                    }
+                    return loadAndStore(key, localKey, valueLoader);
+                } finally {
+                    release(lockKey, token);
+                }
+            }
+            ValueWrapper rebuilt = remoteGet(key);
+            if (rebuilt != null) {
+                rebuiltElsewhere.increment();
+                return fillLocal(localKey, rebuilt);
+            }
+            if (System.nanoTime() - deadline > 0 || remoteUnavailable()) {
+                // 持锁节点迟迟未写回（可能已宕机）或远端已熔断，不再等待
+                return loadAndStore(key, localKey, valueLoader);
+            }
+            try {
+                Thread.sleep(REBUILD_POLL_MS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return loadAndStore(key, localKey, valueLoader);
+            }
+        }
+    }
+
+    private Object loadAndStore(Object key, String localKey, Callable<?> valueLoader) {
+        Object value;
+        try {
+            value = valueLoader.call();
+        } catch (Exception ex) {
+            throw new ValueRetrievalException(key, valueLoader, ex);
+        }
+        loads.increment();
+        store(key, localKey, value);
+        return value;
+    }
+
+    private Object fillLocal(String localKey, ValueWrapper wrapper) {
+        local.put(localKey, wrapper);
+        return wrapper.get();
+    }
+
+    /**
+     * 同时写两级缓存；开启提前刷新时远端保存带软过期时间的条目。
+     */
+    private void store(Object key, String localKey, Object value) {
+        if (refreshAhead == null) {
+            guarded(() -> {
+                remote.put(key, value);
+                return null;
+            }, () -> null);
+            local.put(localKey, new SimpleValueWrapper(value));
+            return;
+        }
+        long refreshAt = refreshAhead.nextRefreshAt(System.currentTimeMillis());
+        guarded(() -> {
+            remote.put(key, new RefreshAheadEntry<>(value, refreshAt));
+            return null;
+        }, () -> null);
+        local.put(localKey, new StampedValue(value, refreshAt));
+    }
+
+    /**
+     * 读取远端并拆开 {@link RefreshAheadEntry}；返回的包装可直接放入一级缓存。
+     */
+    private ValueWrapper remoteGet(Object key) {
+        ValueWrapper wrapper = guarded(() -> remote.get(key), () -> null);
+        if (wrapper == null) {
+            return null;
+        }
+        if (wrapper.get() instanceof RefreshAheadEntry<?> entry) {
+            return new StampedValue(entry.value(), entry.refreshAt());
+        }
+        return new SimpleValueWrapper(wrapper.get());
+    }
+
+    /**
+     * 同一 key 在本节点同时只有一个后台刷新；线程池已满时放弃本次刷新，下次读取会再次触发。
+     */
+    private void refreshInBackground(Object key, String localKey, Callable<?> valueLoader) {
+        if (refreshExecutor == null || refreshing.putIfAbsent(localKey, Boolean.TRUE) != null) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    refresh(key, localKey, valueLoader);
+                } finally {
+                    refreshing.remove(localKey);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            refreshing.remove(localKey);
+            refreshSkipped.increment();
+        }
+    }
+
+    /**
+     * 其他节点已刷新时直接采用远端的新值；否则抢重建锁，未抢到说明其他节点正在刷新，本节点继续返回旧值。
+     */
+    private void refresh(Object key, String localKey, Callable<?> valueLoader) {
+        ValueWrapper current = remoteGet(key);
+        if (current instanceof StampedValue stamped && !stamped.isStale(System.currentTimeMillis())) {
+            local.put(localKey, stamped);
+            refreshAdopted.increment();
+            return;
+        }
+        String lockKey = name + "::" + localKey;
+        String token = nodeId + ":" + UUID.randomUUID();
+        if (rebuildLock != null && !tryAcquire(lockKey, token)) {
+            refreshSkipped.increment();
+            return;
+        }
+        try {
+            store(key, localKey, valueLoader.call());
+            refreshed.increment();
+        } catch (Exception ex) {
+            // 刷新失败时旧值保留到硬 TTL 或被失效为止
+            refreshFailed.increment();
+            log.warn("Failed to refresh cache {} key {}: {}", name, localKey, ex.getMessage());
+        } finally {
+            if (rebuildLock != null) {
+                release(lockKey, token);
+            }
+        }
+    }
+
+    /**
+     * 重建锁不可用时退化为仅本节点合并，不影响读取。
+     */
+    private boolean tryAcquire(String lockKey, String token) {
+        try {
+            return guarded(() -> rebuildLock.tryAcquire(lockKey, token, rebuildLockTtl), () -> true);
+        } catch (RuntimeException ex) {
+            log.warn("Failed to acquire cache rebuild lock {}: {}", lockKey, ex.getMessage());
+            return true;
+        }
+    }
+
+    private void release(String lockKey, String token) {
+        try {
+            guarded(() -> {
+                rebuildLock.release(lockKey, token);
+                return null;
+            }, () -> null);
+        } catch (RuntimeException ex) {
+            log.warn("Failed to release cache rebuild lock {}: {}", lockKey, ex.getMessage());
+        }
+    }
+
+    /**
+     * 经熔断器访问远端，熔断或出错时返回降级结果；未配置熔断器时直接调用，异常照常抛出。
+     */
+    private <T> T guarded(Supplier<T> call, Supplier<T> fallback) {
+        return breaker != null ? breaker.execute(call, fallback) : call.get();
+    }
+
+    private boolean remoteUnavailable() {
+        return breaker != null && !breaker.isClosed();
+    }
+
+    private static Object join(CompletableFuture<Object> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (ex.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * 处理其他节点广播的失效，只丢弃一级缓存。
+     */
+    void invalidateLocal(String key) {
+        if (key == null) {
+            local.invalidateAll();
+        } else {
+            local.invalidate(key);
+        }
+    }
+
+    private Counter counter(MeterRegistry meterRegistry, String tier, String result) {
+        return Counter.builder("cache.tier.gets")
+                .description("两级缓存各层的读取次数")
+                .tag("cache", name)
+                .tag("tier", tier)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private Counter loadCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("cache.loads")
+                .description("缓存未命中后的取值来源：本节点加载、合并到进行中的加载、其他节点重建")
+                .tag("cache", name)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private Counter refreshCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("cache.refreshes")
+                .description("提前刷新的结果：本节点刷新、采用其他节点的新值、因其他节点正在刷新或线程池已满而跳过、加载失败")
+                .tag("cache", name)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static String localKey(Object key) {
+        return String.valueOf(key);
+    }
+
+    /**
+     * 一级缓存中带软过期时间的值。
+     */
+    private record StampedValue(Object value, long refreshAt) implements ValueWrapper {
+
+        @Override
+        public Object get() {
+            return value;
+        }
+
+        boolean isStale(long nowMs) {
+            return nowMs >= refreshAt;
+        }
+    }
+}
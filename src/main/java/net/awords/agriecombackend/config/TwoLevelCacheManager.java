@@ -0,0 +1,119 @@
+package net.awords.agriecombackend.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 为远端 {@link CacheManager} 中的每个缓存套上本地一级缓存（见 {@link TwoLevelCache}），并订阅其他节点的失效广播。
+ * 其余能力由 {@link TwoLevelCacheOptions} 开启：
+ * 配置 {@link CacheRebuildLock} 时，未命中的加载在各节点之间也只执行一次。
+ * 按缓存名配置 {@link RefreshAheadPolicy} 的缓存开启提前刷新，后台刷新共用一个有界线程池。
+ * 配置 {@link CircuitBreaker} 时远端访问经熔断器保护，熔断器恢复后在后台线程重放各缓存积压的失效。
+ * 配置 {@link HotKeyDetector} 时，其跟踪的缓存在读取时记录访问。
+ */
+public class TwoLevelCacheManager implements CacheManager {
+
+    private static final int REFRESH_QUEUE_CAPACITY = 1000;
+
+    private final CacheManager remote;
+    private final CacheInvalidationBus bus;
+    private final MeterRegistry meterRegistry;
+    private final TwoLevelCacheOptions options;
+    private final ThreadPoolExecutor refreshExecutor;
+    private final ExecutorService replayExecutor;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ConcurrentMap<String, TwoLevelCache> caches = new ConcurrentHashMap<>();
+
+    public TwoLevelCacheManager(CacheManager remote, CacheInvalidationBus bus, MeterRegistry meterRegistry,
+                                TwoLevelCacheOptions options) {
+        this.remote = remote;
+        this.bus = bus;
+        this.meterRegistry = meterRegistry;
+        this.options = options;
+        this.refreshExecutor = options.refreshAhead().isEmpty() ? null
+                : refreshExecutor(Math.max(options.refreshThreads(), 1));
+        CircuitBreaker breaker = options.breaker();
+        this.replayExecutor = breaker == null ? null : Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cache-eviction-replay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (breaker != null) {
+            // 回调发生在恢复时的探测调用线程上（通常是请求线程），重放交给后台线程
+            breaker.onClose(() -> replayExecutor.execute(this::replayDeferredEvictions));
+        }
+        bus.subscribe(this::onInvalidation);
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        TwoLevelCache cache = caches.get(name);
+        if (cache != null) {
+            return cache;
+        }
+        Cache remoteCache = remote.getCache(name);
+        if (remoteCache == null) {
+            return null;
+        }
+        return caches.computeIfAbsent(name, n -> new TwoLevelCache(n, remoteCache,
+                Caffeine.newBuilder()
+                        .maximumSize(options.localMaximumSize())
+                        .expireAfterWrite(options.localTtl())
+                        .build(),
+                bus, nodeId, meterRegistry, options, refreshExecutor));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return remote.getCacheNames();
+    }
+
+    /**
+     * 容器关闭时由 Spring 按方法名推断调用。
+     */
+    public void shutdown() {
+        if (refreshExecutor != null) {
+            refreshExecutor.shutdownNow();
+        }
+        if (replayExecutor != null) {
+            replayExecutor.shutdownNow();
+        }
+    }
+
+    private void replayDeferredEvictions() {
+        caches.values().forEach(TwoLevelCache::replayDeferredEvictions);
+    }
+
+    private static ThreadPoolExecutor refreshExecutor(int threads) {
+        AtomicInteger index = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(REFRESH_QUEUE_CAPACITY), runnable -> {
+                    Thread thread = new Thread(runnable, "cache-refresh-" + index.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    private void onInvalidation(CacheInvalidationBus.CacheInvalidation invalidation) {
+        if (nodeId.equals(invalidation.origin())) {
+            return;
+        }
+        TwoLevelCache cache = caches.get(invalidation.cacheName());
+        if (cache != null) {
+            cache.invalidateLocal(invalidation.key());
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package net.awords.agriecombackend.config;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * {@link TwoLevelCacheManager} 的配置：一级缓存的容量与 TTL 必填，其余能力（重建锁、提前刷新、熔断、热点统计）
+ * 按需通过 {@link Builder} 开启，未开启时为 null 或空。
+ */
+public final class TwoLevelCacheOptions {
+
+    private final long localMaximumSize;
+    private final Duration localTtl;
+    private final CacheRebuildLock rebuildLock;
+    private final Duration rebuildLockTtl;
+    private final Duration rebuildLockWait;
+    private final Map<String, RefreshAheadPolicy> refreshAhead;
+    private final int refreshThreads;
+    private final CircuitBreaker breaker;
+    private final HotKeyDetector hotKeys;
+
+    private TwoLevelCacheOptions(Builder builder) {
+        this.localMaximumSize = builder.localMaximumSize;
+        this.localTtl = builder.localTtl;
+        this.rebuildLock = builder.rebuildLock;
+        this.rebuildLockTtl = builder.rebuildLockTtl;
+        this.rebuildLockWait = builder.rebuildLockWait;
+        this.refreshAhead = Map.copyOf(builder.refreshAhead);
+        this.refreshThreads = builder.refreshThreads;
+        this.breaker = builder.breaker;
+        this.hotKeys = builder.hotKeys;
+    }
+
+    public static Builder builder(long localMaximumSize, Duration localTtl) {
+        return new Builder(localMaximumSize, localTtl);
+    }
+
+    long localMaximumSize() { return localMaximumSize; }
+    Duration localTtl() { return localTtl; }
+    CacheRebuildLock rebuildLock() { return rebuildLock; }
+    Duration rebuildLockTtl() { return rebuildLockTtl; }
+    Duration rebuildLockWait() { return rebuildLockWait; }
+    Map<String, RefreshAheadPolicy> refreshAhead() { return refreshAhead; }
+    int refreshThreads() { return refreshThreads; }
+    CircuitBreaker breaker() { return breaker; }
+    HotKeyDetector hotKeys() { return hotKeys; }
+
+    public static final class Builder {
+
+        private final long localMaximumSize;
+        private final Duration localTtl;
+        private CacheRebuildLock rebuildLock;
+        private Duration rebuildLockTtl = Duration.ZERO;
+        private Duration rebuildLockWait = Duration.ZERO;
+        private Map<String, RefreshAheadPolicy> refreshAhead = Map.of();
+        private int refreshThreads;
+        private CircuitBreaker breaker;
+        private HotKeyDetector hotKeys;
+
+        private Builder(long localMaximumSize, Duration localTtl) {
+            this.localMaximumSize = localMaximumSize;
+            this.localTtl = localTtl;
+        }
+
+        /**
+         * 跨节点的未命中加载去重；lock 为 null 时只在本节点去重。
+         *
+         * @param ttl  锁的过期时间，应大于一次加载的最长耗时
+         * @param wait 未抢到锁的节点等待持锁节点写回的最长时间
+         */
+        public Builder rebuildLock(CacheRebuildLock lock, Duration ttl, Duration wait) {
+            this.rebuildLock = lock;
+            this.rebuildLockTtl = ttl;
+            this.rebuildLockWait = wait;
+            return this;
+        }
+
+        /**
+         * 按缓存名开启提前刷新，后台刷新共用 threads 个线程。
+         */
+        public Builder refreshAhead(Map<String, RefreshAheadPolicy> policies, int threads) {
+            this.refreshAhead = policies;
+            this.refreshThreads = threads;
+            return this;
+        }
+
+        public Builder circuitBreaker(CircuitBreaker breaker) {
+            this.breaker = breaker;
+            return this;
+        }
+
+        public Builder hotKeys(HotKeyDetector hotKeys) {
+            this.hotKeys = hotKeys;
+            return this;
+        }
+
+        public TwoLevelCacheOptions build() {
+            return new TwoLevelCacheOptions(this);
+        }
+    }
+}
@@ -6,6 +6,7 @@ import jakarta.validation.Valid;
 import net.awords.agriecombackend.dto.ApiResponseDTO;
 import net.awords.agriecombackend.dto.cart.CartDtos;
 import net.awords.agriecombackend.service.CartService;
+import net.awords.agriecombackend.service.IdempotencyService;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
@@ -15,10 +16,13 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.util.List;
+
 /**
  * 购物车接口，支持增删改查。
  */
@@ -29,9 +33,11 @@ import org.springframework.web.server.ResponseStatusException;
 public class CartController {
 
     private final CartService cartService;
+    private final IdempotencyService idempotencyService;
 
-    public CartController(CartService cartService) {
+    public CartController(CartService cartService, IdempotencyService idempotencyService) {
         this.cartService = cartService;
+        this.idempotencyService = idempotencyService;
     }
 
     @Operation(summary = "查看购物车")
@@ -44,33 +50,41 @@ public class CartController {
     @Operation(summary = "加入购物车")
     @PostMapping("/items")
     public ApiResponseDTO<CartDtos.CartDetail> add(Authentication authentication,
-                                                   @Valid @RequestBody CartDtos.AddItemRequest request) {
+                                                   @Valid @RequestBody CartDtos.AddItemRequest request,
+                                                   @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
         String username = requireUsername(authentication);
-        return ApiResponseDTO.success(cartService.addItem(username, request));
+        return ApiResponseDTO.success(idempotencyService.execute("cart:add", username, idempotencyKey, request,
+                CartDtos.CartDetail.class, () -> cartService.addItem(username, request)));
     }
 
     @Operation(summary = "更新购物车数量")
     @PutMapping("/items/{productId}")
     public ApiResponseDTO<CartDtos.CartDetail> update(Authentication authentication,
                                                       @PathVariable Long productId,
-                                                      @Valid @RequestBody CartDtos.UpdateItemRequest request) {
+                                                      @Valid @RequestBody CartDtos.UpdateItemRequest request,
+                                                      @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
         String username = requireUsername(authentication);
-        return ApiResponseDTO.success(cartService.updateItem(username, productId, request));
+        return ApiResponseDTO.success(idempotencyService.execute("cart:update", username, idempotencyKey, List.of(productId, request),
+                CartDtos.CartDetail.class, () -> cartService.updateItem(username, productId, request)));
     }
 
     @Operation(summary = "删除购物车商品")
     @DeleteMapping("/items/{productId}")
     public ApiResponseDTO<CartDtos.CartDetail> delete(Authentication authentication,
-                                                      @PathVariable Long productId) {
+                                                      @PathVariable Long productId,
+                                                      @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
         String username = requireUsername(authentication);
-        return ApiResponseDTO.success(cartService.removeItem(username, productId));
+        return ApiResponseDTO.success(idempotencyService.execute("cart:remove", username, idempotencyKey, productId,
+                CartDtos.CartDetail.class, () -> cartService.removeItem(username, productId)));
     }
 
     @Operation(summary = "清空购物车")
     @PostMapping("/clear")
-    public ApiResponseDTO<CartDtos.CartDetail> clear(Authentication authentication) {
+    public ApiResponseDTO<CartDtos.CartDetail> clear(Authentication authentication,
+                                                     @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey) {
         String username = requireUsername(authentication);
-        return ApiResponseDTO.success(cartService.clear(username));
+        return ApiResponseDTO.success(idempotencyService.execute("cart:clear", username, idempotencyKey, null,
+                CartDtos.CartDetail.class, () -> cartService.clear(username)));
     }
 
     private String requireUsername(Authentication authentication) {
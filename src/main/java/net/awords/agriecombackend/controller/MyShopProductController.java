@@ -63,6 +63,26 @@ public class MyShopProductController {
         return ApiResponseDTO.success(shopProductService.update(requireUsername(authentication), productId, request));
     }
 
+    @Operation(summary = "开启秒杀模式")
+    @PutMapping("/{productId}/flash-sale")
+    public ApiResponseDTO<ProductDtos.Detail> enableFlashSale(@PathVariable Long productId, Authentication authentication) {
+        return ApiResponseDTO.success(shopProductService.setFlashSale(requireUsername(authentication), productId, true));
+    }
+
+    @Operation(summary = "关闭秒杀模式")
+    @DeleteMapping("/{productId}/flash-sale")
+    public ApiResponseDTO<ProductDtos.Detail> disableFlashSale(@PathVariable Long productId, Authentication authentication) {
+        return ApiResponseDTO.success(shopProductService.setFlashSale(requireUsername(authentication), productId, false));
+    }
+
+    @Operation(summary = "调整库存分片", description = "热点商品的库存分散到多行以降低争用，0 表示取消分片")
+    @PutMapping("/{productId}/stock-shards")
+    public ApiResponseDTO<ProductDtos.Detail> rebalanceStock(@PathVariable Long productId,
+                                                             @Valid @RequestBody ProductDtos.StockShardsRequest request,
+                                                             Authentication authentication) {
+        return ApiResponseDTO.success(shopProductService.rebalanceStock(requireUsername(authentication), productId, request.shards));
+    }
+
     @Operation(summary = "删除商品")
     @DeleteMapping("/{productId}")
     public ApiResponseDTO<Void> delete(@PathVariable Long productId, Authentication authentication) {
@@ -4,8 +4,12 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import net.awords.agriecombackend.dto.ApiResponseDTO;
+import net.awords.agriecombackend.dto.SliceResult;
 import net.awords.agriecombackend.dto.order.OrderDtos;
+import net.awords.agriecombackend.service.IdempotencyService;
+import net.awords.agriecombackend.service.OrderIntakeService;
 import net.awords.agriecombackend.service.OrderService;
+import org.springframework.http.MediaType;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -13,10 +17,13 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.http.HttpStatus;
 
 /**
@@ -28,18 +35,54 @@ import org.springframework.http.HttpStatus;
 @PreAuthorize("hasRole(T(net.awords.agriecombackend.security.RoleConstants).USER)")
 public class OrderController {
 
+    private static final long TICKET_EVENTS_TIMEOUT_MS = 30_000L;
+
     private final OrderService orderService;
+    private final OrderIntakeService orderIntakeService;
+    private final IdempotencyService idempotencyService;
 
-    public OrderController(OrderService orderService) {
+    public OrderController(OrderService orderService, OrderIntakeService orderIntakeService,
+                           IdempotencyService idempotencyService) {
         this.orderService = orderService;
+        this.orderIntakeService = orderIntakeService;
+        this.idempotencyService = idempotencyService;
     }
 
-    @Operation(summary = "创建订单", description = "支持自动将不同店铺商品拆单")
+    @Operation(summary = "创建订单", description = "支持自动将不同店铺商品拆单；携带 Idempotency-Key 时重试直接返回首次结果")
     @PostMapping("/orders")
     public ApiResponseDTO<OrderDtos.OrderDetail> create(@Valid @RequestBody OrderDtos.CreateOrderRequest request,
+                                                        @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
                                                         Authentication authentication) {
         String username = requireUsername(authentication);
-        return ApiResponseDTO.success(orderService.create(username, request));
+        return ApiResponseDTO.success(idempotencyService.execute("orders:create", username, idempotencyKey, request,
+                OrderDtos.OrderDetail.class, () -> orderService.create(username, request)));
+    }
+
+    @Operation(summary = "异步创建订单", description = "校验后入队并返回受理凭证，队列已满时返回 503")
+    @PostMapping("/orders/async")
+    @ResponseStatus(HttpStatus.ACCEPTED)
+    public ApiResponseDTO<OrderDtos.OrderTicket> createAsync(@Valid @RequestBody OrderDtos.CreateOrderRequest request,
+                                                             @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
+                                                             Authentication authentication) {
+        String username = requireUsername(authentication);
+        return ApiResponseDTO.success(idempotencyService.execute("orders:async", username, idempotencyKey, request,
+                OrderDtos.OrderTicket.class, () -> orderIntakeService.submit(username, request)));
+    }
+
+    @Operation(summary = "查询下单凭证", description = "轮询异步下单结果")
+    @GetMapping("/orders/tickets/{ticket}")
+    public ApiResponseDTO<OrderDtos.OrderTicket> ticket(Authentication authentication,
+                                                        @PathVariable String ticket) {
+        String username = requireUsername(authentication);
+        return ApiResponseDTO.success(orderIntakeService.get(username, ticket));
+    }
+
+    @Operation(summary = "订阅下单凭证", description = "以 SSE 推送异步下单结果，完成后连接关闭")
+    @GetMapping(value = "/orders/tickets/{ticket}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter ticketEvents(Authentication authentication,
+                                   @PathVariable String ticket) {
+        String username = requireUsername(authentication);
+        return orderIntakeService.subscribe(username, ticket, TICKET_EVENTS_TIMEOUT_MS);
     }
 
     @Operation(summary = "我的订单列表", description = "默认分页大小 10，可调整 page/size 参数")
@@ -51,6 +94,15 @@ public class OrderController {
         return ApiResponseDTO.success(orderService.list(username, page, size));
     }
 
+    @Operation(summary = "我的订单（游标分页）", description = "按下单时间倒序，不返回总数；传入上一次返回的 nextCursor 取下一页")
+    @GetMapping("/my-orders/scroll")
+    public ApiResponseDTO<SliceResult<OrderDtos.OrderSummary>> scroll(Authentication authentication,
+                                                                      @RequestParam(name = "cursor", required = false) String cursor,
+                                                                      @RequestParam(name = "size", defaultValue = "10") int size) {
+        String username = requireUsername(authentication);
+        return ApiResponseDTO.success(orderService.scroll(username, cursor, size));
+    }
+
     @Operation(summary = "订单详情", description = "包含子订单与订单项列表")
     @GetMapping("/my-orders/{orderId}")
     public ApiResponseDTO<OrderDtos.OrderDetail> detail(Authentication authentication,
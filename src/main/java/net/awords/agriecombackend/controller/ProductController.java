@@ -3,7 +3,9 @@ package net.awords.agriecombackend.controller;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import net.awords.agriecombackend.dto.ApiResponseDTO;
+import net.awords.agriecombackend.dto.SliceResult;
 import net.awords.agriecombackend.dto.product.ProductDtos;
+import net.awords.agriecombackend.service.ProductFacetService;
 import net.awords.agriecombackend.service.ProductQueryService;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.domain.Sort.Order;
@@ -30,17 +32,23 @@ public class ProductController {
             "updated_at", "updatedAt",
             "updatedAt", "updatedAt",
             "published_at", "publishedAt",
-            "publishedAt", "publishedAt"
+            "publishedAt", "publishedAt",
+            "relevance", ProductQueryService.RELEVANCE
     );
 
+    private static final Sort DEFAULT_SORT = Sort.by(Sort.Direction.DESC, "publishedAt");
+    private static final Sort RELEVANCE_SORT = Sort.by(Sort.Direction.DESC, ProductQueryService.RELEVANCE);
+
     private final ProductQueryService productQueryService;
+    private final ProductFacetService productFacetService;
 
-    public ProductController(ProductQueryService productQueryService) {
+    public ProductController(ProductQueryService productQueryService, ProductFacetService productFacetService) {
         this.productQueryService = productQueryService;
+        this.productFacetService = productFacetService;
     }
 
     @Operation(summary = "分页检索商品列表",
-            description = "支持分页、排序、筛选与关键字搜索；默认仅展示已上线店铺商品。")
+            description = "支持分页、排序、筛选与关键字搜索；默认仅展示已上线店铺商品。带关键字时可按 relevance 排序。")
     @GetMapping
     public ApiResponseDTO<ProductDtos.PageResult<ProductDtos.PublicSummary>> list(
             @RequestParam(name = "page", defaultValue = "0") int page,
@@ -57,7 +65,7 @@ public class ProductController {
         ProductQueryService.ProductQuery query = new ProductQueryService.ProductQuery(
                 page,
                 size,
-                buildSort(sortParams),
+                buildSort(sortParams, DEFAULT_SORT),
                 category,
                 origin,
                 priceMin,
@@ -69,8 +77,40 @@ public class ProductController {
         return ApiResponseDTO.success(productQueryService.list(query));
     }
 
+    @Operation(summary = "游标分页浏览商品",
+            description = "筛选与排序参数同商品列表，按首个排序字段翻页；不返回总数，适合无限滚动。"
+                    + "首次请求不带 cursor，之后传入上一次返回的 nextCursor，nextCursor 为空表示已到末尾。")
+    @GetMapping("/scroll")
+    public ApiResponseDTO<SliceResult<ProductDtos.PublicSummary>> scroll(
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "size", defaultValue = "20") int size,
+            @RequestParam(name = "sort", required = false) List<String> sortParams,
+            @RequestParam(name = "category", required = false) String category,
+            @RequestParam(name = "origin", required = false) String origin,
+            @RequestParam(name = "price_min", required = false) BigDecimal priceMin,
+            @RequestParam(name = "price_max", required = false) BigDecimal priceMax,
+            @RequestParam(name = "shop_id", required = false) Long shopId,
+            @RequestParam(name = "keyword", required = false) String keyword,
+            @RequestParam(name = "include_inactive_shop", defaultValue = "false") boolean includeInactiveShop
+    ) {
+        ProductQueryService.ProductQuery query = new ProductQueryService.ProductQuery(
+                0,
+                size,
+                buildSort(sortParams, DEFAULT_SORT),
+                category,
+                origin,
+                priceMin,
+                priceMax,
+                shopId,
+                keyword,
+                !includeInactiveShop
+        );
+        return ApiResponseDTO.success(productQueryService.scroll(query, cursor));
+    }
+
     @Operation(summary = "关键词搜索商品",
-            description = "通过关键词模糊匹配商品名称、描述、分类与产地。" )
+            description = "对商品名称、分类、产地与描述做全文检索，默认按相关度（名称 > 分类/产地 > 描述）降序排列；"
+                    + "fuzzy=true 时改为按商品名称的相似度匹配，容忍错别字，相关度即相似度。" )
     @GetMapping("/search")
     public ApiResponseDTO<ProductDtos.PageResult<ProductDtos.PublicSummary>> search(
             @RequestParam(name = "q") String keyword,
@@ -81,23 +121,53 @@ public class ProductController {
             @RequestParam(name = "origin", required = false) String origin,
             @RequestParam(name = "price_min", required = false) BigDecimal priceMin,
             @RequestParam(name = "price_max", required = false) BigDecimal priceMax,
-            @RequestParam(name = "shop_id", required = false) Long shopId
+            @RequestParam(name = "shop_id", required = false) Long shopId,
+            @RequestParam(name = "fuzzy", defaultValue = "false") boolean fuzzy
     ) {
         ProductQueryService.ProductQuery baseQuery = new ProductQueryService.ProductQuery(
                 page,
                 size,
-                buildSort(sortParams),
+                buildSort(sortParams, RELEVANCE_SORT),
                 category,
                 origin,
                 priceMin,
                 priceMax,
                 shopId,
                 keyword,
-                true
+                true,
+                fuzzy
         );
         return ApiResponseDTO.success(productQueryService.list(baseQuery));
     }
 
+    @Operation(summary = "商品分面计数",
+            description = "筛选条件同商品列表，返回各分类、产地与价格区间的商品数；每个分面不受自身筛选条件约束，"
+                    + "便于展示可切换的取值。")
+    @GetMapping("/facets")
+    public ApiResponseDTO<ProductDtos.Facets> facets(
+            @RequestParam(name = "category", required = false) String category,
+            @RequestParam(name = "origin", required = false) String origin,
+            @RequestParam(name = "price_min", required = false) BigDecimal priceMin,
+            @RequestParam(name = "price_max", required = false) BigDecimal priceMax,
+            @RequestParam(name = "shop_id", required = false) Long shopId,
+            @RequestParam(name = "keyword", required = false) String keyword,
+            @RequestParam(name = "include_inactive_shop", defaultValue = "false") boolean includeInactiveShop
+    ) {
+        ProductQueryService.ProductQuery query = new ProductQueryService.ProductQuery(
+                0,
+                1,
+                DEFAULT_SORT,
+                category,
+                origin,
+                priceMin,
+                priceMax,
+                shopId,
+                keyword,
+                !includeInactiveShop
+        );
+        return ApiResponseDTO.success(productFacetService.facets(query));
+    }
+
     @Operation(summary = "获取商品详情",
             description = "商品详情启用 Redis 缓存，命中后可显著降低数据库压力。")
     @GetMapping("/{productId}")
@@ -105,9 +175,9 @@ public class ProductController {
         return ApiResponseDTO.success(productQueryService.detail(productId));
     }
 
-    private Sort buildSort(List<String> sortParams) {
+    private Sort buildSort(List<String> sortParams, Sort defaultSort) {
         if (sortParams == null || sortParams.isEmpty()) {
-            return Sort.by(Sort.Direction.DESC, "publishedAt");
+            return defaultSort;
         }
         List<Order> orders = sortParams.stream()
                 .map(param -> {
@@ -125,7 +195,7 @@ public class ProductController {
                 .filter(order -> order != null)
                 .collect(Collectors.toList());
         if (orders.isEmpty()) {
-            return Sort.by(Sort.Direction.DESC, "publishedAt");
+            return defaultSort;
         }
         return Sort.by(orders);
     }
@@ -5,6 +5,7 @@ import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.enums.ParameterIn;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import net.awords.agriecombackend.dto.ApiResponseDTO;
+import net.awords.agriecombackend.dto.SliceResult;
 import net.awords.agriecombackend.dto.shop.ShopDtos;
 import net.awords.agriecombackend.service.ShopPublicService;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -36,6 +37,18 @@ public class PublicShopController {
         return ApiResponseDTO.success(shopPublicService.list(page, size, keyword));
     }
 
+    @Operation(summary = "浏览店铺列表（游标分页）", description = "不返回总数，适合无限滚动", parameters = {
+            @Parameter(name = "cursor", description = "上一次返回的 nextCursor，首次请求不传", in = ParameterIn.QUERY),
+            @Parameter(name = "size", description = "每页数据量，最大50", in = ParameterIn.QUERY),
+            @Parameter(name = "keyword", description = "店铺名称关键字", in = ParameterIn.QUERY)
+    })
+    @GetMapping("/scroll")
+    public ApiResponseDTO<SliceResult<ShopDtos.PublicSummary>> scroll(@RequestParam(name = "cursor", required = false) String cursor,
+                                                                      @RequestParam(name = "size", defaultValue = "10") int size,
+                                                                      @RequestParam(name = "keyword", required = false) String keyword) {
+        return ApiResponseDTO.success(shopPublicService.scroll(cursor, size, keyword));
+    }
+
     @Operation(summary = "查看店铺主页", description = "返回店铺公开信息及商品列表")
     @GetMapping("/{shopId}")
     public ApiResponseDTO<ShopDtos.PublicDetail> get(@PathVariable Long shopId) {
@@ -4,6 +4,7 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import net.awords.agriecombackend.dto.ApiResponseDTO;
+import net.awords.agriecombackend.dto.SliceResult;
 import net.awords.agriecombackend.dto.order.OrderDtos;
 import net.awords.agriecombackend.service.ShopOrderService;
 import org.springframework.http.HttpStatus;
@@ -42,6 +43,15 @@ public class ShopOrderController {
         return ApiResponseDTO.success(shopOrderService.list(username, page, size));
     }
 
+    @Operation(summary = "查看店铺订单列表（游标分页）", description = "按下单时间倒序，不返回总数；传入上一次返回的 nextCursor 取下一页")
+    @GetMapping("/scroll")
+    public ApiResponseDTO<SliceResult<OrderDtos.ShopOrderSummary>> scroll(Authentication authentication,
+                                                                          @RequestParam(name = "cursor", required = false) String cursor,
+                                                                          @RequestParam(name = "size", defaultValue = "10") int size) {
+        String username = requireUsername(authentication);
+        return ApiResponseDTO.success(shopOrderService.scroll(username, cursor, size));
+    }
+
     @Operation(summary = "查看店铺订单详情")
     @GetMapping("/{orderId}")
     public ApiResponseDTO<OrderDtos.ShopOrderDetail> detail(Authentication authentication,
@@ -0,0 +1,22 @@
+package net.awords.agriecombackend.dto;
+
+import java.util.List;
+
+/**
+ * 游标分页（无限滚动）响应：不统计总数；{@code nextCursor} 原样传回即可取下一页，没有下一页时为 null。
+ */
+public class SliceResult<T> {
+    public List<T> items;
+    public int size;
+    public boolean hasNext;
+    public String nextCursor;
+
+    public static <T> SliceResult<T> of(List<T> items, int size, String nextCursor) {
+        SliceResult<T> slice = new SliceResult<>();
+        slice.items = items;
+        slice.size = size;
+        slice.hasNext = nextCursor != null;
+        slice.nextCursor = nextCursor;
+        return slice;
+    }
+}
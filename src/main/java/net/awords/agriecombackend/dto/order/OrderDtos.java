@@ -31,6 +31,18 @@ public class OrderDtos {
         }
     }
 
+    /**
+     * 异步下单的受理凭证，status 为 QUEUED / COMPLETED / FAILED。
+     */
+    public static class OrderTicket {
+        public String ticket;
+        public String status;
+        public Long orderId;
+        public String message;
+        public OffsetDateTime acceptedAt;
+        public OffsetDateTime completedAt;
+    }
+
     public static class OrderSummary {
         public Long id;
         public String status;
@@ -1,6 +1,8 @@
 package net.awords.agriecombackend.dto.product;
 
 import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.PositiveOrZero;
@@ -61,6 +63,16 @@ public class ProductDtos {
         public String origin;
     }
 
+    /**
+     * 调整库存分片数，0 表示取消分片；相同分片数也会把现有库存重新均分到各分片。
+     */
+    public static class StockShardsRequest {
+        @NotNull(message = "分片数不能为空")
+        @Min(value = 0, message = "分片数不能为负数")
+        @Max(value = 64, message = "分片数不能超过64")
+        public Integer shards;
+    }
+
     /**
      * 商户管理后台查看商品详情时使用。
      */
@@ -73,6 +85,8 @@ public class ProductDtos {
         public String category;
         public String origin;
         public Long sales;
+        public boolean flashSale;
+        public int stockShards;
         public OffsetDateTime createdAt;
         public OffsetDateTime updatedAt;
         public OffsetDateTime publishedAt;
@@ -96,6 +110,31 @@ public class ProductDtos {
         public String shopName;
     }
 
+    /**
+     * 分面计数：各分类与产地（小写）按商品数降序排列；每个分面的计数不受该分面自身的筛选条件约束，
+     * {@code total} 为满足全部条件的商品数。
+     */
+    public static class Facets {
+        public List<FacetCount> categories;
+        public List<FacetCount> origins;
+        public List<PriceBucket> priceBuckets;
+        public long total;
+    }
+
+    public static class FacetCount {
+        public String value;
+        public long count;
+    }
+
+    /**
+     * 价格区间 [min, max)，首个区间的 min 与末个区间的 max 为 null。
+     */
+    public static class PriceBucket {
+        public BigDecimal min;
+        public BigDecimal max;
+        public long count;
+    }
+
     /**
      * 通用分页响应包装，提供基本的分页元信息。
      */
@@ -26,6 +26,8 @@ public final class ProductMapper {
         detail.category = product.getCategory();
         detail.origin = product.getOrigin();
         detail.sales = product.getSales();
+        detail.flashSale = product.isFlashSale();
+        detail.stockShards = product.getStockShards();
         detail.createdAt = product.getCreatedAt();
         detail.updatedAt = product.getUpdatedAt();
         detail.publishedAt = product.getPublishedAt();
@@ -37,6 +39,29 @@ public final class ProductMapper {
         return detail;
     }
 
+    /**
+     * 复制静态详情并填入实时库存与销量，不修改传入的（可能被缓存共享的）对象。
+     */
+    public static ProductDtos.Detail withLiveStats(ProductDtos.Detail base, int stock, long sales) {
+        ProductDtos.Detail detail = new ProductDtos.Detail();
+        detail.id = base.id;
+        detail.name = base.name;
+        detail.description = base.description;
+        detail.price = base.price;
+        detail.stock = stock;
+        detail.category = base.category;
+        detail.origin = base.origin;
+        detail.sales = sales;
+        detail.flashSale = base.flashSale;
+        detail.stockShards = base.stockShards;
+        detail.createdAt = base.createdAt;
+        detail.updatedAt = base.updatedAt;
+        detail.publishedAt = base.publishedAt;
+        detail.shopId = base.shopId;
+        detail.shopName = base.shopName;
+        return detail;
+    }
+
     public static PublicSummary toPublicSummary(Product product) {
         PublicSummary summary = new PublicSummary();
         summary.id = product.getId();
@@ -55,7 +80,7 @@ public final class ProductMapper {
         return summary;
     }
 
-    public static <T> PageResult<T> toPageResult(Page<Product> page, Function<Product, T> mapper) {
+    public static <S, T> PageResult<T> toPageResult(Page<S> page, Function<S, T> mapper) {
         PageResult<T> result = new PageResult<>();
         result.items = page.getContent().stream().map(mapper).toList();
         result.totalElements = page.getTotalElements();
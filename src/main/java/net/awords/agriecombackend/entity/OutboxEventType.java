@@ -0,0 +1,12 @@
+package net.awords.agriecombackend.entity;
+
+/**
+ * 事务发件箱中的领域事件类型。
+ */
+public enum OutboxEventType {
+    ORDER_PLACED,
+    ORDER_SHIPPED,
+    ORDER_CANCELLED,
+    PRODUCT_CHANGED,
+    SHOP_STATUS_CHANGED
+}
@@ -1,15 +1,22 @@
 package net.awords.agriecombackend.entity;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.DynamicUpdate;
+
 import java.math.BigDecimal;
 import java.time.OffsetDateTime;
 
+/**
+ * 只更新发生变化的列：库存由 {@code InventoryService} 以 SQL 原子修改，修改其他字段时不能用实体中的旧库存覆盖。
+ */
 @Entity
 @Table(name = "products")
+@DynamicUpdate
 public class Product {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "products_seq")
+    @SequenceGenerator(name = "products_seq", sequenceName = "products_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false, length = 255)
@@ -33,6 +40,19 @@ public class Product {
     @Column(nullable = false)
     private Long sales = 0L;
 
+    /**
+     * 秒杀模式：开启后可售库存以 Redis 计数器为准，products.stock 由对账任务异步回写。
+     */
+    @Column(name = "flash_sale", nullable = false)
+    private boolean flashSale = false;
+
+    /**
+     * 库存分片数：大于 0 时库存分散在 product_stock_shards 的多行中以降低热点行争用，
+     * stock 列仅为定期刷新的分片合计。
+     */
+    @Column(name = "stock_shards", nullable = false)
+    private int stockShards = 0;
+
     /**
      * 多租户关键：每个商品必须隶属于唯一的店铺。
      */
@@ -83,6 +103,10 @@ public class Product {
     public void setOrigin(String origin) { this.origin = origin; }
     public Long getSales() { return sales; }
     public void setSales(Long sales) { this.sales = sales; }
+    public boolean isFlashSale() { return flashSale; }
+    public void setFlashSale(boolean flashSale) { this.flashSale = flashSale; }
+    public int getStockShards() { return stockShards; }
+    public void setStockShards(int stockShards) { this.stockShards = stockShards; }
     public Shop getShop() { return shop; }
     public void setShop(Shop shop) { this.shop = shop; }
     public OffsetDateTime getCreatedAt() { return createdAt; }
@@ -0,0 +1,63 @@
+package net.awords.agriecombackend.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * 热点商品的库存分片，一个商品的可售库存为其全部分片之和。
+ * 分片只通过 {@code InventoryService} 中的 SQL 读写，此处映射用于表结构校验。
+ */
+@Entity
+@Table(name = "product_stock_shards")
+@IdClass(ProductStockShard.Key.class)
+public class ProductStockShard {
+
+    @Id
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+
+    @Id
+    @Column(name = "shard_no", nullable = false)
+    private Integer shardNo;
+
+    @Column(nullable = false)
+    private Integer stock;
+
+    public Long getProductId() { return productId; }
+    public void setProductId(Long productId) { this.productId = productId; }
+    public Integer getShardNo() { return shardNo; }
+    public void setShardNo(Integer shardNo) { this.shardNo = shardNo; }
+    public Integer getStock() { return stock; }
+    public void setStock(Integer stock) { this.stock = stock; }
+
+    public static class Key implements Serializable {
+        private Long productId;
+        private Integer shardNo;
+
+        public Key() {
+        }
+
+        public Key(Long productId, Integer shardNo) {
+            this.productId = productId;
+            this.shardNo = shardNo;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key key)) return false;
+            return Objects.equals(productId, key.productId) && Objects.equals(shardNo, key.shardNo);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(productId, shardNo);
+        }
+    }
+}
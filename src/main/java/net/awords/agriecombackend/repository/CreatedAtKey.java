@@ -0,0 +1,12 @@
+package net.awords.agriecombackend.repository;
+
+import java.time.OffsetDateTime;
+
+/**
+ * 按创建时间倒序做游标分页时的排序键：取自查询结果，与数据库中存储的值完全一致。
+ */
+public interface CreatedAtKey {
+    Long getId();
+
+    OffsetDateTime getCreatedAt();
+}
@@ -1,18 +1,60 @@
 package net.awords.agriecombackend.repository;
 
+import jakarta.persistence.LockModeType;
 import net.awords.agriecombackend.entity.OrderGroup;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface OrderGroupRepository extends JpaRepository<OrderGroup, Long> {
 
-    @EntityGraph(attributePaths = {"shopOrders", "shopOrders.shop", "shopOrders.orderItems", "shopOrders.orderItems.product"})
+    @EntityGraph(attributePaths = {"shopOrders", "shopOrders.shop"})
     Page<OrderGroup> findByBuyerId(Long buyerId, Pageable pageable);
 
-    @EntityGraph(attributePaths = {"shopOrders", "shopOrders.shop", "shopOrders.orderItems", "shopOrders.orderItems.product"})
+    @EntityGraph(attributePaths = {"shopOrders", "shopOrders.shop"})
     Optional<OrderGroup> findByIdAndBuyerId(Long id, Long buyerId);
+
+    @EntityGraph(attributePaths = {"shopOrders", "shopOrders.shop"})
+    List<OrderGroup> findAllByIdIn(Collection<Long> ids);
+
+    /**
+     * 游标分页的首页，按创建时间倒序；只查排序键，分页在数据库中完成，再按 ID 抓取订单及其子订单。
+     */
+    @Query("select g.id as id, g.createdAt as createdAt from OrderGroup g where g.buyer.id = :buyerId"
+            + " order by g.createdAt desc, g.id desc")
+    List<CreatedAtKey> findKeysByBuyerId(@Param("buyerId") Long buyerId, Pageable pageable);
+
+    /**
+     * 游标分页的后续页：排在（createdAt, id）之后的订单。
+     */
+    @Query("select g.id as id, g.createdAt as createdAt from OrderGroup g where g.buyer.id = :buyerId"
+            + " and (g.createdAt < :createdAt or (g.createdAt = :createdAt and g.id < :id))"
+            + " order by g.createdAt desc, g.id desc")
+    List<CreatedAtKey> findKeysByBuyerIdBefore(@Param("buyerId") Long buyerId,
+                                               @Param("createdAt") OffsetDateTime createdAt,
+                                               @Param("id") Long id,
+                                               Pageable pageable);
+
+    /**
+     * 以行锁读取订单，串行化同一订单的并发取消，避免库存被重复回补。
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select g from OrderGroup g where g.id = :id and g.buyer.id = :buyerId")
+    Optional<OrderGroup> lockByIdAndBuyerId(@Param("id") Long id, @Param("buyerId") Long buyerId);
+
+    /**
+     * 以行锁读取订单，商户发货与超时关闭（FOR UPDATE SKIP LOCKED 认领）借此串行化。
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select g from OrderGroup g where g.id = :id")
+    Optional<OrderGroup> lockById(@Param("id") Long id);
 }
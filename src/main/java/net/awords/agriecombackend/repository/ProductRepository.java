@@ -12,4 +12,38 @@ public interface ProductRepository extends JpaRepository<Product, Long>, JpaSpec
 	java.util.List<Product> findByShopIdOrderByPublishedAtDesc(Long shopId);
 
 	java.util.Optional<Product> findByIdAndShopId(Long id, Long shopId);
+
+	java.util.List<Product> findAllByFlashSaleTrue();
+
+	@org.springframework.data.jpa.repository.Query(
+			"select distinct p.category from Product p where p.shop.id = :shopId and p.category is not null")
+	java.util.List<String> findDistinctCategoriesByShopId(Long shopId);
+
+	@org.springframework.data.jpa.repository.Query("select p.id from Product p where p.shop.id = :shopId")
+	java.util.List<Long> findIdsByShopId(Long shopId);
+
+	@org.springframework.data.jpa.repository.Query(
+			"select p.id from Product p where p.shop.status = :status order by p.sales desc, p.id desc")
+	java.util.List<Long> findIdsByShopStatusOrderBySalesDesc(net.awords.agriecombackend.entity.ShopStatus status,
+			org.springframework.data.domain.Pageable pageable);
+
+	@org.springframework.data.jpa.repository.Query(
+			"select p.id from Product p where p.shop.status = :status order by p.publishedAt desc, p.id desc")
+	java.util.List<Long> findIdsByShopStatusOrderByPublishedAtDesc(net.awords.agriecombackend.entity.ShopStatus status,
+			org.springframework.data.domain.Pageable pageable);
+
+	@org.springframework.data.jpa.repository.Query("select p from Product p join fetch p.shop where p.id in :ids")
+	java.util.List<Product> findAllWithShopByIdIn(java.util.Collection<Long> ids);
+
+	@org.springframework.data.jpa.repository.Query("select p.stock as stock, p.sales as sales from Product p where p.id = :id")
+	java.util.Optional<LiveStatsView> findLiveStatsById(Long id);
+
+	/**
+	 * 商品详情中的实时字段。
+	 */
+	interface LiveStatsView {
+		Integer getStock();
+
+		Long getSales();
+	}
 }
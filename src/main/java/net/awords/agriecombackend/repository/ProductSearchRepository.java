@@ -0,0 +1,239 @@
+package net.awords.agriecombackend.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.hibernate.query.NativeQuery;
+import net.awords.agriecombackend.entity.ShopStatus;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 商品关键字检索，返回命中的商品 ID。
+ * <p>
+ * PostgreSQL 上匹配 {@code products.search_vector}（由名称、分类/产地、描述按 A/B/C 权重生成的 tsvector 列，带 GIN 索引），
+ * 相关度取 {@code ts_rank}。{@code simple} 分词不切分中文，“苹果”匹配不到“红富士苹果”这样整体成词的名称，
+ * 因此同时以名称子串（由 {@code lower(name)} 上的三元组索引支撑）兜底，名称命中另加 1.0 的相关度；其他数据库（测试用的 H2）退化为四列 LIKE，相关度按同样的权重（1.0/0.4/0.2）对命中的列求和。
+ * 模糊模式改为按商品名称的三元组相似度匹配（容忍错别字，见 {@link SearchDialect}），相关度即相似度，低于阈值的不返回；
+ * 名称包含关键字的商品同样命中。
+ * 各方式都按排序字段 {@value #RELEVANCE} 支持相关度排序，其余排序字段与实体属性同名，最后以 ID 降序保证翻页稳定。
+ * {@link #facets} 在同样的条件下一次分组查询出分面计数所需的全部组合；{@link #seek} 是不统计总数的游标分页。
+ * 以原生 SQL 经 {@link EntityManager} 执行，查询前会刷新当前会话中尚未写入的修改。
+ */
+@Repository
+public class ProductSearchRepository {
+
+    public static final String RELEVANCE = "relevance";
+
+    private static final Map<String, String> SORT_COLUMNS = Map.of(
+            "price", "p.price",
+            "sales", "p.sales",
+            "createdAt", "p.created_at",
+            "updatedAt", "p.updated_at",
+            "publishedAt", "p.published_at"
+    );
+
+    private static final Map<String, Class<?>> SORT_TYPES = Map.of(
+            "price", BigDecimal.class,
+            "sales", Long.class,
+            "createdAt", OffsetDateTime.class,
+            "updatedAt", OffsetDateTime.class,
+            "publishedAt", OffsetDateTime.class
+    );
+
+    /**
+     * 检索条件；文本条件须已去空白并转为小写，为 null 表示不限；{@code fuzzy} 为 true 时按名称相似度匹配关键字。
+     */
+    public record Criteria(String keyword, String category, String origin, BigDecimal priceMin,
+                           BigDecimal priceMax, Long shopId, ShopStatus shopStatus, boolean fuzzy) {
+    }
+
+    /**
+     * 分面分组：小写的分类与产地、价格区间序号、价格是否满足区间条件，以及该组合的商品数。
+     */
+    public record FacetRow(String category, String origin, int priceBucket, boolean inPriceRange, long count) {
+    }
+
+    /**
+     * 游标分页的一行：商品 ID 与其排序键（按相关度排序时为 null）。
+     */
+    public record SeekRow(long id, Object sortValue) {
+    }
+
+    /**
+     * 条件子句；{@code rank} 为关键字相关度表达式，无关键字时为 null。
+     */
+    private record Clause(String from, String where, Map<String, Object> params, String rank) {
+    }
+
+    private final EntityManager entityManager;
+    private final SearchDialect dialect;
+
+    public ProductSearchRepository(EntityManager entityManager, SearchDialect dialect) {
+        this.entityManager = entityManager;
+        this.dialect = dialect;
+    }
+
+    public Page<Long> search(Criteria criteria, Pageable pageable) {
+        Clause clause = clause(criteria, true);
+        Map<String, Object> params = clause.params();
+        String from = clause.from();
+        String where = clause.where();
+        Query query = entityManager.createNativeQuery(
+                "SELECT p.id" + from + where + orderBy(pageable.getSort(), clause.rank()) + " LIMIT :limit OFFSET :offset");
+        params.forEach(query::setParameter);
+        query.setParameter("limit", pageable.getPageSize());
+        query.setParameter("offset", pageable.getOffset());
+        List<Long> ids = ((List<?>) query.getResultList()).stream()
+                .map(id -> ((Number) id).longValue())
+                .toList();
+        return PageableExecutionUtils.getPage(ids, pageable, () -> {
+            Query count = entityManager.createNativeQuery("SELECT count(*)" + from + where);
+            params.forEach(count::setParameter);
+            return ((Number) count.getSingleResult()).longValue();
+        });
+    }
+
+    /**
+     * 不统计总数的一页，排序只取 {@code order} 一个字段，ID 与之同向。按列排序时从上一页最后一条
+     * （{@code afterValue} 与 {@code afterId}，首页为 null）之后开始，以行值比较走（排序列, id）复合索引定位，
+     * 不随翻页深度变慢；按相关度排序时无法定位，仍按 {@code offset} 跳过。
+     */
+    public List<SeekRow> seek(Criteria criteria, Sort.Order order, Object afterValue, Long afterId, long offset,
+                              int limit) {
+        Clause clause = clause(criteria, true);
+        Map<String, Object> params = new LinkedHashMap<>(clause.params());
+        boolean byRelevance = RELEVANCE.equals(order.getProperty()) && clause.rank() != null;
+        String property = byRelevance || SORT_COLUMNS.containsKey(order.getProperty()) ? order.getProperty() : "publishedAt";
+        String sql;
+        if (byRelevance) {
+            sql = "SELECT p.id AS id" + clause.from() + clause.where()
+                    + " ORDER BY " + clause.rank() + " DESC, p.id DESC LIMIT :limit OFFSET :offset";
+            params.put("offset", offset);
+        } else {
+            String column = SORT_COLUMNS.get(property);
+            String direction = order.isAscending() ? " ASC" : " DESC";
+            String where = clause.where();
+            if (afterValue != null && afterId != null) {
+                String seek = "(" + column + ", p.id) " + (order.isAscending() ? ">" : "<") + " (:afterValue, :afterId)";
+                where = where.isEmpty() ? " WHERE " + seek : where + " AND " + seek;
+                params.put("afterValue", afterValue);
+                params.put("afterId", afterId);
+            }
+            sql = "SELECT p.id AS id, " + column + " AS sort_value" + clause.from() + where
+                    + " ORDER BY " + column + direction + ", p.id" + direction + " LIMIT :limit";
+        }
+        NativeQuery<?> query = entityManager.createNativeQuery(sql).unwrap(NativeQuery.class);
+        query.addScalar("id", Long.class);
+        if (!byRelevance) {
+            query.addScalar("sort_value", SORT_TYPES.get(property));
+        }
+        params.forEach(query::setParameter);
+        query.setParameter("limit", limit);
+        return query.getResultList().stream()
+                .map(row -> byRelevance ? new SeekRow((Long) row, null)
+                        : new SeekRow((Long) ((Object[]) row)[0], ((Object[]) row)[1]))
+                .toList();
+    }
+
+    /**
+     * 按分类、产地、价格区间（以 {@code priceBounds} 为升序边界，共 n + 1 个区间）与是否满足价格条件分组计数。
+     * 分类、产地与价格条件不参与过滤而是作为分组维度，由调用方组合出各分面的计数；其余条件照常过滤。
+     */
+    public List<FacetRow> facets(Criteria criteria, List<BigDecimal> priceBounds) {
+        Clause clause = clause(criteria, false);
+        Map<String, Object> params = new LinkedHashMap<>(clause.params());
+        StringBuilder bucket = new StringBuilder("CASE");
+        for (int i = 0; i < priceBounds.size(); i++) {
+            bucket.append(" WHEN p.price < :bound").append(i).append(" THEN ").append(i);
+            params.put("bound" + i, priceBounds.get(i));
+        }
+        bucket.append(" ELSE ").append(priceBounds.size()).append(" END");
+        List<String> range = new ArrayList<>();
+        addFilter(range, params, "p.price >= :priceMin", "priceMin", criteria.priceMin());
+        addFilter(range, params, "p.price <= :priceMax", "priceMax", criteria.priceMax());
+        String inRange = range.isEmpty() ? "1" : "CASE WHEN " + String.join(" AND ", range) + " THEN 1 ELSE 0 END";
+        Query query = entityManager.createNativeQuery("SELECT f.category, f.origin, f.bucket, f.in_range, count(*)"
+                + " FROM (SELECT lower(p.category) AS category, lower(p.origin) AS origin, " + bucket + " AS bucket, "
+                + inRange + " AS in_range" + clause.from() + clause.where() + ") f"
+                + " GROUP BY f.category, f.origin, f.bucket, f.in_range");
+        params.forEach(query::setParameter);
+        return ((List<?>) query.getResultList()).stream()
+                .map(row -> (Object[]) row)
+                .map(row -> new FacetRow((String) row[0], (String) row[1], ((Number) row[2]).intValue(),
+                        ((Number) row[3]).intValue() == 1, ((Number) row[4]).longValue()))
+                .toList();
+    }
+
+    /**
+     * @param includeFacets 是否包含分类、产地与价格条件
+     */
+    private Clause clause(Criteria criteria, boolean includeFacets) {
+        Map<String, Object> params = new LinkedHashMap<>();
+        StringBuilder from = new StringBuilder(" FROM products p JOIN shops s ON s.id = p.shop_id");
+        List<String> predicates = new ArrayList<>();
+        String rank = null;
+        if (criteria.keyword() != null && criteria.fuzzy()) {
+            dialect.applySimilarityThreshold();
+            params.put("keyword", criteria.keyword());
+            params.put("pattern", "%" + criteria.keyword() + "%");
+            predicates.add("(lower(p.name) LIKE :pattern OR " + dialect.similarityPredicate("keyword", "lower(p.name)") + ")");
+            rank = dialect.similarityScore("keyword", "lower(p.name)");
+        } else if (criteria.keyword() != null) {
+            if (dialect.mode() == SearchDialect.Mode.FULL_TEXT) {
+                from.append(" CROSS JOIN plainto_tsquery('simple', :keyword) AS q");
+                params.put("keyword", criteria.keyword());
+                params.put("pattern", "%" + criteria.keyword() + "%");
+                predicates.add("(p.search_vector @@ q OR lower(p.name) LIKE :pattern)");
+                rank = "(ts_rank(p.search_vector, q) + CASE WHEN lower(p.name) LIKE :pattern THEN 1.0 ELSE 0 END)";
+            } else {
+                params.put("pattern", "%" + criteria.keyword() + "%");
+                predicates.add("(lower(p.name) LIKE :pattern OR lower(p.description) LIKE :pattern"
+                        + " OR lower(p.category) LIKE :pattern OR lower(p.origin) LIKE :pattern)");
+                rank = "(CASE WHEN lower(p.name) LIKE :pattern THEN 1.0 ELSE 0 END"
+                        + " + CASE WHEN lower(p.category) LIKE :pattern OR lower(p.origin) LIKE :pattern THEN 0.4 ELSE 0 END"
+                        + " + CASE WHEN lower(p.description) LIKE :pattern THEN 0.2 ELSE 0 END)";
+            }
+        }
+        if (includeFacets) {
+            addFilter(predicates, params, "lower(p.category) = :category", "category", criteria.category());
+            addFilter(predicates, params, "lower(p.origin) = :origin", "origin", criteria.origin());
+            addFilter(predicates, params, "p.price >= :priceMin", "priceMin", criteria.priceMin());
+            addFilter(predicates, params, "p.price <= :priceMax", "priceMax", criteria.priceMax());
+        }
+        addFilter(predicates, params, "p.shop_id = :shopId", "shopId", criteria.shopId());
+        addFilter(predicates, params, "s.status = :shopStatus", "shopStatus",
+                criteria.shopStatus() == null ? null : criteria.shopStatus().name());
+        String where = predicates.isEmpty() ? "" : " WHERE " + String.join(" AND ", predicates);
+        return new Clause(from.toString(), where, params, rank);
+    }
+
+    private static String orderBy(Sort sort, String rank) {
+        List<String> orders = new ArrayList<>();
+        for (Sort.Order order : sort) {
+            String column = RELEVANCE.equals(order.getProperty()) ? rank : SORT_COLUMNS.get(order.getProperty());
+            if (column != null) {
+                orders.add(column + (order.isAscending() ? " ASC" : " DESC"));
+            }
+        }
+        orders.add("p.id DESC");
+        return " ORDER BY " + String.join(", ", orders);
+    }
+
+    private static void addFilter(List<String> predicates, Map<String, Object> params,
+                                  String predicate, String name, Object value) {
+        if (value != null) {
+            predicates.add(predicate);
+            params.put(name, value);
+        }
+    }
+}
@@ -45,21 +45,6 @@ public final class ProductSpecifications {
         return (root, query, cb) -> shopId == null ? cb.conjunction() : cb.equal(root.get("shop").get("id"), shopId);
     }
 
-    public static Specification<Product> keywordLike(String keyword) {
-        return (root, query, cb) -> {
-            if (!StringUtils.hasText(keyword)) {
-                return cb.conjunction();
-            }
-            String pattern = "%" + keyword.trim().toLowerCase() + "%";
-            return cb.or(
-                    cb.like(cb.lower(root.get("name")), pattern),
-                    cb.like(cb.lower(root.get("description")), pattern),
-                    cb.like(cb.lower(root.get("category")), pattern),
-                    cb.like(cb.lower(root.get("origin")), pattern)
-            );
-        };
-    }
-
     public static Specification<Product> shopStatusEquals(ShopStatus status) {
         return (root, query, cb) -> {
             if (status == null) {
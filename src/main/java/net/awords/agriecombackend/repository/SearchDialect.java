@@ -0,0 +1,82 @@
+package net.awords.agriecombackend.repository;
+
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+
+/**
+ * 检索 SQL 的数据库差异：PostgreSQL 使用全文检索（tsvector）与 pg_trgm 相似度，两者都有 GIN 索引；
+ * 其他数据库（测试用的 H2）退化为 LIKE，相似度由注册为函数的 {@link TrigramSimilarity} 计算。
+ */
+@Component
+public class SearchDialect {
+
+    public enum Mode { FULL_TEXT, LIKE }
+
+    private final EntityManager entityManager;
+    private final Mode mode;
+    private final double similarityThreshold;
+
+    public SearchDialect(EntityManager entityManager, DataSource dataSource,
+                         @Value("${product-search.mode:auto}") String mode,
+                         @Value("${search.similarity-threshold:0.3}") double similarityThreshold) {
+        this.entityManager = entityManager;
+        this.similarityThreshold = similarityThreshold;
+        String database = inspect(dataSource);
+        this.mode = "auto".equalsIgnoreCase(mode)
+                ? ("PostgreSQL".equalsIgnoreCase(database) ? Mode.FULL_TEXT : Mode.LIKE)
+                : Mode.valueOf(mode.trim().toUpperCase(Locale.ROOT));
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    /**
+     * 关键字与列的相似度不低于阈值。PostgreSQL 上使用可走索引的 {@code <%} 运算符，其阈值由 {@link #applySimilarityThreshold()} 设置。
+     */
+    public String similarityPredicate(String keywordParam, String column) {
+        return mode == Mode.FULL_TEXT
+                ? ":" + keywordParam + " <% " + column
+                : "WORD_SIMILARITY(:" + keywordParam + ", " + column + ") >= " + similarityThreshold;
+    }
+
+    public String similarityScore(String keywordParam, String column) {
+        return (mode == Mode.FULL_TEXT ? "word_similarity(:" : "WORD_SIMILARITY(:") + keywordParam + ", " + column + ")";
+    }
+
+    /**
+     * 把 {@code <%} 的阈值设为本事务内有效，须在相似度查询之前、同一事务中调用。
+     */
+    public void applySimilarityThreshold() {
+        if (mode == Mode.FULL_TEXT) {
+            entityManager.createNativeQuery("SELECT set_config('pg_trgm.word_similarity_threshold', :threshold, true)")
+                    .setParameter("threshold", String.valueOf(similarityThreshold))
+                    .getSingleResult();
+        }
+    }
+
+    /**
+     * 返回数据库产品名；H2 上顺带注册相似度函数。
+     */
+    private static String inspect(DataSource dataSource) {
+        try (Connection connection = dataSource.getConnection()) {
+            String database = connection.getMetaData().getDatabaseProductName();
+            if ("H2".equalsIgnoreCase(database)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("CREATE ALIAS IF NOT EXISTS WORD_SIMILARITY FOR '"
+                            + TrigramSimilarity.class.getName() + ".wordSimilarity'");
+                }
+            }
+            return database;
+        } catch (SQLException ex) {
+            throw new IllegalStateException("无法识别数据库类型", ex);
+        }
+    }
+}
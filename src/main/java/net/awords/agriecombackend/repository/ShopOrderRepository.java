@@ -5,7 +5,12 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface ShopOrderRepository extends JpaRepository<ShopOrder, Long> {
@@ -16,6 +21,33 @@ public interface ShopOrderRepository extends JpaRepository<ShopOrder, Long> {
     @EntityGraph(attributePaths = {"orderGroup", "orderGroup.buyer", "shop", "orderItems", "orderItems.product"})
     Optional<ShopOrder> findByIdAndShopOwnerId(Long id, Long ownerId);
 
+    /**
+     * 只查所属订单组的 ID，供加锁前定位订单组，不把子订单载入持久化上下文。
+     */
+    @Query("select o.orderGroup.id from ShopOrder o where o.id = :id and o.shop.owner.id = :ownerId")
+    Optional<Long> findOrderGroupIdByIdAndShopOwnerId(@Param("id") Long id, @Param("ownerId") Long ownerId);
+
     @EntityGraph(attributePaths = {"orderGroup", "orderGroup.buyer", "shop", "orderItems", "orderItems.product"})
     java.util.List<ShopOrder> findByOrderGroupId(Long orderGroupId);
+
+    @EntityGraph(attributePaths = {"orderGroup", "orderGroup.buyer", "shop", "orderItems", "orderItems.product"})
+    List<ShopOrder> findAllByIdIn(Collection<Long> ids);
+
+    /**
+     * 游标分页的首页，按创建时间倒序；只查排序键，再按 ID 抓取订单明细。
+     */
+    @Query("select o.id as id, o.createdAt as createdAt from ShopOrder o where o.shop.owner.id = :ownerId"
+            + " order by o.createdAt desc, o.id desc")
+    List<CreatedAtKey> findKeysByShopOwnerId(@Param("ownerId") Long ownerId, Pageable pageable);
+
+    /**
+     * 游标分页的后续页：排在（createdAt, id）之后的订单。
+     */
+    @Query("select o.id as id, o.createdAt as createdAt from ShopOrder o where o.shop.owner.id = :ownerId"
+            + " and (o.createdAt < :createdAt or (o.createdAt = :createdAt and o.id < :id))"
+            + " order by o.createdAt desc, o.id desc")
+    List<CreatedAtKey> findKeysByShopOwnerIdBefore(@Param("ownerId") Long ownerId,
+                                                   @Param("createdAt") OffsetDateTime createdAt,
+                                                   @Param("id") Long id,
+                                                   Pageable pageable);
 }
@@ -3,7 +3,9 @@ package net.awords.agriecombackend.repository;
 import net.awords.agriecombackend.entity.Shop;
 import net.awords.agriecombackend.entity.ShopStatus;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
+import java.time.OffsetDateTime;
 import java.util.Optional;
 import java.util.List;
 import org.springframework.data.domain.Page;
@@ -19,5 +21,21 @@ public interface ShopRepository extends JpaRepository<Shop, Long> {
 
     Page<Shop> findByStatus(ShopStatus status, Pageable pageable);
 
-    Page<Shop> findByStatusAndNameContainingIgnoreCase(ShopStatus status, String keyword, Pageable pageable);
+    @Query("select s.id from Shop s where s.status = :status order by s.id")
+    List<Long> findIdsByStatus(ShopStatus status, Pageable pageable);
+
+    /**
+     * 游标分页的首页，按创建时间倒序。
+     */
+    @Query("select s.id as id, s.createdAt as createdAt from Shop s where s.status = :status"
+            + " order by s.createdAt desc, s.id desc")
+    List<CreatedAtKey> findKeysByStatus(ShopStatus status, Pageable pageable);
+
+    /**
+     * 游标分页的后续页：排在（createdAt, id）之后的店铺。
+     */
+    @Query("select s.id as id, s.createdAt as createdAt from Shop s where s.status = :status"
+            + " and (s.createdAt < :createdAt or (s.createdAt = :createdAt and s.id < :id))"
+            + " order by s.createdAt desc, s.id desc")
+    List<CreatedAtKey> findKeysByStatusBefore(ShopStatus status, OffsetDateTime createdAt, Long id, Pageable pageable);
 }
@@ -0,0 +1,68 @@
+package net.awords.agriecombackend.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import net.awords.agriecombackend.entity.ShopStatus;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * 按名称检索店铺，返回命中的店铺 ID：名称包含关键字或与关键字的三元组相似度不低于阈值（容忍错别字，见 {@link SearchDialect}），
+ * 按相似度降序、创建时间降序排列。PostgreSQL 上两种条件都可使用 {@code shops.name} 的 pg_trgm GIN 索引。
+ */
+@Repository
+public class ShopSearchRepository {
+
+    private final EntityManager entityManager;
+    private final SearchDialect dialect;
+
+    public ShopSearchRepository(EntityManager entityManager, SearchDialect dialect) {
+        this.entityManager = entityManager;
+        this.dialect = dialect;
+    }
+
+    /**
+     * @param keyword 已去空白并转为小写的关键字
+     */
+    public Page<Long> searchByName(String keyword, ShopStatus status, Pageable pageable) {
+        List<Long> ids = searchIdsByName(keyword, status, pageable.getOffset(), pageable.getPageSize());
+        return PageableExecutionUtils.getPage(ids, pageable, () -> {
+            Query count = entityManager.createNativeQuery("SELECT count(*)" + where());
+            bind(count, keyword, status);
+            return ((Number) count.getSingleResult()).longValue();
+        });
+    }
+
+    /**
+     * 不统计总数的一页，供游标分页使用；相似度无法按列定位，只能按偏移量跳过。
+     *
+     * @param keyword 已去空白并转为小写的关键字
+     */
+    public List<Long> searchIdsByName(String keyword, ShopStatus status, long offset, int limit) {
+        dialect.applySimilarityThreshold();
+        Query query = entityManager.createNativeQuery("SELECT s.id" + where()
+                + " ORDER BY " + dialect.similarityScore("keyword", "lower(s.name)") + " DESC, s.created_at DESC, s.id DESC"
+                + " LIMIT :limit OFFSET :offset");
+        bind(query, keyword, status);
+        query.setParameter("limit", limit);
+        query.setParameter("offset", offset);
+        return ((List<?>) query.getResultList()).stream()
+                .map(id -> ((Number) id).longValue())
+                .toList();
+    }
+
+    private String where() {
+        return " FROM shops s WHERE s.status = :status"
+                + " AND (lower(s.name) LIKE :pattern OR " + dialect.similarityPredicate("keyword", "lower(s.name)") + ")";
+    }
+
+    private static void bind(Query query, String keyword, ShopStatus status) {
+        query.setParameter("status", status.name());
+        query.setParameter("keyword", keyword);
+        query.setParameter("pattern", "%" + keyword + "%");
+    }
+}
@@ -0,0 +1,71 @@
+package net.awords.agriecombackend.repository;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 按 pg_trgm 的规则计算三元组相似度：文本按非字母数字字符切词并转小写，每个词前补两个空格、后补一个空格后取连续三字符。
+ * 在 H2 中注册为 {@code WORD_SIMILARITY} 函数，使测试环境与 PostgreSQL 的相似度检索行为一致（数值与 pg_trgm 近似，不保证完全相同）。
+ */
+public final class TrigramSimilarity {
+
+    private TrigramSimilarity() {
+    }
+
+    /**
+     * 关键字的三元组集合与目标文本中任一连续三元组片段的最大相似度（交集 / 并集），对应 pg_trgm 的 {@code word_similarity}。
+     */
+    public static double wordSimilarity(String keyword, String text) {
+        if (keyword == null || text == null) {
+            return 0;
+        }
+        Set<String> target = new HashSet<>(trigrams(keyword));
+        if (target.isEmpty()) {
+            return 0;
+        }
+        List<String> ordered = trigrams(text);
+        double best = 0;
+        for (int from = 0; from < ordered.size(); from++) {
+            Set<String> extent = new HashSet<>();
+            int shared = 0;
+            for (int to = from; to < ordered.size(); to++) {
+                String trigram = ordered.get(to);
+                if (extent.add(trigram) && target.contains(trigram)) {
+                    shared++;
+                }
+                best = Math.max(best, (double) shared / (target.size() + extent.size() - shared));
+            }
+        }
+        return best;
+    }
+
+    static List<String> trigrams(String text) {
+        List<String> trigrams = new ArrayList<>();
+        int[] codePoints = text.toLowerCase(Locale.ROOT).codePoints().toArray();
+        int start = -1;
+        for (int i = 0; i <= codePoints.length; i++) {
+            boolean wordChar = i < codePoints.length && Character.isLetterOrDigit(codePoints[i]);
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                addWord(trigrams, codePoints, start, i);
+                start = -1;
+            }
+        }
+        return trigrams;
+    }
+
+    private static void addWord(List<String> trigrams, int[] codePoints, int start, int end) {
+        int[] padded = new int[end - start + 3];
+        padded[0] = ' ';
+        padded[1] = ' ';
+        System.arraycopy(codePoints, start, padded, 2, end - start);
+        padded[padded.length - 1] = ' ';
+        for (int i = 0; i + 3 <= padded.length; i++) {
+            trigrams.add(new String(padded, i, 3));
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package net.awords.agriecombackend.service;
+
+import net.awords.agriecombackend.entity.OutboxEventType;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 在事务提交后失效商品与店铺详情缓存；同一批事件中重复的 key 只失效一次。
+ * 商品详情缓存只保存静态部分，订单事件带来的库存与销量变化由 {@link ProductLiveStatsService} 以增量更新，
+ * 因此只有商品修改与店铺状态变更才失效商品详情；商品修改同时丢弃实时数据，以数据库为准重新载入。
+ * 改变前台列表内容的事件同时递增商品列表缓存中相关切片的代数；店铺状态变更还要失效未上线店铺的负缓存。
+ */
+@Component
+public class CacheEvictionHandler implements OutboxEventHandler {
+
+    private static final Set<OutboxEventType> PRODUCT_DETAIL_EVENTS = EnumSet.of(
+            OutboxEventType.PRODUCT_CHANGED, OutboxEventType.SHOP_STATUS_CHANGED);
+    private static final Set<OutboxEventType> LISTING_EVENTS = EnumSet.of(
+            OutboxEventType.PRODUCT_CHANGED, OutboxEventType.ORDER_SHIPPED, OutboxEventType.SHOP_STATUS_CHANGED);
+
+    private final CacheManager cacheManager;
+    private final ProductListCache productListCache;
+    private final ProductLiveStatsService liveStatsService;
+
+    public CacheEvictionHandler(CacheManager cacheManager, ProductListCache productListCache,
+                                ProductLiveStatsService liveStatsService) {
+        this.cacheManager = cacheManager;
+        this.productListCache = productListCache;
+        this.liveStatsService = liveStatsService;
+    }
+
+    @Override
+    public void handle(List<OutboxMessage> messages) {
+        Set<Long> productIds = new LinkedHashSet<>();
+        Set<Long> changedProductIds = new LinkedHashSet<>();
+        Set<Long> shopIds = new LinkedHashSet<>();
+        Set<Long> statusChangedShopIds = new LinkedHashSet<>();
+        Set<Long> listingShopIds = new LinkedHashSet<>();
+        Set<String> listingCategories = new LinkedHashSet<>();
+        for (OutboxMessage message : messages) {
+            if (PRODUCT_DETAIL_EVENTS.contains(message.type())) {
+                productIds.addAll(message.productIds());
+            }
+            if (message.type() == OutboxEventType.PRODUCT_CHANGED) {
+                changedProductIds.addAll(message.productIds());
+            }
+            shopIds.addAll(message.shopIds());
+            if (message.type() == OutboxEventType.SHOP_STATUS_CHANGED) {
+                statusChangedShopIds.addAll(message.shopIds());
+            }
+            if (LISTING_EVENTS.contains(message.type())) {
+                listingShopIds.addAll(message.shopIds());
+                listingCategories.addAll(message.categories());
+            }
+        }
+        evict("product:detail", productIds);
+        evict("shop:detail", shopIds);
+        evict(ShopPublicService.INACTIVE_SHOPS, statusChangedShopIds);
+        if (!changedProductIds.isEmpty()) {
+            liveStatsService.evict(changedProductIds);
+        }
+        if (!listingShopIds.isEmpty() || !listingCategories.isEmpty()) {
+            productListCache.invalidate(listingShopIds, listingCategories);
+        }
+    }
+
+    private void evict(String cacheName, Set<Long> keys) {
+        Cache cache = cacheManager.getCache(cacheName);
+        if (cache != null) {
+            keys.forEach(cache::evict);
+        }
+    }
+}
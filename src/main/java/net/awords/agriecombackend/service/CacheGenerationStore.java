@@ -0,0 +1,17 @@
+package net.awords.agriecombackend.service;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 缓存代数存储：缓存 key 中带上相关标签的当前代数，标签代数递增后旧 key 不再被读取，等同于 O(1) 批量失效。
+ */
+public interface CacheGenerationStore {
+
+    /**
+     * @return 与 tags 一一对应的当前代数，从未递增过的标签为 0
+     */
+    List<Long> current(List<String> tags);
+
+    void bump(Collection<String> tags);
+}
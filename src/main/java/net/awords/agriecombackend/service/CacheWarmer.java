@@ -0,0 +1,239 @@
+package net.awords.agriecombackend.service;
+
+import jakarta.annotation.PreDestroy;
+import net.awords.agriecombackend.config.CacheRebuildLock;
+import net.awords.agriecombackend.entity.ShopStatus;
+import net.awords.agriecombackend.repository.ProductRepository;
+import net.awords.agriecombackend.repository.ShopRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 预热商品与店铺详情缓存，避免发布或 Redis 清空后的最初几分钟全部请求穿透到数据库。
+ * <p>
+ * 预热对象为销量最高与最新发布的商品（只含上线店铺），以及全部上线店铺的公开详情，以固定大小的线程池限制并发。
+ * 启动后立即预热，完成或超时前本组件的健康状态为 OUT_OF_SERVICE，readiness 探针随之不就绪；
+ * 此后每隔一个刷新周期由集群中抢到锁的一个节点重新加载并覆盖这些条目，使其在 TTL 到期前续期。
+ */
+@Service
+public class CacheWarmer implements HealthIndicator {
+
+    private static final Logger log = LoggerFactory.getLogger(CacheWarmer.class);
+
+    private static final String REFRESH_LOCK = "cache-warmer:refresh";
+
+    private final ProductRepository productRepository;
+    private final ShopRepository shopRepository;
+    private final ProductDetailLoader productDetailLoader;
+    private final ProductLiveStatsService liveStatsService;
+    private final ShopPublicService shopPublicService;
+    private final CacheRebuildLock rebuildLock;
+    private final boolean enabled;
+    private final int topProducts;
+    private final int recentProducts;
+    private final int maxShops;
+    private final Duration timeout;
+    private final Duration refreshInterval;
+    private final ExecutorService executor;
+    private final String nodeId = UUID.randomUUID().toString();
+    private volatile boolean ready;
+    private volatile Result lastResult;
+
+    public CacheWarmer(ProductRepository productRepository,
+                       ShopRepository shopRepository,
+                       ProductDetailLoader productDetailLoader,
+                       ProductLiveStatsService liveStatsService,
+                       ShopPublicService shopPublicService,
+                       CacheRebuildLock rebuildLock,
+                       @Value("${cache-warmer.enabled:true}") boolean enabled,
+                       @Value("${cache-warmer.top-products:500}") int topProducts,
+                       @Value("${cache-warmer.recent-products:200}") int recentProducts,
+                       @Value("${cache-warmer.max-shops:1000}") int maxShops,
+                       @Value("${cache-warmer.parallelism:4}") int parallelism,
+                       @Value("${cache-warmer.timeout-ms:60000}") long timeoutMs,
+                       @Value("${cache-warmer.refresh-interval-ms:480000}") long refreshIntervalMs) {
+        this.productRepository = productRepository;
+        this.shopRepository = shopRepository;
+        this.productDetailLoader = productDetailLoader;
+        this.liveStatsService = liveStatsService;
+        this.shopPublicService = shopPublicService;
+        this.rebuildLock = rebuildLock;
+        this.enabled = enabled;
+        this.topProducts = topProducts;
+        this.recentProducts = recentProducts;
+        this.maxShops = maxShops;
+        this.timeout = Duration.ofMillis(timeoutMs);
+        this.refreshInterval = Duration.ofMillis(refreshIntervalMs);
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(parallelism, 1), runnable -> {
+            Thread thread = new Thread(runnable, "cache-warmer-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 启动完成后在后台预热，不阻塞启动线程。
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmOnStartup() {
+        if (!enabled) {
+            ready = true;
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                warm(false);
+            } catch (RuntimeException ex) {
+                log.warn("Cache warm-up failed: {}", ex.getMessage());
+            } finally {
+                ready = true;
+            }
+        }, "cache-warmer-startup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 锁的过期时间等于刷新周期且不主动释放，因此每个周期全集群只刷新一次。
+     */
+    @Scheduled(initialDelayString = "${cache-warmer.refresh-interval-ms:480000}",
+            fixedDelayString = "${cache-warmer.refresh-interval-ms:480000}")
+    public void refresh() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            if (rebuildLock.tryAcquire(REFRESH_LOCK, nodeId + ":" + UUID.randomUUID(), refreshInterval)) {
+                warm(true);
+            }
+        } catch (RuntimeException ex) {
+            log.warn("Cache refresh failed: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * 加载一轮热点条目，超过超时时间后放弃尚未开始的加载。
+     *
+     * @param overwrite true 时无论缓存中是否已有都重新加载并覆盖（续期），false 时已缓存的条目直接跳过
+     */
+    public Result warm(boolean overwrite) {
+        long startedAt = System.currentTimeMillis();
+        List<Long> productIds = hotProductIds();
+        List<Long> shopIds = shopRepository.findIdsByStatus(ShopStatus.ACTIVE, PageRequest.of(0, Math.max(maxShops, 1)));
+
+        List<Future<?>> futures = new ArrayList<>(productIds.size() + shopIds.size());
+        for (Long productId : productIds) {
+            futures.add(executor.submit(() -> {
+                if (overwrite) {
+                    productDetailLoader.refresh(productId);
+                } else {
+                    productDetailLoader.load(productId);
+                    liveStatsService.get(productId);
+                }
+            }));
+        }
+        for (Long shopId : shopIds) {
+            futures.add(executor.submit(() -> overwrite
+                    ? shopPublicService.refreshPublicDetail(shopId)
+                    : shopPublicService.getPublicDetail(shopId)));
+        }
+
+        long deadline = startedAt + timeout.toMillis();
+        int failed = 0;
+        boolean timedOut = false;
+        for (Future<?> future : futures) {
+            try {
+                future.get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ex) {
+                timedOut = true;
+                break;
+            } catch (ExecutionException ex) {
+                // 统计期间商品可能被删除、店铺可能被封禁，单个条目失败不影响整轮预热
+                failed++;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                timedOut = true;
+                break;
+            }
+        }
+        if (timedOut) {
+            futures.forEach(future -> future.cancel(false));
+        }
+        Result result = new Result(productIds.size(), shopIds.size(), failed, timedOut,
+                System.currentTimeMillis() - startedAt);
+        lastResult = result;
+        log.info("Cache {} finished: {} products, {} shops, {} failed, timedOut={}, {} ms",
+                overwrite ? "refresh" : "warm-up", result.products(), result.shops(), result.failed(),
+                result.timedOut(), result.elapsedMs());
+        return result;
+    }
+
+    private List<Long> hotProductIds() {
+        Set<Long> ids = new LinkedHashSet<>();
+        if (topProducts > 0) {
+            ids.addAll(productRepository.findIdsByShopStatusOrderBySalesDesc(
+                    ShopStatus.ACTIVE, PageRequest.of(0, topProducts)));
+        }
+        if (recentProducts > 0) {
+            ids.addAll(productRepository.findIdsByShopStatusOrderByPublishedAtDesc(
+                    ShopStatus.ACTIVE, PageRequest.of(0, recentProducts)));
+        }
+        return List.copyOf(ids);
+    }
+
+    @Override
+    public Health health() {
+        if (!ready) {
+            return Health.outOfService().withDetail("phase", "warming").build();
+        }
+        Result result = lastResult;
+        if (result == null) {
+            return Health.up().build();
+        }
+        return Health.up()
+                .withDetail("products", result.products())
+                .withDetail("shops", result.shops())
+                .withDetail("failed", result.failed())
+                .withDetail("timedOut", result.timedOut())
+                .withDetail("elapsedMs", result.elapsedMs())
+                .build();
+    }
+
+    boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 一轮预热的结果。
+     */
+    public record Result(int products, int shops, int failed, boolean timedOut, long elapsedMs) {
+    }
+}
@@ -0,0 +1,262 @@
+package net.awords.agriecombackend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import net.awords.agriecombackend.config.CacheRebuildLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 商品与店铺 ID 的存在性过滤器（布隆过滤器）：详情缓存不缓存空值，不存在的 ID 每次都会穿透到数据库，
+ * 过滤器判定不存在的 ID 在查询数据库之前直接拒绝。
+ * <p>
+ * 位图由 {@link ExistenceFilterStore} 保存，启动后及每隔一个重建周期从 ID 列全量重建一次（集群内同一时间只有一个节点重建），
+ * 新建的商品与店铺在所在事务内即加入过滤器，先于提交可见，因此不会误拒真实存在的 ID；回滚只会留下多余的位。
+ * 布隆过滤器无法删除元素，已删除的 ID 在下次重建前仍判定为可能存在，查询时与其他误判一样计入误判次数。
+ * 不经过业务服务直接写库的数据在下次重建前不会被识别，批量导入后应手动触发重建。
+ * 位图不可用时放行全部请求，退化为直接查询数据库。
+ */
+@Service
+public class ExistenceFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(ExistenceFilter.class);
+
+    private static final int REBUILD_BATCH_SIZE = 1000;
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+
+    /**
+     * 过滤器种类及其 ID 来源。
+     */
+    public enum Kind {
+        PRODUCT("product", "SELECT id FROM products"),
+        SHOP("shop", "SELECT id FROM shops");
+
+        private final String filterName;
+        private final String idQuery;
+
+        Kind(String filterName, String idQuery) {
+            this.filterName = filterName;
+            this.idQuery = idQuery;
+        }
+    }
+
+    private final ExistenceFilterStore store;
+    private final JdbcTemplate jdbcTemplate;
+    private final CacheRebuildLock rebuildLock;
+    private final boolean enabled;
+    private final long bitCount;
+    private final int hashCount;
+    private final Duration rebuildInterval;
+    private final Duration rebuildGrace;
+    private final Duration rebuildLockTtl;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<Kind, Counter> passed = new EnumMap<>(Kind.class);
+    private final Map<Kind, Counter> rejected = new EnumMap<>(Kind.class);
+    private final Map<Kind, Counter> falsePositives = new EnumMap<>(Kind.class);
+
+    public ExistenceFilter(ExistenceFilterStore store,
+                           JdbcTemplate jdbcTemplate,
+                           CacheRebuildLock rebuildLock,
+                           MeterRegistry meterRegistry,
+                           @Value("${existence-filter.enabled:true}") boolean enabled,
+                           @Value("${existence-filter.expected-insertions:1000000}") long expectedInsertions,
+                           @Value("${existence-filter.false-positive-rate:0.01}") double falsePositiveRate,
+                           @Value("${existence-filter.rebuild-interval-ms:21600000}") long rebuildIntervalMs,
+                           @Value("${existence-filter.rebuild-grace-ms:5000}") long rebuildGraceMs,
+                           @Value("${existence-filter.rebuild-lock-ttl-ms:600000}") long rebuildLockTtlMs) {
+        this.store = store;
+        this.jdbcTemplate = jdbcTemplate;
+        this.rebuildLock = rebuildLock;
+        this.enabled = enabled;
+        long n = Math.max(expectedInsertions, 1);
+        // 标准布隆过滤器参数：m = -n·ln(p) / (ln 2)²，k = m/n · ln 2；Redis 位偏移上限为 2^32 - 1
+        this.bitCount = Math.min((long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))),
+                (1L << 32) - 1);
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+        this.rebuildInterval = Duration.ofMillis(rebuildIntervalMs);
+        this.rebuildGrace = Duration.ofMillis(rebuildGraceMs);
+        this.rebuildLockTtl = Duration.ofMillis(rebuildLockTtlMs);
+        for (Kind kind : Kind.values()) {
+            passed.put(kind, checkCounter(meterRegistry, kind, "passed"));
+            rejected.put(kind, checkCounter(meterRegistry, kind, "rejected"));
+            falsePositives.put(kind, Counter.builder("existence.filter.false.positives")
+                    .description("过滤器判定可能存在、数据库中却不存在的查询次数")
+                    .tag("filter", kind.filterName)
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * @return false 表示该 ID 一定不存在，调用方可直接返回 404
+     */
+    public boolean mightContain(Kind kind, long id) {
+        if (!enabled) {
+            return true;
+        }
+        boolean result;
+        try {
+            result = store.mightContain(kind.filterName, offsets(id));
+        } catch (RuntimeException ex) {
+            log.warn("Existence filter {} unavailable, falling back to database: {}", kind.filterName, ex.getMessage());
+            return true;
+        }
+        (result ? passed : rejected).get(kind).increment();
+        return result;
+    }
+
+    /**
+     * 在创建实体的事务内调用；写入失败时抛出异常使事务回滚，避免新 ID 被过滤器拒绝。
+     */
+    public void add(Kind kind, long id) {
+        if (enabled) {
+            store.add(kind.filterName, offsets(id));
+        }
+    }
+
+    /**
+     * 由调用方在过滤器放行、数据库却查不到时记录。
+     */
+    public void recordFalsePositive(Kind kind) {
+        falsePositives.get(kind).increment();
+    }
+
+    /**
+     * 定期检查各过滤器，尚未建立或已超过重建周期的由抢到锁的节点重建。
+     */
+    @Scheduled(initialDelayString = "${existence-filter.initial-delay-ms:0}",
+            fixedDelayString = "${existence-filter.check-interval-ms:60000}")
+    public void maintain() {
+        if (!enabled) {
+            return;
+        }
+        for (Kind kind : Kind.values()) {
+            try {
+                if (isDue(kind)) {
+                    rebuildIfDue(kind);
+                }
+            } catch (RuntimeException ex) {
+                log.warn("Existence filter {} rebuild failed: {}", kind.filterName, ex.getMessage());
+            }
+        }
+    }
+
+    private void rebuildIfDue(Kind kind) {
+        String lockKey = "existence-filter:" + kind.filterName;
+        String token = nodeId + ":" + UUID.randomUUID();
+        if (!rebuildLock.tryAcquire(lockKey, token, rebuildLockTtl)) {
+            return;
+        }
+        try {
+            // 抢到锁前其他节点可能刚完成重建
+            if (isDue(kind)) {
+                rebuild(kind);
+            }
+        } finally {
+            rebuildLock.release(lockKey, token);
+        }
+    }
+
+    private boolean isDue(Kind kind) {
+        Long builtAt = store.builtAt(kind.filterName);
+        return builtAt == null || System.currentTimeMillis() - builtAt >= rebuildInterval.toMillis();
+    }
+
+    /**
+     * 从 ID 列全量重建。建立暂存位图后先等待一个宽限期再扫描：暂存位图建立之前开始、扫描时尚未提交的事务
+     * 只写入了在用位图，宽限期应长于这类写事务的最长耗时。
+     *
+     * @return 写入的 ID 数
+     */
+    public long rebuild(Kind kind) {
+        long startedAt = System.currentTimeMillis();
+        store.beginRebuild(kind.filterName, rebuildLockTtl);
+        boolean finished = false;
+        try {
+            sleep(rebuildGrace);
+            List<Long> batch = new ArrayList<>(REBUILD_BATCH_SIZE);
+            long[] count = {0};
+            jdbcTemplate.query(kind.idQuery, rs -> {
+                batch.add(rs.getLong(1));
+                if (batch.size() >= REBUILD_BATCH_SIZE) {
+                    count[0] += flush(kind, batch);
+                }
+            });
+            count[0] += flush(kind, batch);
+            finished = store.finishRebuild(kind.filterName, System.currentTimeMillis());
+            if (!finished) {
+                throw new IllegalStateException("暂存位图已过期，重建未生效");
+            }
+            log.info("Existence filter {} rebuilt with {} ids in {} ms",
+                    kind.filterName, count[0], System.currentTimeMillis() - startedAt);
+            return count[0];
+        } finally {
+            if (!finished) {
+                store.abortRebuild(kind.filterName);
+            }
+        }
+    }
+
+    private int flush(Kind kind, List<Long> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        long[] offsets = new long[batch.size() * hashCount];
+        for (int i = 0; i < batch.size(); i++) {
+            System.arraycopy(offsets(batch.get(i)), 0, offsets, i * hashCount, hashCount);
+        }
+        store.addToRebuild(kind.filterName, offsets);
+        int size = batch.size();
+        batch.clear();
+        return size;
+    }
+
+    /**
+     * 双重哈希：第 i 个位偏移为 (h1 + i·h2) mod m；h2 取奇数，避免为 0 时各偏移重合。
+     */
+    long[] offsets(long id) {
+        long h1 = mix(id);
+        long h2 = mix(h1 ^ SEED) | 1;
+        long[] offsets = new long[hashCount];
+        for (int i = 0; i < hashCount; i++) {
+            offsets[i] = Math.floorMod(h1 + i * h2, bitCount);
+        }
+        return offsets;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+
+    private static void sleep(Duration duration) {
+        if (duration.isZero() || duration.isNegative()) {
+            return;
+        }
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("重建被中断", ex);
+        }
+    }
+
+    private static Counter checkCounter(MeterRegistry meterRegistry, Kind kind, String result) {
+        return Counter.builder("existence.filter.checks")
+                .description("存在性过滤器的查询次数，rejected 为在访问数据库前拒绝的请求")
+                .tag("filter", kind.filterName)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,47 @@
+package net.awords.agriecombackend.service;
+
+import java.time.Duration;
+
+/**
+ * 布隆过滤器的位图存储，位偏移由 {@link ExistenceFilter} 计算。
+ * <p>
+ * 每个过滤器有一份在用位图，重建期间另有一份暂存位图：重建开始后新增的 ID 同时写入两份，
+ * 扫描完成后以暂存位图原子替换在用位图，从而清除已删除 ID 留下的位。
+ * 在用位图尚未建立时，查询一律视为可能存在。
+ */
+public interface ExistenceFilterStore {
+
+    /**
+     * @return 所有偏移都已置位，或在用位图尚未建立时返回 true
+     */
+    boolean mightContain(String filter, long[] offsets);
+
+    /**
+     * 置位在用位图与（若正在重建）暂存位图；在用位图尚未建立时不单独创建，避免只含部分 ID 的位图拒绝其余 ID。
+     */
+    void add(String filter, long[] offsets);
+
+    /**
+     * 丢弃上一次残留的暂存位图并新建一份，超过 ttl 未完成时自动丢弃。
+     */
+    void beginRebuild(String filter, Duration ttl);
+
+    /**
+     * 置位暂存位图；暂存位图已不存在（过期或被放弃）时忽略。
+     */
+    void addToRebuild(String filter, long[] offsets);
+
+    /**
+     * 以暂存位图替换在用位图并记录建立时间。
+     *
+     * @return 暂存位图已不存在时返回 false
+     */
+    boolean finishRebuild(String filter, long builtAtMs);
+
+    void abortRebuild(String filter);
+
+    /**
+     * @return 在用位图的建立时间，尚未建立时返回 null
+     */
+    Long builtAt(String filter);
+}
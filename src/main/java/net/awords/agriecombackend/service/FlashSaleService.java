@@ -0,0 +1,248 @@
+package net.awords.agriecombackend.service;
+
+import net.awords.agriecombackend.entity.Product;
+import net.awords.agriecombackend.repository.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.CollectionUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 秒杀库存引擎：开启秒杀的商品在下单前先于 {@link FlashSaleStockStore} 中原子预占，
+ * 预占量再由定时任务批量回写到 products.stock，并定期以数据库为准修正计数器漂移。
+ */
+@Service
+public class FlashSaleService {
+
+    private static final Logger log = LoggerFactory.getLogger(FlashSaleService.class);
+
+    private final FlashSaleStockStore stockStore;
+    private final InventoryService inventoryService;
+    private final ProductRepository productRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate requiresNew;
+    private final Duration lockTtl;
+    private final String nodeId = UUID.randomUUID().toString();
+
+    public FlashSaleService(FlashSaleStockStore stockStore,
+                            InventoryService inventoryService,
+                            ProductRepository productRepository,
+                            JdbcTemplate jdbcTemplate,
+                            PlatformTransactionManager transactionManager,
+                            @Value("${flash-sale.lock-ttl-ms:30000}") long lockTtlMs) {
+        this.stockStore = stockStore;
+        this.inventoryService = inventoryService;
+        this.productRepository = productRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.requiresNew = new TransactionTemplate(transactionManager);
+        this.requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.lockTtl = Duration.ofMillis(lockTtlMs);
+    }
+
+    /**
+     * 在写数据库之前预占秒杀库存，库存不足时直接拒绝且不扣减任何商品。
+     *
+     * @return 已在计数器中预占的商品及数量，这些行不再扣减数据库库存
+     */
+    public Map<Long, Integer> reserve(Map<Long, Integer> quantityByProduct) {
+        if (CollectionUtils.isEmpty(quantityByProduct)) {
+            return Map.of();
+        }
+        Map<Long, Integer> outcome = stockStore.reserve(quantityByProduct);
+        List<Long> shortage = outcome.entrySet().stream()
+                .filter(e -> e.getValue() == FlashSaleStockStore.INSUFFICIENT)
+                .map(Map.Entry::getKey)
+                .sorted()
+                .toList();
+        if (!shortage.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "秒杀商品库存不足: " + shortage);
+        }
+        Map<Long, Integer> reserved = new HashMap<>();
+        outcome.forEach((id, result) -> {
+            if (result == FlashSaleStockStore.RESERVED) {
+                reserved.put(id, quantityByProduct.get(id));
+            }
+        });
+        return reserved;
+    }
+
+    /**
+     * 当前事务未能提交时自动撤销预占。
+     */
+    public void releaseOnRollback(Map<Long, Integer> reserved) {
+        if (CollectionUtils.isEmpty(reserved) || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        Map<Long, Integer> snapshot = Map.copyOf(reserved);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    release(snapshot);
+                }
+            }
+        });
+    }
+
+    /**
+     * 订单事务失败后撤销预占；若计数器已被移除（秒杀已关闭且 pending 已回写），则在新事务中直接回补数据库。
+     */
+    public void release(Map<Long, Integer> reservedQuantities) {
+        if (CollectionUtils.isEmpty(reservedQuantities)) {
+            return;
+        }
+        List<Long> missing = stockStore.release(reservedQuantities);
+        if (!missing.isEmpty()) {
+            Map<Long, Integer> restore = new HashMap<>();
+            missing.forEach(id -> restore.put(id, reservedQuantities.get(id)));
+            requiresNew.executeWithoutResult(status -> inventoryService.restore(restore));
+        }
+    }
+
+    /**
+     * 取消订单等场景在数据库回补库存后，提交成功时同步增加秒杀可售库存。
+     */
+    public void restockAfterCommit(Map<Long, Integer> quantityByProduct) {
+        if (CollectionUtils.isEmpty(quantityByProduct)) {
+            return;
+        }
+        Map<Long, Integer> snapshot = Map.copyOf(quantityByProduct);
+        afterCommit(() -> stockStore.restock(snapshot));
+    }
+
+    /**
+     * 商户开关秒杀模式后，提交成功时载入或移除计数器。
+     */
+    public void switchAfterCommit(Long productId, boolean enabled) {
+        afterCommit(() -> {
+            if (enabled) {
+                load(productId);
+            } else {
+                unload(productId);
+            }
+        });
+    }
+
+    /**
+     * 商户直接修改库存后，提交成功时以数据库为准重建计数器。
+     */
+    public void resyncAfterCommit(Long productId) {
+        afterCommit(() -> load(productId));
+    }
+
+    /**
+     * 按 {@code available = products.stock - pending} 载入或修正单个商品的计数器。
+     */
+    public void load(Long productId) {
+        Integer stock = currentStock(productId);
+        if (stock != null) {
+            stockStore.resync(productId, stock);
+        }
+    }
+
+    /**
+     * 移除计数器，并把剩余未回写的预占量应用到数据库。
+     */
+    public void unload(Long productId) {
+        long pending = stockStore.remove(productId);
+        if (pending != 0) {
+            requiresNew.executeWithoutResult(status -> inventoryService.adjust(Map.of(productId, (int) -pending)));
+        }
+    }
+
+    /**
+     * 批量回写预占量：一次批处理更新所有有待回写量的商品，提交后再从 pending 中扣除。
+     * 若提交后、确认前进程崩溃，下一轮会重复扣减数据库，只会少卖而不会超卖。
+     */
+    @Scheduled(fixedDelayString = "${flash-sale.flush-interval-ms:1000}",
+            initialDelayString = "${flash-sale.flush-interval-ms:1000}")
+    public void flush() {
+        if (!stockStore.tryLock(nodeId, lockTtl)) {
+            return;
+        }
+        try {
+            flushPending();
+        } finally {
+            stockStore.unlock(nodeId);
+        }
+    }
+
+    /**
+     * 对账：先回写，再以数据库为准修正所有秒杀商品的计数器，并清理已关闭秒杀商品的残留计数器。
+     */
+    @Scheduled(fixedDelayString = "${flash-sale.reconcile-interval-ms:60000}",
+            initialDelayString = "${flash-sale.reconcile-interval-ms:60000}")
+    public void reconcile() {
+        if (!stockStore.tryLock(nodeId, lockTtl)) {
+            return;
+        }
+        try {
+            flushPending();
+            Set<Long> flagged = new HashSet<>();
+            for (Product product : productRepository.findAllByFlashSaleTrue()) {
+                flagged.add(product.getId());
+                // 期望值为 stock - pending（与预占脚本维护的不变式一致），由存储在同一原子操作内计算
+                FlashSaleStockStore.Resync resync = stockStore.resync(product.getId(), product.getStock());
+                if (resync != null && resync.drifted()) {
+                    log.warn("Flash sale counter drift on product {}: redis={}, expected={}",
+                            product.getId(), resync.before(), resync.after());
+                }
+            }
+            for (Long productId : stockStore.managedProductIds()) {
+                if (!flagged.contains(productId)) {
+                    unload(productId);
+                }
+            }
+        } finally {
+            stockStore.unlock(nodeId);
+        }
+    }
+
+    private void flushPending() {
+        Map<Long, Long> pending = stockStore.pendingSnapshot();
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<Long, Integer> delta = new HashMap<>();
+        pending.forEach((id, amount) -> delta.put(id, (int) -amount));
+        inventoryService.adjust(delta);
+        stockStore.acknowledge(pending);
+    }
+
+    private Integer currentStock(Long productId) {
+        List<Integer> stock = jdbcTemplate.queryForList("SELECT stock FROM products WHERE id = ? AND flash_sale = TRUE",
+                Integer.class, productId);
+        return stock.isEmpty() ? null : stock.get(0);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,91 @@
+package net.awords.agriecombackend.service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 秒杀库存计数器存储。每个秒杀商品维护两类数据：
+ * <ul>
+ *     <li>可售库存 available：下单时原子预占；</li>
+ *     <li>待回写量 pending：已预占但尚未同步到 products.stock 的数量，可为负（表示需回补数据库）。</li>
+ * </ul>
+ * 始终满足 {@code available = products.stock - pending}，对账任务据此修正漂移。
+ * 未载入计数器的商品视为非秒杀商品，所有操作均忽略它们。
+ */
+public interface FlashSaleStockStore {
+
+    /** 预占结果：该行成功预占。 */
+    int RESERVED = 1;
+    /** 预占结果：该商品未开启秒杀，交由数据库扣减。 */
+    int NOT_MANAGED = 0;
+    /** 预占结果：秒杀库存不足。 */
+    int INSUFFICIENT = -1;
+
+    /**
+     * 原子地预占多行库存：任一秒杀商品库存不足则全部不扣减。
+     *
+     * @param quantityByProduct 商品 ID -> 数量
+     * @return 每个商品的预占结果（{@link #RESERVED}/{@link #NOT_MANAGED}/{@link #INSUFFICIENT}）
+     */
+    Map<Long, Integer> reserve(Map<Long, Integer> quantityByProduct);
+
+    /**
+     * 撤销预占（订单事务失败时调用）：available 加回、pending 减去。
+     *
+     * @return 计数器已不存在、无法撤销的商品 ID，调用方需直接回补数据库
+     */
+    List<Long> release(Map<Long, Integer> quantityByProduct);
+
+    /**
+     * 数据库库存已回补后（如取消订单）同步增加 available，pending 不变。
+     */
+    void restock(Map<Long, Integer> quantityByProduct);
+
+    /**
+     * 按 {@code available = dbStock - pending} 重建计数器，不存在时即为载入。
+     * 读取 pending 与改写计数器在同一原子操作内完成，返回值不受并发预占影响。
+     *
+     * @return 修正前后的 available，计数器原先不存在时返回 null
+     */
+    Resync resync(Long productId, int dbStock);
+
+    /**
+     * 移除商品的计数器。
+     *
+     * @return 移除时尚未回写的 pending，调用方需将其应用到数据库
+     */
+    long remove(Long productId);
+
+    /**
+     * @return 当前待回写量快照（商品 ID -> pending），不含为 0 的项
+     */
+    Map<Long, Long> pendingSnapshot();
+
+    /**
+     * 已将 applied 中的数量写入数据库后，从 pending 中扣除相应数量。
+     */
+    void acknowledge(Map<Long, Long> applied);
+
+    /**
+     * @return 当前已载入计数器的商品 ID
+     */
+    List<Long> managedProductIds();
+
+    /**
+     * 获取集群级对账锁，保证同一时刻只有一个节点回写与修正。
+     */
+    boolean tryLock(String owner, Duration ttl);
+
+    void unlock(String owner);
+
+    /**
+     * 重建结果：before 为修正前的 available，after 为按 {@code dbStock - pending} 写入的值，两者不等即为漂移。
+     */
+    record Resync(long before, long after) {
+
+        public boolean drifted() {
+            return before != after;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package net.awords.agriecombackend.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分层时间轮：按到期时间登记 ID，推进时钟时取出已到期的 ID。
+ * <p>
+ * 第 0 层每格跨度为 tickMs，共 wheelSize 格；超出本层范围的条目放入上一层（每格跨度为下层一整圈），
+ * 上层的格到期时其条目重新插入并逐层下沉。登记与推进均为 O(1) 摊销，仅推进时扫描各层固定数量的格。
+ * 格按起始时间到期，格内条目在推进时仍与精确的到期时间比较，不会早于到期时间返回。
+ * 非线程安全的数据结构由方法级同步保护，条目不支持删除：调用方在到期后自行校验业务状态。
+ */
+class HierarchicalTimingWheel {
+
+    private final int wheelSize;
+    private final Level root;
+    private final List<Long> expired = new ArrayList<>();
+    private int size;
+    private long now;
+
+    HierarchicalTimingWheel(long tickMs, int wheelSize, long startMs) {
+        if (tickMs <= 0 || wheelSize <= 1) {
+            throw new IllegalArgumentException("tickMs 必须为正数且 wheelSize 至少为 2");
+        }
+        this.wheelSize = wheelSize;
+        this.root = new Level(tickMs, startMs);
+        this.now = startMs;
+    }
+
+    /**
+     * 登记一个 ID；已经到期（不晚于当前时钟）的 ID 在下一次 {@link #advance(long)} 时立即返回。
+     */
+    synchronized void add(long id, long deadlineMs) {
+        if (deadlineMs <= now) {
+            expired.add(id);
+        } else {
+            root.add(new Entry(id, deadlineMs));
+        }
+        size++;
+    }
+
+    /**
+     * 把时钟推进到 nowMs，返回期间到期的全部 ID（按到期格的先后顺序）。
+     */
+    synchronized List<Long> advance(long nowMs) {
+        List<Entry> pending = new ArrayList<>();
+        while (true) {
+            Bucket next = root.earliestDue(nowMs);
+            if (next == null) {
+                break;
+            }
+            root.advanceTo(next.expiration);
+            List<Entry> entries = next.drain();
+            for (Entry entry : entries) {
+                if (entry.deadlineMs() <= nowMs) {
+                    expired.add(entry.id());
+                } else {
+                    // 与 nowMs 同格但尚未到期：时钟推进到 nowMs 后重新入轮，避免在本轮循环中反复取出
+                    pending.add(entry);
+                }
+            }
+        }
+        root.advanceTo(nowMs);
+        now = Math.max(now, nowMs);
+        pending.forEach(root::add);
+        List<Long> due = new ArrayList<>(expired);
+        expired.clear();
+        size -= due.size();
+        return due;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    private record Entry(long id, long deadlineMs) {
+    }
+
+    private static final class Bucket {
+        private final List<Entry> entries = new ArrayList<>();
+        private long expiration = -1L;
+
+        private List<Entry> drain() {
+            List<Entry> drained = new ArrayList<>(entries);
+            entries.clear();
+            expiration = -1L;
+            return drained;
+        }
+    }
+
+    private final class Level {
+        private final long span;
+        private final long interval;
+        private final Bucket[] buckets;
+        private long currentTime;
+        private Level overflow;
+
+        private Level(long span, long startMs) {
+            this.span = span;
+            this.interval = span * wheelSize;
+            this.buckets = new Bucket[wheelSize];
+            for (int i = 0; i < wheelSize; i++) {
+                buckets[i] = new Bucket();
+            }
+            this.currentTime = startMs - Math.floorMod(startMs, span);
+        }
+
+        /**
+         * 条目的到期时间不早于本层当前格的起点；落在当前格内的条目在下一次推进时取出并与精确时间比较。
+         */
+        private void add(Entry entry) {
+            if (entry.deadlineMs() < currentTime + interval) {
+                long virtualId = Math.floorDiv(entry.deadlineMs(), span);
+                Bucket bucket = buckets[(int) Math.floorMod(virtualId, (long) wheelSize)];
+                bucket.entries.add(entry);
+                bucket.expiration = virtualId * span;
+                return;
+            }
+            if (overflow == null) {
+                overflow = new Level(interval, currentTime);
+            }
+            overflow.add(entry);
+        }
+
+        private void advanceTo(long timeMs) {
+            if (timeMs >= currentTime + span) {
+                currentTime = timeMs - Math.floorMod(timeMs, span);
+                if (overflow != null) {
+                    overflow.advanceTo(currentTime);
+                }
+            }
+        }
+
+        /**
+         * 在本层及上层中找出到期时间不晚于 nowMs 的最早一格。
+         */
+        private Bucket earliestDue(long nowMs) {
+            Bucket earliest = null;
+            for (Level level = this; level != null; level = level.overflow) {
+                for (Bucket bucket : level.buckets) {
+                    if (bucket.expiration >= 0 && bucket.expiration <= nowMs
+                            && (earliest == null || bucket.expiration < earliest.expiration)) {
+                        earliest = bucket;
+                    }
+                }
+            }
+            return earliest;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package net.awords.agriecombackend.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * 基于 Idempotency-Key 请求头的幂等执行：同一用户、同一接口、同一 key 的请求只执行一次，
+ * 之后的重试直接回放首次响应，不再访问数据库。
+ * <p>
+ * 首个请求在存储中占位（短 TTL，防止进程崩溃后永久占用），成功后写入响应并延长为正式 TTL；
+ * 失败时删除占位，允许客户端重试。并发的重复请求等待首个请求的结果：同一节点上直接等待其 Future，
+ * 跨节点时轮询存储。同一 key 携带不同请求体时返回 422。
+ * <p>
+ * 占位 TTL（{@code idempotency.lock-ttl-ms}）必须大于被保护操作的最长耗时（即其事务超时）：
+ * 占位在操作完成前过期时，重试会再次执行操作。操作一旦成功便不再删除占位，即使写入响应失败，
+ * 重试也只会在占位过期前收到 409，而不会立即重复执行。
+ */
+@Service
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    private static final Logger log = LoggerFactory.getLogger(IdempotencyService.class);
+
+    private static final String KEY_PREFIX = "idempotency:";
+    private static final int MAX_KEY_LENGTH = 128;
+    private static final long POLL_INTERVAL_MS = 50L;
+
+    private final IdempotencyStore store;
+    private final ObjectMapper objectMapper;
+    private final Duration ttl;
+    private final Duration lockTtl;
+    private final long waitTimeoutMs;
+    private final Map<String, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<>();
+
+    public IdempotencyService(IdempotencyStore store,
+                              ObjectMapper objectMapper,
+                              @Value("${idempotency.ttl-ms:3600000}") long ttlMs,
+                              @Value("${idempotency.lock-ttl-ms:30000}") long lockTtlMs,
+                              @Value("${idempotency.wait-timeout-ms:10000}") long waitTimeoutMs) {
+        this.store = store;
+        this.objectMapper = objectMapper;
+        this.ttl = Duration.ofMillis(ttlMs);
+        this.lockTtl = Duration.ofMillis(lockTtlMs);
+        this.waitTimeoutMs = waitTimeoutMs;
+    }
+
+    /**
+     * 幂等地执行 action；未携带 key 时直接执行。
+     *
+     * @param scope          接口标识，不同接口的同名 key 互不影响
+     * @param username       当前用户，key 按用户隔离
+     * @param idempotencyKey 客户端提供的 Idempotency-Key
+     * @param request        参与指纹计算的请求内容（含路径参数）
+     * @param responseType   响应类型，用于回放时反序列化
+     */
+    public <T> T execute(String scope, String username, String idempotencyKey, Object request,
+                         Class<T> responseType, Supplier<T> action) {
+        if (!StringUtils.hasText(idempotencyKey)) {
+            return action.get();
+        }
+        if (idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Idempotency-Key 长度不能超过" + MAX_KEY_LENGTH + "字符");
+        }
+        String key = KEY_PREFIX + scope + ":" + username + ":" + idempotencyKey;
+        String fingerprint = fingerprint(request);
+        long deadline = System.currentTimeMillis() + waitTimeoutMs;
+        while (true) {
+            if (store.putIfAbsent(key, write(new StoredResponse(fingerprint, false, null)), lockTtl)) {
+                return runFirst(key, fingerprint, action);
+            }
+            StoredResponse stored = read(store.get(key), StoredResponse.class);
+            if (stored == null) {
+                // 首个请求失败后删除了占位，或已过期：重新争抢
+                continue;
+            }
+            if (!fingerprint.equals(stored.fingerprint())) {
+                throw new ResponseStatusException(HttpStatus.UNPROCESSABLE_ENTITY, "Idempotency-Key 已用于不同的请求");
+            }
+            if (stored.completed()) {
+                return read(stored.body(), responseType);
+            }
+            awaitInFlight(key, deadline);
+        }
+    }
+
+    private <T> T runFirst(String key, String fingerprint, Supplier<T> action) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        inFlight.put(key, done);
+        long startedAt = System.nanoTime();
+        T result;
+        try {
+            result = action.get();
+        } catch (RuntimeException ex) {
+            store.delete(key);
+            done.completeExceptionally(ex);
+            inFlight.remove(key, done);
+            throw ex;
+        }
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - startedAt);
+        if (elapsed.compareTo(lockTtl) > 0) {
+            log.warn("Idempotent action {} took {} which exceeds the placeholder TTL {}, retries may have run it again",
+                    key, elapsed, lockTtl);
+        }
+        try {
+            store.put(key, write(new StoredResponse(fingerprint, true, write(result))), ttl);
+        } catch (RuntimeException ex) {
+            // 操作已生效，不能删除占位让重试再执行一次；保留占位至其过期
+            log.warn("Failed to store idempotent response for {}, keeping the placeholder", key, ex);
+        } finally {
+            done.complete(null);
+            inFlight.remove(key, done);
+        }
+        return result;
+    }
+
+    /**
+     * 等待进行中的首个请求：本节点上等待其完成，首个请求失败时重复请求抛出同一异常；否则短暂休眠后重查存储。
+     */
+    private void awaitInFlight(String key, long deadline) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "相同请求正在处理中，请稍后重试");
+        }
+        CompletableFuture<Void> local = inFlight.get(key);
+        try {
+            if (local != null) {
+                local.get(remaining, TimeUnit.MILLISECONDS);
+            } else {
+                Thread.sleep(Math.min(POLL_INTERVAL_MS, remaining));
+            }
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(ex.getCause());
+        } catch (TimeoutException ex) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "相同请求正在处理中，请稍后重试");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "请求被中断");
+        }
+    }
+
+    private String fingerprint(Object request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(write(request).getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private String write(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("无法序列化幂等响应", ex);
+        }
+    }
+
+    private <T> T read(String json, Class<T> type) {
+        if (json == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(json, type);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("无法解析幂等响应", ex);
+        }
+    }
+
+    /**
+     * 存储中的记录：completed 为 false 表示首个请求仍在处理。
+     */
+    private record StoredResponse(String fingerprint, boolean completed, String body) {
+    }
+}
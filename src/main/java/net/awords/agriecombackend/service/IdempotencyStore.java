@@ -0,0 +1,25 @@
+package net.awords.agriecombackend.service;
+
+import java.time.Duration;
+
+/**
+ * 幂等键存储：保存首次请求的处理状态与响应，供同一 Idempotency-Key 的重试直接回放。
+ */
+public interface IdempotencyStore {
+
+    /**
+     * 原子占位：key 不存在时写入 value。
+     *
+     * @return 是否占位成功，即当前请求是否为首个请求
+     */
+    boolean putIfAbsent(String key, String value, Duration ttl);
+
+    /**
+     * @return 已保存的值，不存在或已过期时返回 null
+     */
+    String get(String key);
+
+    void put(String key, String value, Duration ttl);
+
+    void delete(String key);
+}
@@ -0,0 +1,29 @@
+package net.awords.agriecombackend.service;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内的缓存代数，语义与 {@link RedisCacheGenerationStore} 一致，供测试环境替代 Redis。
+ */
+@Component
+@Profile("test")
+public class InMemoryCacheGenerationStore implements CacheGenerationStore {
+
+    private final Map<String, Long> generations = new ConcurrentHashMap<>();
+
+    @Override
+    public List<Long> current(List<String> tags) {
+        return tags.stream().map(tag -> generations.getOrDefault(tag, 0L)).toList();
+    }
+
+    @Override
+    public void bump(Collection<String> tags) {
+        tags.forEach(tag -> generations.merge(tag, 1L, Long::sum));
+    }
+}
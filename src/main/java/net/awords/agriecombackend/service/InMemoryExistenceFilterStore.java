@@ -0,0 +1,90 @@
+package net.awords.agriecombackend.service;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 进程内的布隆过滤器位图，语义与 {@link RedisExistenceFilterStore} 一致（暂存位图不过期），供测试环境替代 Redis。
+ */
+@Component
+@Profile("test")
+public class InMemoryExistenceFilterStore implements ExistenceFilterStore {
+
+    private final Map<String, BitSet> bits = new HashMap<>();
+    private final Map<String, BitSet> staging = new HashMap<>();
+    private final Map<String, Long> builtAt = new HashMap<>();
+
+    @Override
+    public synchronized boolean mightContain(String filter, long[] offsets) {
+        BitSet set = bits.get(filter);
+        if (set == null) {
+            return true;
+        }
+        for (long offset : offsets) {
+            if (!set.get(Math.toIntExact(offset))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void add(String filter, long[] offsets) {
+        set(bits.get(filter), offsets);
+        set(staging.get(filter), offsets);
+    }
+
+    @Override
+    public synchronized void beginRebuild(String filter, Duration ttl) {
+        staging.put(filter, new BitSet());
+    }
+
+    @Override
+    public synchronized void addToRebuild(String filter, long[] offsets) {
+        set(staging.get(filter), offsets);
+    }
+
+    @Override
+    public synchronized boolean finishRebuild(String filter, long builtAtMs) {
+        BitSet rebuilt = staging.remove(filter);
+        if (rebuilt == null) {
+            return false;
+        }
+        bits.put(filter, rebuilt);
+        builtAt.put(filter, builtAtMs);
+        return true;
+    }
+
+    @Override
+    public synchronized void abortRebuild(String filter) {
+        staging.remove(filter);
+    }
+
+    @Override
+    public synchronized Long builtAt(String filter) {
+        return builtAt.get(filter);
+    }
+
+    /**
+     * 丢弃全部位图，恢复为尚未建立的状态；测试直接写库的数据不经过过滤器，用例结束后须清空。
+     */
+    synchronized void clear() {
+        bits.clear();
+        staging.clear();
+        builtAt.clear();
+    }
+
+    private static void set(BitSet set, long[] offsets) {
+        if (set == null) {
+            return;
+        }
+        for (long offset : offsets) {
+            set.set(Math.toIntExact(offset));
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package net.awords.agriecombackend.service;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 进程内的秒杀库存计数器，语义与 {@link RedisFlashSaleStockStore} 一致，供测试环境替代 Redis。
+ * 以对象锁模拟 Lua 脚本的原子性。
+ */
+@Component
+@Profile("test")
+public class InMemoryFlashSaleStockStore implements FlashSaleStockStore {
+
+    private final Map<Long, Long> available = new HashMap<>();
+    private final Map<Long, Long> pending = new HashMap<>();
+    private String lockOwner;
+
+    @Override
+    public synchronized Map<Long, Integer> reserve(Map<Long, Integer> quantityByProduct) {
+        Map<Long, Integer> outcome = new LinkedHashMap<>();
+        boolean shortage = false;
+        for (Map.Entry<Long, Integer> line : quantityByProduct.entrySet()) {
+            Long current = available.get(line.getKey());
+            if (current == null) {
+                outcome.put(line.getKey(), NOT_MANAGED);
+            } else if (current < line.getValue()) {
+                outcome.put(line.getKey(), INSUFFICIENT);
+                shortage = true;
+            } else {
+                outcome.put(line.getKey(), RESERVED);
+            }
+        }
+        if (!shortage) {
+            outcome.forEach((id, result) -> {
+                if (result == RESERVED) {
+                    int quantity = quantityByProduct.get(id);
+                    available.merge(id, (long) -quantity, Long::sum);
+                    pending.merge(id, (long) quantity, Long::sum);
+                }
+            });
+        }
+        return outcome;
+    }
+
+    @Override
+    public synchronized List<Long> release(Map<Long, Integer> quantityByProduct) {
+        List<Long> missing = new ArrayList<>();
+        quantityByProduct.forEach((id, quantity) -> {
+            if (available.containsKey(id)) {
+                available.merge(id, (long) quantity, Long::sum);
+                pending.merge(id, (long) -quantity, Long::sum);
+            } else {
+                missing.add(id);
+            }
+        });
+        return missing;
+    }
+
+    @Override
+    public synchronized void restock(Map<Long, Integer> quantityByProduct) {
+        quantityByProduct.forEach((id, quantity) -> available.computeIfPresent(id, (k, v) -> v + quantity));
+    }
+
+    @Override
+    public synchronized Resync resync(Long productId, int dbStock) {
+        long target = Math.max(0L, dbStock - pending.getOrDefault(productId, 0L));
+        Long before = available.put(productId, target);
+        return before == null ? null : new Resync(before, target);
+    }
+
+    @Override
+    public synchronized long remove(Long productId) {
+        available.remove(productId);
+        Long left = pending.remove(productId);
+        return left == null ? 0L : left;
+    }
+
+    @Override
+    public synchronized Map<Long, Long> pendingSnapshot() {
+        Map<Long, Long> snapshot = new LinkedHashMap<>();
+        pending.forEach((id, amount) -> {
+            if (amount != 0) {
+                snapshot.put(id, amount);
+            }
+        });
+        return snapshot;
+    }
+
+    @Override
+    public synchronized void acknowledge(Map<Long, Long> applied) {
+        applied.forEach((id, amount) -> {
+            long left = pending.getOrDefault(id, 0L) - amount;
+            if (left == 0) {
+                pending.remove(id);
+            } else {
+                pending.put(id, left);
+            }
+        });
+    }
+
+    @Override
+    public synchronized List<Long> managedProductIds() {
+        return new ArrayList<>(available.keySet());
+    }
+
+    @Override
+    public synchronized boolean tryLock(String owner, Duration ttl) {
+        if (lockOwner != null && !lockOwner.equals(owner)) {
+            return false;
+        }
+        lockOwner = owner;
+        return true;
+    }
+
+    @Override
+    public synchronized void unlock(String owner) {
+        if (owner.equals(lockOwner)) {
+            lockOwner = null;
+        }
+    }
+
+    /**
+     * 测试辅助：读取当前可售库存。
+     */
+    public synchronized Long available(Long productId) {
+        return available.get(productId);
+    }
+
+    /**
+     * 测试辅助：清空全部计数器。
+     */
+    public synchronized void reset() {
+        available.clear();
+        pending.clear();
+        lockOwner = null;
+    }
+}
@@ -0,0 +1,57 @@
+package net.awords.agriecombackend.service;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内的幂等键存储，语义与 {@link RedisIdempotencyStore} 一致，供测试环境替代 Redis。
+ */
+@Component
+@Profile("test")
+public class InMemoryIdempotencyStore implements IdempotencyStore {
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean putIfAbsent(String key, String value, Duration ttl) {
+        Entry fresh = new Entry(value, System.nanoTime() + ttl.toNanos());
+        Entry current = entries.compute(key, (k, existing) -> existing == null || existing.expired() ? fresh : existing);
+        return current == fresh;
+    }
+
+    @Override
+    public String get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null || entry.expired()) {
+            return null;
+        }
+        return entry.value;
+    }
+
+    @Override
+    public void put(String key, String value, Duration ttl) {
+        entries.put(key, new Entry(value, System.nanoTime() + ttl.toNanos()));
+    }
+
+    @Override
+    public void delete(String key) {
+        entries.remove(key);
+    }
+
+    /**
+     * 测试辅助：清空全部幂等键。
+     */
+    public void reset() {
+        entries.clear();
+    }
+
+    private record Entry(String value, long expiresAtNanos) {
+        boolean expired() {
+            return System.nanoTime() - expiresAtNanos > 0;
+        }
+    }
+}
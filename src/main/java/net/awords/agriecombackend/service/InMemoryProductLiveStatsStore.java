@@ -0,0 +1,77 @@
+package net.awords.agriecombackend.service;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内的实时库存与销量，语义与 {@link RedisProductLiveStatsStore} 一致，供测试环境替代 Redis。
+ */
+@Component
+@Profile("test")
+public class InMemoryProductLiveStatsStore implements ProductLiveStatsStore {
+
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<Long, Long> versions = new ConcurrentHashMap<>();
+
+    @Override
+    public ProductLiveStats get(long productId) {
+        Entry entry = entries.get(productId);
+        return entry == null || entry.expired() ? null : entry.stats();
+    }
+
+    @Override
+    public long version(long productId) {
+        return versions.getOrDefault(productId, 0L);
+    }
+
+    /**
+     * 版本号的比较与写入在同一个 compute 中完成，与递增版本号的增量互斥（均以 entries 的同一个键加锁）。
+     */
+    @Override
+    public void putIfUnchanged(long productId, ProductLiveStats stats, Duration ttl, long version) {
+        Entry fresh = new Entry(stats, System.nanoTime() + ttl.toNanos());
+        entries.compute(productId, (id, current) -> current != null && !current.expired() ? current
+                : version(productId) == version ? fresh : null);
+    }
+
+    @Override
+    public void incrementStock(Map<Long, Integer> deltaByProduct) {
+        deltaByProduct.forEach((productId, delta) -> entries.compute(productId, (id, current) -> {
+            versions.merge(id, 1L, Long::sum);
+            return current == null ? null
+                    : current.with(new ProductLiveStats(current.stats().stock() + delta, current.stats().sales()));
+        }));
+    }
+
+    @Override
+    public void incrementSales(Map<Long, Integer> deltaByProduct) {
+        deltaByProduct.forEach((productId, delta) -> entries.compute(productId, (id, current) -> {
+            versions.merge(id, 1L, Long::sum);
+            return current == null ? null
+                    : current.with(new ProductLiveStats(current.stats().stock(), current.stats().sales() + delta));
+        }));
+    }
+
+    @Override
+    public void delete(Collection<Long> productIds) {
+        productIds.forEach(productId -> entries.compute(productId, (id, current) -> {
+            versions.merge(id, 1L, Long::sum);
+            return null;
+        }));
+    }
+
+    private record Entry(ProductLiveStats stats, long expiresAtNanos) {
+        boolean expired() {
+            return System.nanoTime() - expiresAtNanos > 0;
+        }
+
+        Entry with(ProductLiveStats updated) {
+            return new Entry(updated, expiresAtNanos);
+        }
+    }
+}
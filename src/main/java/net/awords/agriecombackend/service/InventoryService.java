@@ -0,0 +1,283 @@
+package net.awords.agriecombackend.service;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.CollectionUtils;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * 库存扣减与回补：直接在数据库中以带条件的 UPDATE 原子修改库存，避免“读-改-写”造成的丢失更新。
+ * <p>
+ * 每个商品一条语句，按商品 ID 升序组成 JDBC 批次执行，保证并发事务以相同顺序加行锁、避免死锁。
+ * 修改绕过了持久化上下文，因此执行前先 flush、执行后 clear（与 {@code @Modifying(clearAutomatically = true)} 一致），
+ * 调用方在之后读取的商品实体均为最新状态。
+ * <p>
+ * 开启库存分片的商品（stock_shards &gt; 0）不修改 products 行，而是修改 product_stock_shards 中的某一分片，
+ * products.stock 由 {@link #refreshShardedStock()} 定期刷新为分片合计。
+ * <p>
+ * 扣减与增量修改在事务提交后同步到 {@link ProductLiveStatsService}，商品详情读取的实时库存无需等待分片合计刷新。
+ */
+@Service
+public class InventoryService {
+
+    private static final String DEDUCT_SQL = "UPDATE products SET stock = stock - ? WHERE id = ? AND stock >= ? AND stock_shards = 0";
+    private static final String ADJUST_SQL = "UPDATE products SET stock = stock + ? WHERE id = ? AND stock_shards = 0";
+    private static final String DEDUCT_SHARD_SQL =
+            "UPDATE product_stock_shards SET stock = stock - ? WHERE product_id = ? AND shard_no = ? AND stock >= ?";
+    private static final String ADJUST_SHARD_SQL =
+            "UPDATE product_stock_shards SET stock = stock + ? WHERE product_id = ? AND shard_no = ?";
+    private static final String SHARD_SUM_SQL =
+            "COALESCE((SELECT SUM(s.stock) FROM product_stock_shards s WHERE s.product_id = products.id), 0)";
+    private static final String REFRESH_SHARDED_SQL =
+            "UPDATE products SET stock = " + SHARD_SUM_SQL + " WHERE stock_shards > 0 AND stock <> " + SHARD_SUM_SQL;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ProductLiveStatsService liveStatsService;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public InventoryService(JdbcTemplate jdbcTemplate, ProductLiveStatsService liveStatsService) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.liveStatsService = liveStatsService;
+    }
+
+    /**
+     * 批量扣减库存。
+     *
+     * @param quantityByProduct 商品 ID -> 扣减数量
+     * @return 扣减失败（库存不足或商品不存在）的商品 ID，按升序排列；为空表示全部成功。
+     * 部分失败时已成功的行不会自动回滚，调用方应抛出异常以回滚整个事务。
+     */
+    @Transactional
+    public List<Long> deduct(Map<Long, Integer> quantityByProduct) {
+        if (CollectionUtils.isEmpty(quantityByProduct)) {
+            return List.of();
+        }
+        List<Map.Entry<Long, Integer>> lines = new ArrayList<>(new TreeMap<>(quantityByProduct).entrySet());
+        int[] counts = executeBatch(DEDUCT_SQL, lines, (ps, line) -> {
+            ps.setInt(1, line.getValue());
+            ps.setLong(2, line.getKey());
+            ps.setInt(3, line.getValue());
+        });
+        List<Map.Entry<Long, Integer>> missed = unmatched(lines, counts);
+        List<Long> failed = new ArrayList<>();
+        if (!missed.isEmpty()) {
+            Map<Long, Integer> shardsByProduct = findShardCounts(missed.stream().map(Map.Entry::getKey).toList());
+            for (Map.Entry<Long, Integer> line : missed) {
+                Integer shards = shardsByProduct.get(line.getKey());
+                if (shards == null || !deductFromShards(line.getKey(), line.getValue())) {
+                    failed.add(line.getKey());
+                }
+            }
+        }
+        Map<Long, Integer> deducted = new HashMap<>();
+        lines.forEach(line -> deducted.put(line.getKey(), -line.getValue()));
+        failed.forEach(deducted::remove);
+        liveStatsService.adjustStockAfterCommit(deducted);
+        return failed;
+    }
+
+    /**
+     * 批量回补库存，用于取消订单等场景。
+     *
+     * @param quantityByProduct 商品 ID -> 回补数量
+     */
+    @Transactional
+    public void restore(Map<Long, Integer> quantityByProduct) {
+        adjust(quantityByProduct);
+    }
+
+    /**
+     * 按增量无条件修改库存，正数为回补、负数为扣减；用于回写秒杀计数器中已预占的数量。
+     * 分片商品的增量记入随机一个分片，合计保持正确。
+     *
+     * @param deltaByProduct 商品 ID -> 库存增量
+     */
+    @Transactional
+    public void adjust(Map<Long, Integer> deltaByProduct) {
+        if (CollectionUtils.isEmpty(deltaByProduct)) {
+            return;
+        }
+        List<Map.Entry<Long, Integer>> lines = new ArrayList<>(new TreeMap<>(deltaByProduct).entrySet());
+        int[] counts = executeBatch(ADJUST_SQL, lines, (ps, line) -> {
+            ps.setInt(1, line.getValue());
+            ps.setLong(2, line.getKey());
+        });
+        liveStatsService.adjustStockAfterCommit(deltaByProduct);
+        List<Map.Entry<Long, Integer>> missed = unmatched(lines, counts);
+        if (missed.isEmpty()) {
+            return;
+        }
+        Map<Long, Integer> shardsByProduct = findShardCounts(missed.stream().map(Map.Entry::getKey).toList());
+        for (Map.Entry<Long, Integer> line : missed) {
+            Integer shards = shardsByProduct.get(line.getKey());
+            if (shards != null) {
+                jdbcTemplate.update(ADJUST_SHARD_SQL, line.getValue(), line.getKey(),
+                        ThreadLocalRandom.current().nextInt(shards));
+            }
+        }
+    }
+
+    /**
+     * 调整商品的库存分片数，并把库存均分到各分片；shards 为 0 时取消分片，库存回到 products.stock。
+     *
+     * @param total 新的总库存，为 null 时保留当前总量（即仅做再平衡）
+     */
+    @Transactional
+    public void reshard(Long productId, int shards, Integer total) {
+        entityManager.flush();
+        List<int[]> product = jdbcTemplate.query("SELECT stock, stock_shards FROM products WHERE id = ? FOR UPDATE",
+                (rs, i) -> new int[]{rs.getInt(1), rs.getInt(2)}, productId);
+        if (product.isEmpty()) {
+            return;
+        }
+        int available;
+        if (total != null) {
+            available = total;
+        } else if (product.get(0)[1] > 0) {
+            available = lockShards(productId).values().stream().mapToInt(Integer::intValue).sum();
+        } else {
+            available = product.get(0)[0];
+        }
+        jdbcTemplate.update("DELETE FROM product_stock_shards WHERE product_id = ?", productId);
+        if (shards > 0) {
+            List<Object[]> rows = new ArrayList<>(shards);
+            for (int shard = 0; shard < shards; shard++) {
+                rows.add(new Object[]{productId, shard, available / shards + (shard < available % shards ? 1 : 0)});
+            }
+            jdbcTemplate.batchUpdate("INSERT INTO product_stock_shards (product_id, shard_no, stock) VALUES (?, ?, ?)", rows);
+        }
+        jdbcTemplate.update("UPDATE products SET stock = ?, stock_shards = ? WHERE id = ?", available, shards, productId);
+        entityManager.clear();
+    }
+
+    /**
+     * 把分片商品的 products.stock 刷新为分片合计，供详情、列表与筛选读取；只写入发生变化的行。
+     *
+     * @return 刷新的商品数
+     */
+    @Scheduled(fixedDelayString = "${inventory.shard-refresh-interval-ms:1000}")
+    public int refreshShardedStock() {
+        return jdbcTemplate.update(REFRESH_SHARDED_SQL);
+    }
+
+    /**
+     * 先以不加锁的读取查看各分片库存：合计不足直接失败，售罄时大量请求不再争抢行锁；
+     * 有分片足以覆盖整笔数量时，从随机一个这样的分片开始尝试条件扣减；
+     * 没有单个分片足够时，不再逐个尝试，直接按分片号顺序加锁后跨分片凑齐。
+     * PostgreSQL 的条件 UPDATE 只在等待他人行锁期间持有元组锁，重检条件不满足时跳过该行且不保留锁，
+     * 因此进入按序加锁阶段时本事务不持有该商品任何分片的锁，所有跨分片扣减以相同顺序加锁，不会互相死锁。
+     */
+    private boolean deductFromShards(Long productId, int quantity) {
+        Map<Integer, Integer> unlocked = new TreeMap<>();
+        jdbcTemplate.query("SELECT shard_no, stock FROM product_stock_shards WHERE product_id = ?",
+                rs -> {
+                    unlocked.put(rs.getInt(1), rs.getInt(2));
+                }, productId);
+        if (unlocked.values().stream().mapToInt(Integer::intValue).sum() < quantity) {
+            return false;
+        }
+        List<Integer> covering = unlocked.entrySet().stream()
+                .filter(shard -> shard.getValue() >= quantity)
+                .map(Map.Entry::getKey)
+                .toList();
+        if (!covering.isEmpty()) {
+            int start = ThreadLocalRandom.current().nextInt(covering.size());
+            for (int i = 0; i < covering.size(); i++) {
+                int shard = covering.get((start + i) % covering.size());
+                if (jdbcTemplate.update(DEDUCT_SHARD_SQL, quantity, productId, shard, quantity) == 1) {
+                    return true;
+                }
+            }
+            // 读取之后被并发扣减抢先：重新合计，售罄时直接失败
+            Integer left = jdbcTemplate.queryForObject(
+                    "SELECT COALESCE(SUM(stock), 0) FROM product_stock_shards WHERE product_id = ?", Integer.class, productId);
+            if (left == null || left < quantity) {
+                return false;
+            }
+        }
+        Map<Integer, Integer> stockByShard = lockShards(productId);
+        if (stockByShard.values().stream().mapToInt(Integer::intValue).sum() < quantity) {
+            return false;
+        }
+        int remaining = quantity;
+        for (Map.Entry<Integer, Integer> shard : stockByShard.entrySet()) {
+            int take = Math.min(shard.getValue(), remaining);
+            if (take > 0) {
+                jdbcTemplate.update(ADJUST_SHARD_SQL, -take, productId, shard.getKey());
+                remaining -= take;
+            }
+            if (remaining == 0) {
+                break;
+            }
+        }
+        return true;
+    }
+
+    private Map<Integer, Integer> lockShards(Long productId) {
+        Map<Integer, Integer> stockByShard = new TreeMap<>();
+        jdbcTemplate.query("SELECT shard_no, stock FROM product_stock_shards WHERE product_id = ? ORDER BY shard_no FOR UPDATE",
+                rs -> {
+                    stockByShard.put(rs.getInt(1), rs.getInt(2));
+                }, productId);
+        return stockByShard;
+    }
+
+    private Map<Long, Integer> findShardCounts(Collection<Long> productIds) {
+        String placeholders = productIds.stream().map(id -> "?").collect(Collectors.joining(", "));
+        Map<Long, Integer> shardsByProduct = new HashMap<>();
+        jdbcTemplate.query("SELECT id, stock_shards FROM products WHERE stock_shards > 0 AND id IN (" + placeholders + ")",
+                rs -> {
+                    shardsByProduct.put(rs.getLong(1), rs.getInt(2));
+                }, productIds.toArray());
+        return shardsByProduct;
+    }
+
+    private static List<Map.Entry<Long, Integer>> unmatched(List<Map.Entry<Long, Integer>> lines, int[] counts) {
+        List<Map.Entry<Long, Integer>> missed = new ArrayList<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                missed.add(lines.get(i));
+            }
+        }
+        return missed;
+    }
+
+    private int[] executeBatch(String sql, List<Map.Entry<Long, Integer>> lines, LineBinder binder) {
+        entityManager.flush();
+        int[] counts = jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                binder.bind(ps, lines.get(i));
+            }
+
+            @Override
+            public int getBatchSize() {
+                return lines.size();
+            }
+        });
+        entityManager.clear();
+        return counts;
+    }
+
+    @FunctionalInterface
+    private interface LineBinder {
+        void bind(PreparedStatement ps, Map.Entry<Long, Integer> line) throws SQLException;
+    }
+}
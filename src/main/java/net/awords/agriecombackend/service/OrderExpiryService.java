@@ -0,0 +1,191 @@
+package net.awords.agriecombackend.service;
+
+import net.awords.agriecombackend.entity.OrderGroup;
+import net.awords.agriecombackend.entity.OrderStatus;
+import net.awords.agriecombackend.entity.OutboxEventType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 超时未支付订单的自动关闭：CREATED 状态的订单组超过支付时限后取消并回补库存。
+ * <p>
+ * 每个节点在内存中维护一个 {@link HierarchicalTimingWheel}，启动时从数据库重建，新订单下单后登记；
+ * 到期的订单按批次以 {@code FOR UPDATE SKIP LOCKED} 认领，多节点或与买家手动取消并发时互不阻塞、也不会重复回补。
+ * 取消全部使用集合式 SQL：按订单组批量改状态、按商品汇总数量后批量回补库存，不加载订单实体图。
+ * 其他节点创建的订单不在本节点的时间轮中，由低频的 {@link #sweep()} 直接按创建时间扫描兜底。
+ */
+@Service
+public class OrderExpiryService {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderExpiryService.class);
+
+    private static final String CREATED = OrderStatus.CREATED.name();
+    private static final String CANCELLED = OrderStatus.CANCELLED.name();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final InventoryService inventoryService;
+    private final FlashSaleService flashSaleService;
+    private final OutboxService outboxService;
+    private final TransactionTemplate transactionTemplate;
+    private final HierarchicalTimingWheel wheel;
+    private final long timeoutMs;
+    private final int chunkSize;
+
+    public OrderExpiryService(JdbcTemplate jdbcTemplate,
+                              InventoryService inventoryService,
+                              FlashSaleService flashSaleService,
+                              OutboxService outboxService,
+                              PlatformTransactionManager transactionManager,
+                              @Value("${order-expiry.timeout-ms:1800000}") long timeoutMs,
+                              @Value("${order-expiry.wheel-tick-ms:1000}") long wheelTickMs,
+                              @Value("${order-expiry.wheel-size:60}") int wheelSize,
+                              @Value("${order-expiry.chunk-size:200}") int chunkSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.inventoryService = inventoryService;
+        this.flashSaleService = flashSaleService;
+        this.outboxService = outboxService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.wheel = new HierarchicalTimingWheel(wheelTickMs, wheelSize, System.currentTimeMillis());
+        this.timeoutMs = timeoutMs;
+        this.chunkSize = Math.max(chunkSize, 1);
+    }
+
+    /**
+     * 启动后把数据库中全部 CREATED 订单登记到时间轮，已超时的订单在下一次推进时立即关闭。
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        int[] count = {0};
+        jdbcTemplate.query("SELECT id, created_at FROM order_groups WHERE status = ?", rs -> {
+            wheel.add(rs.getLong(1), rs.getTimestamp(2).getTime() + timeoutMs);
+            count[0]++;
+        }, CREATED);
+        log.info("Order expiry wheel rebuilt with {} pending orders", count[0]);
+    }
+
+    /**
+     * 登记新创建的订单；事务回滚或订单已被支付、取消时，到期认领会因状态不符而跳过。
+     */
+    public void track(OrderGroup group) {
+        if (group.getId() != null && group.getCreatedAt() != null) {
+            wheel.add(group.getId(), group.getCreatedAt().toInstant().toEpochMilli() + timeoutMs);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${order-expiry.poll-interval-ms:1000}")
+    public void tick() {
+        expireDue(System.currentTimeMillis());
+    }
+
+    @Scheduled(fixedDelayString = "${order-expiry.sweep-interval-ms:300000}")
+    public void sweep() {
+        sweep(System.currentTimeMillis());
+    }
+
+    /**
+     * 推进时间轮并关闭到期订单。
+     *
+     * @return 实际关闭的订单数
+     */
+    int expireDue(long nowMs) {
+        List<Long> due = wheel.advance(nowMs);
+        Timestamp cutoff = new Timestamp(nowMs - timeoutMs);
+        int expired = 0;
+        for (int from = 0; from < due.size(); from += chunkSize) {
+            List<Long> chunk = due.subList(from, Math.min(from + chunkSize, due.size()));
+            String placeholders = chunk.stream().map(id -> "?").collect(Collectors.joining(", "));
+            List<Object> args = new ArrayList<>(chunk.size() + 2);
+            args.add(CREATED);
+            args.add(cutoff);
+            args.addAll(chunk);
+            expired += expireClaimed("SELECT id FROM order_groups WHERE status = ? AND created_at <= ? AND id IN ("
+                    + placeholders + ") ORDER BY id FOR UPDATE SKIP LOCKED", args.toArray());
+        }
+        return expired;
+    }
+
+    /**
+     * 不依赖时间轮，直接按创建时间分批认领并关闭超时订单，直到没有可认领的行。
+     *
+     * @return 实际关闭的订单数
+     */
+    int sweep(long nowMs) {
+        Timestamp cutoff = new Timestamp(nowMs - timeoutMs);
+        int expired = 0;
+        while (true) {
+            int claimed = expireClaimed("SELECT id FROM order_groups WHERE status = ? AND created_at <= ? "
+                    + "ORDER BY created_at LIMIT ? FOR UPDATE SKIP LOCKED", CREATED, cutoff, chunkSize);
+            expired += claimed;
+            if (claimed < chunkSize) {
+                return expired;
+            }
+        }
+    }
+
+    /**
+     * 在一个事务中认领一批订单组并取消：被其他事务锁住的行直接跳过，留给持锁方或下一轮处理。
+     * 每个订单组写入一条取消事件，提交后由发件箱失效缓存。
+     */
+    private int expireClaimed(String claimSql, Object... claimArgs) {
+        Integer expired = transactionTemplate.execute(status -> {
+            List<Long> ids = jdbcTemplate.queryForList(claimSql, Long.class, claimArgs);
+            if (ids.isEmpty()) {
+                return 0;
+            }
+            String placeholders = ids.stream().map(id -> "?").collect(Collectors.joining(", "));
+            Object[] idArgs = ids.toArray();
+
+            Map<Long, Integer> quantityByProduct = new HashMap<>();
+            Map<Long, Set<Long>> productsByGroup = new LinkedHashMap<>();
+            Map<Long, Set<Long>> shopsByGroup = new LinkedHashMap<>();
+            jdbcTemplate.query("SELECT so.order_group_id, so.shop_id, oi.product_id, oi.quantity FROM shop_orders so "
+                    + "JOIN order_items oi ON oi.shop_order_id = so.id "
+                    + "WHERE so.order_group_id IN (" + placeholders + ")", rs -> {
+                long groupId = rs.getLong(1);
+                long productId = rs.getLong(3);
+                shopsByGroup.computeIfAbsent(groupId, k -> new LinkedHashSet<>()).add(rs.getLong(2));
+                productsByGroup.computeIfAbsent(groupId, k -> new LinkedHashSet<>()).add(productId);
+                quantityByProduct.merge(productId, rs.getInt(4), Integer::sum);
+            }, idArgs);
+
+            // 认领时已持有订单组的行锁，状态条件只是防御：不覆盖已离开 CREATED 的行
+            List<Object> args = new ArrayList<>(ids.size() + 2);
+            args.add(CANCELLED);
+            args.add(CREATED);
+            args.addAll(ids);
+            jdbcTemplate.update("UPDATE shop_orders SET status = ?, updated_at = CURRENT_TIMESTAMP WHERE status = ? "
+                    + "AND order_group_id IN (" + placeholders + ")", args.toArray());
+            jdbcTemplate.update("UPDATE order_groups SET status = ?, updated_at = CURRENT_TIMESTAMP WHERE status = ? "
+                    + "AND id IN (" + placeholders + ")", args.toArray());
+            inventoryService.restore(quantityByProduct);
+            flashSaleService.restockAfterCommit(quantityByProduct);
+            outboxService.recordAll(ids.stream()
+                    .map(id -> new OutboxService.Event(OutboxEventType.ORDER_CANCELLED, id,
+                            productsByGroup.getOrDefault(id, Set.of()), shopsByGroup.getOrDefault(id, Set.of())))
+                    .toList());
+            return ids.size();
+        });
+        if (expired != null && expired > 0) {
+            log.info("Expired {} unpaid orders", expired);
+        }
+        return expired == null ? 0 : expired;
+    }
+}
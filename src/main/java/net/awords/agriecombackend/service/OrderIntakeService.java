@@ -0,0 +1,371 @@
+package net.awords.agriecombackend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import net.awords.agriecombackend.dto.order.OrderDtos;
+import net.awords.agriecombackend.entity.OrderGroup;
+import net.awords.agriecombackend.entity.User;
+import net.awords.agriecombackend.repository.OrderGroupRepository;
+import net.awords.agriecombackend.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 异步下单：请求线程只做参数校验并入队，立即返回受理凭证；后台工作线程批量出队，
+ * 在同一事务中为多笔订单扣减库存并一次性保存，提交后再通知凭证结果。
+ * <p>
+ * 队列有界，满时直接以 503 拒绝，由客户端退避重试。批次内单笔订单的业务失败（库存不足等）
+ * 会撤销自身的扣减而不影响其他订单；若整批事务失败（如死锁），则逐笔重试。
+ * <p>
+ * 队列与凭证只保存在本节点内存中：多实例部署时，轮询与 SSE 订阅必须路由到受理该请求的实例
+ * （如按用户会话粘滞），实例重启后未查询的凭证随之丢失，但已提交的订单仍可在订单列表中查到。
+ * 停机时先拒绝新请求，再由工作线程处理完队列中已受理的订单；超时仍未处理的凭证以 503 失败。
+ */
+@Service
+public class OrderIntakeService {
+
+    private static final Logger log = LoggerFactory.getLogger(OrderIntakeService.class);
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 10;
+
+    static final String QUEUED = "QUEUED";
+    static final String COMPLETED = "COMPLETED";
+    static final String FAILED = "FAILED";
+
+    private final OrderService orderService;
+    private final OrderGroupRepository orderGroupRepository;
+    private final UserRepository userRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final BlockingQueue<Ticket> queue;
+    private final Map<String, Ticket> tickets = new ConcurrentHashMap<>();
+    private final int workers;
+    private final int batchSize;
+    private final long batchWaitMs;
+    private final Duration ticketTtl;
+    private final DistributionSummary batchSizeSummary;
+    private final Timer commitTimer;
+    private final Counter rejectedCounter;
+
+    private ExecutorService executor;
+    private volatile boolean running;
+
+    public OrderIntakeService(OrderService orderService,
+                              OrderGroupRepository orderGroupRepository,
+                              UserRepository userRepository,
+                              PlatformTransactionManager transactionManager,
+                              MeterRegistry meterRegistry,
+                              @Value("${order-intake.queue-capacity:1000}") int queueCapacity,
+                              @Value("${order-intake.workers:2}") int workers,
+                              @Value("${order-intake.batch-size:50}") int batchSize,
+                              @Value("${order-intake.batch-wait-ms:20}") long batchWaitMs,
+                              @Value("${order-intake.ticket-ttl-ms:600000}") long ticketTtlMs) {
+        this.orderService = orderService;
+        this.orderGroupRepository = orderGroupRepository;
+        this.userRepository = userRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.workers = workers;
+        this.batchSize = Math.max(batchSize, 1);
+        this.batchWaitMs = batchWaitMs;
+        this.ticketTtl = Duration.ofMillis(ticketTtlMs);
+        Gauge.builder("order.intake.queue.depth", queue, BlockingQueue::size)
+                .description("等待处理的异步订单数")
+                .register(meterRegistry);
+        this.batchSizeSummary = DistributionSummary.builder("order.intake.batch.size")
+                .description("每个事务提交的订单数")
+                .register(meterRegistry);
+        this.commitTimer = Timer.builder("order.intake.commit.latency")
+                .description("单批订单从出队到提交的耗时")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("order.intake.rejected")
+                .description("因队列已满被拒绝的下单请求数")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (workers <= 0) {
+            return;
+        }
+        running = true;
+        executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "order-intake-" + UUID.randomUUID().toString().substring(0, 8));
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workers; i++) {
+            executor.submit(this::drainLoop);
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (executor != null) {
+            // 工作线程在 running 清除后继续出队，直到队列排空才退出
+            executor.shutdown();
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        }
+        List<Ticket> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            log.warn("Order intake stopped with {} queued tickets unprocessed", remaining.size());
+            remaining.forEach(ticket -> ticket.fail(shuttingDown()));
+        }
+    }
+
+    /**
+     * 校验并受理下单请求。
+     *
+     * @throws ResponseStatusException 队列已满或服务未运行（未配置工作线程、正在停机）时返回 503
+     */
+    public OrderDtos.OrderTicket submit(String username, OrderDtos.CreateOrderRequest request) {
+        Map<Long, Integer> quantityByProduct = OrderService.mergeQuantities(request);
+        if (!running) {
+            throw shuttingDown();
+        }
+        User buyer = userRepository.findByUsername(username)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "用户不存在"));
+        Ticket ticket = new Ticket(UUID.randomUUID().toString(), buyer.getId(), request.shippingAddress, quantityByProduct);
+        tickets.put(ticket.id, ticket);
+        if (!queue.offer(ticket)) {
+            tickets.remove(ticket.id);
+            rejectedCounter.increment();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "下单人数过多，请稍后重试");
+        }
+        // 入队期间服务开始停机且工作线程已退出时，凭证不会再被处理，撤回并拒绝
+        if (!running && queue.remove(ticket)) {
+            tickets.remove(ticket.id);
+            throw shuttingDown();
+        }
+        return ticket.toDto();
+    }
+
+    public OrderDtos.OrderTicket get(String username, String ticketId) {
+        return findOwnedTicket(username, ticketId).toDto();
+    }
+
+    /**
+     * 以 SSE 推送凭证结果：订单处理完成时发送一次 ticket 事件后关闭连接。
+     */
+    public SseEmitter subscribe(String username, String ticketId, long timeoutMs) {
+        Ticket ticket = findOwnedTicket(username, ticketId);
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        ticket.result.whenComplete((orderId, ex) -> {
+            try {
+                emitter.send(SseEmitter.event().name("ticket").data(ticket.toDto()));
+                emitter.complete();
+            } catch (IOException | IllegalStateException sendFailure) {
+                emitter.completeWithError(sendFailure);
+            }
+        });
+        return emitter;
+    }
+
+    /**
+     * 清理已完成且超过保留期的凭证。
+     */
+    @Scheduled(fixedDelayString = "${order-intake.ticket-ttl-ms:600000}")
+    public void purgeExpiredTickets() {
+        OffsetDateTime threshold = OffsetDateTime.now().minus(ticketTtl);
+        tickets.values().removeIf(ticket -> ticket.completedAt != null && ticket.completedAt.isBefore(threshold));
+    }
+
+    CompletableFuture<Long> result(String ticketId) {
+        Ticket ticket = tickets.get(ticketId);
+        if (ticket == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "下单凭证不存在");
+        }
+        return ticket.result;
+    }
+
+    private Ticket findOwnedTicket(String username, String ticketId) {
+        User user = userRepository.findByUsername(username)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "用户不存在"));
+        Ticket ticket = tickets.get(ticketId);
+        if (ticket == null || !ticket.buyerId.equals(user.getId())) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "下单凭证不存在");
+        }
+        return ticket;
+    }
+
+    private void drainLoop() {
+        List<Ticket> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Ticket first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // 短暂等待让批次攒满，以更少的事务提交更多订单
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchWaitMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    Ticket next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                process(batch);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException ex) {
+                log.error("Order intake worker failed", ex);
+                batch.forEach(ticket -> ticket.fail(internalFailure()));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void process(List<Ticket> batch) {
+        Timer.Sample sample = Timer.start();
+        try {
+            commit(batch);
+            sample.stop(commitTimer);
+            batchSizeSummary.record(batch.size());
+        } catch (RuntimeException batchFailure) {
+            if (batch.size() == 1) {
+                throw batchFailure;
+            }
+            log.warn("Order intake batch of {} failed, retrying one by one: {}", batch.size(), batchFailure.getMessage());
+            for (Ticket ticket : batch) {
+                try {
+                    commit(List.of(ticket));
+                    batchSizeSummary.record(1);
+                } catch (RuntimeException ex) {
+                    log.error("Order intake ticket {} failed", ticket.id, ex);
+                    ticket.fail(internalFailure());
+                }
+            }
+        }
+    }
+
+    /**
+     * 在一个事务中处理整批凭证；凭证结果仅在事务提交后才对外可见。
+     */
+    private void commit(List<Ticket> batch) {
+        Map<Ticket, ResponseStatusException> rejected = new LinkedHashMap<>();
+        Map<Ticket, Long> placed = new LinkedHashMap<>();
+        transactionTemplate.executeWithoutResult(status -> {
+            Map<Long, User> buyers = userRepository.findAllById(batch.stream().map(t -> t.buyerId).distinct().toList())
+                    .stream().collect(Collectors.toMap(User::getId, Function.identity()));
+            Map<Ticket, OrderGroup> groups = new LinkedHashMap<>();
+            for (Ticket ticket : batch) {
+                User buyer = buyers.get(ticket.buyerId);
+                if (buyer == null) {
+                    rejected.put(ticket, new ResponseStatusException(HttpStatus.NOT_FOUND, "用户不存在"));
+                    continue;
+                }
+                try {
+                    groups.put(ticket, orderService.placeOrder(buyer, ticket.shippingAddress, ticket.quantityByProduct));
+                } catch (ResponseStatusException ex) {
+                    rejected.put(ticket, ex);
+                }
+            }
+            orderGroupRepository.saveAll(groups.values());
+            orderGroupRepository.flush();
+            groups.forEach((ticket, group) -> {
+                placed.put(ticket, group.getId());
+                orderService.onOrderPlaced(group);
+            });
+        });
+        placed.forEach(Ticket::complete);
+        rejected.forEach(Ticket::fail);
+    }
+
+    private static ResponseStatusException internalFailure() {
+        return new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "下单失败，请稍后重试");
+    }
+
+    private static ResponseStatusException shuttingDown() {
+        return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "下单服务暂不可用，请稍后重试");
+    }
+
+    private static final class Ticket {
+        private final String id;
+        private final Long buyerId;
+        private final String shippingAddress;
+        private final Map<Long, Integer> quantityByProduct;
+        private final OffsetDateTime acceptedAt = OffsetDateTime.now();
+        private final CompletableFuture<Long> result = new CompletableFuture<>();
+        private volatile String status = QUEUED;
+        private volatile Long orderId;
+        private volatile String message;
+        private volatile OffsetDateTime completedAt;
+
+        private Ticket(String id, Long buyerId, String shippingAddress, Map<Long, Integer> quantityByProduct) {
+            this.id = id;
+            this.buyerId = buyerId;
+            this.shippingAddress = shippingAddress;
+            this.quantityByProduct = quantityByProduct;
+        }
+
+        private void complete(Long orderId) {
+            this.orderId = orderId;
+            this.completedAt = OffsetDateTime.now();
+            this.status = COMPLETED;
+            result.complete(orderId);
+        }
+
+        /**
+         * 业务拒绝沿用下单逻辑给出的 4xx 状态，内部错误与停机分别为 500 与 503。
+         */
+        private void fail(ResponseStatusException failure) {
+            this.message = failure.getReason();
+            this.completedAt = OffsetDateTime.now();
+            this.status = FAILED;
+            result.completeExceptionally(failure);
+        }
+
+        private OrderDtos.OrderTicket toDto() {
+            OrderDtos.OrderTicket dto = new OrderDtos.OrderTicket();
+            dto.ticket = id;
+            dto.status = status;
+            dto.orderId = orderId;
+            dto.message = message;
+            dto.acceptedAt = acceptedAt;
+            dto.completedAt = completedAt;
+            return dto;
+        }
+    }
+}
@@ -1,35 +1,45 @@
 package net.awords.agriecombackend.service;
 
+import net.awords.agriecombackend.dto.SliceResult;
 import net.awords.agriecombackend.dto.order.OrderDtos;
 import net.awords.agriecombackend.dto.order.OrderMapper;
 import net.awords.agriecombackend.entity.OrderGroup;
 import net.awords.agriecombackend.entity.OrderItem;
 import net.awords.agriecombackend.entity.OrderStatus;
+import net.awords.agriecombackend.entity.OutboxEventType;
 import net.awords.agriecombackend.entity.Product;
 import net.awords.agriecombackend.entity.Shop;
 import net.awords.agriecombackend.entity.ShopOrder;
 import net.awords.agriecombackend.entity.ShopStatus;
 import net.awords.agriecombackend.entity.User;
+import net.awords.agriecombackend.repository.CreatedAtKey;
 import net.awords.agriecombackend.repository.OrderGroupRepository;
 import net.awords.agriecombackend.repository.ProductRepository;
 import net.awords.agriecombackend.repository.UserRepository;
-import org.springframework.cache.Cache;
-import org.springframework.cache.CacheManager;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * 买家侧订单服务：负责下单、查询与取消。
@@ -37,76 +47,145 @@ import java.util.Objects;
 @Service
 public class OrderService {
 
+    private static final String ORDER_SORT = "createdAt:DESC";
+
     private final OrderGroupRepository orderGroupRepository;
     private final ProductRepository productRepository;
     private final UserRepository userRepository;
-    private final CacheManager cacheManager;
+    private final InventoryService inventoryService;
+    private final FlashSaleService flashSaleService;
+    private final OrderExpiryService orderExpiryService;
+    private final OutboxService outboxService;
+    private final TransactionTemplate transactionTemplate;
 
     public OrderService(OrderGroupRepository orderGroupRepository,
                         ProductRepository productRepository,
                         UserRepository userRepository,
-                        CacheManager cacheManager) {
+                        InventoryService inventoryService,
+                        FlashSaleService flashSaleService,
+                        OrderExpiryService orderExpiryService,
+                        OutboxService outboxService,
+                        PlatformTransactionManager transactionManager) {
         this.orderGroupRepository = orderGroupRepository;
         this.productRepository = productRepository;
         this.userRepository = userRepository;
-        this.cacheManager = cacheManager;
+        this.inventoryService = inventoryService;
+        this.flashSaleService = flashSaleService;
+        this.orderExpiryService = orderExpiryService;
+        this.outboxService = outboxService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
-    @Transactional
+    /**
+     * 下单入口本身不开启事务：先在秒杀计数器中预占，计数器拒绝的请求不查询用户、不占用数据库连接；
+     * 预占成功后才在事务中扣减其余库存并保存订单，事务未能提交时撤销预占。
+     */
     public OrderDtos.OrderDetail create(String username, OrderDtos.CreateOrderRequest request) {
+        Map<Long, Integer> quantityByProduct = mergeQuantities(request);
+        Map<Long, Integer> reserved = flashSaleService.reserve(quantityByProduct);
+        AtomicBoolean releaseBound = new AtomicBoolean();
+        try {
+            return transactionTemplate.execute(status -> {
+                flashSaleService.releaseOnRollback(reserved);
+                releaseBound.set(true);
+                User buyer = userRepository.findByUsername(username)
+                        .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "用户不存在"));
+
+                OrderGroup orderGroup = placeReserved(buyer, request.shippingAddress, quantityByProduct, reserved);
+                OrderGroup saved = orderGroupRepository.save(orderGroup);
+
+                onOrderPlaced(saved);
+
+                return OrderMapper.toOrderDetail(saved);
+            });
+        } catch (RuntimeException ex) {
+            // 未能开启事务时回滚回调尚未登记，由这里撤销预占
+            if (!releaseBound.get()) {
+                flashSaleService.release(reserved);
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * 校验下单请求并按商品合并数量。
+     */
+    static Map<Long, Integer> mergeQuantities(OrderDtos.CreateOrderRequest request) {
         if (request == null || CollectionUtils.isEmpty(request.items)) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "订单商品不能为空");
         }
-        User buyer = userRepository.findByUsername(username)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "用户不存在"));
-
         Map<Long, Integer> quantityByProduct = new HashMap<>();
         request.items.forEach(item -> {
-            if (item.productId == null || item.quantity == null || item.quantity <= 0) {
+            if (item == null || item.productId == null || item.quantity == null || item.quantity <= 0) {
                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "商品或数量非法");
             }
             quantityByProduct.merge(item.productId, item.quantity, Integer::sum);
         });
+        return quantityByProduct;
+    }
 
-        List<Product> products = productRepository.findAllById(quantityByProduct.keySet());
-        if (products.size() != quantityByProduct.size()) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "存在无效商品");
+    /**
+     * 在当前事务中预占秒杀库存、扣减其余库存并组装（未保存的）订单。
+     * <p>
+     * 失败时先撤销本单已做的扣减与秒杀预占再抛出异常，因此批量下单时单笔失败不会污染同一事务中的其他订单。
+     * 本方法不经过事务代理，抛出的异常不会把外层事务标记为只能回滚。
+     */
+    OrderGroup placeOrder(User buyer, String shippingAddress, Map<Long, Integer> quantityByProduct) {
+        // 秒杀商品先在计数器中预占，不再逐单更新数据库行；其余商品走数据库条件扣减
+        Map<Long, Integer> reserved = flashSaleService.reserve(quantityByProduct);
+        OrderGroup orderGroup;
+        try {
+            orderGroup = placeReserved(buyer, shippingAddress, quantityByProduct, reserved);
+        } catch (RuntimeException ex) {
+            flashSaleService.release(reserved);
+            throw ex;
+        }
+        flashSaleService.releaseOnRollback(reserved);
+        return orderGroup;
+    }
+
+    /**
+     * 秒杀商品已按 reserved 预占，扣减其余商品的数据库库存并组装订单；预占的撤销由调用方负责。
+     * 失败时先撤销本单已做的数据库扣减再抛出异常。
+     */
+    private OrderGroup placeReserved(User buyer, String shippingAddress, Map<Long, Integer> quantityByProduct,
+                                     Map<Long, Integer> reserved) {
+        Map<Long, Integer> deductByProduct = new HashMap<>(quantityByProduct);
+        deductByProduct.keySet().removeAll(reserved.keySet());
+        List<Long> failedProductIds = inventoryService.deduct(deductByProduct);
+        if (!failedProductIds.isEmpty()) {
+            failedProductIds.forEach(deductByProduct::remove);
+            inventoryService.restore(deductByProduct);
+            throw stockFailure(failedProductIds);
         }
 
-        Map<Long, Shop> shopCache = new HashMap<>();
+        List<Product> products = productRepository.findAllById(quantityByProduct.keySet());
         Map<Long, List<Product>> productsByShop = new HashMap<>();
         for (Product product : products) {
             Shop shop = product.getShop();
             if (shop == null || (shop.getStatus() != ShopStatus.ACTIVE && shop.getStatus() != ShopStatus.PENDING_REVIEW)) {
+                inventoryService.restore(deductByProduct);
                 throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "商品所属店铺不可用");
             }
-            if (product.getStock() < quantityByProduct.get(product.getId())) {
-                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "库存不足: " + product.getName());
-            }
-            shopCache.putIfAbsent(shop.getId(), shop);
             productsByShop.computeIfAbsent(shop.getId(), k -> new ArrayList<>()).add(product);
         }
 
         OrderGroup orderGroup = new OrderGroup();
         orderGroup.setBuyer(buyer);
         orderGroup.setStatus(OrderStatus.CREATED.name());
-        orderGroup.setShippingAddress(request.shippingAddress);
+        orderGroup.setShippingAddress(shippingAddress);
 
         BigDecimal groupTotal = BigDecimal.ZERO;
-        List<ShopOrder> allShopOrders = new ArrayList<>();
-
-        for (Map.Entry<Long, List<Product>> entry : productsByShop.entrySet()) {
-            Long shopId = entry.getKey();
-            Shop shop = shopCache.get(shopId);
+        for (List<Product> shopProducts : productsByShop.values()) {
             ShopOrder shopOrder = new ShopOrder();
             shopOrder.setOrderGroup(orderGroup);
-            shopOrder.setShop(shop);
+            shopOrder.setShop(shopProducts.get(0).getShop());
             shopOrder.setStatus(OrderStatus.CREATED.name());
-            shopOrder.setShippingAddress(request.shippingAddress);
+            shopOrder.setShippingAddress(shippingAddress);
 
             BigDecimal shopTotal = BigDecimal.ZERO;
             List<OrderItem> orderItems = new ArrayList<>();
-            for (Product product : entry.getValue()) {
+            for (Product product : shopProducts) {
                 int quantity = quantityByProduct.get(product.getId());
                 OrderItem orderItem = new OrderItem();
                 orderItem.setShopOrder(shopOrder);
@@ -118,23 +197,14 @@ public class OrderService {
                 orderItem.setSubtotal(subtotal);
                 orderItems.add(orderItem);
                 shopTotal = shopTotal.add(subtotal);
-
-                product.setStock(product.getStock() - quantity);
             }
             shopOrder.setOrderItems(orderItems);
             shopOrder.setTotalAmount(shopTotal);
             groupTotal = groupTotal.add(shopTotal);
             orderGroup.getShopOrders().add(shopOrder);
-            allShopOrders.add(shopOrder);
         }
         orderGroup.setTotalAmount(groupTotal);
-
-        OrderGroup saved = orderGroupRepository.save(orderGroup);
-        productRepository.saveAll(products);
-
-        evictCachesAfterOrderChange(allShopOrders);
-
-        return OrderMapper.toOrderDetail(saved);
+        return orderGroup;
     }
 
     @Transactional(readOnly = true)
@@ -143,11 +213,40 @@ public class OrderService {
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "用户不存在"));
         int sanitizedPage = Math.max(page, 0);
         int sanitizedSize = size <= 0 ? 10 : Math.min(size, 50);
-        Pageable pageable = PageRequest.of(sanitizedPage, sanitizedSize);
+        Pageable pageable = PageRequest.of(sanitizedPage, sanitizedSize,
+                Sort.by(Sort.Direction.DESC, "createdAt", "id"));
         Page<OrderGroup> result = orderGroupRepository.findByBuyerId(buyer.getId(), pageable);
         return OrderMapper.toPageResult(result, result.getContent().stream().map(OrderMapper::toOrderSummary).toList());
     }
 
+    /**
+     * 游标分页（见 {@link PageCursor}），排序同 {@link #list}：先在 (buyer_id, created_at, id) 索引上定位一页 ID，
+     * 再抓取订单及其子订单，不统计总数。
+     */
+    @Transactional(readOnly = true)
+    public SliceResult<OrderDtos.OrderSummary> scroll(String username, String cursor, int size) {
+        User buyer = userRepository.findByUsername(username)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "用户不存在"));
+        int sanitizedSize = size <= 0 ? 10 : Math.min(size, 50);
+        Pageable limit = PageRequest.of(0, sanitizedSize + 1);
+        List<CreatedAtKey> keys;
+        if (StringUtils.hasText(cursor)) {
+            PageCursor after = PageCursor.decode(cursor, ORDER_SORT);
+            keys = orderGroupRepository.findKeysByBuyerIdBefore(buyer.getId(), after.timeValue(), after.id(), limit);
+        } else {
+            keys = orderGroupRepository.findKeysByBuyerId(buyer.getId(), limit);
+        }
+        List<Long> ids = keys.stream().limit(sanitizedSize).map(CreatedAtKey::getId).toList();
+        Map<Long, OrderGroup> byId = orderGroupRepository.findAllByIdIn(ids).stream()
+                .collect(Collectors.toMap(OrderGroup::getId, Function.identity()));
+        List<OrderDtos.OrderSummary> items = ids.stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .map(OrderMapper::toOrderSummary)
+                .toList();
+        return SliceResult.of(items, sanitizedSize, PageCursor.nextByCreatedAt(ORDER_SORT, keys, sanitizedSize));
+    }
+
     @Transactional(readOnly = true)
     public OrderDtos.OrderDetail get(String username, Long orderGroupId) {
         User buyer = userRepository.findByUsername(username)
@@ -161,7 +260,7 @@ public class OrderService {
     public OrderDtos.OrderDetail cancel(String username, Long orderGroupId) {
         User buyer = userRepository.findByUsername(username)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "用户不存在"));
-        OrderGroup group = orderGroupRepository.findByIdAndBuyerId(orderGroupId, buyer.getId())
+        OrderGroup group = orderGroupRepository.lockByIdAndBuyerId(orderGroupId, buyer.getId())
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "订单不存在"));
 
         if (OrderStatus.CANCELLED.name().equals(group.getStatus())) {
@@ -175,51 +274,59 @@ public class OrderService {
         }
 
         group.setStatus(OrderStatus.CANCELLED.name());
+        Map<Long, Integer> quantityByProduct = new HashMap<>();
         for (ShopOrder shopOrder : group.getShopOrders()) {
             shopOrder.setStatus(OrderStatus.CANCELLED.name());
             for (OrderItem item : shopOrder.getOrderItems()) {
-                Product product = item.getProduct();
-                if (product != null) {
-                    product.setStock(product.getStock() + item.getQuantity());
+                if (item.getProduct() != null) {
+                    quantityByProduct.merge(item.getProduct().getId(), item.getQuantity(), Integer::sum);
                 }
             }
         }
-        productRepository.saveAll(extractProducts(group));
-        OrderGroup saved = orderGroupRepository.save(group);
-        evictCachesAfterOrderChange(group.getShopOrders());
-        return OrderMapper.toOrderDetail(saved);
+        OrderGroup saved = orderGroupRepository.saveAndFlush(group);
+        OrderDtos.OrderDetail detail = OrderMapper.toOrderDetail(saved);
+        inventoryService.restore(quantityByProduct);
+        flashSaleService.restockAfterCommit(quantityByProduct);
+        recordOrderEvent(OutboxEventType.ORDER_CANCELLED, saved);
+        return detail;
     }
 
-    private List<Product> extractProducts(OrderGroup group) {
-        List<Product> products = new ArrayList<>();
-        for (ShopOrder shopOrder : group.getShopOrders()) {
-            for (OrderItem item : shopOrder.getOrderItems()) {
-                if (item.getProduct() != null) {
-                    products.add(item.getProduct());
-                }
-            }
+    /**
+     * 区分扣减失败的原因：商品不存在，或库存不足（列出全部不足的商品）。
+     */
+    private ResponseStatusException stockFailure(List<Long> failedProductIds) {
+        Map<Long, Product> found = productRepository.findAllById(failedProductIds).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        if (found.size() != failedProductIds.size()) {
+            return new ResponseStatusException(HttpStatus.BAD_REQUEST, "存在无效商品");
         }
-        return products;
+        String names = failedProductIds.stream()
+                .map(id -> found.get(id).getName())
+                .collect(Collectors.joining(", "));
+        return new ResponseStatusException(HttpStatus.BAD_REQUEST, "库存不足: " + names);
     }
 
-    private void evictCachesAfterOrderChange(List<ShopOrder> shopOrders) {
-        Cache productCache = cacheManager.getCache("product:detail");
-        Cache shopCache = cacheManager.getCache("shop:detail");
-        if (CollectionUtils.isEmpty(shopOrders)) {
-            return;
-        }
-        for (ShopOrder order : shopOrders) {
-            if (shopCache != null && order.getShop() != null) {
-                shopCache.evict(order.getShop().getId());
-            }
-            if (productCache != null) {
-                order.getOrderItems().stream()
-                        .map(OrderItem::getProduct)
-                        .filter(Objects::nonNull)
-                        .map(Product::getId)
-                        .distinct()
-                        .forEach(productCache::evict);
+    /**
+     * 订单保存后的收尾：在同一事务中写入下单事件（提交后失效相关缓存），并登记支付超时。
+     */
+    void onOrderPlaced(OrderGroup group) {
+        recordOrderEvent(OutboxEventType.ORDER_PLACED, group);
+        orderExpiryService.track(group);
+    }
+
+    private void recordOrderEvent(OutboxEventType type, OrderGroup group) {
+        Set<Long> productIds = new LinkedHashSet<>();
+        Set<Long> shopIds = new LinkedHashSet<>();
+        for (ShopOrder order : group.getShopOrders()) {
+            if (order.getShop() != null) {
+                shopIds.add(order.getShop().getId());
             }
+            order.getOrderItems().stream()
+                    .map(OrderItem::getProduct)
+                    .filter(Objects::nonNull)
+                    .map(Product::getId)
+                    .forEach(productIds::add);
         }
+        outboxService.record(type, group.getId(), productIds, shopIds);
     }
 }
@@ -0,0 +1,18 @@
+package net.awords.agriecombackend.service;
+
+import net.awords.agriecombackend.entity.OutboxEventType;
+
+import java.util.List;
+
+/**
+ * 发件箱事件的消费者。同一批事件会并行交给所有处理器，每个处理器收到的事件按写入顺序排列；
+ * 投递至少一次，处理器须保证幂等。
+ */
+public interface OutboxEventHandler {
+
+    default boolean supports(OutboxEventType type) {
+        return true;
+    }
+
+    void handle(List<OutboxMessage> messages);
+}
@@ -0,0 +1,17 @@
+package net.awords.agriecombackend.service;
+
+import net.awords.agriecombackend.entity.OutboxEventType;
+
+import java.util.List;
+
+/**
+ * 从发件箱取出、交给 {@link OutboxEventHandler} 处理的事件。
+ *
+ * @param aggregateId 订单事件为订单组 ID（发货为子订单 ID），商品事件为商品 ID
+ * @param productIds  受影响的商品，用于失效商品详情缓存
+ * @param shopIds     受影响的店铺，用于失效店铺详情缓存
+ * @param categories  受影响的商品分类，用于失效按分类筛选的商品列表缓存
+ */
+public record OutboxMessage(long id, OutboxEventType type, long aggregateId, List<Long> productIds, List<Long> shopIds,
+                            List<String> categories) {
+}
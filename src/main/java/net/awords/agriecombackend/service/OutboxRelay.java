@@ -0,0 +1,271 @@
+package net.awords.agriecombackend.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import net.awords.agriecombackend.entity.OutboxEventType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * 发件箱投递：按写入顺序分批认领已提交的事件，并行交给各 {@link OutboxEventHandler}，全部成功后删除。
+ * <p>
+ * 认领使用 {@code FOR UPDATE SKIP LOCKED}，多个节点可同时投递不同批次；处理器失败时整批回滚，
+ * 再逐条重新投递，只有失败的事件留在表中，因此为至少一次投递。失败的事件记录失败次数并按指数退避延后重试，
+ * 达到上限后被搁置（保留在表中、不再认领），无法解析或处理器始终拒绝的事件不会阻塞后续投递；
+ * 重试的事件可能晚于其后写入的事件送达。写入事务提交后会立即唤醒投递，定时任务只用于兜底（如唤醒时节点重启）。
+ */
+@Service
+public class OutboxRelay {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private static final String ELIGIBLE = "attempts < ? AND (next_attempt_at IS NULL OR next_attempt_at <= ?)";
+    private static final String CLAIM_SQL = "SELECT id, event_type, aggregate_id, payload, attempts FROM outbox_events WHERE "
+            + ELIGIBLE + " ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED";
+    private static final String CLAIM_ONE_SQL = "SELECT id, event_type, aggregate_id, payload, attempts FROM outbox_events "
+            + "WHERE id = ? AND " + ELIGIBLE + " FOR UPDATE SKIP LOCKED";
+    private static final String RECORD_FAILURE_SQL =
+            "UPDATE outbox_events SET attempts = attempts + 1, next_attempt_at = ?, last_error = ? WHERE id = ?";
+    private static final int MAX_ERROR_LENGTH = 500;
+    private static final RowMapper<PendingEvent> PENDING_EVENT_MAPPER = (rs, i) -> new PendingEvent(
+            rs.getLong(1), rs.getString(2), rs.getLong(3), rs.getString(4), rs.getInt(5));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final List<OutboxEventHandler> handlers;
+    private final int batchSize;
+    private final int handlerThreads;
+    private final int maxAttempts;
+    private final Duration retryBackoff;
+    private final Counter relayedCounter;
+    private final Counter failedCounter;
+    private final Counter parkedCounter;
+    private final AtomicBoolean wakePending = new AtomicBoolean();
+
+    private ExecutorService handlerExecutor;
+    private ExecutorService wakeExecutor;
+
+    public OutboxRelay(JdbcTemplate jdbcTemplate,
+                       ObjectMapper objectMapper,
+                       PlatformTransactionManager transactionManager,
+                       List<OutboxEventHandler> handlers,
+                       MeterRegistry meterRegistry,
+                       @Value("${outbox.batch-size:200}") int batchSize,
+                       @Value("${outbox.handler-threads:4}") int handlerThreads,
+                       @Value("${outbox.max-attempts:10}") int maxAttempts,
+                       @Value("${outbox.retry-backoff-ms:5000}") long retryBackoffMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.handlers = List.copyOf(handlers);
+        this.batchSize = Math.max(batchSize, 1);
+        this.handlerThreads = Math.max(handlerThreads, 1);
+        this.maxAttempts = Math.max(maxAttempts, 1);
+        this.retryBackoff = Duration.ofMillis(Math.max(retryBackoffMs, 0));
+        this.relayedCounter = Counter.builder("outbox.events.relayed")
+                .description("已投递并删除的发件箱事件数")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("outbox.events.failed")
+                .description("投递失败、等待重试的发件箱事件次数")
+                .register(meterRegistry);
+        this.parkedCounter = Counter.builder("outbox.events.parked")
+                .description("达到重试上限被搁置的发件箱事件数")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger sequence = new AtomicInteger();
+        handlerExecutor = Executors.newFixedThreadPool(handlerThreads, runnable -> {
+            Thread thread = new Thread(runnable, "outbox-handler-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        wakeExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "outbox-relay");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        wakeExecutor.shutdown();
+        wakeExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        handlerExecutor.shutdown();
+        handlerExecutor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 请求尽快投递；已有一次待执行的唤醒时直接合并。
+     */
+    public void wakeUp() {
+        if (wakePending.compareAndSet(false, true)) {
+            wakeExecutor.execute(() -> {
+                wakePending.set(false);
+                relay();
+            });
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${outbox.relay-interval-ms:1000}")
+    public void relay() {
+        try {
+            relayPending();
+        } catch (RuntimeException ex) {
+            log.warn("Outbox relay failed, events will be retried", ex);
+        }
+    }
+
+    /**
+     * 投递当前全部可认领的事件。
+     *
+     * @return 投递的事件数
+     */
+    int relayPending() {
+        int relayed = 0;
+        while (true) {
+            List<PendingEvent> claimed = new ArrayList<>();
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    claimed.addAll(jdbcTemplate.query(CLAIM_SQL, PENDING_EVENT_MAPPER,
+                            maxAttempts, OffsetDateTime.now(), batchSize));
+                    deliver(claimed);
+                });
+                relayed += claimed.size();
+                relayedCounter.increment(claimed.size());
+            } catch (RuntimeException batchFailure) {
+                if (claimed.isEmpty()) {
+                    throw batchFailure;
+                }
+                relayed += retryOneByOne(claimed, batchFailure);
+            }
+            if (claimed.size() < batchSize) {
+                return relayed;
+            }
+        }
+    }
+
+    /**
+     * 整批失败后逐条在独立事务中重新投递，失败的事件记录失败次数，其余事件照常投递并删除。
+     *
+     * @return 投递成功的事件数
+     */
+    private int retryOneByOne(List<PendingEvent> batch, RuntimeException batchFailure) {
+        if (batch.size() == 1) {
+            recordFailure(batch.get(0), batchFailure);
+            return 0;
+        }
+        log.warn("Outbox batch of {} failed, retrying one by one: {}", batch.size(), batchFailure.getMessage());
+        int relayed = 0;
+        for (PendingEvent event : batch) {
+            try {
+                Integer delivered = transactionTemplate.execute(status -> {
+                    List<PendingEvent> reclaimed = jdbcTemplate.query(CLAIM_ONE_SQL, PENDING_EVENT_MAPPER,
+                            event.id(), maxAttempts, OffsetDateTime.now());
+                    deliver(reclaimed);
+                    return reclaimed.size();
+                });
+                relayed += delivered;
+                relayedCounter.increment(delivered);
+            } catch (RuntimeException ex) {
+                recordFailure(event, ex);
+            }
+        }
+        return relayed;
+    }
+
+    /**
+     * 在当前事务中解析并分发事件，成功后删除；任一步失败时抛出异常由事务回滚。
+     */
+    private void deliver(List<PendingEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        dispatch(events.stream().map(this::toMessage).toList());
+        String placeholders = events.stream().map(e -> "?").collect(Collectors.joining(", "));
+        jdbcTemplate.update("DELETE FROM outbox_events WHERE id IN (" + placeholders + ")",
+                events.stream().map(PendingEvent::id).toArray());
+    }
+
+    /**
+     * 记录单个事件的失败：按失败次数指数退避推迟下次认领，达到上限后不再认领。
+     */
+    private void recordFailure(PendingEvent event, RuntimeException failure) {
+        int attempts = event.attempts() + 1;
+        Duration delay = retryBackoff.multipliedBy(1L << Math.min(attempts - 1, 10));
+        String error = String.valueOf(failure.getMessage());
+        jdbcTemplate.update(RECORD_FAILURE_SQL, OffsetDateTime.now().plus(delay),
+                error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error, event.id());
+        failedCounter.increment();
+        if (attempts >= maxAttempts) {
+            parkedCounter.increment();
+            log.error("Outbox event {} ({}) failed {} times and is set aside", event.id(), event.type(), attempts, failure);
+        } else {
+            log.warn("Outbox event {} failed (attempt {}/{}), retrying in {}: {}",
+                    event.id(), attempts, maxAttempts, delay, failure.getMessage());
+        }
+    }
+
+    /**
+     * 把一批事件并行交给各处理器，等待全部完成；任一处理器失败时抛出异常。
+     */
+    void dispatch(List<OutboxMessage> messages) {
+        CompletableFuture<?>[] futures = handlers.stream()
+                .map(handler -> {
+                    List<OutboxMessage> supported = messages.stream().filter(m -> handler.supports(m.type())).toList();
+                    return supported.isEmpty()
+                            ? CompletableFuture.completedFuture(null)
+                            : CompletableFuture.runAsync(() -> handler.handle(supported), handlerExecutor);
+                })
+                .toArray(CompletableFuture[]::new);
+        try {
+            CompletableFuture.allOf(futures).join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+    }
+
+    private OutboxMessage toMessage(PendingEvent event) {
+        try {
+            OutboxService.Payload body = objectMapper.readValue(event.payload(), OutboxService.Payload.class);
+            return new OutboxMessage(event.id(), OutboxEventType.valueOf(event.type()), event.aggregateId(),
+                    body.productIds() == null ? List.of() : body.productIds(),
+                    body.shopIds() == null ? List.of() : body.shopIds(),
+                    body.categories() == null ? List.of() : body.categories());
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("无法解析发件箱事件 " + event.id(), ex);
+        }
+    }
+
+    private record PendingEvent(long id, String type, long aggregateId, String payload, int attempts) {
+    }
+}
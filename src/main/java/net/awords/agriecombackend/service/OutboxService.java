@@ -0,0 +1,98 @@
+package net.awords.agriecombackend.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.awords.agriecombackend.entity.OutboxEventType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 事务发件箱的写入端：领域事件与缓存失效在业务事务内写入 outbox_events，与业务数据一同提交或回滚。
+ * 事务提交后唤醒 {@link OutboxRelay} 投递，请求线程不再同步访问缓存。
+ */
+@Service
+public class OutboxService {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO outbox_events (event_type, aggregate_id, payload, created_at) VALUES (?, ?, ?, CURRENT_TIMESTAMP)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final OutboxRelay relay;
+
+    public OutboxService(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper, OutboxRelay relay) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.relay = relay;
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(OutboxEventType type, long aggregateId, Collection<Long> productIds, Collection<Long> shopIds) {
+        recordAll(List.of(new Event(type, aggregateId, productIds, shopIds)));
+    }
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(OutboxEventType type, long aggregateId, Collection<Long> productIds, Collection<Long> shopIds,
+                       Collection<String> categories) {
+        recordAll(List.of(new Event(type, aggregateId, productIds, shopIds, categories)));
+    }
+
+    /**
+     * 以一个 JDBC 批次写入多条事件。
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordAll(List<Event> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.batchUpdate(INSERT_SQL, events.stream()
+                .map(event -> new Object[]{event.type().name(), event.aggregateId(),
+                        write(new Payload(List.copyOf(event.productIds()), List.copyOf(event.shopIds()),
+                                List.copyOf(event.categories())))})
+                .toList());
+        wakeRelayAfterCommit();
+    }
+
+    private void wakeRelayAfterCommit() {
+        boolean registered = TransactionSynchronizationManager.getSynchronizations().stream()
+                .anyMatch(WakeRelay.class::isInstance);
+        if (!registered) {
+            TransactionSynchronizationManager.registerSynchronization(new WakeRelay(relay));
+        }
+    }
+
+    private String write(Payload payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("无法序列化发件箱事件", ex);
+        }
+    }
+
+    /**
+     * @param categories 商品分类，仅影响商品列表的事件需要填写
+     */
+    public record Event(OutboxEventType type, long aggregateId, Collection<Long> productIds, Collection<Long> shopIds,
+                        Collection<String> categories) {
+        public Event(OutboxEventType type, long aggregateId, Collection<Long> productIds, Collection<Long> shopIds) {
+            this(type, aggregateId, productIds, shopIds, List.of());
+        }
+    }
+
+    record Payload(List<Long> productIds, List<Long> shopIds, List<String> categories) {
+    }
+
+    private record WakeRelay(OutboxRelay relay) implements TransactionSynchronization {
+        @Override
+        public void afterCommit() {
+            relay.wakeUp();
+        }
+    }
+}
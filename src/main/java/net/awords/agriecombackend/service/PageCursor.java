@@ -0,0 +1,146 @@
+package net.awords.agriecombackend.service;
+
+import net.awords.agriecombackend.repository.CreatedAtKey;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * 游标分页的不透明游标：记录上一页最后一条的排序键与 ID，下一页从其后开始查（keyset），不随页码增大而变慢；
+ * 相关度、相似度等无法按列定位的排序退化为记录偏移量。游标绑定生成它的排序方式，换了排序的游标视为无效。
+ * 排序键应取自查询结果而非会话中的实体，以免精度与数据库存储的值不一致。
+ */
+final class PageCursor {
+
+    private static final char KEY = 'k';
+    private static final char OFFSET = 'o';
+    private static final String SEPARATOR = "|";
+
+    private final String sort;
+    private final String value;
+    private final long id;
+    private final long offset;
+
+    private PageCursor(String sort, String value, long id, long offset) {
+        this.sort = sort;
+        this.value = value;
+        this.id = id;
+        this.offset = offset;
+    }
+
+    /**
+     * @param sort 排序方式的标识，如 {@code price:ASC}
+     */
+    static String ofKey(String sort, Object value, long id) {
+        return encode(KEY + SEPARATOR + sort + SEPARATOR + id + SEPARATOR + format(value));
+    }
+
+    static String ofOffset(String sort, long offset) {
+        return encode(OFFSET + SEPARATOR + sort + SEPARATOR + offset);
+    }
+
+    /**
+     * 按创建时间倒序的一页应多取一条键，多出的一条只用来判断是否还有下一页。
+     *
+     * @return 下一页的游标，没有下一页时为 null
+     */
+    static String nextByCreatedAt(String sort, List<? extends CreatedAtKey> keys, int size) {
+        if (keys.size() <= size) {
+            return null;
+        }
+        CreatedAtKey last = keys.get(size - 1);
+        return ofKey(sort, last.getCreatedAt(), last.getId());
+    }
+
+    /**
+     * 解析客户端传回的游标；格式错误或排序方式不一致时返回 400。
+     */
+    static PageCursor decode(String token, String sort) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8)
+                    .split("\\" + SEPARATOR, 4);
+            if (parts.length < 3 || !parts[1].equals(sort)) {
+                throw invalid();
+            }
+            if (parts[0].equals(String.valueOf(KEY)) && parts.length == 4) {
+                return new PageCursor(sort, parts[3], Long.parseLong(parts[2]), 0);
+            }
+            if (parts[0].equals(String.valueOf(OFFSET)) && parts.length == 3) {
+                return new PageCursor(sort, null, 0, Math.max(Long.parseLong(parts[2]), 0));
+            }
+            throw invalid();
+        } catch (IllegalArgumentException ex) {
+            throw invalid();
+        }
+    }
+
+    boolean isOffset() {
+        return value == null;
+    }
+
+    long id() {
+        return id;
+    }
+
+    long offset() {
+        return offset;
+    }
+
+    BigDecimal decimalValue() {
+        requireKey();
+        try {
+            return new BigDecimal(value);
+        } catch (NumberFormatException ex) {
+            throw invalid();
+        }
+    }
+
+    long longValue() {
+        requireKey();
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException ex) {
+            throw invalid();
+        }
+    }
+
+    OffsetDateTime timeValue() {
+        requireKey();
+        try {
+            return OffsetDateTime.parse(value);
+        } catch (DateTimeParseException ex) {
+            throw invalid();
+        }
+    }
+
+    String sort() {
+        return sort;
+    }
+
+    private void requireKey() {
+        if (value == null) {
+            throw invalid();
+        }
+    }
+
+    private static String format(Object value) {
+        if (value instanceof BigDecimal decimal) {
+            return decimal.toPlainString();
+        }
+        return String.valueOf(value);
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static ResponseStatusException invalid() {
+        return new ResponseStatusException(HttpStatus.BAD_REQUEST, "无效的分页游标");
+    }
+}
@@ -0,0 +1,63 @@
+package net.awords.agriecombackend.service;
+
+import net.awords.agriecombackend.dto.product.ProductDtos;
+import net.awords.agriecombackend.dto.product.ProductMapper;
+import net.awords.agriecombackend.entity.Product;
+import net.awords.agriecombackend.entity.ShopStatus;
+import net.awords.agriecombackend.repository.ProductRepository;
+import org.springframework.cache.annotation.CachePut;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * 加载并缓存商品详情的静态部分（名称、描述、价格、分类、产地、店铺等），库存与销量置空，
+ * 由 {@link ProductQueryService#detail(Long)} 在读取时叠加 {@link ProductLiveStatsService} 中的实时数据。
+ * 缓存未命中时先经 {@link ExistenceFilter} 排除不存在的 ID，再查询数据库。
+ * 缓存对象在各请求间共享，调用方不得修改。
+ */
+@Service
+public class ProductDetailLoader {
+
+    private final ProductRepository productRepository;
+    private final ExistenceFilter existenceFilter;
+
+    public ProductDetailLoader(ProductRepository productRepository, ExistenceFilter existenceFilter) {
+        this.productRepository = productRepository;
+        this.existenceFilter = existenceFilter;
+    }
+
+    @Transactional(readOnly = true)
+    @Cacheable(cacheNames = "product:detail", key = "#productId", sync = true)
+    public ProductDtos.Detail load(Long productId) {
+        if (!existenceFilter.mightContain(ExistenceFilter.Kind.PRODUCT, productId)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "商品不存在");
+        }
+        return toStaticDetail(productRepository.findById(productId).orElseThrow(() -> {
+            existenceFilter.recordFalsePositive(ExistenceFilter.Kind.PRODUCT);
+            return new ResponseStatusException(HttpStatus.NOT_FOUND, "商品不存在");
+        }));
+    }
+
+    /**
+     * 无论缓存中是否已有都从数据库重新加载并写回，供 {@link CacheWarmer} 在条目过期前续期。
+     */
+    @Transactional(readOnly = true)
+    @CachePut(cacheNames = "product:detail", key = "#productId")
+    public ProductDtos.Detail refresh(Long productId) {
+        return toStaticDetail(productRepository.findById(productId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "商品不存在")));
+    }
+
+    private static ProductDtos.Detail toStaticDetail(Product product) {
+        if (product.getShop() != null && product.getShop().getStatus() != ShopStatus.ACTIVE) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "商品所在店铺未上线");
+        }
+        ProductDtos.Detail detail = ProductMapper.toDetail(product);
+        detail.stock = null;
+        detail.sales = null;
+        return detail;
+    }
+}
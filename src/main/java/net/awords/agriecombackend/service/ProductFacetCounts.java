@@ -0,0 +1,11 @@
+package net.awords.agriecombackend.service;
+
+import java.util.Map;
+
+/**
+ * 分面计数：各分类与产地（小写）的商品数、各价格区间的商品数（区间由升序边界划分，共边界数 + 1 个），
+ * 以及满足全部条件的商品数。每个分面的计数不受该分面自身条件的约束，其余条件照常生效，便于前端展示可切换的取值。
+ */
+public record ProductFacetCounts(Map<String, Long> categories, Map<String, Long> origins, long[] priceBuckets,
+                                 long total) {
+}
@@ -0,0 +1,121 @@
+package net.awords.agriecombackend.service;
+
+import net.awords.agriecombackend.dto.product.ProductDtos;
+import net.awords.agriecombackend.repository.ProductSearchRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 商品分面计数：在与列表相同的筛选条件下统计各分类、产地与价格区间的商品数（见 {@link ProductFacetCounts}）。
+ * <p>
+ * 索引可用时在筛选位图上求交集基数完成（见 {@link ProductSearchIndex#facets}），否则由
+ * {@link ProductSearchRepository#facets} 一次分组查询取回各组合的计数后在内存中汇总，不按分面逐个查询。
+ * 模糊关键字只有数据库支持。结果按规范化后的查询缓存，失效规则同商品列表（见 {@link ProductListCache}）。
+ */
+@Service
+public class ProductFacetService {
+
+    private static final Comparator<ProductDtos.FacetCount> BY_COUNT = Comparator
+            .comparingLong((ProductDtos.FacetCount facet) -> facet.count).reversed()
+            .thenComparing(facet -> facet.value);
+
+    private final ProductSearchIndex productSearchIndex;
+    private final ProductSearchRepository productSearchRepository;
+    private final ProductListCache productListCache;
+    private final List<BigDecimal> priceBounds;
+
+    public ProductFacetService(ProductSearchIndex productSearchIndex,
+                               ProductSearchRepository productSearchRepository,
+                               ProductListCache productListCache,
+                               @Value("${product-facets.price-buckets:10,20,50,100,200}") List<BigDecimal> priceBounds) {
+        this.productSearchIndex = productSearchIndex;
+        this.productSearchRepository = productSearchRepository;
+        this.productListCache = productListCache;
+        this.priceBounds = priceBounds.stream().distinct().sorted().toList();
+    }
+
+    /**
+     * 分页与排序参数被忽略。在外层读写事务中调用时不读写缓存，原因同 {@link ProductQueryService#list}。
+     */
+    @Transactional(readOnly = true)
+    public ProductDtos.Facets facets(ProductQueryService.ProductQuery query) {
+        ProductQueryService.ProductQuery normalized = query.normalize();
+        if (!productListCache.accepts(normalized) || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return toFacets(count(normalized));
+        }
+        return productListCache.getFacets(normalized, () -> toFacets(count(normalized)));
+    }
+
+    private ProductFacetCounts count(ProductQueryService.ProductQuery query) {
+        ProductSearchRepository.Criteria criteria = ProductQueryService.criteria(query);
+        if (!query.fuzzy() && productSearchIndex.isReady()) {
+            return productSearchIndex.facets(criteria, priceBounds);
+        }
+        return aggregate(productSearchRepository.facets(criteria, priceBounds), criteria);
+    }
+
+    /**
+     * 每个分面跳过只因该分面自身条件而不满足的组合。
+     */
+    private ProductFacetCounts aggregate(List<ProductSearchRepository.FacetRow> rows,
+                                         ProductSearchRepository.Criteria criteria) {
+        Map<String, Long> categories = new HashMap<>();
+        Map<String, Long> origins = new HashMap<>();
+        long[] buckets = new long[priceBounds.size() + 1];
+        long total = 0;
+        for (ProductSearchRepository.FacetRow row : rows) {
+            boolean category = criteria.category() == null || criteria.category().equals(row.category());
+            boolean origin = criteria.origin() == null || criteria.origin().equals(row.origin());
+            if (origin && row.inPriceRange() && row.category() != null) {
+                categories.merge(row.category(), row.count(), Long::sum);
+            }
+            if (category && row.inPriceRange() && row.origin() != null) {
+                origins.merge(row.origin(), row.count(), Long::sum);
+            }
+            if (category && origin) {
+                buckets[row.priceBucket()] += row.count();
+                if (row.inPriceRange()) {
+                    total += row.count();
+                }
+            }
+        }
+        return new ProductFacetCounts(categories, origins, buckets, total);
+    }
+
+    private ProductDtos.Facets toFacets(ProductFacetCounts counts) {
+        ProductDtos.Facets facets = new ProductDtos.Facets();
+        facets.categories = toFacetCounts(counts.categories());
+        facets.origins = toFacetCounts(counts.origins());
+        facets.priceBuckets = new ArrayList<>();
+        for (int i = 0; i < counts.priceBuckets().length; i++) {
+            ProductDtos.PriceBucket bucket = new ProductDtos.PriceBucket();
+            bucket.min = i == 0 ? null : priceBounds.get(i - 1);
+            bucket.max = i == priceBounds.size() ? null : priceBounds.get(i);
+            bucket.count = counts.priceBuckets()[i];
+            facets.priceBuckets.add(bucket);
+        }
+        facets.total = counts.total();
+        return facets;
+    }
+
+    private static List<ProductDtos.FacetCount> toFacetCounts(Map<String, Long> counts) {
+        return counts.entrySet().stream()
+                .map(entry -> {
+                    ProductDtos.FacetCount facet = new ProductDtos.FacetCount();
+                    facet.value = entry.getKey();
+                    facet.count = entry.getValue();
+                    return facet;
+                })
+                .sorted(BY_COUNT)
+                .toList();
+    }
+}
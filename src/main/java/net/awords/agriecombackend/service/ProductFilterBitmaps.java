@@ -0,0 +1,207 @@
+package net.awords.agriecombackend.service;
+
+import net.awords.agriecombackend.entity.ShopStatus;
+import net.awords.agriecombackend.repository.ProductSearchRepository;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.RoaringBitmapWriter;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * 商品筛选条件的压缩位图（Roaring Bitmap），位为商品在索引中的序号：分类、产地（小写）、店铺与店铺状态各一组位图，
+ * 价格按值排序、每个价格一张位图，区间条件取范围内位图的并集。筛选结果为各条件位图的交集，从基数最小的位图开始求交。
+ * <p>
+ * 分面计数对每个分类与产地的位图与候选集求交集基数（{@link RoaringBitmap#andCardinality}），不生成中间结果；
+ * 不同价格往往成千上万、每张位图都很稀疏，价格条件与价格区间改为遍历候选集、按序号查价格列。
+ * <p>
+ * 店铺状态按店铺记录，状态变更时把该店铺的位图整体移到新状态下，无需逐个更新商品。非线程安全，由调用方加锁。
+ */
+final class ProductFilterBitmaps {
+
+    private final RoaringBitmap all = new RoaringBitmap();
+    private final Map<String, RoaringBitmap> byCategory = new HashMap<>();
+    private final Map<String, RoaringBitmap> byOrigin = new HashMap<>();
+    private final Map<Long, RoaringBitmap> byShop = new HashMap<>();
+    private final Map<ShopStatus, RoaringBitmap> byShopStatus = new EnumMap<>(ShopStatus.class);
+    private final NavigableMap<BigDecimal, RoaringBitmap> byPrice = new TreeMap<>();
+    private final Map<Long, ShopStatus> shopStatuses = new HashMap<>();
+    private final List<BigDecimal> prices = new ArrayList<>();
+
+    void add(int ordinal, String category, String origin, long shopId, BigDecimal price) {
+        all.add(ordinal);
+        if (category != null) {
+            byCategory.computeIfAbsent(lower(category), k -> new RoaringBitmap()).add(ordinal);
+        }
+        if (origin != null) {
+            byOrigin.computeIfAbsent(lower(origin), k -> new RoaringBitmap()).add(ordinal);
+        }
+        byShop.computeIfAbsent(shopId, k -> new RoaringBitmap()).add(ordinal);
+        ShopStatus status = shopStatuses.get(shopId);
+        if (status != null) {
+            byShopStatus.computeIfAbsent(status, k -> new RoaringBitmap()).add(ordinal);
+        }
+        byPrice.computeIfAbsent(price, k -> new RoaringBitmap()).add(ordinal);
+        while (prices.size() <= ordinal) {
+            prices.add(null);
+        }
+        prices.set(ordinal, price);
+    }
+
+    void remove(int ordinal, String category, String origin, long shopId, BigDecimal price) {
+        all.remove(ordinal);
+        if (category != null) {
+            remove(byCategory, lower(category), ordinal);
+        }
+        if (origin != null) {
+            remove(byOrigin, lower(origin), ordinal);
+        }
+        remove(byShop, shopId, ordinal);
+        ShopStatus status = shopStatuses.get(shopId);
+        if (status != null) {
+            remove(byShopStatus, status, ordinal);
+        }
+        remove(byPrice, price, ordinal);
+        prices.set(ordinal, null);
+    }
+
+    void setShopStatus(long shopId, ShopStatus status) {
+        ShopStatus previous = shopStatuses.put(shopId, status);
+        RoaringBitmap shop = byShop.get(shopId);
+        if (previous == status || shop == null) {
+            return;
+        }
+        if (previous != null) {
+            RoaringBitmap old = byShopStatus.get(previous);
+            old.andNot(shop);
+            if (old.isEmpty()) {
+                byShopStatus.remove(previous);
+            }
+        }
+        byShopStatus.computeIfAbsent(status, k -> new RoaringBitmap()).or(shop);
+    }
+
+    /**
+     * 满足全部筛选条件（关键字除外）的商品序号，返回新的位图。
+     */
+    RoaringBitmap filter(ProductSearchRepository.Criteria criteria) {
+        List<RoaringBitmap> required = new ArrayList<>();
+        if (criteria.shopStatus() != null) {
+            required.add(byShopStatus.getOrDefault(criteria.shopStatus(), new RoaringBitmap()));
+        }
+        if (criteria.category() != null) {
+            required.add(byCategory.getOrDefault(criteria.category(), new RoaringBitmap()));
+        }
+        if (criteria.origin() != null) {
+            required.add(byOrigin.getOrDefault(criteria.origin(), new RoaringBitmap()));
+        }
+        if (criteria.shopId() != null) {
+            required.add(byShop.getOrDefault(criteria.shopId(), new RoaringBitmap()));
+        }
+        if (criteria.priceMin() != null || criteria.priceMax() != null) {
+            required.add(FastAggregation.or(priceRange(criteria.priceMin(), criteria.priceMax()).values().iterator()));
+        }
+        if (required.isEmpty()) {
+            return all.clone();
+        }
+        required.sort(Comparator.comparingLong(RoaringBitmap::getLongCardinality));
+        RoaringBitmap result = required.get(0).clone();
+        for (int i = 1; i < required.size() && !result.isEmpty(); i++) {
+            result.and(required.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * 在 {@code base}（已按分类、产地与价格以外的条件筛选）上统计分面：分类计数应用产地与价格条件，
+     * 产地计数应用分类与价格条件，价格区间计数应用分类与产地条件，总数应用全部条件。
+     *
+     * @param priceBounds 升序的价格区间边界，区间左闭右开
+     */
+    ProductFacetCounts facets(RoaringBitmap base, ProductSearchRepository.Criteria criteria,
+                              List<BigDecimal> priceBounds) {
+        RoaringBitmap category = criteria.category() == null ? null
+                : byCategory.getOrDefault(criteria.category(), new RoaringBitmap());
+        RoaringBitmap origin = criteria.origin() == null ? null
+                : byOrigin.getOrDefault(criteria.origin(), new RoaringBitmap());
+        RoaringBitmap price = criteria.priceMin() == null && criteria.priceMax() == null ? null
+                : inPriceRange(base, criteria.priceMin(), criteria.priceMax());
+
+        RoaringBitmap forBuckets = and(base, category, origin);
+        long[] buckets = new long[priceBounds.size() + 1];
+        forBuckets.forEach((int ordinal) -> {
+            int position = Collections.binarySearch(priceBounds, prices.get(ordinal));
+            buckets[position >= 0 ? position + 1 : -position - 1]++;
+        });
+        return new ProductFacetCounts(counts(byCategory, and(base, origin, price)),
+                counts(byOrigin, and(base, category, price)), buckets,
+                price == null ? forBuckets.getLongCardinality() : RoaringBitmap.andCardinality(forBuckets, price));
+    }
+
+    private RoaringBitmap inPriceRange(RoaringBitmap candidates, BigDecimal min, BigDecimal max) {
+        RoaringBitmapWriter<RoaringBitmap> writer = RoaringBitmapWriter.writer().get();
+        candidates.forEach((int ordinal) -> {
+            BigDecimal price = prices.get(ordinal);
+            if ((min == null || price.compareTo(min) >= 0) && (max == null || price.compareTo(max) <= 0)) {
+                writer.add(ordinal);
+            }
+        });
+        return writer.get();
+    }
+
+    private static RoaringBitmap and(RoaringBitmap base, RoaringBitmap first, RoaringBitmap second) {
+        RoaringBitmap result = base.clone();
+        if (first != null) {
+            result.and(first);
+        }
+        if (second != null) {
+            result.and(second);
+        }
+        return result;
+    }
+
+    private static Map<String, Long> counts(Map<String, RoaringBitmap> bitmaps, RoaringBitmap candidates) {
+        Map<String, Long> counts = new HashMap<>();
+        if (candidates.isEmpty()) {
+            return counts;
+        }
+        bitmaps.forEach((value, bitmap) -> {
+            int count = RoaringBitmap.andCardinality(candidates, bitmap);
+            if (count > 0) {
+                counts.put(value, (long) count);
+            }
+        });
+        return counts;
+    }
+
+    private NavigableMap<BigDecimal, RoaringBitmap> priceRange(BigDecimal min, BigDecimal max) {
+        if (min != null && max != null) {
+            return min.compareTo(max) > 0 ? new TreeMap<>() : byPrice.subMap(min, true, max, true);
+        }
+        return min != null ? byPrice.tailMap(min, true) : byPrice.headMap(max, true);
+    }
+
+    private static <K> void remove(Map<K, RoaringBitmap> bitmaps, K key, int ordinal) {
+        RoaringBitmap bitmap = bitmaps.get(key);
+        if (bitmap != null) {
+            bitmap.remove(ordinal);
+            if (bitmap.isEmpty()) {
+                bitmaps.remove(key);
+            }
+        }
+    }
+
+    private static String lower(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+}
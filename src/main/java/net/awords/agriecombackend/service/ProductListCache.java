@@ -0,0 +1,176 @@
+package net.awords.agriecombackend.service;
+
+import net.awords.agriecombackend.config.CircuitBreaker;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
+
+/**
+ * 商品列表结果缓存：key 由规范化后的 {@link ProductQueryService.ProductQuery} 与所属切片的当前代数组成。
+ * <p>
+ * 按店铺筛选的查询属于该店铺切片，仅按分类筛选的属于该分类切片，其余属于全局切片。
+ * 分面计数（见 {@link ProductFacetService}）也缓存在这里，key 不含分页与排序。
+ * 商品、销量或店铺状态变更后递增所涉店铺、分类与全局切片的代数，旧 key 不再命中、随 TTL 过期，无需逐个删除。
+ * 关键字过短的搜索几乎匹配全部商品、任何变更都会使其失效，默认不缓存。
+ * 缓存熔断期间取不到代数，无法判断本地缓存的结果是否仍然有效，直接查询数据库。
+ */
+@Component
+public class ProductListCache {
+
+    static final String CACHE_NAME = "product:list";
+
+    private static final String ALL_TAG = "product:list:all";
+    private static final String SHOP_TAG = "product:list:shop:";
+    private static final String CATEGORY_TAG = "product:list:category:";
+
+    private final CacheManager cacheManager;
+    private final CacheGenerationStore generations;
+    private final CircuitBreaker breaker;
+    private final boolean enabled;
+    private final boolean keywordEnabled;
+    private final int keywordMinLength;
+
+    public ProductListCache(CacheManager cacheManager,
+                            CacheGenerationStore generations,
+                            CircuitBreaker breaker,
+                            @Value("${product-list-cache.enabled:true}") boolean enabled,
+                            @Value("${product-list-cache.keyword-enabled:true}") boolean keywordEnabled,
+                            @Value("${product-list-cache.keyword-min-length:2}") int keywordMinLength) {
+        this.cacheManager = cacheManager;
+        this.generations = generations;
+        this.breaker = breaker;
+        this.enabled = enabled;
+        this.keywordEnabled = keywordEnabled;
+        this.keywordMinLength = keywordMinLength;
+    }
+
+    /**
+     * @param query 已规范化的查询
+     */
+    boolean accepts(ProductQueryService.ProductQuery query) {
+        if (!enabled) {
+            return false;
+        }
+        return query.keyword() == null || (keywordEnabled && query.keyword().length() >= keywordMinLength);
+    }
+
+    /**
+     * @param query 已规范化的查询
+     */
+    <T> T get(ProductQueryService.ProductQuery query, Callable<T> loader) {
+        return get(tag(query), key(query), loader);
+    }
+
+    /**
+     * 分类分面要统计其他分类的商品数，因此只按分类筛选的分面计数也依赖全局切片。
+     *
+     * @param query 已规范化的查询
+     */
+    <T> T getFacets(ProductQueryService.ProductQuery query, Callable<T> loader) {
+        return get(query.shopId() != null ? SHOP_TAG + query.shopId() : ALL_TAG, "facets|" + filterKey(query), loader);
+    }
+
+    private <T> T get(String tag, String key, Callable<T> loader) {
+        Long generation = breaker.execute(() -> generations.current(List.of(tag)).get(0), () -> null);
+        if (generation == null) {
+            return bypass(loader);
+        }
+        Cache cache = cacheManager.getCache(CACHE_NAME);
+        try {
+            return cache.get(key + "@" + generation, loader);
+        } catch (Cache.ValueRetrievalException ex) {
+            if (ex.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw ex;
+        }
+    }
+
+    private static <T> T bypass(Callable<T> loader) {
+        try {
+            return loader.call();
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * 递增受影响切片的代数；全局切片总是一并递增。
+     */
+    void invalidate(Collection<Long> shopIds, Collection<String> categories) {
+        Set<String> tags = new LinkedHashSet<>();
+        tags.add(ALL_TAG);
+        shopIds.forEach(shopId -> tags.add(SHOP_TAG + shopId));
+        categories.stream()
+                .map(ProductListCache::normalizeCategory)
+                .filter(category -> !category.isEmpty())
+                .forEach(category -> tags.add(CATEGORY_TAG + category));
+        generations.bump(tags);
+    }
+
+    /**
+     * 同时按店铺和分类筛选时只依赖店铺切片：店铺内任何变更都会递增店铺代数。
+     */
+    static String tag(ProductQueryService.ProductQuery query) {
+        if (query.shopId() != null) {
+            return SHOP_TAG + query.shopId();
+        }
+        if (query.category() != null) {
+            return CATEGORY_TAG + query.category();
+        }
+        return ALL_TAG;
+    }
+
+    /**
+     * 规范化查询的字符串形式，字段顺序固定，等价的查询得到相同的 key。
+     */
+    static String key(ProductQueryService.ProductQuery query) {
+        return "p=" + query.page()
+                + "|s=" + query.size()
+                + "|o=" + sortKey(query.sort())
+                + "|" + filterKey(query);
+    }
+
+    private static String filterKey(ProductQueryService.ProductQuery query) {
+        return "c=" + nullToEmpty(query.category())
+                + "|r=" + nullToEmpty(query.origin())
+                + "|min=" + decimalKey(query.priceMin())
+                + "|max=" + decimalKey(query.priceMax())
+                + "|shop=" + (query.shopId() == null ? "" : query.shopId())
+                + "|q=" + nullToEmpty(query.keyword())
+                + "|active=" + query.onlyActiveShop()
+                + "|fuzzy=" + query.fuzzy();
+    }
+
+    static String normalizeCategory(String category) {
+        return category == null ? "" : category.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static String sortKey(Sort sort) {
+        return sort.stream()
+                .map(order -> order.getProperty() + ":" + order.getDirection()
+                        + (order.isIgnoreCase() ? ":i" : "") + ":" + order.getNullHandling())
+                .collect(Collectors.joining(","));
+    }
+
+    private static String decimalKey(BigDecimal value) {
+        return value == null ? "" : value.stripTrailingZeros().toPlainString();
+    }
+
+    private static String nullToEmpty(String value) {
+        return value == null ? "" : value;
+    }
+}
@@ -0,0 +1,7 @@
+package net.awords.agriecombackend.service;
+
+/**
+ * 商品详情中随下单、取消、发货频繁变化的部分，与可长期缓存的静态详情分开存放。
+ */
+public record ProductLiveStats(int stock, long sales) {
+}
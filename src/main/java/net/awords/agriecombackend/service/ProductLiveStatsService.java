@@ -0,0 +1,157 @@
+package net.awords.agriecombackend.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import net.awords.agriecombackend.config.CircuitBreaker;
+import net.awords.agriecombackend.config.HotKeyDetector;
+import net.awords.agriecombackend.repository.ProductRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.CollectionUtils;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 商品详情的实时部分（库存、销量）：读取时未命中则按主键从数据库载入，
+ * 下单、取消、秒杀回写与发货在事务提交后以增量更新，不再使整条详情缓存失效。
+ * <p>
+ * 存储的读取与增量经缓存熔断器访问：熔断期间读取直接查数据库，增量无法写入，
+ * 涉及的商品记下来，熔断器恢复后删除其实时数据，避免存储中的旧值一直存活到 TTL。
+ * <p>
+ * 详情缓存的静态部分由本地一级缓存承担，热点商品每次读取仍会访问存储。{@link HotKeyDetector} 判定为热点的商品
+ * 在本节点另存一份短 TTL 的副本，本节点的增量与失效立即丢弃副本，其他节点的变更最多延迟一个副本 TTL 才可见。
+ */
+@Service
+public class ProductLiveStatsService {
+
+    private static final String HOT_KEY_CACHE = "product:detail";
+
+    private final ProductLiveStatsStore store;
+    private final ProductRepository productRepository;
+    private final Duration ttl;
+    private final CircuitBreaker breaker;
+    private final Set<Long> missedUpdates = ConcurrentHashMap.newKeySet();
+    private final HotKeyDetector hotKeys;
+    private final Cache<Long, ProductLiveStats> hotReplicas;
+
+    public ProductLiveStatsService(ProductLiveStatsStore store,
+                                   ProductRepository productRepository,
+                                   CircuitBreaker breaker,
+                                   HotKeyDetector hotKeys,
+                                   @Value("${product-live.ttl-ms:60000}") long ttlMs,
+                                   @Value("${cache.hot-key.replica-ttl-ms:1000}") long replicaTtlMs,
+                                   @Value("${cache.hot-key.max-keys:100}") int maxHotKeys) {
+        this.store = store;
+        this.productRepository = productRepository;
+        this.breaker = breaker;
+        this.ttl = Duration.ofMillis(ttlMs);
+        this.hotKeys = hotKeys;
+        this.hotReplicas = Caffeine.newBuilder()
+                .maximumSize(Math.max(maxHotKeys, 1) * 2L)
+                .expireAfterWrite(Duration.ofMillis(replicaTtlMs))
+                .build();
+        breaker.onClose(this::dropMissedUpdates);
+    }
+
+    /**
+     * 在外层读写事务中调用时可能读到本事务未提交的修改，此时只读不写入存储。
+     *
+     * @return 商品不存在时返回 null
+     */
+    public ProductLiveStats get(Long productId) {
+        boolean hot = hotKeys.isHot(HOT_KEY_CACHE, String.valueOf(productId));
+        if (hot) {
+            ProductLiveStats replica = hotReplicas.getIfPresent(productId);
+            if (replica != null) {
+                return replica;
+            }
+        }
+        ProductLiveStats cached = breaker.execute(() -> store.get(productId), () -> null);
+        if (cached != null) {
+            if (hot) {
+                hotReplicas.put(productId, cached);
+            }
+            return cached;
+        }
+        // 先取版本号再读数据库：读库之后提交的增量会递增版本号，使下面的写入放弃
+        Long version = breaker.execute(() -> store.version(productId), () -> null);
+        ProductLiveStats loaded = productRepository.findLiveStatsById(productId)
+                .map(view -> new ProductLiveStats(view.getStock() == null ? 0 : view.getStock(),
+                        view.getSales() == null ? 0L : view.getSales()))
+                .orElse(null);
+        boolean uncommittedVisible = TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        if (loaded != null && version != null && !uncommittedVisible) {
+            breaker.run(() -> store.putIfUnchanged(productId, loaded, ttl, version), () -> { });
+            if (hot) {
+                hotReplicas.put(productId, loaded);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * @param deltaByProduct 商品 ID -> 库存增量，负数为扣减
+     */
+    public void adjustStockAfterCommit(Map<Long, Integer> deltaByProduct) {
+        if (!CollectionUtils.isEmpty(deltaByProduct)) {
+            Map<Long, Integer> snapshot = Map.copyOf(deltaByProduct);
+            afterCommit(() -> {
+                breaker.run(() -> store.incrementStock(snapshot), () -> missedUpdates.addAll(snapshot.keySet()));
+                hotReplicas.invalidateAll(snapshot.keySet());
+            });
+        }
+    }
+
+    /**
+     * @param deltaByProduct 商品 ID -> 销量增量
+     */
+    public void addSalesAfterCommit(Map<Long, Integer> deltaByProduct) {
+        if (!CollectionUtils.isEmpty(deltaByProduct)) {
+            Map<Long, Integer> snapshot = Map.copyOf(deltaByProduct);
+            afterCommit(() -> {
+                breaker.run(() -> store.incrementSales(snapshot), () -> missedUpdates.addAll(snapshot.keySet()));
+                hotReplicas.invalidateAll(snapshot.keySet());
+            });
+        }
+    }
+
+    /**
+     * 商户直接修改库存等无法以增量表达的变更后丢弃实时数据，下次读取时重新载入。
+     */
+    public void evict(Collection<Long> productIds) {
+        store.delete(productIds);
+        hotReplicas.invalidateAll(productIds);
+    }
+
+    /**
+     * 删除失败（再次熔断）时放回，等下次恢复。
+     */
+    private void dropMissedUpdates() {
+        if (missedUpdates.isEmpty()) {
+            return;
+        }
+        Set<Long> productIds = Set.copyOf(missedUpdates);
+        missedUpdates.removeAll(productIds);
+        breaker.run(() -> store.delete(productIds), () -> missedUpdates.addAll(productIds));
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,44 @@
+package net.awords.agriecombackend.service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * 商品实时库存与销量的存储。增量只作用于已存在的条目，不存在的条目在下次读取时从数据库载入。
+ * <p>
+ * 每个商品另有一个变更版本号，增量与删除都会递增它（条目不存在时也递增）。载入方在读数据库之前取得版本号，
+ * 写入时版本号已变化说明期间有变更提交、读到的值可能已过时，此时放弃写入，交给下次读取重新载入，
+ * 避免漏掉的增量在存储中一直偏差到 TTL 过期。
+ */
+public interface ProductLiveStatsStore {
+
+    /**
+     * @return 已缓存的实时数据，不存在或已过期时返回 null
+     */
+    ProductLiveStats get(long productId);
+
+    /**
+     * @return 当前变更版本号，从未变更或版本号已过期时为 0
+     */
+    long version(long productId);
+
+    /**
+     * 条目不存在且变更版本号仍等于 {@code version} 时写入。
+     *
+     * @param version 读数据库之前由 {@link #version(long)} 取得的版本号
+     */
+    void putIfUnchanged(long productId, ProductLiveStats stats, Duration ttl, long version);
+
+    /**
+     * @param deltaByProduct 商品 ID -> 库存增量，负数为扣减
+     */
+    void incrementStock(Map<Long, Integer> deltaByProduct);
+
+    /**
+     * @param deltaByProduct 商品 ID -> 销量增量
+     */
+    void incrementSales(Map<Long, Integer> deltaByProduct);
+
+    void delete(Collection<Long> productIds);
+}
@@ -1,13 +1,17 @@
 package net.awords.agriecombackend.service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import net.awords.agriecombackend.dto.SliceResult;
 import net.awords.agriecombackend.dto.product.ProductDtos;
 import net.awords.agriecombackend.dto.product.ProductMapper;
 import net.awords.agriecombackend.entity.Product;
 import net.awords.agriecombackend.entity.ShopStatus;
 import net.awords.agriecombackend.repository.ProductRepository;
+import net.awords.agriecombackend.repository.ProductSearchRepository;
 import net.awords.agriecombackend.repository.ProductSpecifications;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
@@ -15,9 +19,17 @@ import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.StringUtils;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.math.BigDecimal;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * 商品查询服务：封装分页、排序、筛选、搜索及缓存逻辑，供商户后台与前台共用。
@@ -25,18 +37,118 @@ import java.math.BigDecimal;
 @Service
 public class ProductQueryService {
 
+    /**
+     * 按关键字相关度排序的排序字段名。
+     */
+    public static final String RELEVANCE = ProductSearchRepository.RELEVANCE;
+
+    /**
+     * 游标分页支持的排序字段，及从游标还原排序键的方式。
+     */
+    private static final Map<String, Function<PageCursor, Object>> SEEK_KEYS = Map.of(
+            "price", PageCursor::decimalValue,
+            "sales", PageCursor::longValue,
+            "createdAt", PageCursor::timeValue,
+            "updatedAt", PageCursor::timeValue,
+            "publishedAt", PageCursor::timeValue
+    );
+
     private final ProductRepository productRepository;
+    private final ProductListCache productListCache;
+    private final ProductDetailLoader productDetailLoader;
+    private final ProductLiveStatsService liveStatsService;
+    private final ProductSearchRepository productSearchRepository;
+    private final ProductSearchIndex productSearchIndex;
+    private final Timer indexSearchTimer;
+    private final Timer databaseSearchTimer;
 
-    public ProductQueryService(ProductRepository productRepository) {
+    public ProductQueryService(ProductRepository productRepository, ProductListCache productListCache,
+                               ProductDetailLoader productDetailLoader, ProductLiveStatsService liveStatsService,
+                               ProductSearchRepository productSearchRepository, ProductSearchIndex productSearchIndex,
+                               MeterRegistry meterRegistry) {
         this.productRepository = productRepository;
+        this.productSearchRepository = productSearchRepository;
+        this.productSearchIndex = productSearchIndex;
+        this.indexSearchTimer = searchTimer(meterRegistry, "index");
+        this.databaseSearchTimer = searchTimer(meterRegistry, "database");
+        this.productListCache = productListCache;
+        this.productDetailLoader = productDetailLoader;
+        this.liveStatsService = liveStatsService;
     }
 
+    /**
+     * 列表结果按规范化后的查询缓存（见 {@link ProductListCache}）。
+     * 在外层读写事务中调用时可能读到本事务未提交的修改，此时不读写缓存。
+     */
     @Transactional(readOnly = true)
     public ProductDtos.PageResult<ProductDtos.PublicSummary> list(ProductQuery query) {
-        int sanitizedPage = Math.max(query.page(), 0);
-        int sanitizedSize = query.size() <= 0 ? 20 : Math.min(query.size(), 100);
-        Sort sort = query.sort() == null ? Sort.by(Sort.Direction.DESC, "publishedAt") : query.sort();
-        Pageable pageable = PageRequest.of(sanitizedPage, sanitizedSize, sort);
+        ProductQuery normalized = query.normalize();
+        if (!productListCache.accepts(normalized) || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return search(normalized);
+        }
+        return productListCache.get(normalized, () -> search(normalized));
+    }
+
+    /**
+     * 游标分页（见 {@link PageCursor}），条件同 {@link #list}，不统计总数，适合无限滚动。
+     * 只按首个排序字段与 ID 排序，由 {@link ProductSearchRepository#seek} 在（排序列, id）复合索引上定位下一页；
+     * 相关度排序无法按列定位，游标记录偏移量。直接查询数据库，不读写列表缓存。
+     */
+    @Transactional(readOnly = true)
+    public SliceResult<ProductDtos.PublicSummary> scroll(ProductQuery query, String cursor) {
+        ProductQuery normalized = query.normalize();
+        Sort.Order order = seekOrder(normalized);
+        String sortKey = order.getProperty() + ":" + order.getDirection();
+        boolean byRelevance = RELEVANCE.equals(order.getProperty());
+        PageCursor after = StringUtils.hasText(cursor) ? PageCursor.decode(cursor, sortKey) : null;
+        Object afterValue = after == null || byRelevance ? null : SEEK_KEYS.get(order.getProperty()).apply(after);
+        Long afterId = afterValue == null ? null : after.id();
+        long offset = after != null && byRelevance ? after.offset() : 0;
+
+        int size = normalized.size();
+        List<ProductSearchRepository.SeekRow> rows = productSearchRepository.seek(criteria(normalized), order,
+                afterValue, afterId, offset, size + 1);
+        List<Long> ids = rows.stream().limit(size).map(ProductSearchRepository.SeekRow::id).toList();
+        Map<Long, Product> byId = productRepository.findAllWithShopByIdIn(ids).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        List<ProductDtos.PublicSummary> items = ids.stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .map(ProductMapper::toPublicSummary)
+                .toList();
+        String nextCursor = null;
+        if (rows.size() > size) {
+            ProductSearchRepository.SeekRow last = rows.get(size - 1);
+            nextCursor = byRelevance ? PageCursor.ofOffset(sortKey, offset + size)
+                    : PageCursor.ofKey(sortKey, last.sortValue(), last.id());
+        }
+        return SliceResult.of(items, size, nextCursor);
+    }
+
+    /**
+     * 首个受支持的排序字段；相关度只在有关键字时有效。
+     */
+    private static Sort.Order seekOrder(ProductQuery query) {
+        Sort sort = query.keyword() == null ? withoutRelevance(query.sort()) : query.sort();
+        return sort.stream()
+                .filter(order -> SEEK_KEYS.containsKey(order.getProperty())
+                        || RELEVANCE.equals(order.getProperty()))
+                .findFirst()
+                .map(order -> RELEVANCE.equals(order.getProperty()) ? Sort.Order.desc(RELEVANCE) : order)
+                .orElse(Sort.Order.desc("publishedAt"));
+    }
+
+    /**
+     * 索引可用时，不带关键字的筛选也由 {@link ProductSearchIndex} 在位图上完成，不查询数据库。
+     */
+    private ProductDtos.PageResult<ProductDtos.PublicSummary> search(ProductQuery query) {
+        if (query.keyword() != null) {
+            return keywordSearch(query);
+        }
+        Pageable pageable = PageRequest.of(query.page(), query.size(), withoutRelevance(query.sort()));
+        if (productSearchIndex.isReady()) {
+            return ProductMapper.toPageResult(productSearchIndex.search(criteria(query), pageable), Function.identity());
+        }
 
     Specification<Product> spec = (root, q, cb) -> cb.conjunction();
     spec = spec.and(ProductSpecifications.shopStatusEquals(query.onlyActiveShop() ? ShopStatus.ACTIVE : null));
@@ -45,25 +157,76 @@ public class ProductQueryService {
     spec = spec.and(ProductSpecifications.priceGreaterThanOrEqualTo(query.priceMin()));
     spec = spec.and(ProductSpecifications.priceLessThanOrEqualTo(query.priceMax()));
     spec = spec.and(ProductSpecifications.belongsToShop(query.shopId()));
-    spec = spec.and(ProductSpecifications.keywordLike(query.keyword()));
 
         Page<Product> page = productRepository.findAll(spec, pageable);
         return ProductMapper.toPageResult(page, ProductMapper::toPublicSummary);
     }
 
-    @Transactional(readOnly = true)
-    @Cacheable(cacheNames = "product:detail", key = "#productId")
+    /**
+     * 启用且已构建完成时，非模糊的关键字查询由进程内倒排索引（见 {@link ProductSearchIndex}）直接返回；
+     * 否则交给 {@link ProductSearchRepository}（PostgreSQL 全文检索，模糊模式为名称相似度），按返回的 ID 顺序取回商品。
+     * 两种方式的耗时分别计入 {@code product.search.latency}。
+     */
+    private ProductDtos.PageResult<ProductDtos.PublicSummary> keywordSearch(ProductQuery query) {
+        Pageable pageable = PageRequest.of(query.page(), query.size(), query.sort());
+        ProductSearchRepository.Criteria criteria = criteria(query);
+        if (!query.fuzzy() && productSearchIndex.isReady()) {
+            return indexSearchTimer.record(() -> ProductMapper.toPageResult(
+                    productSearchIndex.search(criteria, pageable), Function.identity()));
+        }
+        return databaseSearchTimer.record(() -> databaseSearch(criteria, pageable));
+    }
+
+    private ProductDtos.PageResult<ProductDtos.PublicSummary> databaseSearch(ProductSearchRepository.Criteria criteria,
+                                                                           Pageable pageable) {
+        Page<Long> ids = productSearchRepository.search(criteria, pageable);
+        Map<Long, Product> byId = productRepository.findAllWithShopByIdIn(ids.getContent()).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        List<Product> products = ids.getContent().stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .toList();
+        return ProductMapper.toPageResult(new PageImpl<>(products, pageable, ids.getTotalElements()),
+                ProductMapper::toPublicSummary);
+    }
+
+    static ProductSearchRepository.Criteria criteria(ProductQuery query) {
+        return new ProductSearchRepository.Criteria(query.keyword(), query.category(), query.origin(),
+                query.priceMin(), query.priceMax(), query.shopId(), query.onlyActiveShop() ? ShopStatus.ACTIVE : null,
+                query.fuzzy());
+    }
+
+    private static Timer searchTimer(MeterRegistry meterRegistry, String engine) {
+        return Timer.builder("product.search.latency")
+                .description("单次关键字检索的耗时")
+                .tag("engine", engine)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 相关度只对关键字查询有意义，其他查询忽略该排序字段。
+     */
+    private static Sort withoutRelevance(Sort sort) {
+        Sort filtered = Sort.by(sort.stream()
+                .filter(order -> !ProductSearchRepository.RELEVANCE.equals(order.getProperty()))
+                .toList());
+        return filtered.isSorted() ? filtered : Sort.by(Sort.Direction.DESC, "publishedAt");
+    }
+
+    /**
+     * 静态部分取自长期缓存（见 {@link ProductDetailLoader}），库存与销量取自实时存储，合并为新的对象返回。
+     */
     public ProductDtos.Detail detail(Long productId) {
-        Product product = productRepository.findById(productId)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "商品不存在"));
-        if (product.getShop() != null && product.getShop().getStatus() != ShopStatus.ACTIVE) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "商品所在店铺未上线");
+        ProductDtos.Detail cached = productDetailLoader.load(productId);
+        ProductLiveStats live = liveStatsService.get(productId);
+        if (live == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "商品不存在");
         }
-        return ProductMapper.toDetail(product);
+        return ProductMapper.withLiveStats(cached, live.stock(), live.sales());
     }
 
     /**
-     * 查询入参，控制分页、排序与过滤条件。
+     * 查询入参，控制分页、排序与过滤条件；{@code fuzzy} 为 true 时关键字按商品名称的相似度匹配，容忍错别字。
      */
     public record ProductQuery(
             int page,
@@ -75,10 +238,40 @@ public class ProductQueryService {
             BigDecimal priceMax,
             Long shopId,
             String keyword,
-            boolean onlyActiveShop
+            boolean onlyActiveShop,
+            boolean fuzzy
     ) {
+        public ProductQuery(int page, int size, Sort sort, String category, String origin, BigDecimal priceMin,
+                            BigDecimal priceMax, Long shopId, String keyword, boolean onlyActiveShop) {
+            this(page, size, sort, category, origin, priceMin, priceMax, shopId, keyword, onlyActiveShop, false);
+        }
+
         public ProductQuery withKeyword(String newKeyword) {
-            return new ProductQuery(page, size, sort, category, origin, priceMin, priceMax, shopId, newKeyword, onlyActiveShop);
+            return new ProductQuery(page, size, sort, category, origin, priceMin, priceMax, shopId, newKeyword,
+                    onlyActiveShop, fuzzy);
+        }
+
+        /**
+         * 修正分页参数、补全默认排序，并把文本条件统一为去空白的小写形式（空串视为未指定），
+         * 与 {@link ProductSpecifications} 的比较方式一致，因此不改变查询结果。
+         */
+        public ProductQuery normalize() {
+            return new ProductQuery(
+                    Math.max(page, 0),
+                    size <= 0 ? 20 : Math.min(size, 100),
+                    sort == null ? Sort.by(Sort.Direction.DESC, "publishedAt") : sort,
+                    normalizeText(category),
+                    normalizeText(origin),
+                    priceMin,
+                    priceMax,
+                    shopId,
+                    normalizeText(keyword),
+                    onlyActiveShop,
+                    fuzzy && StringUtils.hasText(keyword));
+        }
+
+        private static String normalizeText(String value) {
+            return StringUtils.hasText(value) ? value.trim().toLowerCase(Locale.ROOT) : null;
         }
     }
 }
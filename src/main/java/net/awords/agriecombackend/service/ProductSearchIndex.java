@@ -0,0 +1,598 @@
+package net.awords.agriecombackend.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import net.awords.agriecombackend.config.CacheInvalidationBus;
+import net.awords.agriecombackend.dto.product.ProductDtos;
+import net.awords.agriecombackend.entity.OutboxEventType;
+import net.awords.agriecombackend.entity.ShopStatus;
+import net.awords.agriecombackend.repository.ProductSearchRepository;
+import org.roaringbitmap.RoaringBitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * 商品目录的进程内索引，关键字检索与纯筛选的列表查询都不访问数据库。
+ * <p>
+ * 名称、分类/产地、描述三个字段分别分词（见 {@link SearchTokenizer}），相关度按 BM25F 计算，
+ * 字段权重与数据库检索一致（名称 1.0、分类/产地 0.4、描述 0.2），查询的每个词都须命中。
+ * 名称、分类与产地中汉字的全拼与首字母另作为拼音字段（权重 0.8），拼音查询经倒排表直接命中。
+ * 文档保存前台列表展示所需的字段，筛选条件与排序字段同 {@link ProductSearchRepository}。
+ * 筛选条件先在压缩位图上求出候选集（见 {@link ProductFilterBitmaps}），关键字检索只对候选集内的文档计分；
+ * 排序只保留到当前页为止的前若干条，不对全部结果排序。分面计数（{@link #facets}）同样在位图上完成。
+ * <p>
+ * 启动后在后台流式读取商品表构建索引，构建完成前 {@link #isReady()} 为 false，调用方应改用数据库检索。
+ * 之后由发件箱事件增量维护：商品修改（含删除与库存调整）与发货（销量）时按商品 ID 重新读取，已删除的商品移出索引；
+ * 店铺状态变更只重新读取店铺状态，整体移动该店铺的位图。处理事件的节点经 {@link CacheInvalidationBus}
+ * 通知其他节点重新读取同样的商品与店铺。
+ * 广播不持久化，丢失的更新由定期全量重建兜底；全量重建期间到达的更新在新索引替换旧索引后重放。
+ * 只有 {@code product-search.engine=index} 时才构建与维护索引。
+ */
+@Service
+public class ProductSearchIndex implements OutboxEventHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductSearchIndex.class);
+
+    static final String CHANNEL = "product:search-index";
+
+    private static final Set<OutboxEventType> INDEXED_EVENTS = EnumSet.of(
+            OutboxEventType.PRODUCT_CHANGED, OutboxEventType.ORDER_SHIPPED, OutboxEventType.SHOP_STATUS_CHANGED);
+    private static final String SELECT_SQL = "SELECT p.id, p.name, p.description, p.price, p.category, p.origin, p.sales,"
+            + " p.created_at, p.updated_at, p.published_at, s.id, s.name, s.status"
+            + " FROM products p JOIN shops s ON s.id = p.shop_id";
+    private static final String SHOP_STATUS_SQL = "SELECT id, status FROM shops";
+    private static final String PRODUCT_PREFIX = "p:";
+    private static final String SHOP_PREFIX = "s:";
+    private static final int FETCH_SIZE = 1000;
+    private static final int REFRESH_CHUNK_SIZE = 500;
+
+    private static final int NAME = 0;
+    private static final int CATEGORY_ORIGIN = 1;
+    private static final int DESCRIPTION = 2;
+    private static final int PINYIN = 3;
+    private static final double[] FIELD_WEIGHTS = {1.0, 0.4, 0.2, 0.8};
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private static final Map<String, Comparator<Document>> SORT_FIELDS = Map.of(
+            "price", Comparator.comparing(Document::price),
+            "sales", Comparator.comparingLong(Document::sales),
+            "createdAt", Comparator.comparing(Document::createdAt),
+            "updatedAt", Comparator.comparing(Document::updatedAt),
+            "publishedAt", Comparator.comparing(Document::publishedAt)
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final CacheInvalidationBus bus;
+    private final boolean enabled;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private final Set<Long> updatedDuringRebuild = new HashSet<>();
+    private final Set<Long> shopsUpdatedDuringRebuild = new HashSet<>();
+    private final ExecutorService refreshExecutor;
+
+    private Segment segment = new Segment();
+    private volatile boolean ready;
+
+    public ProductSearchIndex(JdbcTemplate jdbcTemplate,
+                              PlatformTransactionManager transactionManager,
+                              CacheInvalidationBus bus,
+                              MeterRegistry meterRegistry,
+                              @Value("${product-search.engine:database}") String engine) {
+        this.jdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.jdbcTemplate.setFetchSize(FETCH_SIZE);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.bus = bus;
+        this.enabled = "index".equalsIgnoreCase(engine.trim());
+        this.refreshExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "product-search-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (enabled) {
+            bus.subscribe(this::onBroadcast);
+        }
+        Gauge.builder("product.search.index.documents", this, ProductSearchIndex::size)
+                .description("倒排索引中的商品数")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        refreshExecutor.shutdownNow();
+    }
+
+    /**
+     * 启动完成后在后台构建，不阻塞启动线程。
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        if (!enabled) {
+            return;
+        }
+        Thread thread = new Thread(this::scheduledRebuild, "product-search-index-build");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Scheduled(initialDelayString = "${product-search.index-rebuild-interval-ms:3600000}",
+            fixedDelayString = "${product-search.index-rebuild-interval-ms:3600000}")
+    public void scheduledRebuild() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            rebuild();
+        } catch (RuntimeException ex) {
+            log.warn("Product search index rebuild failed: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * 流式读取全部商品构建新索引后整体替换；已有重建在进行时直接返回。
+     */
+    public void rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        Set<Long> replay;
+        Set<Long> replayShops;
+        try {
+            long started = System.nanoTime();
+            Segment fresh = new Segment();
+            transactionTemplate.executeWithoutResult(status ->
+                    jdbcTemplate.query(SELECT_SQL, (RowCallbackHandler) rs -> fresh.put(toDocument(rs))));
+            lock.writeLock().lock();
+            try {
+                segment = fresh;
+                replay = new LinkedHashSet<>(updatedDuringRebuild);
+                updatedDuringRebuild.clear();
+                replayShops = new LinkedHashSet<>(shopsUpdatedDuringRebuild);
+                shopsUpdatedDuringRebuild.clear();
+            } finally {
+                lock.writeLock().unlock();
+            }
+            ready = true;
+            log.info("Product search index built with {} products in {} ms",
+                    fresh.documents.size(), (System.nanoTime() - started) / 1_000_000);
+        } finally {
+            rebuilding.set(false);
+        }
+        refresh(replay);
+        refreshShops(replayShops);
+    }
+
+    /**
+     * 按 ID 从数据库重新读取商品并更新索引，不存在的 ID 视为已删除。
+     */
+    public void refresh(Collection<Long> productIds) {
+        List<Long> ids = List.copyOf(new LinkedHashSet<>(productIds));
+        for (int from = 0; from < ids.size(); from += REFRESH_CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(from + REFRESH_CHUNK_SIZE, ids.size()));
+            String placeholders = chunk.stream().map(id -> "?").collect(Collectors.joining(", "));
+            List<Document> documents = transactionTemplate.execute(status -> jdbcTemplate.query(
+                    SELECT_SQL + " WHERE p.id IN (" + placeholders + ")", (rs, i) -> toDocument(rs), chunk.toArray()));
+            Map<Long, Document> byId = documents.stream().collect(Collectors.toMap(Document::id, d -> d));
+            lock.writeLock().lock();
+            try {
+                for (Long id : chunk) {
+                    Document document = byId.get(id);
+                    if (document == null) {
+                        segment.remove(id);
+                    } else {
+                        segment.put(document);
+                    }
+                }
+                if (rebuilding.get()) {
+                    updatedDuringRebuild.addAll(chunk);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * 重新读取店铺状态。
+     */
+    public void refreshShops(Collection<Long> shopIds) {
+        List<Long> ids = List.copyOf(new LinkedHashSet<>(shopIds));
+        for (int from = 0; from < ids.size(); from += REFRESH_CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(from + REFRESH_CHUNK_SIZE, ids.size()));
+            String placeholders = chunk.stream().map(id -> "?").collect(Collectors.joining(", "));
+            Map<Long, ShopStatus> statuses = new HashMap<>();
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(
+                    SHOP_STATUS_SQL + " WHERE id IN (" + placeholders + ")",
+                    (RowCallbackHandler) rs -> statuses.put(rs.getLong(1), ShopStatus.valueOf(rs.getString(2))),
+                    chunk.toArray()));
+            lock.writeLock().lock();
+            try {
+                statuses.forEach(segment.filters::setShopStatus);
+                if (rebuilding.get()) {
+                    shopsUpdatedDuringRebuild.addAll(chunk);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    @Override
+    public boolean supports(OutboxEventType type) {
+        return enabled && INDEXED_EVENTS.contains(type);
+    }
+
+    @Override
+    public void handle(List<OutboxMessage> messages) {
+        Set<Long> productIds = new LinkedHashSet<>();
+        Set<Long> shopIds = new LinkedHashSet<>();
+        for (OutboxMessage message : messages) {
+            if (message.type() == OutboxEventType.SHOP_STATUS_CHANGED) {
+                shopIds.addAll(message.shopIds());
+            } else {
+                productIds.addAll(message.productIds());
+            }
+        }
+        refresh(productIds);
+        refreshShops(shopIds);
+        broadcast(PRODUCT_PREFIX, productIds);
+        broadcast(SHOP_PREFIX, shopIds);
+    }
+
+    private void broadcast(String prefix, Set<Long> ids) {
+        List<Long> list = List.copyOf(ids);
+        for (int from = 0; from < list.size(); from += REFRESH_CHUNK_SIZE) {
+            String key = list.subList(from, Math.min(from + REFRESH_CHUNK_SIZE, list.size())).stream()
+                    .map(String::valueOf)
+                    .collect(Collectors.joining(",", prefix, ""));
+            bus.publish(new CacheInvalidationBus.CacheInvalidation(nodeId, CHANNEL, key));
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 按筛选条件与关键字（可为 null）检索并排序、分页；排序字段含 {@value ProductSearchRepository#RELEVANCE} 时
+     * 按 BM25F 相关度排序，最后以 ID 降序保证翻页稳定。文本条件须已去空白并转为小写，{@code fuzzy} 条件不受支持。
+     */
+    public Page<ProductDtos.PublicSummary> search(ProductSearchRepository.Criteria criteria, Pageable pageable) {
+        TopHits top = new TopHits(comparator(pageable.getSort()),
+                (int) Math.min(pageable.getOffset() + pageable.getPageSize(), Integer.MAX_VALUE));
+        lock.readLock().lock();
+        try {
+            RoaringBitmap candidates = segment.filters.filter(criteria);
+            if (criteria.keyword() == null) {
+                candidates.forEach((int ordinal) -> top.offer(new Hit(segment.byOrdinal.get(ordinal), 0)));
+            } else {
+                List<String> terms = SearchTokenizer.queryTerms(criteria.keyword()).stream().distinct().toList();
+                if (!terms.isEmpty()) {
+                    collect(terms, candidates, top);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<Hit> hits = top.sorted();
+        int from = (int) Math.min(pageable.getOffset(), hits.size());
+        List<ProductDtos.PublicSummary> content = hits.subList(from, hits.size()).stream()
+                .map(hit -> toSummary(hit.document()))
+                .toList();
+        return new PageImpl<>(content, pageable, top.total);
+    }
+
+    /**
+     * 按与 {@link #search} 相同的条件统计分面，见 {@link ProductFacetCounts}；关键字只做匹配，不计分。
+     */
+    public ProductFacetCounts facets(ProductSearchRepository.Criteria criteria, List<BigDecimal> priceBounds) {
+        ProductSearchRepository.Criteria unfaceted = new ProductSearchRepository.Criteria(criteria.keyword(),
+                null, null, null, null, criteria.shopId(), criteria.shopStatus(), false);
+        lock.readLock().lock();
+        try {
+            RoaringBitmap base = segment.filters.filter(unfaceted);
+            if (criteria.keyword() != null) {
+                base = matching(SearchTokenizer.queryTerms(criteria.keyword()).stream().distinct().toList(), base);
+            }
+            return segment.filters.facets(base, criteria, priceBounds);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int size() {
+        lock.readLock().lock();
+        try {
+            return segment.documents.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 从文档数最少的词开始遍历，跳过不在筛选候选集中的文档，其余词逐个求交并累加得分。
+     */
+    private void collect(List<String> terms, RoaringBitmap candidates, TopHits top) {
+        List<Map<Long, int[]>> postings = terms.stream()
+                .map(term -> segment.postings.getOrDefault(term, Map.of()))
+                .toList();
+        Map<Long, int[]> rarest = postings.stream().min(Comparator.comparingInt(Map::size)).orElseThrow();
+        double[] averageLengths = segment.averageLengths();
+        int documentCount = segment.documents.size();
+        candidates:
+        for (Long id : rarest.keySet()) {
+            if (!candidates.contains(segment.ordinals.get(id))) {
+                continue;
+            }
+            Document document = segment.documents.get(id);
+            double score = 0;
+            for (Map<Long, int[]> posting : postings) {
+                int[] frequencies = posting.get(id);
+                if (frequencies == null) {
+                    continue candidates;
+                }
+                double weighted = 0;
+                for (int field = 0; field < FIELD_WEIGHTS.length; field++) {
+                    double norm = averageLengths[field] == 0 ? 1
+                            : 1 - B + B * document.lengths()[field] / averageLengths[field];
+                    weighted += FIELD_WEIGHTS[field] * frequencies[field] / norm;
+                }
+                double idf = Math.log(1 + (documentCount - posting.size() + 0.5) / (posting.size() + 0.5));
+                score += idf * weighted / (K1 + weighted);
+            }
+            top.offer(new Hit(document, score));
+        }
+    }
+
+    /**
+     * 候选集中包含全部查询词的文档序号。
+     */
+    private RoaringBitmap matching(List<String> terms, RoaringBitmap candidates) {
+        RoaringBitmap matched = new RoaringBitmap();
+        if (terms.isEmpty()) {
+            return matched;
+        }
+        List<Map<Long, int[]>> postings = terms.stream()
+                .map(term -> segment.postings.getOrDefault(term, Map.of()))
+                .toList();
+        Map<Long, int[]> rarest = postings.stream().min(Comparator.comparingInt(Map::size)).orElseThrow();
+        for (Long id : rarest.keySet()) {
+            int ordinal = segment.ordinals.get(id);
+            if (candidates.contains(ordinal) && postings.stream().allMatch(posting -> posting.containsKey(id))) {
+                matched.add(ordinal);
+            }
+        }
+        return matched;
+    }
+
+    private static Comparator<Hit> comparator(Sort sort) {
+        Comparator<Hit> comparator = (a, b) -> 0;
+        for (Sort.Order order : sort) {
+            Comparator<Hit> field;
+            if (ProductSearchRepository.RELEVANCE.equals(order.getProperty())) {
+                field = Comparator.comparingDouble(Hit::score);
+            } else if (SORT_FIELDS.containsKey(order.getProperty())) {
+                field = Comparator.comparing(Hit::document, SORT_FIELDS.get(order.getProperty()));
+            } else {
+                continue;
+            }
+            comparator = comparator.thenComparing(order.isAscending() ? field : field.reversed());
+        }
+        return comparator.thenComparing(hit -> hit.document().id(), Comparator.reverseOrder());
+    }
+
+    private void onBroadcast(CacheInvalidationBus.CacheInvalidation message) {
+        if (!CHANNEL.equals(message.cacheName()) || nodeId.equals(message.origin()) || message.key() == null) {
+            return;
+        }
+        boolean shops = message.key().startsWith(SHOP_PREFIX);
+        List<Long> ids = new ArrayList<>();
+        for (String id : message.key().substring(PRODUCT_PREFIX.length()).split(",")) {
+            ids.add(Long.valueOf(id));
+        }
+        refreshExecutor.execute(() -> {
+            try {
+                if (shops) {
+                    refreshShops(ids);
+                } else {
+                    refresh(ids);
+                }
+            } catch (RuntimeException ex) {
+                log.warn("Product search index refresh failed, waiting for the next rebuild: {}", ex.getMessage());
+            }
+        });
+    }
+
+    private static Document toDocument(ResultSet rs) throws SQLException {
+        String name = rs.getString(2);
+        String description = rs.getString(3);
+        String category = rs.getString(5);
+        String origin = rs.getString(6);
+        Map<String, int[]> frequencies = new HashMap<>();
+        int[] lengths = new int[FIELD_WEIGHTS.length];
+        lengths[NAME] = count(frequencies, NAME, SearchTokenizer.tokenize(name));
+        lengths[CATEGORY_ORIGIN] = count(frequencies, CATEGORY_ORIGIN, SearchTokenizer.tokenize(category))
+                + count(frequencies, CATEGORY_ORIGIN, SearchTokenizer.tokenize(origin));
+        lengths[DESCRIPTION] = count(frequencies, DESCRIPTION, SearchTokenizer.tokenize(description));
+        lengths[PINYIN] = count(frequencies, PINYIN, SearchTokenizer.pinyin(name))
+                + count(frequencies, PINYIN, SearchTokenizer.pinyin(category))
+                + count(frequencies, PINYIN, SearchTokenizer.pinyin(origin));
+        return new Document(rs.getLong(1), name, description, rs.getBigDecimal(4), category, origin, rs.getLong(7),
+                rs.getObject(8, OffsetDateTime.class), rs.getObject(9, OffsetDateTime.class),
+                rs.getObject(10, OffsetDateTime.class), rs.getLong(11), rs.getString(12),
+                ShopStatus.valueOf(rs.getString(13)), Map.copyOf(frequencies), lengths);
+    }
+
+    private static int count(Map<String, int[]> frequencies, int field, List<String> tokens) {
+        tokens.forEach(token -> frequencies.computeIfAbsent(token, t -> new int[FIELD_WEIGHTS.length])[field]++);
+        return tokens.size();
+    }
+
+    private static ProductDtos.PublicSummary toSummary(Document document) {
+        ProductDtos.PublicSummary summary = new ProductDtos.PublicSummary();
+        summary.id = document.id();
+        summary.name = document.name();
+        summary.description = document.description();
+        summary.price = document.price();
+        summary.category = document.category();
+        summary.origin = document.origin();
+        summary.sales = document.sales();
+        summary.publishedAt = document.publishedAt();
+        summary.shopId = document.shopId();
+        summary.shopName = document.shopName();
+        return summary;
+    }
+
+    /**
+     * 索引中的商品；{@code shopStatus} 为读取时的店铺状态，{@code frequencies} 为各词在各字段中的出现次数，
+     * {@code lengths} 为各字段的词数。
+     */
+    private record Document(long id, String name, String description, BigDecimal price, String category,
+                            String origin, long sales, OffsetDateTime createdAt, OffsetDateTime updatedAt,
+                            OffsetDateTime publishedAt, long shopId, String shopName, ShopStatus shopStatus,
+                            Map<String, int[]> frequencies, int[] lengths) {
+    }
+
+    private record Hit(Document document, double score) {
+    }
+
+    /**
+     * 按排序规则保留前 {@code limit} 条命中，并统计命中总数。
+     */
+    private static final class TopHits {
+
+        private final Comparator<Hit> comparator;
+        private final int limit;
+        private final PriorityQueue<Hit> heap;
+        private long total;
+
+        TopHits(Comparator<Hit> comparator, int limit) {
+            this.comparator = comparator;
+            this.limit = limit;
+            this.heap = new PriorityQueue<>(comparator.reversed());
+        }
+
+        void offer(Hit hit) {
+            total++;
+            if (limit <= 0) {
+                return;
+            }
+            if (heap.size() < limit) {
+                heap.add(hit);
+            } else if (comparator.compare(hit, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(hit);
+            }
+        }
+
+        List<Hit> sorted() {
+            List<Hit> hits = new ArrayList<>(heap);
+            hits.sort(comparator);
+            return hits;
+        }
+    }
+
+    /**
+     * 一份完整的索引：文档及其序号、词到（商品 ID → 各字段词频）的倒排表、各字段的总词数，以及筛选位图。
+     * 删除的商品留下空序号，重建时回收。非线程安全，由外层的锁保护。
+     */
+    private static final class Segment {
+
+        private final Map<Long, Document> documents = new HashMap<>();
+        private final Map<Long, Integer> ordinals = new HashMap<>();
+        private final List<Document> byOrdinal = new ArrayList<>();
+        private final Map<String, Map<Long, int[]>> postings = new HashMap<>();
+        private final long[] totalLengths = new long[FIELD_WEIGHTS.length];
+        private final ProductFilterBitmaps filters = new ProductFilterBitmaps();
+
+        void put(Document document) {
+            remove(document.id());
+            documents.put(document.id(), document);
+            Integer ordinal = ordinals.get(document.id());
+            if (ordinal == null) {
+                ordinal = byOrdinal.size();
+                ordinals.put(document.id(), ordinal);
+                byOrdinal.add(document);
+            } else {
+                byOrdinal.set(ordinal, document);
+            }
+            filters.setShopStatus(document.shopId(), document.shopStatus());
+            filters.add(ordinal, document.category(), document.origin(), document.shopId(), document.price());
+            document.frequencies().forEach((term, frequencies) ->
+                    postings.computeIfAbsent(term, t -> new HashMap<>()).put(document.id(), frequencies));
+            for (int field = 0; field < totalLengths.length; field++) {
+                totalLengths[field] += document.lengths()[field];
+            }
+        }
+
+        void remove(long id) {
+            Document previous = documents.remove(id);
+            if (previous == null) {
+                return;
+            }
+            int ordinal = ordinals.get(id);
+            byOrdinal.set(ordinal, null);
+            filters.remove(ordinal, previous.category(), previous.origin(), previous.shopId(), previous.price());
+            for (String term : previous.frequencies().keySet()) {
+                Map<Long, int[]> posting = postings.get(term);
+                posting.remove(id);
+                if (posting.isEmpty()) {
+                    postings.remove(term);
+                }
+            }
+            for (int field = 0; field < totalLengths.length; field++) {
+                totalLengths[field] -= previous.lengths()[field];
+            }
+        }
+
+        double[] averageLengths() {
+            double[] averages = new double[totalLengths.length];
+            if (!documents.isEmpty()) {
+                for (int field = 0; field < totalLengths.length; field++) {
+                    averages[field] = (double) totalLengths[field] / documents.size();
+                }
+            }
+            return averages;
+        }
+    }
+}
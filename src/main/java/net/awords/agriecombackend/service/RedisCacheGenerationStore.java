@@ -0,0 +1,40 @@
+package net.awords.agriecombackend.service;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 基于 Redis 的缓存代数，读取用一次 MGET，递增用 INCR，多实例共享同一组代数。
+ */
+@Component
+@Profile("!test")
+public class RedisCacheGenerationStore implements CacheGenerationStore {
+
+    private static final String KEY_PREFIX = "cache:gen:";
+
+    private final StringRedisTemplate redisTemplate;
+
+    public RedisCacheGenerationStore(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public List<Long> current(List<String> tags) {
+        List<String> values = redisTemplate.opsForValue().multiGet(tags.stream().map(tag -> KEY_PREFIX + tag).toList());
+        if (values == null) {
+            return tags.stream().map(tag -> 0L).toList();
+        }
+        return values.stream().map(value -> value == null ? 0L : Long.parseLong(value)).toList();
+    }
+
+    @Override
+    public void bump(Collection<String> tags) {
+        for (String tag : tags) {
+            redisTemplate.opsForValue().increment(KEY_PREFIX + tag);
+        }
+    }
+}
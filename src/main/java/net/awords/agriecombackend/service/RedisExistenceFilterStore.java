@@ -0,0 +1,132 @@
+package net.awords.agriecombackend.service;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 基于 Redis 位图（GETBIT/SETBIT）的布隆过滤器，多实例共享同一份位图，一次查询只需一次脚本调用。
+ * 同一过滤器的键带相同的 hash tag，集群模式下落在同一个 slot，替换与双写可在脚本内原子完成。
+ */
+@Component
+@Profile("!test")
+public class RedisExistenceFilterStore implements ExistenceFilterStore {
+
+    private static final String KEY_PREFIX = "{existence:";
+
+    private static final RedisScript<Long> CONTAINS_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('EXISTS', KEYS[1]) == 0 then
+              return 1
+            end
+            for i = 1, #ARGV do
+              if redis.call('GETBIT', KEYS[1], ARGV[i]) == 0 then
+                return 0
+              end
+            end
+            return 1
+            """, Long.class);
+
+    /**
+     * KEYS 为在用位图与暂存位图，只置位已存在的位图。
+     */
+    private static final RedisScript<Long> ADD_SCRIPT = new DefaultRedisScript<>("""
+            for k = 1, #KEYS do
+              if redis.call('EXISTS', KEYS[k]) == 1 then
+                for i = 1, #ARGV do
+                  redis.call('SETBIT', KEYS[k], ARGV[i], 1)
+                end
+              end
+            end
+            return 0
+            """, Long.class);
+
+    private static final RedisScript<Long> BEGIN_SCRIPT = new DefaultRedisScript<>("""
+            redis.call('DEL', KEYS[1])
+            redis.call('SETBIT', KEYS[1], 0, 0)
+            redis.call('PEXPIRE', KEYS[1], ARGV[1])
+            return 0
+            """, Long.class);
+
+    /**
+     * KEYS[1] 为暂存位图，KEYS[2] 为在用位图，KEYS[3] 为建立时间。
+     */
+    private static final RedisScript<Long> FINISH_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('EXISTS', KEYS[1]) == 0 then
+              return 0
+            end
+            redis.call('RENAME', KEYS[1], KEYS[2])
+            redis.call('PERSIST', KEYS[2])
+            redis.call('SET', KEYS[3], ARGV[1])
+            return 1
+            """, Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+
+    public RedisExistenceFilterStore(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public boolean mightContain(String filter, long[] offsets) {
+        Long result = redisTemplate.execute(CONTAINS_SCRIPT, List.of(bitsKey(filter)), args(offsets));
+        return result == null || result != 0;
+    }
+
+    @Override
+    public void add(String filter, long[] offsets) {
+        redisTemplate.execute(ADD_SCRIPT, List.of(bitsKey(filter), stagingKey(filter)), args(offsets));
+    }
+
+    @Override
+    public void beginRebuild(String filter, Duration ttl) {
+        redisTemplate.execute(BEGIN_SCRIPT, List.of(stagingKey(filter)), String.valueOf(ttl.toMillis()));
+    }
+
+    @Override
+    public void addToRebuild(String filter, long[] offsets) {
+        redisTemplate.execute(ADD_SCRIPT, List.of(stagingKey(filter)), args(offsets));
+    }
+
+    @Override
+    public boolean finishRebuild(String filter, long builtAtMs) {
+        Long result = redisTemplate.execute(FINISH_SCRIPT,
+                List.of(stagingKey(filter), bitsKey(filter), builtAtKey(filter)), String.valueOf(builtAtMs));
+        return result != null && result == 1;
+    }
+
+    @Override
+    public void abortRebuild(String filter) {
+        redisTemplate.delete(stagingKey(filter));
+    }
+
+    @Override
+    public Long builtAt(String filter) {
+        String value = redisTemplate.opsForValue().get(builtAtKey(filter));
+        return value == null ? null : Long.parseLong(value);
+    }
+
+    private static Object[] args(long[] offsets) {
+        Object[] args = new Object[offsets.length];
+        for (int i = 0; i < offsets.length; i++) {
+            args[i] = String.valueOf(offsets[i]);
+        }
+        return args;
+    }
+
+    private static String bitsKey(String filter) {
+        return KEY_PREFIX + filter + "}:bits";
+    }
+
+    private static String stagingKey(String filter) {
+        return KEY_PREFIX + filter + "}:staging";
+    }
+
+    private static String builtAtKey(String filter) {
+        return KEY_PREFIX + filter + "}:built-at";
+    }
+}
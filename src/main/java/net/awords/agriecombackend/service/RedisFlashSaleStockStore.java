@@ -0,0 +1,243 @@
+package net.awords.agriecombackend.service;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 基于 Redis 的秒杀库存计数器，所有多键操作均通过 Lua 脚本保证原子性。
+ * 键统一带 {flash} hash tag，集群模式下落在同一个 slot，脚本可跨键执行。
+ */
+@Component
+@Profile("!test")
+public class RedisFlashSaleStockStore implements FlashSaleStockStore {
+
+    private static final String STOCK_KEY_PREFIX = "{flash}:stock:";
+    private static final String PENDING_KEY = "{flash}:pending";
+    private static final String PRODUCTS_KEY = "{flash}:products";
+    private static final String LOCK_KEY = "{flash}:reconcile-lock";
+
+    /**
+     * KEYS[1..n] 为各商品库存键，KEYS[n+1] 为 pending 哈希；ARGV[1..n] 为数量，ARGV[n+1..2n] 为商品 ID。
+     */
+    private static final RedisScript<List> RESERVE_SCRIPT = new DefaultRedisScript<>("""
+            local n = #KEYS - 1
+            local result = {}
+            local short = false
+            for i = 1, n do
+              local v = redis.call('GET', KEYS[i])
+              if not v then
+                result[i] = 0
+              elseif tonumber(v) < tonumber(ARGV[i]) then
+                result[i] = -1
+                short = true
+              else
+                result[i] = 1
+              end
+            end
+            if not short then
+              for i = 1, n do
+                if result[i] == 1 then
+                  redis.call('DECRBY', KEYS[i], ARGV[i])
+                  redis.call('HINCRBY', KEYS[n + 1], ARGV[n + i], ARGV[i])
+                end
+              end
+            end
+            return result
+            """, List.class);
+
+    private static final RedisScript<List> RELEASE_SCRIPT = new DefaultRedisScript<>("""
+            local n = #KEYS - 1
+            local result = {}
+            for i = 1, n do
+              if redis.call('EXISTS', KEYS[i]) == 1 then
+                redis.call('INCRBY', KEYS[i], ARGV[i])
+                redis.call('HINCRBY', KEYS[n + 1], ARGV[n + i], -tonumber(ARGV[i]))
+                result[i] = 1
+              else
+                result[i] = 0
+              end
+            end
+            return result
+            """, List.class);
+
+    private static final RedisScript<Long> RESTOCK_SCRIPT = new DefaultRedisScript<>("""
+            for i = 1, #KEYS do
+              if redis.call('EXISTS', KEYS[i]) == 1 then
+                redis.call('INCRBY', KEYS[i], ARGV[i])
+              end
+            end
+            return 0
+            """, Long.class);
+
+    /**
+     * KEYS: 库存键、pending 哈希、商品集合；ARGV: 商品 ID、数据库库存。
+     * 返回 {修正前的 available（不存在时为 -1）, 写入的 available}。
+     */
+    private static final RedisScript<List> RESYNC_SCRIPT = new DefaultRedisScript<>("""
+            local pending = tonumber(redis.call('HGET', KEYS[2], ARGV[1]) or '0')
+            local old = redis.call('GET', KEYS[1])
+            local available = tonumber(ARGV[2]) - pending
+            if available < 0 then
+              available = 0
+            end
+            redis.call('SET', KEYS[1], available)
+            redis.call('SADD', KEYS[3], ARGV[1])
+            return {tonumber(old or '-1'), available}
+            """, List.class);
+
+    private static final RedisScript<Long> REMOVE_SCRIPT = new DefaultRedisScript<>("""
+            redis.call('DEL', KEYS[1])
+            redis.call('SREM', KEYS[3], ARGV[1])
+            local pending = redis.call('HGET', KEYS[2], ARGV[1])
+            redis.call('HDEL', KEYS[2], ARGV[1])
+            return tonumber(pending or '0')
+            """, Long.class);
+
+    /**
+     * ARGV 为成对的商品 ID 与已回写数量，扣减后归零的项直接删除。
+     */
+    private static final RedisScript<Long> ACKNOWLEDGE_SCRIPT = new DefaultRedisScript<>("""
+            for i = 1, #ARGV, 2 do
+              local left = redis.call('HINCRBY', KEYS[1], ARGV[i], -tonumber(ARGV[i + 1]))
+              if left == 0 then
+                redis.call('HDEL', KEYS[1], ARGV[i])
+              end
+            end
+            return 0
+            """, Long.class);
+
+    private static final RedisScript<Long> UNLOCK_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+              return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """, Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+
+    public RedisFlashSaleStockStore(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @Override
+    public Map<Long, Integer> reserve(Map<Long, Integer> quantityByProduct) {
+        List<Long> ids = new ArrayList<>(quantityByProduct.keySet());
+        List<?> result = redisTemplate.execute(RESERVE_SCRIPT, linesKeys(ids), linesArgs(ids, quantityByProduct));
+        Map<Long, Integer> outcome = new LinkedHashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            outcome.put(ids.get(i), ((Number) result.get(i)).intValue());
+        }
+        return outcome;
+    }
+
+    @Override
+    public List<Long> release(Map<Long, Integer> quantityByProduct) {
+        List<Long> ids = new ArrayList<>(quantityByProduct.keySet());
+        List<?> result = redisTemplate.execute(RELEASE_SCRIPT, linesKeys(ids), linesArgs(ids, quantityByProduct));
+        List<Long> missing = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            if (((Number) result.get(i)).intValue() == 0) {
+                missing.add(ids.get(i));
+            }
+        }
+        return missing;
+    }
+
+    @Override
+    public void restock(Map<Long, Integer> quantityByProduct) {
+        List<Long> ids = new ArrayList<>(quantityByProduct.keySet());
+        Object[] args = ids.stream().map(id -> String.valueOf(quantityByProduct.get(id))).toArray();
+        redisTemplate.execute(RESTOCK_SCRIPT, ids.stream().map(RedisFlashSaleStockStore::stockKey).toList(), args);
+    }
+
+    @Override
+    public Resync resync(Long productId, int dbStock) {
+        List<?> result = redisTemplate.execute(RESYNC_SCRIPT, List.of(stockKey(productId), PENDING_KEY, PRODUCTS_KEY),
+                String.valueOf(productId), String.valueOf(dbStock));
+        long before = ((Number) result.get(0)).longValue();
+        return before < 0 ? null : new Resync(before, ((Number) result.get(1)).longValue());
+    }
+
+    @Override
+    public long remove(Long productId) {
+        Long pending = redisTemplate.execute(REMOVE_SCRIPT, List.of(stockKey(productId), PENDING_KEY, PRODUCTS_KEY),
+                String.valueOf(productId));
+        return pending == null ? 0L : pending;
+    }
+
+    @Override
+    public Map<Long, Long> pendingSnapshot() {
+        Map<Object, Object> entries = redisTemplate.opsForHash().entries(PENDING_KEY);
+        Map<Long, Long> snapshot = new LinkedHashMap<>();
+        entries.forEach((k, v) -> {
+            long pending = Long.parseLong(v.toString());
+            if (pending != 0) {
+                snapshot.put(Long.valueOf(k.toString()), pending);
+            }
+        });
+        return snapshot;
+    }
+
+    @Override
+    public void acknowledge(Map<Long, Long> applied) {
+        if (applied.isEmpty()) {
+            return;
+        }
+        List<String> args = new ArrayList<>();
+        applied.forEach((id, amount) -> {
+            args.add(String.valueOf(id));
+            args.add(String.valueOf(amount));
+        });
+        redisTemplate.execute(ACKNOWLEDGE_SCRIPT, List.of(PENDING_KEY), args.toArray());
+    }
+
+    @Override
+    public List<Long> managedProductIds() {
+        Set<String> members = redisTemplate.opsForSet().members(PRODUCTS_KEY);
+        if (members == null) {
+            return Collections.emptyList();
+        }
+        return members.stream().map(Long::valueOf).toList();
+    }
+
+    @Override
+    public boolean tryLock(String owner, Duration ttl) {
+        return Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(LOCK_KEY, owner, ttl));
+    }
+
+    @Override
+    public void unlock(String owner) {
+        redisTemplate.execute(UNLOCK_SCRIPT, List.of(LOCK_KEY), owner);
+    }
+
+    private static String stockKey(Long productId) {
+        return STOCK_KEY_PREFIX + productId;
+    }
+
+    private static List<String> linesKeys(List<Long> ids) {
+        List<String> keys = new ArrayList<>(ids.size() + 1);
+        ids.forEach(id -> keys.add(stockKey(id)));
+        keys.add(PENDING_KEY);
+        return keys;
+    }
+
+    private static Object[] linesArgs(List<Long> ids, Map<Long, Integer> quantityByProduct) {
+        Object[] args = new Object[ids.size() * 2];
+        for (int i = 0; i < ids.size(); i++) {
+            args[i] = String.valueOf(quantityByProduct.get(ids.get(i)));
+            args[ids.size() + i] = String.valueOf(ids.get(i));
+        }
+        return args;
+    }
+}
@@ -0,0 +1,145 @@
+package net.awords.agriecombackend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基于 Redis 哈希的实时库存与销量，每个商品一个哈希（stock、sales 两个字段），增量以 Lua 脚本批量原子执行。
+ * 变更版本号是另一个计数键，每次递增时续期一个实时数据 TTL，载入耗时超过 TTL 时版本号可能过期归零，只会多放弃一次写入。
+ * 键统一带 {product-live} hash tag，集群模式下落在同一个 slot，脚本可跨键执行。
+ */
+@Component
+@Profile("!test")
+public class RedisProductLiveStatsStore implements ProductLiveStatsStore {
+
+    private static final String KEY_PREFIX = "{product-live}:";
+    private static final String STOCK = "stock";
+    private static final String SALES = "sales";
+
+    private static final String VERSION_SUFFIX = ":version";
+
+    /**
+     * KEYS[1] 为哈希、KEYS[2] 为版本号；ARGV 为库存、销量、TTL 与载入前取得的版本号。
+     */
+    private static final RedisScript<Long> PUT_IF_UNCHANGED_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('EXISTS', KEYS[1]) == 1 or (redis.call('GET', KEYS[2]) or '0') ~= ARGV[4] then
+              return 0
+            end
+            redis.call('HSET', KEYS[1], 'stock', ARGV[1], 'sales', ARGV[2])
+            redis.call('PEXPIRE', KEYS[1], ARGV[3])
+            return 1
+            """, Long.class);
+
+    /**
+     * KEYS 为各商品的哈希与版本号交替排列；ARGV[1] 为字段名，ARGV[2] 为版本号 TTL，ARGV[3..n+2] 为对应增量。
+     */
+    private static final RedisScript<Long> INCREMENT_SCRIPT = new DefaultRedisScript<>("""
+            for i = 1, #KEYS, 2 do
+              if redis.call('EXISTS', KEYS[i]) == 1 then
+                redis.call('HINCRBY', KEYS[i], ARGV[1], ARGV[(i + 1) / 2 + 2])
+              end
+              redis.call('INCR', KEYS[i + 1])
+              redis.call('PEXPIRE', KEYS[i + 1], ARGV[2])
+            end
+            return 0
+            """, Long.class);
+
+    /**
+     * KEYS 为各商品的哈希与版本号交替排列；ARGV[1] 为版本号 TTL。
+     */
+    private static final RedisScript<Long> DELETE_SCRIPT = new DefaultRedisScript<>("""
+            for i = 1, #KEYS, 2 do
+              redis.call('DEL', KEYS[i])
+              redis.call('INCR', KEYS[i + 1])
+              redis.call('PEXPIRE', KEYS[i + 1], ARGV[1])
+            end
+            return 0
+            """, Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final String versionTtlMs;
+
+    public RedisProductLiveStatsStore(StringRedisTemplate redisTemplate,
+                                      @Value("${product-live.ttl-ms:60000}") long ttlMs) {
+        this.redisTemplate = redisTemplate;
+        this.versionTtlMs = String.valueOf(ttlMs);
+    }
+
+    @Override
+    public ProductLiveStats get(long productId) {
+        List<Object> values = redisTemplate.opsForHash().multiGet(key(productId), List.of(STOCK, SALES));
+        if (values.size() < 2 || values.get(0) == null || values.get(1) == null) {
+            return null;
+        }
+        return new ProductLiveStats(Integer.parseInt((String) values.get(0)), Long.parseLong((String) values.get(1)));
+    }
+
+    @Override
+    public long version(long productId) {
+        String version = redisTemplate.opsForValue().get(versionKey(productId));
+        return version == null ? 0L : Long.parseLong(version);
+    }
+
+    @Override
+    public void putIfUnchanged(long productId, ProductLiveStats stats, Duration ttl, long version) {
+        redisTemplate.execute(PUT_IF_UNCHANGED_SCRIPT, List.of(key(productId), versionKey(productId)),
+                String.valueOf(stats.stock()), String.valueOf(stats.sales()), String.valueOf(ttl.toMillis()),
+                String.valueOf(version));
+    }
+
+    @Override
+    public void incrementStock(Map<Long, Integer> deltaByProduct) {
+        increment(STOCK, deltaByProduct);
+    }
+
+    @Override
+    public void incrementSales(Map<Long, Integer> deltaByProduct) {
+        increment(SALES, deltaByProduct);
+    }
+
+    @Override
+    public void delete(Collection<Long> productIds) {
+        if (!productIds.isEmpty()) {
+            List<String> keys = new ArrayList<>(productIds.size() * 2);
+            productIds.forEach(productId -> {
+                keys.add(key(productId));
+                keys.add(versionKey(productId));
+            });
+            redisTemplate.execute(DELETE_SCRIPT, keys, versionTtlMs);
+        }
+    }
+
+    private void increment(String field, Map<Long, Integer> deltaByProduct) {
+        if (deltaByProduct.isEmpty()) {
+            return;
+        }
+        List<String> keys = new ArrayList<>(deltaByProduct.size() * 2);
+        List<String> args = new ArrayList<>(deltaByProduct.size() + 2);
+        args.add(field);
+        args.add(versionTtlMs);
+        deltaByProduct.forEach((productId, delta) -> {
+            keys.add(key(productId));
+            keys.add(versionKey(productId));
+            args.add(String.valueOf(delta));
+        });
+        redisTemplate.execute(INCREMENT_SCRIPT, keys, args.toArray());
+    }
+
+    private static String key(long productId) {
+        return KEY_PREFIX + productId;
+    }
+
+    private static String versionKey(long productId) {
+        return KEY_PREFIX + productId + VERSION_SUFFIX;
+    }
+}
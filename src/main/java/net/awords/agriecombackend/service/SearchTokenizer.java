@@ -0,0 +1,189 @@
+package net.awords.agriecombackend.service;
+
+import net.sourceforge.pinyin4j.PinyinHelper;
+import net.sourceforge.pinyin4j.format.HanyuPinyinCaseType;
+import net.sourceforge.pinyin4j.format.HanyuPinyinOutputFormat;
+import net.sourceforge.pinyin4j.format.HanyuPinyinToneType;
+import net.sourceforge.pinyin4j.format.HanyuPinyinVCharType;
+import net.sourceforge.pinyin4j.format.exception.BadHanyuPinyinOutputFormatCombination;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * 检索分词：转小写后按非字母数字字符切分，拉丁字母与数字的连续串作为一个词；中日韩文字的连续串切为相邻二元组，
+ * 建索引时另输出单字，使单字查询也能命中。查询时连续两字以上只取二元组，要求相邻命中，避免单字拼凑出的误匹配。
+ * <p>
+ * 移动端常输入拼音，{@link #pinyin(String)} 为名称、分类与产地中的汉字串输出拼音词：每个字的全拼、
+ * 相邻两字与整串的全拼和首字母（如「有机苹果」输出 ping、pingguo、pg、youjipingguo、yjpg 等），
+ * 多音字按各读音组合（整串最多 {@value #MAX_READING_COMBINATIONS} 种）。拼音查询按拉丁词匹配这些词。
+ */
+public final class SearchTokenizer {
+
+    static final int MAX_READING_COMBINATIONS = 8;
+
+    private static final HanyuPinyinOutputFormat PINYIN_FORMAT = new HanyuPinyinOutputFormat();
+
+    static {
+        PINYIN_FORMAT.setCaseType(HanyuPinyinCaseType.LOWERCASE);
+        PINYIN_FORMAT.setToneType(HanyuPinyinToneType.WITHOUT_TONE);
+        PINYIN_FORMAT.setVCharType(HanyuPinyinVCharType.WITH_V);
+    }
+
+    private SearchTokenizer() {
+    }
+
+    /**
+     * 建索引用的词。
+     */
+    public static List<String> tokenize(String text) {
+        return split(text, true);
+    }
+
+    /**
+     * 查询用的词。
+     */
+    public static List<String> queryTerms(String text) {
+        return split(text, false);
+    }
+
+    /**
+     * 文本中各汉字串的拼音词。
+     */
+    public static List<String> pinyin(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        List<List<String>> run = new ArrayList<>();
+        text.codePoints().forEach(codePoint -> {
+            List<String> readings = readings(codePoint);
+            if (readings.isEmpty()) {
+                addPinyin(run, terms);
+                run.clear();
+            } else {
+                run.add(readings);
+            }
+        });
+        addPinyin(run, terms);
+        return terms;
+    }
+
+    static boolean isCjk(int codePoint) {
+        if (Character.isIdeographic(codePoint)) {
+            return true;
+        }
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+
+    private static List<String> split(String text, boolean indexing) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        StringBuilder word = new StringBuilder();
+        List<String> cjkRun = new ArrayList<>();
+        text.toLowerCase(Locale.ROOT).codePoints().forEach(codePoint -> {
+            if (isCjk(codePoint)) {
+                flushWord(word, tokens);
+                cjkRun.add(new String(Character.toChars(codePoint)));
+            } else {
+                flushCjk(cjkRun, tokens, indexing);
+                if (Character.isLetterOrDigit(codePoint)) {
+                    word.appendCodePoint(codePoint);
+                } else {
+                    flushWord(word, tokens);
+                }
+            }
+        });
+        flushWord(word, tokens);
+        flushCjk(cjkRun, tokens, indexing);
+        return tokens;
+    }
+
+    private static void flushWord(StringBuilder word, List<String> tokens) {
+        if (!word.isEmpty()) {
+            tokens.add(word.toString());
+            word.setLength(0);
+        }
+    }
+
+    private static void flushCjk(List<String> run, List<String> tokens, boolean indexing) {
+        if (run.size() == 1 || indexing) {
+            tokens.addAll(run);
+        }
+        for (int i = 0; i + 1 < run.size(); i++) {
+            tokens.add(run.get(i) + run.get(i + 1));
+        }
+        run.clear();
+    }
+
+    private static void addPinyin(List<List<String>> run, List<String> terms) {
+        for (int i = 0; i < run.size(); i++) {
+            terms.addAll(run.get(i));
+            if (i + 1 < run.size()) {
+                addCombinations(run.subList(i, i + 2), terms);
+            }
+        }
+        if (run.size() > 2) {
+            addCombinations(run, terms);
+        }
+    }
+
+    /**
+     * 按各字读音的组合输出全拼与首字母。
+     */
+    private static void addCombinations(List<List<String>> syllables, List<String> terms) {
+        Set<String> full = new LinkedHashSet<>();
+        Set<String> initials = new LinkedHashSet<>();
+        combine(syllables, 0, new StringBuilder(), new StringBuilder(), combination -> {
+            full.add(combination[0]);
+            initials.add(combination[1]);
+        }, new int[]{MAX_READING_COMBINATIONS});
+        terms.addAll(full);
+        terms.addAll(initials);
+    }
+
+    private static void combine(List<List<String>> syllables, int index, StringBuilder full, StringBuilder initials,
+                                Consumer<String[]> sink, int[] budget) {
+        if (index == syllables.size()) {
+            budget[0]--;
+            sink.accept(new String[]{full.toString(), initials.toString()});
+            return;
+        }
+        for (String reading : syllables.get(index)) {
+            if (budget[0] <= 0) {
+                return;
+            }
+            int fullLength = full.length();
+            int initialsLength = initials.length();
+            full.append(reading);
+            initials.append(reading.charAt(0));
+            combine(syllables, index + 1, full, initials, sink, budget);
+            full.setLength(fullLength);
+            initials.setLength(initialsLength);
+        }
+    }
+
+    private static List<String> readings(int codePoint) {
+        if (!Character.isBmpCodePoint(codePoint) || !Character.isIdeographic(codePoint)) {
+            return List.of();
+        }
+        try {
+            String[] readings = PinyinHelper.toHanyuPinyinStringArray((char) codePoint, PINYIN_FORMAT);
+            if (readings == null) {
+                return List.of();
+            }
+            return List.copyOf(new LinkedHashSet<>(List.of(readings)));
+        } catch (BadHanyuPinyinOutputFormatCombination ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
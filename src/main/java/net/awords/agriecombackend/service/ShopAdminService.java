@@ -2,6 +2,7 @@ package net.awords.agriecombackend.service;
 
 import net.awords.agriecombackend.dto.shop.ShopDtos;
 import net.awords.agriecombackend.dto.shop.ShopMapper;
+import net.awords.agriecombackend.entity.OutboxEventType;
 import net.awords.agriecombackend.entity.Shop;
 import net.awords.agriecombackend.entity.ShopStatus;
 import net.awords.agriecombackend.repository.ProductRepository;
@@ -18,10 +19,13 @@ public class ShopAdminService {
 
     private final ShopRepository shopRepository;
     private final ProductRepository productRepository;
+    private final OutboxService outboxService;
 
-    public ShopAdminService(ShopRepository shopRepository, ProductRepository productRepository) {
+    public ShopAdminService(ShopRepository shopRepository, ProductRepository productRepository,
+                            OutboxService outboxService) {
         this.shopRepository = shopRepository;
         this.productRepository = productRepository;
+        this.outboxService = outboxService;
     }
 
     @Transactional(readOnly = true)
@@ -39,6 +43,7 @@ public class ShopAdminService {
         }
         shop.setStatus(ShopStatus.ACTIVE);
         shopRepository.save(shop);
+        recordStatusChanged(shop);
         return ShopMapper.toDetailResponse(shop, productRepository.countByShopId(shop.getId()));
     }
 
@@ -61,9 +66,20 @@ public class ShopAdminService {
         }
         shop.setStatus(ShopStatus.SUSPENDED);
         shopRepository.save(shop);
+        recordStatusChanged(shop);
         return ShopMapper.toDetailResponse(shop, productRepository.countByShopId(shop.getId()));
     }
 
+    /**
+     * 上线与封禁决定店铺及其商品能否在前台查看，提交后失效店铺详情、该店铺商品的详情，
+     * 以及该店铺所涉分类的商品列表缓存。
+     */
+    private void recordStatusChanged(Shop shop) {
+        outboxService.record(OutboxEventType.SHOP_STATUS_CHANGED, shop.getId(),
+                productRepository.findIdsByShopId(shop.getId()), List.of(shop.getId()),
+                productRepository.findDistinctCategoriesByShopId(shop.getId()));
+    }
+
     private Shop loadShop(Long shopId) {
         return shopRepository.findById(shopId)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "店铺不存在"));
@@ -1,31 +1,38 @@
 package net.awords.agriecombackend.service;
 
+import net.awords.agriecombackend.dto.SliceResult;
 import net.awords.agriecombackend.dto.order.OrderDtos;
 import net.awords.agriecombackend.dto.order.OrderMapper;
 import net.awords.agriecombackend.entity.OrderGroup;
 import net.awords.agriecombackend.entity.OrderItem;
 import net.awords.agriecombackend.entity.OrderStatus;
+import net.awords.agriecombackend.entity.OutboxEventType;
 import net.awords.agriecombackend.entity.Product;
 import net.awords.agriecombackend.entity.ShopOrder;
 import net.awords.agriecombackend.entity.User;
+import net.awords.agriecombackend.repository.CreatedAtKey;
 import net.awords.agriecombackend.repository.OrderGroupRepository;
 import net.awords.agriecombackend.repository.ProductRepository;
 import net.awords.agriecombackend.repository.ShopOrderRepository;
 import net.awords.agriecombackend.repository.UserRepository;
-import org.springframework.cache.Cache;
-import org.springframework.cache.CacheManager;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.time.OffsetDateTime;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * 商户侧订单服务，负责列表、详情与发货逻辑。
@@ -33,22 +40,27 @@ import java.util.Objects;
 @Service
 public class ShopOrderService {
 
+    private static final String ORDER_SORT = "createdAt:DESC";
+
     private final ShopOrderRepository shopOrderRepository;
     private final OrderGroupRepository orderGroupRepository;
     private final UserRepository userRepository;
     private final ProductRepository productRepository;
-    private final CacheManager cacheManager;
+    private final OutboxService outboxService;
+    private final ProductLiveStatsService liveStatsService;
 
     public ShopOrderService(ShopOrderRepository shopOrderRepository,
                             OrderGroupRepository orderGroupRepository,
                             UserRepository userRepository,
                             ProductRepository productRepository,
-                            CacheManager cacheManager) {
+                            OutboxService outboxService,
+                            ProductLiveStatsService liveStatsService) {
         this.shopOrderRepository = shopOrderRepository;
         this.orderGroupRepository = orderGroupRepository;
         this.userRepository = userRepository;
         this.productRepository = productRepository;
-        this.cacheManager = cacheManager;
+        this.outboxService = outboxService;
+        this.liveStatsService = liveStatsService;
     }
 
     @Transactional(readOnly = true)
@@ -57,11 +69,40 @@ public class ShopOrderService {
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "用户不存在"));
         int sanitizedPage = Math.max(page, 0);
         int sanitizedSize = size <= 0 ? 10 : Math.min(size, 50);
-        Pageable pageable = PageRequest.of(sanitizedPage, sanitizedSize);
+        Pageable pageable = PageRequest.of(sanitizedPage, sanitizedSize,
+                Sort.by(Sort.Direction.DESC, "createdAt", "id"));
         Page<ShopOrder> result = shopOrderRepository.findByShopOwnerId(merchant.getId(), pageable);
         return OrderMapper.toPageResult(result, result.getContent().stream().map(OrderMapper::toShopOrderSummary).toList());
     }
 
+    /**
+     * 游标分页（见 {@link PageCursor}），排序同 {@link #list}：先在 (shop_id, created_at, id) 索引上定位一页 ID，
+     * 再抓取订单明细，不统计总数。
+     */
+    @Transactional(readOnly = true)
+    public SliceResult<OrderDtos.ShopOrderSummary> scroll(String username, String cursor, int size) {
+        User merchant = userRepository.findByUsername(username)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "用户不存在"));
+        int sanitizedSize = size <= 0 ? 10 : Math.min(size, 50);
+        Pageable limit = PageRequest.of(0, sanitizedSize + 1);
+        List<CreatedAtKey> keys;
+        if (StringUtils.hasText(cursor)) {
+            PageCursor after = PageCursor.decode(cursor, ORDER_SORT);
+            keys = shopOrderRepository.findKeysByShopOwnerIdBefore(merchant.getId(), after.timeValue(), after.id(), limit);
+        } else {
+            keys = shopOrderRepository.findKeysByShopOwnerId(merchant.getId(), limit);
+        }
+        List<Long> ids = keys.stream().limit(sanitizedSize).map(CreatedAtKey::getId).toList();
+        Map<Long, ShopOrder> byId = shopOrderRepository.findAllByIdIn(ids).stream()
+                .collect(Collectors.toMap(ShopOrder::getId, Function.identity()));
+        List<OrderDtos.ShopOrderSummary> items = ids.stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .map(OrderMapper::toShopOrderSummary)
+                .toList();
+        return SliceResult.of(items, sanitizedSize, PageCursor.nextByCreatedAt(ORDER_SORT, keys, sanitizedSize));
+    }
+
     @Transactional(readOnly = true)
     public OrderDtos.ShopOrderDetail get(String username, Long shopOrderId) {
         User merchant = userRepository.findByUsername(username)
@@ -71,10 +112,16 @@ public class ShopOrderService {
         return OrderMapper.toShopOrderDetail(order);
     }
 
+    /**
+     * 先锁住所属订单组再读取并校验子订单状态，与超时关闭的认领互斥：已被关闭的订单不会再被改为已发货。
+     */
     @Transactional
     public OrderDtos.ShopOrderDetail ship(String username, Long shopOrderId, OrderDtos.ShipRequest request) {
         User merchant = userRepository.findByUsername(username)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "用户不存在"));
+        Long orderGroupId = shopOrderRepository.findOrderGroupIdByIdAndShopOwnerId(shopOrderId, merchant.getId())
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "订单不存在"));
+        orderGroupRepository.lockById(orderGroupId);
         ShopOrder order = shopOrderRepository.findByIdAndShopOwnerId(shopOrderId, merchant.getId())
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "订单不存在"));
 
@@ -93,7 +140,7 @@ public class ShopOrderService {
         shopOrderRepository.save(order);
         updateOrderGroupStatus(order.getOrderGroup());
         updateProductSales(order);
-        evictCaches(order);
+        recordShipped(order);
 
         return OrderMapper.toShopOrderDetail(order);
     }
@@ -102,6 +149,7 @@ public class ShopOrderService {
         if (CollectionUtils.isEmpty(order.getOrderItems())) {
             return;
         }
+        Map<Long, Integer> salesByProduct = new HashMap<>();
     List<Product> products = order.getOrderItems().stream()
         .map(OrderItem::getProduct)
         .filter(Objects::nonNull)
@@ -112,9 +160,11 @@ public class ShopOrderService {
             if (product != null) {
                 long newSales = product.getSales() == null ? 0L : product.getSales();
                 product.setSales(newSales + item.getQuantity());
+                salesByProduct.merge(product.getId(), item.getQuantity(), Integer::sum);
             }
         }
         productRepository.saveAll(products);
+        liveStatsService.addSalesAfterCommit(salesByProduct);
     }
 
     private void updateOrderGroupStatus(OrderGroup group) {
@@ -135,19 +185,22 @@ public class ShopOrderService {
         orderGroupRepository.save(group);
     }
 
-    private void evictCaches(ShopOrder order) {
-        Cache productCache = cacheManager.getCache("product:detail");
-        Cache shopCache = cacheManager.getCache("shop:detail");
-        if (shopCache != null && order.getShop() != null) {
-            shopCache.evict(order.getShop().getId());
-        }
-        if (productCache != null) {
-            order.getOrderItems().stream()
-                    .map(OrderItem::getProduct)
-                    .filter(Objects::nonNull)
-                    .map(Product::getId)
-                    .distinct()
-                    .forEach(productCache::evict);
-        }
+    private void recordShipped(ShopOrder order) {
+        List<Long> productIds = order.getOrderItems().stream()
+                .map(OrderItem::getProduct)
+                .filter(Objects::nonNull)
+                .map(Product::getId)
+                .distinct()
+                .toList();
+        List<String> categories = order.getOrderItems().stream()
+                .map(OrderItem::getProduct)
+                .filter(Objects::nonNull)
+                .map(Product::getCategory)
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+        List<Long> shopIds = order.getShop() != null ? List.of(order.getShop().getId()) : List.of();
+        // 发货会累加销量，按销量排序的商品列表也随之失效
+        outboxService.record(OutboxEventType.ORDER_SHIPPED, order.getId(), productIds, shopIds, categories);
     }
 }
@@ -2,6 +2,7 @@ package net.awords.agriecombackend.service;
 
 import net.awords.agriecombackend.dto.product.ProductDtos;
 import net.awords.agriecombackend.dto.product.ProductMapper;
+import net.awords.agriecombackend.entity.OutboxEventType;
 import net.awords.agriecombackend.entity.Product;
 import net.awords.agriecombackend.entity.Shop;
 import net.awords.agriecombackend.entity.ShopStatus;
@@ -9,14 +10,14 @@ import net.awords.agriecombackend.entity.User;
 import net.awords.agriecombackend.repository.ProductRepository;
 import net.awords.agriecombackend.repository.ShopRepository;
 import net.awords.agriecombackend.repository.UserRepository;
-import org.springframework.cache.Cache;
-import org.springframework.cache.CacheManager;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * 商户管理自己店铺下商品的核心业务逻辑，确保租户隔离。
@@ -27,14 +28,21 @@ public class ShopProductService {
     private final ProductRepository productRepository;
     private final ShopRepository shopRepository;
     private final UserRepository userRepository;
-    private final CacheManager cacheManager;
+    private final OutboxService outboxService;
+    private final FlashSaleService flashSaleService;
+    private final InventoryService inventoryService;
+    private final ExistenceFilter existenceFilter;
 
     public ShopProductService(ProductRepository productRepository, ShopRepository shopRepository, UserRepository userRepository,
-                              CacheManager cacheManager) {
+                              OutboxService outboxService, FlashSaleService flashSaleService, InventoryService inventoryService,
+                              ExistenceFilter existenceFilter) {
         this.productRepository = productRepository;
         this.shopRepository = shopRepository;
         this.userRepository = userRepository;
-        this.cacheManager = cacheManager;
+        this.outboxService = outboxService;
+        this.flashSaleService = flashSaleService;
+        this.inventoryService = inventoryService;
+        this.existenceFilter = existenceFilter;
     }
 
     @Transactional(readOnly = true)
@@ -57,7 +65,8 @@ public class ShopProductService {
         product.setOrigin(request.origin);
         product.setShop(shop);
         productRepository.save(product);
-        evictCaches(shop.getId(), product.getId());
+        existenceFilter.add(ExistenceFilter.Kind.PRODUCT, product.getId());
+        recordChanged(product, null);
         return ProductMapper.toDetail(product);
     }
 
@@ -70,6 +79,7 @@ public class ShopProductService {
     @Transactional
     public ProductDtos.Detail update(String username, Long productId, ProductDtos.UpdateRequest request) {
         Product product = findOwnedProduct(username, productId);
+        String previousCategory = product.getCategory();
         product.setName(request.name);
         product.setDescription(request.description);
         product.setPrice(request.price);
@@ -77,15 +87,56 @@ public class ShopProductService {
         product.setCategory(request.category);
         product.setOrigin(request.origin);
         productRepository.save(product);
-        evictCaches(product.getShop().getId(), product.getId());
+        if (product.getStockShards() > 0) {
+            inventoryService.reshard(product.getId(), product.getStockShards(), request.stock);
+        }
+        if (product.isFlashSale()) {
+            flashSaleService.resyncAfterCommit(product.getId());
+        }
+        recordChanged(product, previousCategory);
         return ProductMapper.toDetail(product);
     }
 
+    /**
+     * 开启或关闭商品的秒杀模式。开启后下单先在秒杀计数器中预占库存，关闭时把未回写的预占量落库。
+     */
+    @Transactional
+    public ProductDtos.Detail setFlashSale(String username, Long productId, boolean enabled) {
+        Product product = findOwnedProduct(username, productId);
+        if (enabled && product.getStockShards() > 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "分片库存商品不支持秒杀模式");
+        }
+        if (product.isFlashSale() != enabled) {
+            product.setFlashSale(enabled);
+            productRepository.save(product);
+            flashSaleService.switchAfterCommit(product.getId(), enabled);
+            recordChanged(product, null);
+        }
+        return ProductMapper.toDetail(product);
+    }
+
+    /**
+     * 调整库存分片数并把现有库存均分到各分片，用于热点商品促销前扩容或促销后合并；0 表示取消分片。
+     */
+    @Transactional
+    public ProductDtos.Detail rebalanceStock(String username, Long productId, int shards) {
+        Product product = findOwnedProduct(username, productId);
+        if (shards > 0 && product.isFlashSale()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "秒杀商品不支持库存分片");
+        }
+        inventoryService.reshard(product.getId(), shards, null);
+        recordChanged(product, null);
+        return ProductMapper.toDetail(findOwnedProduct(username, productId));
+    }
+
     @Transactional
     public void delete(String username, Long productId) {
         Product product = findOwnedProduct(username, productId);
         productRepository.delete(product);
-        evictCaches(product.getShop().getId(), product.getId());
+        if (product.isFlashSale()) {
+            flashSaleService.switchAfterCommit(product.getId(), false);
+        }
+        recordChanged(product, null);
     }
 
     private Shop requireActiveShop(String username) {
@@ -102,14 +153,19 @@ public class ShopProductService {
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "商品不存在或不属于您的店铺"));
     }
 
-    private void evictCaches(Long shopId, Long productId) {
-        Cache productCache = cacheManager.getCache("product:detail");
-        if (productCache != null && productId != null) {
-            productCache.evict(productId);
+    /**
+     * 商品变更事件与商品修改在同一事务提交，提交后失效商品与店铺详情缓存以及相关的商品列表缓存。
+     * 修改了分类时新旧分类都要失效。
+     */
+    private void recordChanged(Product product, String previousCategory) {
+        Set<String> categories = new LinkedHashSet<>();
+        if (previousCategory != null) {
+            categories.add(previousCategory);
         }
-        Cache shopCache = cacheManager.getCache("shop:detail");
-        if (shopCache != null && shopId != null) {
-            shopCache.evict(shopId);
+        if (product.getCategory() != null) {
+            categories.add(product.getCategory());
         }
+        outboxService.record(OutboxEventType.PRODUCT_CHANGED, product.getId(), List.of(product.getId()),
+                List.of(product.getShop().getId()), categories);
     }
 }
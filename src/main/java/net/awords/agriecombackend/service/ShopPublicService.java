@@ -1,13 +1,20 @@
 package net.awords.agriecombackend.service;
 
+import net.awords.agriecombackend.dto.SliceResult;
 import net.awords.agriecombackend.dto.shop.ShopDtos;
 import net.awords.agriecombackend.dto.shop.ShopMapper;
 import net.awords.agriecombackend.entity.Shop;
 import net.awords.agriecombackend.entity.ShopStatus;
+import net.awords.agriecombackend.repository.CreatedAtKey;
 import net.awords.agriecombackend.repository.ProductRepository;
 import net.awords.agriecombackend.repository.ShopRepository;
+import net.awords.agriecombackend.repository.ShopSearchRepository;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
@@ -17,29 +24,51 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.StringUtils;
 import org.springframework.web.server.ResponseStatusException;
 
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
 /**
- * 面向买家的店铺浏览服务，支持分页与关键字搜索。
+ * 面向买家的店铺浏览服务，支持分页与关键字搜索；关键字按名称的三元组相似度匹配（见 {@link ShopSearchRepository}），容忍错别字。
+ * 店铺详情未命中缓存时，不存在的店铺 ID 由 {@link ExistenceFilter} 拒绝，未上线店铺的 ID 记入短期负缓存
+ * {@code shop:inactive}，两者都不再查询数据库；店铺状态变更后负缓存随发件箱事件失效。
  */
 @Service
 public class ShopPublicService {
 
+    static final String INACTIVE_SHOPS = "shop:inactive";
+
+    private static final String CREATED_SORT = "createdAt:DESC";
+    private static final String SIMILARITY_SORT = "similarity";
+
     private final ShopRepository shopRepository;
+    private final ShopSearchRepository shopSearchRepository;
     private final ProductRepository productRepository;
+    private final ExistenceFilter existenceFilter;
+    private final CacheManager cacheManager;
 
-    public ShopPublicService(ShopRepository shopRepository, ProductRepository productRepository) {
+    public ShopPublicService(ShopRepository shopRepository, ShopSearchRepository shopSearchRepository,
+                             ProductRepository productRepository, ExistenceFilter existenceFilter,
+                             CacheManager cacheManager) {
         this.shopRepository = shopRepository;
+        this.shopSearchRepository = shopSearchRepository;
         this.productRepository = productRepository;
+        this.existenceFilter = existenceFilter;
+        this.cacheManager = cacheManager;
     }
 
     @Transactional(readOnly = true)
     public ShopDtos.PublicPage list(int page, int size, String keyword) {
         int sanitizedPage = Math.max(page, 0);
         int sanitizedSize = size <= 0 ? 10 : Math.min(size, 50);
-        Pageable pageable = PageRequest.of(sanitizedPage, sanitizedSize, Sort.by(Sort.Direction.DESC, "createdAt"));
+        Pageable pageable = PageRequest.of(sanitizedPage, sanitizedSize, Sort.by(Sort.Direction.DESC, "createdAt", "id"));
 
         Page<Shop> resultPage;
         if (StringUtils.hasText(keyword)) {
-            resultPage = shopRepository.findByStatusAndNameContainingIgnoreCase(ShopStatus.ACTIVE, keyword.trim(), pageable);
+            resultPage = searchByName(keyword.trim().toLowerCase(Locale.ROOT), pageable);
         } else {
             resultPage = shopRepository.findByStatus(ShopStatus.ACTIVE, pageable);
         }
@@ -55,13 +84,87 @@ public class ShopPublicService {
         return pageDto;
     }
 
+    /**
+     * 游标分页（见 {@link PageCursor}），不统计总数：无关键字时按创建时间倒序在 (status, created_at, id) 索引上定位；
+     * 关键字按相似度排序，无法按列定位，游标记录偏移量。
+     */
     @Transactional(readOnly = true)
-    @Cacheable(cacheNames = "shop:detail", key = "#shopId")
+    public SliceResult<ShopDtos.PublicSummary> scroll(String cursor, int size, String keyword) {
+        int sanitizedSize = size <= 0 ? 10 : Math.min(size, 50);
+        List<Long> ids;
+        String nextCursor;
+        if (StringUtils.hasText(keyword)) {
+            long offset = StringUtils.hasText(cursor) ? PageCursor.decode(cursor, SIMILARITY_SORT).offset() : 0;
+            List<Long> found = shopSearchRepository.searchIdsByName(keyword.trim().toLowerCase(Locale.ROOT),
+                    ShopStatus.ACTIVE, offset, sanitizedSize + 1);
+            ids = found.stream().limit(sanitizedSize).toList();
+            nextCursor = found.size() > sanitizedSize ? PageCursor.ofOffset(SIMILARITY_SORT, offset + sanitizedSize) : null;
+        } else {
+            Pageable limit = PageRequest.of(0, sanitizedSize + 1);
+            List<CreatedAtKey> keys;
+            if (StringUtils.hasText(cursor)) {
+                PageCursor after = PageCursor.decode(cursor, CREATED_SORT);
+                keys = shopRepository.findKeysByStatusBefore(ShopStatus.ACTIVE, after.timeValue(), after.id(), limit);
+            } else {
+                keys = shopRepository.findKeysByStatus(ShopStatus.ACTIVE, limit);
+            }
+            ids = keys.stream().limit(sanitizedSize).map(CreatedAtKey::getId).toList();
+            nextCursor = PageCursor.nextByCreatedAt(CREATED_SORT, keys, sanitizedSize);
+        }
+        List<ShopDtos.PublicSummary> items = findInOrder(ids).stream()
+                .map(shop -> ShopMapper.toPublicSummary(shop, productRepository.countByShopId(shop.getId())))
+                .toList();
+        return SliceResult.of(items, sanitizedSize, nextCursor);
+    }
+
+    /**
+     * 按相似度排好序的 ID 取回店铺，保持原顺序。
+     */
+    private Page<Shop> searchByName(String keyword, Pageable pageable) {
+        Page<Long> ids = shopSearchRepository.searchByName(keyword, ShopStatus.ACTIVE, pageable);
+        return new PageImpl<>(findInOrder(ids.getContent()), pageable, ids.getTotalElements());
+    }
+
+    private List<Shop> findInOrder(List<Long> ids) {
+        Map<Long, Shop> byId = shopRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Shop::getId, Function.identity()));
+        return ids.stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    @Transactional(readOnly = true)
+    @Cacheable(cacheNames = "shop:detail", key = "#shopId", sync = true)
     public ShopDtos.PublicDetail getPublicDetail(Long shopId) {
+        Cache inactiveShops = cacheManager.getCache(INACTIVE_SHOPS);
+        if (!existenceFilter.mightContain(ExistenceFilter.Kind.SHOP, shopId) || inactiveShops.get(shopId) != null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "店铺不存在或未上线");
+        }
+        Shop shop = shopRepository.findById(shopId).orElseThrow(() -> {
+            existenceFilter.recordFalsePositive(ExistenceFilter.Kind.SHOP);
+            return new ResponseStatusException(HttpStatus.NOT_FOUND, "店铺不存在或未上线");
+        });
+        if (shop.getStatus() != ShopStatus.ACTIVE) {
+            inactiveShops.put(shopId, shop.getStatus().name());
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "店铺不存在或未上线");
+        }
+        return toPublicDetail(shop);
+    }
+
+    /**
+     * 无论缓存中是否已有都从数据库重新加载并写回，供 {@link CacheWarmer} 在条目过期前续期。
+     */
+    @Transactional(readOnly = true)
+    @CachePut(cacheNames = "shop:detail", key = "#shopId")
+    public ShopDtos.PublicDetail refreshPublicDetail(Long shopId) {
         Shop shop = shopRepository.findById(shopId)
                 .filter(s -> s.getStatus() == ShopStatus.ACTIVE)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "店铺不存在或未上线"));
+        return toPublicDetail(shop);
+    }
 
+    private ShopDtos.PublicDetail toPublicDetail(Shop shop) {
         long productCount = productRepository.countByShopId(shop.getId());
         var products = productRepository.findByShopIdOrderByPublishedAtDesc(shop.getId());
         return ShopMapper.toPublicDetail(shop, productCount, products);
@@ -25,12 +25,15 @@ public class ShopService {
     private final UserRepository userRepository;
     private final RoleRepository roleRepository;
     private final ProductRepository productRepository;
+    private final ExistenceFilter existenceFilter;
 
-    public ShopService(ShopRepository shopRepository, UserRepository userRepository, RoleRepository roleRepository, ProductRepository productRepository) {
+    public ShopService(ShopRepository shopRepository, UserRepository userRepository, RoleRepository roleRepository,
+                       ProductRepository productRepository, ExistenceFilter existenceFilter) {
         this.shopRepository = shopRepository;
         this.userRepository = userRepository;
         this.roleRepository = roleRepository;
         this.productRepository = productRepository;
+        this.existenceFilter = existenceFilter;
     }
 
     @Transactional
@@ -46,6 +49,7 @@ public class ShopService {
         shop.setStatus(ShopStatus.PENDING_REVIEW);
 
         shopRepository.save(shop);
+        existenceFilter.add(ExistenceFilter.Kind.SHOP, shop.getId());
         ensureMerchantRole(owner);
 
         return ShopMapper.toDetailResponse(shop, 0L);
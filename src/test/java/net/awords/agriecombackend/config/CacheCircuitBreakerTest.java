@@ -0,0 +1,119 @@
+package net.awords.agriecombackend.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.Cache;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 以 {@link FaultInjectingCacheManager} 代替 Redis，验证远端故障或变慢时两级缓存的熔断与恢复。
+ * 进程内的重建锁总是成功，会掩盖远端的连续失败，因此这里不配置重建锁。
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class CacheCircuitBreakerTest {
+
+    @Autowired
+    private InMemoryCacheInvalidationBus bus;
+
+    private FaultInjectingCacheManager remote;
+    private SimpleMeterRegistry meterRegistry;
+    private CircuitBreaker breaker;
+    private Cache cache;
+
+    @BeforeEach
+    void setUp() {
+        remote = new FaultInjectingCacheManager();
+        meterRegistry = new SimpleMeterRegistry();
+        breaker = new CircuitBreaker("redis", 3, Duration.ofMillis(50), Duration.ofMillis(200), meterRegistry);
+        cache = new TwoLevelCacheManager(remote, bus, meterRegistry,
+                TwoLevelCacheOptions.builder(100, Duration.ofMinutes(1)).circuitBreaker(breaker).build())
+                .getCache("product:detail");
+    }
+
+    @Test
+    @DisplayName("Redis 宕机时熔断，读取由一级缓存与加载方法兜底，不再访问远端")
+    void readsFallBackWhenRemoteIsDown() {
+        remote.down();
+
+        for (long key = 1; key <= 10; key++) {
+            long id = key;
+            assertThat(cache.get(key, () -> "product-" + id)).isEqualTo("product-" + id);
+        }
+
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(remote.calls()).isEqualTo(3);
+        // 熔断期间加载的值仍写入一级缓存
+        assertThat(cache.get(10L, () -> "reloaded")).isEqualTo("product-10");
+        assertThat(meterRegistry.get("cache.circuit.rejected").counter().count()).isPositive();
+    }
+
+    @Test
+    @DisplayName("Redis 变慢时慢调用计为失败并熔断，之后的读取不再等待")
+    void slowCallsOpenTheCircuit() {
+        remote.slow(Duration.ofMillis(100));
+
+        for (long key = 1; key <= 3; key++) {
+            cache.get(key, () -> "slow");
+        }
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        long start = System.nanoTime();
+        assertThat(cache.get(99L, () -> "fast")).isEqualTo("fast");
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(100));
+    }
+
+    @Test
+    @DisplayName("熔断期间的失效先作用于一级缓存，恢复后重放到远端")
+    void evictionsAreReplayedAfterRecovery() throws InterruptedException {
+        cache.put(1L, "apple");
+        cache.put(2L, "pear");
+        remote.down();
+        for (long key = 100; key < 103; key++) {
+            cache.get(key);
+        }
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        cache.evict(1L);
+        cache.evict(2L);
+        assertThat(cache.get(1L)).isNull();
+        assertThat(remote.backing("product:detail").get(1L)).isNotNull();
+
+        remote.healthy();
+        Thread.sleep(250);
+        // 打开时长过后的第一个调用作为探测，成功后关闭熔断器并在后台重放
+        cache.get(3L);
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (remote.backing("product:detail").get(1L) != null || remote.backing("product:detail").get(2L) != null) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    @DisplayName("半开探测失败时重新熔断")
+    void failedProbeReopens() throws InterruptedException {
+        remote.down();
+        for (long key = 1; key <= 3; key++) {
+            cache.get(key);
+        }
+        Thread.sleep(250);
+        int callsBeforeProbe = remote.calls();
+
+        cache.get(4L);
+        cache.get(5L);
+
+        assertThat(remote.calls()).isEqualTo(callsBeforeProbe + 1);
+        assertThat(breaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+}
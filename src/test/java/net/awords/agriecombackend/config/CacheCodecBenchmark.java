@@ -0,0 +1,126 @@
+package net.awords.agriecombackend.config;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.awords.agriecombackend.dto.shop.ShopDtos;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 比较店铺详情缓存值在各编码下的大小与编解码耗时；不属于单元测试，需手动运行：
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/test-classpath.txt
+ * java -cp target/test-classes:target/classes:$(cat target/test-classpath.txt) \
+ *     net.awords.agriecombackend.config.CacheCodecBenchmark
+ * </pre>
+ * 每种组合的编码后字节数在预热前打印到标准输出。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheCodecBenchmark {
+
+    private static final String[] CATEGORIES = {"fruits", "vegetables", "grains", "tea", "dried-goods"};
+    private static final String[] ORIGINS = {"浙江安吉", "云南普洱", "黑龙江五常", "新疆阿克苏", "福建武夷山"};
+
+    @Param({"20", "200"})
+    public int products;
+
+    @Param({"legacy-json", "typed-json", "smile", "smile-deflate"})
+    public String codec;
+
+    private RedisSerializer<Object> serializer;
+    private ShopDtos.PublicDetail value;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        JavaType type = objectMapper.constructType(ShopDtos.PublicDetail.class);
+        serializer = switch (codec) {
+            case "legacy-json" -> new GenericJackson2JsonRedisSerializer(objectMapper);
+            case "typed-json" -> new CacheValueCodec(objectMapper, type, CacheValueCodec.Format.JSON,
+                    CacheValueCodec.Compression.NONE, Integer.MAX_VALUE);
+            case "smile" -> new CacheValueCodec(objectMapper, type, CacheValueCodec.Format.SMILE,
+                    CacheValueCodec.Compression.NONE, Integer.MAX_VALUE);
+            case "smile-deflate" -> new CacheValueCodec(objectMapper, type, CacheValueCodec.Format.SMILE,
+                    CacheValueCodec.Compression.DEFLATE, 0);
+            default -> throw new IllegalArgumentException(codec);
+        };
+        value = sampleShop(products);
+        encoded = serializer.serialize(value);
+        System.out.printf("%n[size] codec=%s products=%d bytes=%d%n", codec, products, encoded.length);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return serializer.serialize(value);
+    }
+
+    @Benchmark
+    public Object decode() {
+        return serializer.deserialize(encoded);
+    }
+
+    /**
+     * 构造接近线上数据的店铺详情：中文名称与描述、有限取值的分类与产地。
+     */
+    static ShopDtos.PublicDetail sampleShop(int productCount) {
+        OffsetDateTime base = OffsetDateTime.of(2025, 3, 1, 8, 0, 0, 0, ZoneOffset.UTC);
+        ShopDtos.PublicSummary shop = new ShopDtos.PublicSummary();
+        shop.id = 42L;
+        shop.name = "青山农场直营店";
+        shop.description = "坚持生态种植，产地直发，所有农产品均可追溯。";
+        shop.logoUrl = "https://cdn.example.com/shops/42/logo.png";
+        shop.createdAt = base;
+        shop.productCount = productCount;
+
+        List<ShopDtos.ProductSummary> items = new ArrayList<>(productCount);
+        for (int i = 0; i < productCount; i++) {
+            ShopDtos.ProductSummary product = new ShopDtos.ProductSummary();
+            product.id = 10_000L + i;
+            product.name = "精选" + ORIGINS[i % ORIGINS.length] + "农产品 " + i + " 号";
+            product.description = "当季采摘，冷链配送；口感清甜，适合家庭日常食用。批次 " + (i * 7919 % 1000);
+            product.price = new BigDecimal(10 + i % 90 + "." + (i % 10) + "0");
+            product.stock = 100 + i * 3;
+            product.category = CATEGORIES[i % CATEGORIES.length];
+            product.origin = ORIGINS[i % ORIGINS.length];
+            product.sales = (long) i * 17;
+            product.publishedAt = base.plusHours(i);
+            items.add(product);
+        }
+        ShopDtos.PublicDetail detail = new ShopDtos.PublicDetail();
+        detail.shop = shop;
+        detail.products = items;
+        return detail;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CacheCodecBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,103 @@
+package net.awords.agriecombackend.config;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.awords.agriecombackend.dto.shop.ShopDtos;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class CacheValueCodecTest {
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private JavaType shopDetailType;
+
+    @BeforeEach
+    void setUp() {
+        shopDetailType = objectMapper.constructType(ShopDtos.PublicDetail.class);
+    }
+
+    @Test
+    @DisplayName("Smile 编码按声明类型还原，不写入类名且小于 JSON")
+    void smileRoundTrip() throws Exception {
+        ShopDtos.PublicDetail detail = CacheCodecBenchmark.sampleShop(50);
+        CacheValueCodec codec = codec(CacheValueCodec.Format.SMILE, CacheValueCodec.Compression.NONE);
+
+        byte[] bytes = codec.serialize(detail);
+
+        assertThat(bytes[0]).isEqualTo(CacheValueCodec.SMILE_HEADER);
+        assertThat(bytes.length).isLessThan(objectMapper.writeValueAsBytes(detail).length);
+        assertThat(new String(bytes, StandardCharsets.ISO_8859_1)).doesNotContain("ShopDtos");
+        assertSameShop((ShopDtos.PublicDetail) codec.deserialize(bytes), detail);
+    }
+
+    @Test
+    @DisplayName("超过阈值时压缩，未超过时保持原样")
+    void compressesAboveThreshold() {
+        CacheValueCodec codec = codec(CacheValueCodec.Format.SMILE, CacheValueCodec.Compression.DEFLATE);
+        ShopDtos.PublicDetail large = CacheCodecBenchmark.sampleShop(200);
+        ShopDtos.PublicDetail small = CacheCodecBenchmark.sampleShop(0);
+
+        byte[] compressed = codec.serialize(large);
+        byte[] plain = codec.serialize(small);
+
+        assertThat(compressed[0]).isEqualTo(CacheValueCodec.SMILE_DEFLATE_HEADER);
+        assertThat(plain[0]).isEqualTo(CacheValueCodec.SMILE_HEADER);
+        assertSameShop((ShopDtos.PublicDetail) codec.deserialize(compressed), large);
+        assertSameShop((ShopDtos.PublicDetail) codec.deserialize(plain), small);
+    }
+
+    @Test
+    @DisplayName("迁移期间可读取旧序列化器写入的 JSON，JSON 写入模式下旧节点也能读取")
+    void readsLegacyJson() throws Exception {
+        ShopDtos.PublicDetail detail = CacheCodecBenchmark.sampleShop(3);
+        byte[] legacy = new GenericJackson2JsonRedisSerializer(objectMapper).serialize(detail);
+
+        CacheValueCodec codec = codec(CacheValueCodec.Format.SMILE, CacheValueCodec.Compression.DEFLATE);
+        assertSameShop((ShopDtos.PublicDetail) codec.deserialize(legacy), detail);
+
+        byte[] json = codec(CacheValueCodec.Format.JSON, CacheValueCodec.Compression.DEFLATE).serialize(detail);
+        assertSameShop(objectMapper.readValue(json, ShopDtos.PublicDetail.class), detail);
+    }
+
+    @Test
+    @DisplayName("提前刷新条目按参数化类型还原值与软过期时间")
+    void refreshAheadEntryRoundTrip() {
+        ShopDtos.PublicDetail detail = CacheCodecBenchmark.sampleShop(5);
+        JavaType entryType = objectMapper.getTypeFactory()
+                .constructParametricType(RefreshAheadEntry.class, shopDetailType);
+        CacheValueCodec codec = new CacheValueCodec(objectMapper, entryType, CacheValueCodec.Format.SMILE,
+                CacheValueCodec.Compression.DEFLATE, 2048);
+
+        RefreshAheadEntry<?> restored = (RefreshAheadEntry<?>) codec.deserialize(
+                codec.serialize(new RefreshAheadEntry<>(detail, 1_700_000_000_000L)));
+
+        assertThat(restored.refreshAt()).isEqualTo(1_700_000_000_000L);
+        assertSameShop((ShopDtos.PublicDetail) restored.value(), detail);
+    }
+
+    private CacheValueCodec codec(CacheValueCodec.Format format, CacheValueCodec.Compression compression) {
+        return new CacheValueCodec(objectMapper, shopDetailType, format, compression, 2048);
+    }
+
+    private static void assertSameShop(ShopDtos.PublicDetail actual, ShopDtos.PublicDetail expected) {
+        assertThat(actual.shop.id).isEqualTo(expected.shop.id);
+        assertThat(actual.shop.name).isEqualTo(expected.shop.name);
+        assertThat(actual.products).hasSameSizeAs(expected.products);
+        for (int i = 0; i < expected.products.size(); i++) {
+            assertThat(actual.products.get(i)).usingRecursiveComparison().isEqualTo(expected.products.get(i));
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package net.awords.agriecombackend.config;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.data.redis.RedisConnectionFailureException;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 可注入故障的远端缓存，代替 Redis 离线测试熔断：正常、宕机（每次调用抛出连接异常）、变慢（每次调用先等待指定时间）。
+ * 各缓存共用同一模式与调用计数。
+ */
+class FaultInjectingCacheManager implements CacheManager {
+
+    enum Mode { HEALTHY, DOWN, SLOW }
+
+    private final ConcurrentMapCacheManager delegate = new ConcurrentMapCacheManager();
+    private final AtomicInteger calls = new AtomicInteger();
+    private volatile Mode mode = Mode.HEALTHY;
+    private volatile Duration latency = Duration.ZERO;
+
+    void healthy() {
+        mode = Mode.HEALTHY;
+    }
+
+    void down() {
+        mode = Mode.DOWN;
+    }
+
+    void slow(Duration latency) {
+        this.latency = latency;
+        mode = Mode.SLOW;
+    }
+
+    int calls() {
+        return calls.get();
+    }
+
+    /**
+     * 绕过故障注入直接查看远端内容。
+     */
+    Cache backing(String name) {
+        return delegate.getCache(name);
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        Cache cache = delegate.getCache(name);
+        return cache == null ? null : new FaultInjectingCache(cache);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return delegate.getCacheNames();
+    }
+
+    private void beforeCall() {
+        calls.incrementAndGet();
+        switch (mode) {
+            case DOWN -> throw new RedisConnectionFailureException("injected: redis is down");
+            case SLOW -> {
+                try {
+                    Thread.sleep(latency.toMillis());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            case HEALTHY -> {
+            }
+        }
+    }
+
+    private class FaultInjectingCache implements Cache {
+
+        private final Cache target;
+
+        FaultInjectingCache(Cache target) {
+            this.target = target;
+        }
+
+        @Override
+        public String getName() {
+            return target.getName();
+        }
+
+        @Override
+        public Object getNativeCache() {
+            return target.getNativeCache();
+        }
+
+        @Override
+        public ValueWrapper get(Object key) {
+            beforeCall();
+            return target.get(key);
+        }
+
+        @Override
+        public <T> T get(Object key, Class<T> type) {
+            beforeCall();
+            return target.get(key, type);
+        }
+
+        @Override
+        public <T> T get(Object key, Callable<T> valueLoader) {
+            beforeCall();
+            return target.get(key, valueLoader);
+        }
+
+        @Override
+        public void put(Object key, Object value) {
+            beforeCall();
+            target.put(key, value);
+        }
+
+        @Override
+        public void evict(Object key) {
+            beforeCall();
+            target.evict(key);
+        }
+
+        @Override
+        public void clear() {
+            beforeCall();
+            target.clear();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package net.awords.agriecombackend.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Duration;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class HotKeyDetectorTest {
+
+    @Autowired
+    private CacheManager cacheManager;
+    @Autowired
+    private HotKeysEndpoint endpoint;
+
+    @Test
+    @DisplayName("倾斜流量下只有高频 key 被判定为热点")
+    void onlySkewedKeysAreHot() {
+        HotKeyDetector detector = detector(100, 10);
+        for (int i = 0; i < 1000; i++) {
+            detector.record("product:detail", "42");
+        }
+        for (int i = 0; i < 2000; i++) {
+            detector.record("product:detail", "cold-" + i);
+        }
+        detector.record("shop:detail", "42");
+
+        assertThat(detector.hotKeys("product:detail")).extracting(HotKeyDetector.HotKey::key).containsExactly("42");
+        assertThat(detector.hotKeys("product:detail").get(0).estimatedAccesses()).isGreaterThanOrEqualTo(1000);
+        assertThat(detector.isHot("shop:detail", "42")).isFalse();
+        assertThat(detector.hotKeys("product:list")).isNull();
+    }
+
+    @Test
+    @DisplayName("窗口切换后计数减半，访问减少的热点被剔除")
+    void coolingKeysAreDemoted() {
+        HotKeyDetector detector = detector(100, 10);
+        for (int i = 0; i < 150; i++) {
+            detector.record("product:detail", "7");
+        }
+        assertThat(detector.isHot("product:detail", "7")).isTrue();
+
+        detector.rotate();
+
+        assertThat(detector.isHot("product:detail", "7")).isFalse();
+    }
+
+    @Test
+    @DisplayName("热点已满时替换估计访问次数最少的 key")
+    void fullHotSetReplacesColdest() {
+        HotKeyDetector detector = detector(10, 2);
+        record(detector, "a", 300);
+        record(detector, "b", 200);
+        record(detector, "c", 500);
+
+        assertThat(detector.hotKeys("product:detail")).extracting(HotKeyDetector.HotKey::key)
+                .containsExactly("c", "a");
+    }
+
+    @Test
+    @DisplayName("详情缓存的读取计入热点探测，可通过 actuator 端点查看")
+    void endpointListsHotKeysFromCacheReads() {
+        Cache cache = cacheManager.getCache("shop:detail");
+        for (int i = 0; i < 600; i++) {
+            cache.get(-9001L);
+        }
+
+        assertThat(endpoint.hotKeys()).containsKeys("product:detail", "shop:detail");
+        assertThat(endpoint.hotKeysOf("shop:detail")).extracting(HotKeyDetector.HotKey::key).contains("-9001");
+        assertThat(endpoint.hotKeysOf("product:list")).isNull();
+    }
+
+    private static void record(HotKeyDetector detector, String key, int times) {
+        for (int i = 0; i < times; i++) {
+            detector.record("product:detail", key);
+        }
+    }
+
+    private static HotKeyDetector detector(long threshold, int maxHotKeys) {
+        return new HotKeyDetector(Set.of("product:detail", "shop:detail"), 1.0, threshold, maxHotKeys,
+                Duration.ofHours(1), 1024, new SimpleMeterRegistry());
+    }
+}
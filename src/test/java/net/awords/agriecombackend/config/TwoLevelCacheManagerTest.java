@@ -0,0 +1,233 @@
+package net.awords.agriecombackend.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 两个 {@link TwoLevelCacheManager} 共用同一个远端缓存与进程内失效广播，模拟两个节点。
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class TwoLevelCacheManagerTest {
+
+    @Autowired
+    private CacheManager cacheManager;
+    @Autowired
+    private InMemoryCacheInvalidationBus bus;
+    @Autowired
+    private InMemoryCacheRebuildLock rebuildLock;
+
+    private ConcurrentMapCacheManager remote;
+    private SimpleMeterRegistry meterRegistry;
+    private Cache nodeA;
+    private Cache nodeB;
+
+    @BeforeEach
+    void setUp() {
+        remote = new ConcurrentMapCacheManager();
+        meterRegistry = new SimpleMeterRegistry();
+        nodeA = new TwoLevelCacheManager(remote, bus, meterRegistry,
+                TwoLevelCacheOptions.builder(100, Duration.ofMinutes(1)).build()).getCache("product:detail");
+        nodeB = new TwoLevelCacheManager(remote, bus, meterRegistry,
+                TwoLevelCacheOptions.builder(100, Duration.ofMinutes(1)).build()).getCache("product:detail");
+    }
+
+    @Test
+    @DisplayName("应用缓存管理器为两级缓存")
+    void applicationUsesTwoLevelCache() {
+        assertThat(cacheManager).isInstanceOf(TwoLevelCacheManager.class);
+        assertThat(cacheManager.getCache("product:detail")).isInstanceOf(TwoLevelCache.class);
+    }
+
+    @Test
+    @DisplayName("一级缓存命中时不访问远端缓存")
+    void localHitSkipsRemote() {
+        nodeA.put(1L, "apple");
+        remote.getCache("product:detail").evict(1L);
+
+        assertThat(nodeA.get(1L).get()).isEqualTo("apple");
+        assertThat(count("l1", "hit")).isEqualTo(1);
+        assertThat(count("l2", "hit") + count("l2", "miss")).isZero();
+    }
+
+    @Test
+    @DisplayName("远端命中后回填一级缓存，并分别计数")
+    void remoteHitFillsLocal() {
+        remote.getCache("product:detail").put(2L, "pear");
+
+        assertThat(nodeB.get(2L).get()).isEqualTo("pear");
+        assertThat(nodeB.get(2L).get()).isEqualTo("pear");
+        assertThat(nodeB.get(3L)).isNull();
+
+        assertThat(count("l1", "miss")).isEqualTo(2);
+        assertThat(count("l1", "hit")).isEqualTo(1);
+        assertThat(count("l2", "hit")).isEqualTo(1);
+        assertThat(count("l2", "miss")).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("任一节点失效时广播，所有节点的一级缓存一起丢弃")
+    void evictionIsBroadcast() {
+        nodeA.put(4L, "grape");
+        assertThat(nodeB.get(4L).get()).isEqualTo("grape");
+
+        nodeA.evict(4L);
+
+        assertThat(nodeB.get(4L)).isNull();
+        assertThat(nodeA.get(4L)).isNull();
+    }
+
+    @Test
+    @DisplayName("清空缓存同样广播到其他节点")
+    void clearIsBroadcast() {
+        nodeA.put(5L, "melon");
+        assertThat(nodeB.get(5L)).isNotNull();
+
+        nodeB.clear();
+
+        assertThat(nodeA.get(5L)).isNull();
+    }
+
+    @Test
+    @DisplayName("一级缓存超过 TTL 后重新读取远端")
+    void localEntriesExpire() throws InterruptedException {
+        Cache shortLived = new TwoLevelCacheManager(remote, bus, meterRegistry,
+                TwoLevelCacheOptions.builder(100, Duration.ofMillis(50)).build())
+                .getCache("shop:detail");
+        shortLived.put(6L, "farm");
+        remote.getCache("shop:detail").put(6L, "renamed farm");
+        assertThat(shortLived.get(6L).get()).isEqualTo("farm");
+
+        Thread.sleep(120);
+
+        assertThat(shortLived.get(6L).get()).isEqualTo("renamed farm");
+    }
+
+    @Test
+    @DisplayName("其他节点持有重建锁时等待其写回远端，不再自行加载")
+    void rebuildLockCoordinatesNodes() throws Exception {
+        Cache lockedA = lockedNode();
+        Cache lockedB = lockedNode();
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<Void> release = new CompletableFuture<>();
+
+        CompletableFuture<String> fromA = CompletableFuture.supplyAsync(() -> lockedA.get(7L, () -> {
+            loads.incrementAndGet();
+            release.get(10, TimeUnit.SECONDS);
+            return "cherry";
+        }));
+        while (loads.get() == 0) {
+            Thread.sleep(5);
+        }
+        CompletableFuture<String> fromB = CompletableFuture.supplyAsync(() -> lockedB.get(7L, () -> {
+            loads.incrementAndGet();
+            return "loaded by B";
+        }));
+        Thread.sleep(100);
+        assertThat(fromB).isNotDone();
+
+        release.complete(null);
+
+        assertThat(fromA.get(10, TimeUnit.SECONDS)).isEqualTo("cherry");
+        assertThat(fromB.get(10, TimeUnit.SECONDS)).isEqualTo("cherry");
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.loads").tag("cache", "product:detail").tag("outcome", "remote")
+                .counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("超过软 TTL 时先返回旧值，并由后台只刷新一次")
+    void staleEntriesAreServedWhileRefreshing() throws Exception {
+        Cache cache = refreshAheadNode(Duration.ofMillis(50));
+        assertThat(cache.get(8L, () -> "v1")).isEqualTo("v1");
+        Thread.sleep(80);
+
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<Void> release = new CompletableFuture<>();
+        for (int i = 0; i < 5; i++) {
+            assertThat(cache.get(8L, () -> {
+                loads.incrementAndGet();
+                release.get(10, TimeUnit.SECONDS);
+                return "v2";
+            })).isEqualTo("v1");
+        }
+        release.complete(null);
+
+        awaitValue(cache, 8L, "v2");
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(meterRegistry.get("cache.stale.served").tag("cache", "product:detail").counter().count())
+                .isGreaterThanOrEqualTo(5);
+        assertThat(refreshes("refreshed")).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("其他节点已刷新时直接采用远端的新值，不再加载")
+    void refreshAdoptsValueWrittenByOtherNode() throws Exception {
+        Cache first = refreshAheadNode(Duration.ofMillis(50));
+        Cache second = refreshAheadNode(Duration.ofMillis(50));
+        first.put(9L, "v1");
+        assertThat(second.get(9L).get()).isEqualTo("v1");
+        Thread.sleep(80);
+
+        first.put(9L, "v2");
+        AtomicInteger loads = new AtomicInteger();
+        assertThat(second.get(9L, () -> {
+            loads.incrementAndGet();
+            return "v3";
+        })).isEqualTo("v1");
+
+        awaitValue(second, 9L, "v2");
+        assertThat(loads.get()).isZero();
+        assertThat(refreshes("adopted")).isEqualTo(1);
+    }
+
+    private Cache lockedNode() {
+        return new TwoLevelCacheManager(remote, bus, meterRegistry,
+                TwoLevelCacheOptions.builder(100, Duration.ofMinutes(1))
+                        .rebuildLock(rebuildLock, Duration.ofSeconds(5), Duration.ofSeconds(5))
+                        .build()).getCache("product:detail");
+    }
+
+    private Cache refreshAheadNode(Duration softTtl) {
+        return new TwoLevelCacheManager(remote, bus, meterRegistry,
+                TwoLevelCacheOptions.builder(100, Duration.ofMinutes(1))
+                        .rebuildLock(rebuildLock, Duration.ofSeconds(5), Duration.ofSeconds(5))
+                        .refreshAhead(Map.of("product:detail", new RefreshAheadPolicy(softTtl, 0)), 2)
+                        .build()).getCache("product:detail");
+    }
+
+    private static void awaitValue(Cache cache, Object key, Object expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!expected.equals(cache.get(key).get())) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private double refreshes(String outcome) {
+        return meterRegistry.get("cache.refreshes").tag("cache", "product:detail").tag("outcome", outcome)
+                .counter().count();
+    }
+
+    private double count(String tier, String result) {
+        return meterRegistry.get("cache.tier.gets")
+                .tag("cache", "product:detail").tag("tier", tier).tag("result", result)
+                .counter().count();
+    }
+}
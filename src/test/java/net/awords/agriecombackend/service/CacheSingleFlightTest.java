@@ -0,0 +1,180 @@
+package net.awords.agriecombackend.service;
+
+import jakarta.persistence.EntityManagerFactory;
+import net.awords.agriecombackend.dto.product.ProductDtos;
+import net.awords.agriecombackend.dto.shop.ShopDtos;
+import net.awords.agriecombackend.entity.Product;
+import net.awords.agriecombackend.entity.Shop;
+import net.awords.agriecombackend.entity.User;
+import net.awords.agriecombackend.repository.ShopRepository;
+import net.awords.agriecombackend.repository.UserRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.jdbc.JdbcTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 并发读取未命中的详情缓存时，只有一个请求访问数据库；各线程在独立事务中读取，因此本测试不使用 @Transactional。
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class CacheSingleFlightTest {
+
+    private static final int THREADS = 32;
+
+    @Autowired
+    private ProductQueryService productQueryService;
+    @Autowired
+    private ShopPublicService shopPublicService;
+    @Autowired
+    private ShopService shopService;
+    @Autowired
+    private ShopAdminService shopAdminService;
+    @Autowired
+    private ShopProductService shopProductService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ShopRepository shopRepository;
+    @Autowired
+    private CacheManager cacheManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Long shopId;
+    private Long productId;
+
+    @BeforeEach
+    void setUp() {
+        User merchant = new User();
+        merchant.setUsername("single-flight-merchant");
+        merchant.setPassword("pwd");
+        userRepository.save(merchant);
+
+        ShopDtos.CreateRequest shopRequest = new ShopDtos.CreateRequest();
+        shopRequest.name = "合并加载农场";
+        shopRequest.description = "缓存合并测试店铺";
+        shopService.applyForShop(merchant.getUsername(), shopRequest);
+        Shop shop = shopRepository.findByOwnerId(merchant.getId()).orElseThrow();
+        shopAdminService.approve(shop.getId());
+        shopId = shop.getId();
+
+        ProductDtos.CreateRequest request = new ProductDtos.CreateRequest();
+        request.name = "合并加载萝卜";
+        request.description = "合并加载萝卜";
+        request.price = new BigDecimal("3.00");
+        request.stock = 10;
+        request.category = "vegetables";
+        request.origin = "Asia";
+        productId = shopProductService.create(merchant.getUsername(), request).id;
+
+        cacheManager.getCache("product:detail").clear();
+        cacheManager.getCache("shop:detail").clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        JdbcTestUtils.deleteFromTables(jdbcTemplate,
+                "outbox_events", "order_items", "shop_orders", "order_groups", "cart_items", "product_stock_shards",
+                "products", "shops", "user_roles", "user_addresses", "users", "roles");
+    }
+
+    @Test
+    @DisplayName("并发读取未缓存的商品详情只加载一次数据库")
+    void productDetailLoadsOnce() throws Exception {
+        long before = loadCount(Product.class);
+
+        List<ProductDtos.Detail> results = concurrently(() -> productQueryService.detail(productId));
+
+        assertThat(results).hasSize(THREADS).allSatisfy(detail -> assertThat(detail.id).isEqualTo(productId));
+        assertThat(loadCount(Product.class) - before).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("并发读取未缓存的店铺详情只加载一次数据库")
+    void shopDetailLoadsOnce() throws Exception {
+        long before = loadCount(Shop.class);
+
+        List<ShopDtos.PublicDetail> results = concurrently(() -> shopPublicService.getPublicDetail(shopId));
+
+        assertThat(results).hasSize(THREADS).allSatisfy(detail -> assertThat(detail.shop.id).isEqualTo(shopId));
+        assertThat(loadCount(Shop.class) - before).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("加载失败时等待中的请求得到同样的异常")
+    void failureIsSharedWithWaiters() throws Exception {
+        Long missingId = productId + 1000;
+
+        List<Throwable> failures = new ArrayList<>();
+        for (Future<ProductDtos.Detail> future : submit(() -> productQueryService.detail(missingId))) {
+            try {
+                future.get(30, TimeUnit.SECONDS);
+            } catch (ExecutionException ex) {
+                failures.add(ex.getCause());
+            }
+        }
+
+        assertThat(failures).hasSize(THREADS).allSatisfy(ex -> {
+            assertThat(ex).isInstanceOf(ResponseStatusException.class);
+            assertThat(((ResponseStatusException) ex).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+        });
+    }
+
+    private <T> List<T> concurrently(Supplier<T> call) throws Exception {
+        List<T> results = new ArrayList<>();
+        for (Future<T> future : submit(call)) {
+            results.add(future.get(30, TimeUnit.SECONDS));
+        }
+        return results;
+    }
+
+    private <T> List<Future<T>> submit(Supplier<T> call) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<T>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return call.get();
+                }));
+            }
+            start.countDown();
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(executor.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+        return futures;
+    }
+
+    private long loadCount(Class<?> entityType) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        return statistics.getEntityStatistics(entityType.getName()).getLoadCount();
+    }
+}
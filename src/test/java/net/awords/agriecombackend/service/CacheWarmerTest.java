@@ -0,0 +1,168 @@
+package net.awords.agriecombackend.service;
+
+import net.awords.agriecombackend.dto.product.ProductDtos;
+import net.awords.agriecombackend.dto.shop.ShopDtos;
+import net.awords.agriecombackend.entity.Shop;
+import net.awords.agriecombackend.entity.User;
+import net.awords.agriecombackend.repository.ShopRepository;
+import net.awords.agriecombackend.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.jdbc.JdbcTestUtils;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 预热在独立线程中各自开启事务读取已提交的数据，因此本测试不使用 @Transactional，改为在每个用例后清表。
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class CacheWarmerTest {
+
+    @Autowired
+    private CacheWarmer cacheWarmer;
+    @Autowired
+    private ShopService shopService;
+    @Autowired
+    private ShopAdminService shopAdminService;
+    @Autowired
+    private ShopProductService shopProductService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ShopRepository shopRepository;
+    @Autowired
+    private CacheManager cacheManager;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Long activeShopId;
+    private Long pendingShopId;
+    private Long bestSellerId;
+    private Long pendingProductId;
+
+    @BeforeEach
+    void setUp() {
+        User merchant = createMerchant("warmer-merchant");
+        activeShopId = openShop(merchant, "预热农场");
+        shopAdminService.approve(activeShopId);
+        bestSellerId = shopProductService.create(merchant.getUsername(), buildProduct("预热苹果")).id;
+        shopProductService.create(merchant.getUsername(), buildProduct("预热香蕉"));
+        jdbcTemplate.update("UPDATE products SET sales = 500 WHERE id = ?", bestSellerId);
+
+        User pendingMerchant = createMerchant("warmer-pending-merchant");
+        pendingShopId = openShop(pendingMerchant, "待审核预热农场");
+        pendingProductId = shopProductService.create(pendingMerchant.getUsername(), buildProduct("待审核橙子")).id;
+
+        awaitOutboxDrained();
+        cacheManager.getCache("product:detail").clear();
+        cacheManager.getCache("shop:detail").clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        JdbcTestUtils.deleteFromTables(jdbcTemplate,
+                "outbox_events", "order_items", "shop_orders", "order_groups", "cart_items", "product_stock_shards",
+                "products", "shops", "user_roles", "user_addresses", "users", "roles");
+    }
+
+    @Test
+    @DisplayName("预热上线店铺的热点商品与店铺详情，未上线店铺及其商品不预热")
+    void warmsHotProductsAndActiveShops() {
+        CacheWarmer.Result result = cacheWarmer.warm(false);
+
+        assertThat(result.products()).isEqualTo(2);
+        assertThat(result.shops()).isEqualTo(1);
+        assertThat(result.failed()).isZero();
+        assertThat(result.timedOut()).isFalse();
+        Cache productCache = cacheManager.getCache("product:detail");
+        assertThat(productCache.get(bestSellerId)).isNotNull();
+        assertThat(productCache.get(pendingProductId)).isNull();
+        Cache shopCache = cacheManager.getCache("shop:detail");
+        assertThat(shopCache.get(activeShopId)).isNotNull();
+        assertThat(shopCache.get(pendingShopId)).isNull();
+    }
+
+    @Test
+    @DisplayName("续期时无论缓存中是否已有都以数据库为准覆盖")
+    void refreshOverwritesCachedEntries() {
+        Cache productCache = cacheManager.getCache("product:detail");
+        ProductDtos.Detail stale = new ProductDtos.Detail();
+        stale.id = bestSellerId;
+        stale.name = "旧名称";
+        productCache.put(bestSellerId, stale);
+
+        cacheWarmer.warm(false);
+        assertThat(productCache.get(bestSellerId, ProductDtos.Detail.class).name).isEqualTo("旧名称");
+
+        cacheWarmer.warm(true);
+        assertThat(productCache.get(bestSellerId, ProductDtos.Detail.class).name).isEqualTo("预热苹果");
+    }
+
+    @Test
+    @DisplayName("启动预热完成后健康状态为 UP，readiness 随之就绪")
+    void reportsReadyAfterStartupWarmUp() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!cacheWarmer.isReady()) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(20);
+        }
+        cacheWarmer.warm(false);
+
+        Health health = cacheWarmer.health();
+        assertThat(health.getStatus()).isEqualTo(Status.UP);
+        assertThat(health.getDetails()).containsEntry("products", 2).containsEntry("shops", 1);
+    }
+
+    private User createMerchant(String username) {
+        User user = new User();
+        user.setUsername(username);
+        user.setPassword("pwd");
+        return userRepository.save(user);
+    }
+
+    private Long openShop(User owner, String name) {
+        ShopDtos.CreateRequest request = new ShopDtos.CreateRequest();
+        request.name = name;
+        request.description = "缓存预热测试店铺";
+        shopService.applyForShop(owner.getUsername(), request);
+        Shop shop = shopRepository.findByOwnerId(owner.getId()).orElseThrow();
+        return shop.getId();
+    }
+
+    private static ProductDtos.CreateRequest buildProduct(String name) {
+        ProductDtos.CreateRequest request = new ProductDtos.CreateRequest();
+        request.name = name;
+        request.description = name;
+        request.price = new BigDecimal("6.00");
+        request.stock = 10;
+        request.category = "fruits";
+        request.origin = "Asia";
+        return request;
+    }
+
+    private void awaitOutboxDrained() {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (JdbcTestUtils.countRowsInTable(jdbcTemplate, "outbox_events") > 0) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package net.awords.agriecombackend.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import net.awords.agriecombackend.dto.product.ProductDtos;
+import net.awords.agriecombackend.dto.shop.ShopDtos;
+import net.awords.agriecombackend.entity.Shop;
+import net.awords.agriecombackend.entity.User;
+import net.awords.agriecombackend.repository.ShopRepository;
+import net.awords.agriecombackend.repository.UserRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.jdbc.JdbcTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 存在性过滤器与未上线店铺负缓存；店铺状态变更经发件箱失效负缓存，因此本测试不使用 @Transactional。
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class ExistenceFilterTest {
+
+    @Autowired
+    private ExistenceFilter existenceFilter;
+    @Autowired
+    private InMemoryExistenceFilterStore filterStore;
+    @Autowired
+    private ProductQueryService productQueryService;
+    @Autowired
+    private ShopPublicService shopPublicService;
+    @Autowired
+    private ShopService shopService;
+    @Autowired
+    private ShopAdminService shopAdminService;
+    @Autowired
+    private ShopProductService shopProductService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ShopRepository shopRepository;
+    @Autowired
+    private CacheManager cacheManager;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User merchant;
+    private Long shopId;
+    private Long productId;
+
+    @BeforeEach
+    void setUp() {
+        merchant = createMerchant("filter-merchant");
+        shopId = openShop(merchant, "过滤器农场");
+        shopAdminService.approve(shopId);
+        productId = shopProductService.create(merchant.getUsername(), buildProduct("过滤器南瓜")).id;
+        awaitOutboxDrained();
+
+        existenceFilter.rebuild(ExistenceFilter.Kind.PRODUCT);
+        existenceFilter.rebuild(ExistenceFilter.Kind.SHOP);
+        cacheManager.getCache("product:detail").clear();
+        cacheManager.getCache("shop:detail").clear();
+        cacheManager.getCache(ShopPublicService.INACTIVE_SHOPS).clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        filterStore.clear();
+        JdbcTestUtils.deleteFromTables(jdbcTemplate,
+                "outbox_events", "order_items", "shop_orders", "order_groups", "cart_items", "product_stock_shards",
+                "products", "shops", "user_roles", "user_addresses", "users", "roles");
+    }
+
+    @Test
+    @DisplayName("过滤器判定不存在的商品与店铺 ID 不查询数据库，直接返回 404")
+    void rejectsUnknownIdsWithoutQuerying() {
+        double rejectedBefore = checks("product", "rejected") + checks("shop", "rejected");
+        long statementsBefore = statistics().getPrepareStatementCount();
+
+        for (long offset = 1; offset <= 20; offset++) {
+            long missingProduct = productId + 1000 * offset;
+            long missingShop = shopId + 1000 * offset;
+            assertNotFound(() -> productQueryService.detail(missingProduct));
+            assertNotFound(() -> shopPublicService.getPublicDetail(missingShop));
+        }
+
+        assertThat(statistics().getPrepareStatementCount()).isEqualTo(statementsBefore);
+        assertThat(checks("product", "rejected") + checks("shop", "rejected") - rejectedBefore).isEqualTo(40);
+        assertThat(productQueryService.detail(productId).id).isEqualTo(productId);
+        assertThat(shopPublicService.getPublicDetail(shopId).shop.id).isEqualTo(shopId);
+    }
+
+    @Test
+    @DisplayName("新建商品在重建前即可查询；删除后的 ID 仍被放行并计为误判")
+    void createdIdsPassAndDeletedIdsCountAsFalsePositives() {
+        Long created = shopProductService.create(merchant.getUsername(), buildProduct("过滤器冬瓜")).id;
+        awaitOutboxDrained();
+        assertThat(productQueryService.detail(created).name).isEqualTo("过滤器冬瓜");
+
+        shopProductService.delete(merchant.getUsername(), created);
+        awaitOutboxDrained();
+        double falsePositivesBefore = falsePositives("product");
+
+        assertNotFound(() -> productQueryService.detail(created));
+        assertThat(falsePositives("product") - falsePositivesBefore).isEqualTo(1);
+
+        existenceFilter.rebuild(ExistenceFilter.Kind.PRODUCT);
+        assertNotFound(() -> productQueryService.detail(created));
+        assertThat(falsePositives("product") - falsePositivesBefore).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("未上线店铺进入负缓存，再次访问不查询数据库；审核通过后负缓存失效")
+    void inactiveShopsAreNegativelyCached() {
+        User pendingMerchant = createMerchant("filter-pending-merchant");
+        Long pendingShopId = openShop(pendingMerchant, "待审核农场");
+
+        assertNotFound(() -> shopPublicService.getPublicDetail(pendingShopId));
+        long statementsBefore = statistics().getPrepareStatementCount();
+        assertNotFound(() -> shopPublicService.getPublicDetail(pendingShopId));
+        assertThat(statistics().getPrepareStatementCount()).isEqualTo(statementsBefore);
+
+        shopAdminService.approve(pendingShopId);
+        awaitOutboxDrained();
+
+        assertThat(shopPublicService.getPublicDetail(pendingShopId).shop.name).isEqualTo("待审核农场");
+    }
+
+    private User createMerchant(String username) {
+        User user = new User();
+        user.setUsername(username);
+        user.setPassword("pwd");
+        return userRepository.save(user);
+    }
+
+    private Long openShop(User owner, String name) {
+        ShopDtos.CreateRequest request = new ShopDtos.CreateRequest();
+        request.name = name;
+        request.description = "存在性过滤器测试店铺";
+        shopService.applyForShop(owner.getUsername(), request);
+        Shop shop = shopRepository.findByOwnerId(owner.getId()).orElseThrow();
+        return shop.getId();
+    }
+
+    private static ProductDtos.CreateRequest buildProduct(String name) {
+        ProductDtos.CreateRequest request = new ProductDtos.CreateRequest();
+        request.name = name;
+        request.description = name;
+        request.price = new BigDecimal("4.00");
+        request.stock = 10;
+        request.category = "vegetables";
+        request.origin = "Asia";
+        return request;
+    }
+
+    private static void assertNotFound(Runnable call) {
+        assertThatThrownBy(call::run)
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        ex -> assertThat(ex.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND));
+    }
+
+    private double checks(String filter, String result) {
+        return meterRegistry.get("existence.filter.checks").tag("filter", filter).tag("result", result)
+                .counter().count();
+    }
+
+    private double falsePositives(String filter) {
+        return meterRegistry.get("existence.filter.false.positives").tag("filter", filter).counter().count();
+    }
+
+    private Statistics statistics() {
+        return entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    private void awaitOutboxDrained() {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (JdbcTestUtils.countRowsInTable(jdbcTemplate, "outbox_events") > 0) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package net.awords.agriecombackend.service;
+
+import jakarta.persistence.EntityManagerFactory;
+import net.awords.agriecombackend.dto.order.OrderDtos;
+import net.awords.agriecombackend.dto.product.ProductDtos;
+import net.awords.agriecombackend.dto.shop.ShopDtos;
+import net.awords.agriecombackend.entity.Shop;
+import net.awords.agriecombackend.entity.User;
+import net.awords.agriecombackend.repository.ShopRepository;
+import net.awords.agriecombackend.repository.UserRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.jdbc.JdbcTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 秒杀预占与回写跨越多个事务，因此不使用 @Transactional，改为在每个用例后清表并重置计数器。
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class FlashSaleServiceTest {
+
+    @Autowired
+    private FlashSaleService flashSaleService;
+    @Autowired
+    private InMemoryFlashSaleStockStore stockStore;
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private ShopService shopService;
+    @Autowired
+    private ShopAdminService shopAdminService;
+    @Autowired
+    private ShopProductService shopProductService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ShopRepository shopRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User buyer;
+    private User merchant;
+    private Long flashId;
+    private Long normalId;
+
+    @BeforeEach
+    void setUp() {
+        buyer = new User();
+        buyer.setUsername("flash-buyer");
+        buyer.setPassword("pwd");
+        userRepository.save(buyer);
+
+        merchant = new User();
+        merchant.setUsername("flash-merchant");
+        merchant.setPassword("pwd");
+        userRepository.save(merchant);
+
+        ShopDtos.CreateRequest shopRequest = new ShopDtos.CreateRequest();
+        shopRequest.name = "秒杀农场";
+        shopRequest.description = "秒杀测试店铺";
+        shopService.applyForShop(merchant.getUsername(), shopRequest);
+        Shop shop = shopRepository.findByOwnerId(merchant.getId()).orElseThrow();
+        shopAdminService.approve(shop.getId());
+
+        flashId = createProduct("秒杀草莓", 10);
+        normalId = createProduct("普通橙子", 100);
+        shopProductService.setFlashSale(merchant.getUsername(), flashId, true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        stockStore.reset();
+        JdbcTestUtils.deleteFromTables(jdbcTemplate,
+                "order_items", "shop_orders", "order_groups", "cart_items", "products",
+                "shops", "user_roles", "user_addresses", "users", "roles");
+    }
+
+    @Test
+    @DisplayName("并发抢购秒杀商品恰好售出库存数量，回写后数据库库存一致")
+    void concurrentReservationsNeverOversell() throws Exception {
+        assertThat(stockStore.available(flashId)).isEqualTo(10L);
+
+        int orders = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger placed = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < orders; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        orderService.create(buyer.getUsername(), buildRequest(flashId, 1));
+                        placed.incrementAndGet();
+                    } catch (ResponseStatusException ex) {
+                        rejected.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(placed.get()).isEqualTo(10);
+        assertThat(rejected.get()).isEqualTo(orders - 10);
+        assertThat(stockStore.available(flashId)).isZero();
+        // 预占量尚未回写，数据库库存保持不变
+        assertThat(stockOf(flashId)).isEqualTo(10);
+
+        flashSaleService.flush();
+
+        assertThat(stockOf(flashId)).isZero();
+        assertThat(stockStore.pendingSnapshot()).isEmpty();
+        assertThat(JdbcTestUtils.countRowsInTable(jdbcTemplate, "order_groups")).isEqualTo(10);
+    }
+
+    @Test
+    @DisplayName("同单中普通商品扣减失败时撤销秒杀预占")
+    void failedOrderReleasesReservation() {
+        OrderDtos.CreateOrderRequest request = buildRequest(flashId, 3);
+        OrderDtos.CreateOrderRequest.Item orange = new OrderDtos.CreateOrderRequest.Item();
+        orange.productId = normalId;
+        orange.quantity = 101;
+        request.items = List.of(request.items.get(0), orange);
+
+        assertThatThrownBy(() -> orderService.create(buyer.getUsername(), request))
+                .isInstanceOf(ResponseStatusException.class)
+                .hasMessageContaining("库存不足: 普通橙子");
+
+        assertThat(stockStore.available(flashId)).isEqualTo(10L);
+        assertThat(stockStore.pendingSnapshot()).isEmpty();
+        assertThat(JdbcTestUtils.countRowsInTable(jdbcTemplate, "order_groups")).isZero();
+    }
+
+    @Test
+    @DisplayName("计数器拒绝的秒杀订单不执行 SQL、不开启事务")
+    void rejectedReservationSkipsDatabase() {
+        awaitOutboxDrained();
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        assertThatThrownBy(() -> orderService.create(buyer.getUsername(), buildRequest(flashId, 11)))
+                .isInstanceOf(ResponseStatusException.class)
+                .hasMessageContaining("秒杀商品库存不足");
+
+        assertThat(statistics.getPrepareStatementCount()).isZero();
+        assertThat(statistics.getTransactionCount()).isZero();
+        assertThat(stockStore.available(flashId)).isEqualTo(10L);
+    }
+
+    @Test
+    @DisplayName("取消秒杀订单后可售库存恢复，回写后数据库不变")
+    void cancelRestocksCounter() {
+        OrderDtos.OrderDetail detail = orderService.create(buyer.getUsername(), buildRequest(flashId, 4));
+        assertThat(stockStore.available(flashId)).isEqualTo(6L);
+
+        orderService.cancel(buyer.getUsername(), detail.id);
+        assertThat(stockStore.available(flashId)).isEqualTo(10L);
+
+        flashSaleService.flush();
+        assertThat(stockOf(flashId)).isEqualTo(10);
+    }
+
+    @Test
+    @DisplayName("对账以数据库为准修正计数器漂移")
+    void reconcileFixesDrift() {
+        orderService.create(buyer.getUsername(), buildRequest(flashId, 2));
+        jdbcTemplate.update("UPDATE products SET stock = 50 WHERE id = ?", flashId);
+
+        flashSaleService.reconcile();
+
+        assertThat(stockOf(flashId)).isEqualTo(48);
+        assertThat(stockStore.available(flashId)).isEqualTo(48L);
+    }
+
+    @Test
+    @DisplayName("有待回写预占量时按 stock - pending 判断漂移，不误报")
+    void resyncComparesAgainstStockMinusPending() {
+        orderService.create(buyer.getUsername(), buildRequest(flashId, 2));
+        assertThat(stockStore.pendingSnapshot()).containsEntry(flashId, 2L);
+
+        FlashSaleStockStore.Resync unchanged = stockStore.resync(flashId, stockOf(flashId));
+        assertThat(unchanged.drifted()).isFalse();
+        assertThat(unchanged.after()).isEqualTo(8L);
+
+        jdbcTemplate.update("UPDATE products SET stock = 50 WHERE id = ?", flashId);
+        FlashSaleStockStore.Resync drifted = stockStore.resync(flashId, 50);
+        assertThat(drifted.before()).isEqualTo(8L);
+        assertThat(drifted.after()).isEqualTo(48L);
+    }
+
+    @Test
+    @DisplayName("关闭秒杀时回写剩余预占量并移除计数器")
+    void disableAppliesPendingToDatabase() {
+        orderService.create(buyer.getUsername(), buildRequest(flashId, 3));
+
+        shopProductService.setFlashSale(merchant.getUsername(), flashId, false);
+
+        assertThat(stockStore.available(flashId)).isNull();
+        assertThat(stockOf(flashId)).isEqualTo(7);
+
+        orderService.create(buyer.getUsername(), buildRequest(flashId, 2));
+        assertThat(stockOf(flashId)).isEqualTo(5);
+    }
+
+    private OrderDtos.CreateOrderRequest buildRequest(Long productId, int quantity) {
+        OrderDtos.CreateOrderRequest request = new OrderDtos.CreateOrderRequest();
+        request.shippingAddress = "杭州市西湖区文三路 1 号";
+        OrderDtos.CreateOrderRequest.Item item = new OrderDtos.CreateOrderRequest.Item();
+        item.productId = productId;
+        item.quantity = quantity;
+        request.items = List.of(item);
+        return request;
+    }
+
+    private void awaitOutboxDrained() {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (JdbcTestUtils.countRowsInTable(jdbcTemplate, "outbox_events") > 0) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private int stockOf(Long productId) {
+        Integer stock = jdbcTemplate.queryForObject("SELECT stock FROM products WHERE id = ?", Integer.class, productId);
+        return stock == null ? 0 : stock;
+    }
+
+    private Long createProduct(String name, int stock) {
+        ProductDtos.CreateRequest request = new ProductDtos.CreateRequest();
+        request.name = name;
+        request.description = name;
+        request.price = new BigDecimal("8.00");
+        request.stock = stock;
+        request.category = "fruits";
+        request.origin = "Asia";
+        return shopProductService.create(merchant.getUsername(), request).id;
+    }
+}
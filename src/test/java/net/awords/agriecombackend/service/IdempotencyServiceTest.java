@@ -0,0 +1,231 @@
+package net.awords.agriecombackend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.awords.agriecombackend.dto.order.OrderDtos;
+import net.awords.agriecombackend.dto.product.ProductDtos;
+import net.awords.agriecombackend.dto.shop.ShopDtos;
+import net.awords.agriecombackend.entity.Shop;
+import net.awords.agriecombackend.entity.User;
+import net.awords.agriecombackend.repository.ShopRepository;
+import net.awords.agriecombackend.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.jdbc.JdbcTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 幂等执行需要首个请求真正提交后再回放，因此本测试不使用 @Transactional，改为在每个用例后清表。
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class IdempotencyServiceTest {
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+    @Autowired
+    private InMemoryIdempotencyStore idempotencyStore;
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private ShopService shopService;
+    @Autowired
+    private ShopAdminService shopAdminService;
+    @Autowired
+    private ShopProductService shopProductService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ShopRepository shopRepository;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User buyer;
+    private Long productId;
+
+    @BeforeEach
+    void setUp() {
+        idempotencyStore.reset();
+
+        buyer = new User();
+        buyer.setUsername("idempotent-buyer");
+        buyer.setPassword("pwd");
+        userRepository.save(buyer);
+
+        User merchant = new User();
+        merchant.setUsername("idempotent-merchant");
+        merchant.setPassword("pwd");
+        userRepository.save(merchant);
+
+        ShopDtos.CreateRequest shopRequest = new ShopDtos.CreateRequest();
+        shopRequest.name = "幂等农场";
+        shopRequest.description = "幂等下单测试店铺";
+        shopService.applyForShop(merchant.getUsername(), shopRequest);
+        Shop shop = shopRepository.findByOwnerId(merchant.getId()).orElseThrow();
+        shopAdminService.approve(shop.getId());
+
+        ProductDtos.CreateRequest request = new ProductDtos.CreateRequest();
+        request.name = "幂等苹果";
+        request.description = "幂等苹果";
+        request.price = new BigDecimal("8.00");
+        request.stock = 10;
+        request.category = "fruits";
+        request.origin = "Asia";
+        productId = shopProductService.create(merchant.getUsername(), request).id;
+    }
+
+    @AfterEach
+    void tearDown() {
+        JdbcTestUtils.deleteFromTables(jdbcTemplate,
+                "order_items", "shop_orders", "order_groups", "cart_items", "product_stock_shards", "products",
+                "shops", "user_roles", "user_addresses", "users", "roles");
+    }
+
+    @Test
+    @DisplayName("相同 Idempotency-Key 重试下单只扣减一次库存并返回同一订单")
+    void replayReturnsFirstOrder() {
+        OrderDtos.CreateOrderRequest request = buildRequest(2);
+
+        OrderDtos.OrderDetail first = createOrder("key-1", request);
+        OrderDtos.OrderDetail second = createOrder("key-1", buildRequest(2));
+
+        assertThat(second.id).isEqualTo(first.id);
+        assertThat(stock()).isEqualTo(8);
+        assertThat(JdbcTestUtils.countRowsInTable(jdbcTemplate, "order_groups")).isEqualTo(1);
+
+        createOrder("key-2", request);
+        assertThat(stock()).isEqualTo(6);
+    }
+
+    @Test
+    @DisplayName("并发的重复请求只执行一次，其余等待并回放首个结果")
+    void concurrentDuplicatesExecuteOnce() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<OrderDtos.OrderDetail>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    return idempotencyService.execute("orders:create", buyer.getUsername(), "burst", buildRequest(1),
+                            OrderDtos.OrderDetail.class, () -> {
+                                executions.incrementAndGet();
+                                return orderService.create(buyer.getUsername(), buildRequest(1));
+                            });
+                }));
+            }
+            start.countDown();
+            Long orderId = null;
+            for (Future<OrderDtos.OrderDetail> future : futures) {
+                OrderDtos.OrderDetail detail = future.get(30, TimeUnit.SECONDS);
+                orderId = orderId == null ? detail.id : orderId;
+                assertThat(detail.id).isEqualTo(orderId);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertThat(executions).hasValue(1);
+        assertThat(stock()).isEqualTo(9);
+    }
+
+    @Test
+    @DisplayName("同一 key 携带不同请求体时返回 422")
+    void differentPayloadRejected() {
+        createOrder("key-1", buildRequest(1));
+
+        assertThatThrownBy(() -> createOrder("key-1", buildRequest(3)))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        ex -> assertThat(ex.getStatusCode()).isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY));
+        assertThat(stock()).isEqualTo(9);
+    }
+
+    @Test
+    @DisplayName("首次请求失败时释放 key，修正后可用同一 key 重试")
+    void failureReleasesKey() {
+        assertThatThrownBy(() -> createOrder("key-1", buildRequest(11)))
+                .isInstanceOf(ResponseStatusException.class)
+                .hasMessageContaining("库存不足");
+
+        // 换一个请求体会被视为不同请求，因此用同样的数量先补货再重试
+        jdbcTemplate.update("UPDATE products SET stock = 20 WHERE id = ?", productId);
+        OrderDtos.OrderDetail retried = createOrder("key-1", buildRequest(11));
+
+        assertThat(retried.id).isNotNull();
+        assertThat(stock()).isEqualTo(9);
+    }
+
+    @Test
+    @DisplayName("操作成功后写入响应失败时保留占位，重试不会再次下单")
+    void storeFailureAfterSuccessKeepsPlaceholder() {
+        InMemoryIdempotencyStore failingStore = new InMemoryIdempotencyStore() {
+            @Override
+            public void put(String key, String value, Duration ttl) {
+                throw new IllegalStateException("redis down");
+            }
+        };
+        IdempotencyService service = new IdempotencyService(failingStore, objectMapper, 3_600_000, 30_000, 200);
+        OrderDtos.CreateOrderRequest request = buildRequest(1);
+
+        OrderDtos.OrderDetail created = service.execute("orders:create", buyer.getUsername(), "key-1", request,
+                OrderDtos.OrderDetail.class, () -> orderService.create(buyer.getUsername(), request));
+
+        assertThat(created.id).isNotNull();
+        assertThatThrownBy(() -> service.execute("orders:create", buyer.getUsername(), "key-1", request,
+                OrderDtos.OrderDetail.class, () -> orderService.create(buyer.getUsername(), request)))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        ex -> assertThat(ex.getStatusCode()).isEqualTo(HttpStatus.CONFLICT));
+        assertThat(stock()).isEqualTo(9);
+    }
+
+    @Test
+    @DisplayName("未携带 key 时每次都执行")
+    void missingKeyAlwaysExecutes() {
+        createOrder(null, buildRequest(1));
+        createOrder(null, buildRequest(1));
+
+        assertThat(stock()).isEqualTo(8);
+    }
+
+    private OrderDtos.OrderDetail createOrder(String key, OrderDtos.CreateOrderRequest request) {
+        return idempotencyService.execute("orders:create", buyer.getUsername(), key, request,
+                OrderDtos.OrderDetail.class, () -> orderService.create(buyer.getUsername(), request));
+    }
+
+    private int stock() {
+        return jdbcTemplate.queryForObject("SELECT stock FROM products WHERE id = ?", Integer.class, productId);
+    }
+
+    private OrderDtos.CreateOrderRequest buildRequest(int quantity) {
+        OrderDtos.CreateOrderRequest request = new OrderDtos.CreateOrderRequest();
+        request.shippingAddress = "杭州市西湖区文三路 1 号";
+        OrderDtos.CreateOrderRequest.Item item = new OrderDtos.CreateOrderRequest.Item();
+        item.productId = productId;
+        item.quantity = quantity;
+        request.items = List.of(item);
+        return request;
+    }
+}
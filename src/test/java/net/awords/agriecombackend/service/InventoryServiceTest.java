@@ -0,0 +1,270 @@
+package net.awords.agriecombackend.service;
+
+import net.awords.agriecombackend.dto.order.OrderDtos;
+import net.awords.agriecombackend.dto.product.ProductDtos;
+import net.awords.agriecombackend.dto.shop.ShopDtos;
+import net.awords.agriecombackend.entity.Shop;
+import net.awords.agriecombackend.entity.User;
+import net.awords.agriecombackend.repository.ShopRepository;
+import net.awords.agriecombackend.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.jdbc.JdbcTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 库存扣减需要真实提交事务才能验证并发行为，因此本测试不使用 @Transactional，改为在每个用例后清表。
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class InventoryServiceTest {
+
+    @Autowired
+    private InventoryService inventoryService;
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private ShopService shopService;
+    @Autowired
+    private ShopAdminService shopAdminService;
+    @Autowired
+    private ShopProductService shopProductService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ShopRepository shopRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private User buyer;
+    private User merchant;
+    private Long appleId;
+    private Long bananaId;
+
+    @BeforeEach
+    void setUp() {
+        buyer = new User();
+        buyer.setUsername("inventory-buyer");
+        buyer.setPassword("pwd");
+        userRepository.save(buyer);
+
+        merchant = new User();
+        merchant.setUsername("inventory-merchant");
+        merchant.setPassword("pwd");
+        userRepository.save(merchant);
+
+        ShopDtos.CreateRequest shopRequest = new ShopDtos.CreateRequest();
+        shopRequest.name = "库存农场";
+        shopRequest.description = "库存测试店铺";
+        shopService.applyForShop(merchant.getUsername(), shopRequest);
+        Shop shop = shopRepository.findByOwnerId(merchant.getId()).orElseThrow();
+        shopAdminService.approve(shop.getId());
+
+        appleId = createProduct(merchant.getUsername(), "有机苹果", 300);
+        bananaId = createProduct(merchant.getUsername(), "生态香蕉", 200);
+    }
+
+    @AfterEach
+    void tearDown() {
+        JdbcTestUtils.deleteFromTables(jdbcTemplate,
+                "order_items", "shop_orders", "order_groups", "cart_items", "product_stock_shards", "products",
+                "shops", "user_roles", "user_addresses", "users", "roles");
+    }
+
+    @Test
+    @DisplayName("批量扣减按行报告失败的商品")
+    void deductReportsFailedLines() {
+        List<Long> failed = transactionTemplate.execute(status ->
+                inventoryService.deduct(Map.of(appleId, 10, bananaId, 201, -1L, 1)));
+
+        assertThat(failed).containsExactly(-1L, bananaId);
+        assertThat(stockOf(appleId)).isEqualTo(290);
+        assertThat(stockOf(bananaId)).isEqualTo(200);
+    }
+
+    @Test
+    @DisplayName("库存不足时整单回滚且提示所有不足的商品")
+    void createRollsBackWhenAnyLineFails() {
+        assertThatThrownBy(() -> orderService.create(buyer.getUsername(), buildRequest(1, 201)))
+                .isInstanceOf(ResponseStatusException.class)
+                .hasMessageContaining("库存不足: 生态香蕉");
+
+        assertThat(stockOf(appleId)).isEqualTo(300);
+        assertThat(stockOf(bananaId)).isEqualTo(200);
+        assertThat(JdbcTestUtils.countRowsInTable(jdbcTemplate, "order_groups")).isZero();
+    }
+
+    @Test
+    @DisplayName("取消订单通过同一路径回补库存，重复取消不会多次回补")
+    void cancelRestoresStockOnce() {
+        OrderDtos.OrderDetail detail = orderService.create(buyer.getUsername(), buildRequest(5, 7));
+        assertThat(stockOf(appleId)).isEqualTo(295);
+        assertThat(stockOf(bananaId)).isEqualTo(193);
+
+        orderService.cancel(buyer.getUsername(), detail.id);
+        orderService.cancel(buyer.getUsername(), detail.id);
+
+        assertThat(stockOf(appleId)).isEqualTo(300);
+        assertThat(stockOf(bananaId)).isEqualTo(200);
+    }
+
+    @Test
+    @DisplayName("高并发下单时库存不会出现负数或超卖")
+    void concurrentOrdersNeverOversell() throws Exception {
+        int threads = 16;
+        int orders = 2000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger placed = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < orders; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        orderService.create(buyer.getUsername(), buildRequest(1, 1));
+                        placed.incrementAndGet();
+                    } catch (ResponseStatusException ex) {
+                        rejected.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // 香蕉库存 200 是瓶颈：恰好 200 单成功，其余全部因库存不足被拒绝，且苹果扣减随之回滚
+        assertThat(placed.get()).isEqualTo(200);
+        assertThat(rejected.get()).isEqualTo(orders - 200);
+        assertThat(stockOf(bananaId)).isZero();
+        assertThat(stockOf(appleId)).isEqualTo(100);
+        assertThat(JdbcTestUtils.countRowsInTable(jdbcTemplate, "order_groups")).isEqualTo(200);
+        assertThat(JdbcTestUtils.countRowsInTableWhere(jdbcTemplate, "products", "stock < 0")).isZero();
+    }
+
+    @Test
+    @DisplayName("分片商品并发扣减不超卖，合计刷新到商品库存")
+    void shardedStockNeverOversells() throws Exception {
+        shopProductService.rebalanceStock(merchant.getUsername(), bananaId, 4);
+        assertThat(shardSum(bananaId)).isEqualTo(200);
+
+        AtomicInteger placed = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < 260; i++) {
+                futures.add(executor.submit(() -> {
+                    try {
+                        orderService.create(buyer.getUsername(), buildRequest(0, 1));
+                        placed.incrementAndGet();
+                    } catch (ResponseStatusException ignored) {
+                        // 库存耗尽后的请求被拒绝
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(placed.get()).isEqualTo(200);
+        assertThat(shardSum(bananaId)).isZero();
+        assertThat(JdbcTestUtils.countRowsInTableWhere(jdbcTemplate, "product_stock_shards", "stock < 0")).isZero();
+        // 扣减只落在分片上，商品行的库存在刷新前保持不变
+        assertThat(stockOf(bananaId)).isEqualTo(200);
+        inventoryService.refreshShardedStock();
+        assertThat(stockOf(bananaId)).isZero();
+    }
+
+    @Test
+    @DisplayName("单个分片不足时跨分片扣减，取消与合并分片后库存守恒")
+    void shardedDeductFallsBackAcrossShards() {
+        ProductDtos.Detail detail = shopProductService.rebalanceStock(merchant.getUsername(), appleId, 4);
+        assertThat(detail.stockShards).isEqualTo(4);
+        assertThat(detail.stock).isEqualTo(300);
+
+        OrderDtos.OrderDetail order = orderService.create(buyer.getUsername(), buildRequest(100, 0));
+        assertThat(shardSum(appleId)).isEqualTo(200);
+
+        orderService.cancel(buyer.getUsername(), order.id);
+        assertThat(shardSum(appleId)).isEqualTo(300);
+
+        detail = shopProductService.rebalanceStock(merchant.getUsername(), appleId, 0);
+        assertThat(detail.stockShards).isZero();
+        assertThat(detail.stock).isEqualTo(300);
+        assertThat(JdbcTestUtils.countRowsInTable(jdbcTemplate, "product_stock_shards")).isZero();
+    }
+
+    private OrderDtos.CreateOrderRequest buildRequest(int appleQuantity, int bananaQuantity) {
+        OrderDtos.CreateOrderRequest request = new OrderDtos.CreateOrderRequest();
+        request.shippingAddress = "杭州市西湖区文三路 1 号";
+        OrderDtos.CreateOrderRequest.Item apple = new OrderDtos.CreateOrderRequest.Item();
+        apple.productId = appleId;
+        apple.quantity = appleQuantity;
+        OrderDtos.CreateOrderRequest.Item banana = new OrderDtos.CreateOrderRequest.Item();
+        banana.productId = bananaId;
+        banana.quantity = bananaQuantity;
+        request.items = new ArrayList<>();
+        if (appleQuantity > 0) {
+            request.items.add(apple);
+        }
+        if (bananaQuantity > 0) {
+            request.items.add(banana);
+        }
+        return request;
+    }
+
+    private int stockOf(Long productId) {
+        Integer stock = jdbcTemplate.queryForObject("SELECT stock FROM products WHERE id = ?", Integer.class, productId);
+        return stock == null ? 0 : stock;
+    }
+
+    private int shardSum(Long productId) {
+        Integer sum = jdbcTemplate.queryForObject("SELECT COALESCE(SUM(stock), 0) FROM product_stock_shards WHERE product_id = ?",
+                Integer.class, productId);
+        return sum == null ? 0 : sum;
+    }
+
+    private Long createProduct(String username, String name, int stock) {
+        ProductDtos.CreateRequest request = new ProductDtos.CreateRequest();
+        request.name = name;
+        request.description = name;
+        request.price = new BigDecimal("5.00");
+        request.stock = stock;
+        request.category = "fruits";
+        request.origin = "Asia";
+        return shopProductService.create(username, request).id;
+    }
+}
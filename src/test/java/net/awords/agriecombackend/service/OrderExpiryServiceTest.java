@@ -0,0 +1,252 @@
+package net.awords.agriecombackend.service;
+
+import net.awords.agriecombackend.dto.order.OrderDtos;
+import net.awords.agriecombackend.dto.product.ProductDtos;
+import net.awords.agriecombackend.dto.shop.ShopDtos;
+import net.awords.agriecombackend.entity.Shop;
+import net.awords.agriecombackend.entity.User;
+import net.awords.agriecombackend.repository.ShopRepository;
+import net.awords.agriecombackend.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.jdbc.JdbcTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 超时关闭在独立事务中认领并提交，因此本测试不使用 @Transactional，改为在每个用例后清表。
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class OrderExpiryServiceTest {
+
+    @Autowired
+    private OrderExpiryService orderExpiryService;
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private ShopOrderService shopOrderService;
+    @Autowired
+    private ShopService shopService;
+    @Autowired
+    private ShopAdminService shopAdminService;
+    @Autowired
+    private ShopProductService shopProductService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ShopRepository shopRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Value("${order-expiry.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    private User buyer;
+    private User merchant;
+    private Long productId;
+
+    @BeforeEach
+    void setUp() {
+        buyer = new User();
+        buyer.setUsername("expiry-buyer");
+        buyer.setPassword("pwd");
+        userRepository.save(buyer);
+
+        merchant = new User();
+        merchant.setUsername("expiry-merchant");
+        merchant.setPassword("pwd");
+        userRepository.save(merchant);
+
+        ShopDtos.CreateRequest shopRequest = new ShopDtos.CreateRequest();
+        shopRequest.name = "超时农场";
+        shopRequest.description = "超时关单测试店铺";
+        shopService.applyForShop(merchant.getUsername(), shopRequest);
+        Shop shop = shopRepository.findByOwnerId(merchant.getId()).orElseThrow();
+        shopAdminService.approve(shop.getId());
+
+        ProductDtos.CreateRequest request = new ProductDtos.CreateRequest();
+        request.name = "超时橙子";
+        request.description = "超时橙子";
+        request.price = new BigDecimal("6.00");
+        request.stock = 10;
+        request.category = "fruits";
+        request.origin = "Asia";
+        productId = shopProductService.create(merchant.getUsername(), request).id;
+    }
+
+    @AfterEach
+    void tearDown() {
+        JdbcTestUtils.deleteFromTables(jdbcTemplate,
+                "order_items", "shop_orders", "order_groups", "cart_items", "product_stock_shards", "products",
+                "shops", "user_roles", "user_addresses", "users", "roles");
+    }
+
+    @Test
+    @DisplayName("时间轮跨层登记的条目在各自到期格依次取出")
+    void timingWheelCascadesAcrossLevels() {
+        HierarchicalTimingWheel wheel = new HierarchicalTimingWheel(10, 4, 0);
+        wheel.add(1, 25);
+        wheel.add(2, 95);
+        wheel.add(3, 1_000);
+        wheel.add(4, -5);
+
+        assertThat(wheel.advance(0)).containsExactly(4L);
+        assertThat(wheel.advance(19)).isEmpty();
+        // 所在格已到起点但未到精确的到期时间，不提前返回
+        assertThat(wheel.advance(24)).isEmpty();
+        assertThat(wheel.advance(25)).containsExactly(1L);
+        assertThat(wheel.advance(89)).isEmpty();
+        assertThat(wheel.advance(94)).isEmpty();
+        assertThat(wheel.advance(95)).containsExactly(2L);
+        assertThat(wheel.size()).isEqualTo(1);
+        assertThat(wheel.advance(999)).isEmpty();
+        assertThat(wheel.advance(1_000)).containsExactly(3L);
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    @DisplayName("超时未支付的订单被关闭并回补库存，未到期的订单保持不变")
+    void expiresDueOrdersAndRestoresStock() {
+        long placedAt = System.currentTimeMillis();
+        OrderDtos.OrderDetail order = orderService.create(buyer.getUsername(), buildRequest(3));
+        assertThat(stock()).isEqualTo(7);
+
+        assertThat(orderExpiryService.expireDue(placedAt + timeoutMs / 2)).isZero();
+        assertThat(status(order.id)).isEqualTo("CREATED");
+
+        assertThat(orderExpiryService.expireDue(placedAt + timeoutMs + 5_000)).isEqualTo(1);
+        assertThat(status(order.id)).isEqualTo("CANCELLED");
+        assertThat(jdbcTemplate.queryForList("SELECT status FROM shop_orders WHERE order_group_id = ?", String.class, order.id))
+                .containsOnly("CANCELLED");
+        assertThat(stock()).isEqualTo(10);
+    }
+
+    @Test
+    @DisplayName("兜底扫描分批关闭不在时间轮中的订单，已取消的订单不会重复回补")
+    void sweepExpiresUntrackedOrdersOnce() {
+        List<Long> orderIds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            orderIds.add(orderService.create(buyer.getUsername(), buildRequest(2)).id);
+        }
+        orderService.cancel(buyer.getUsername(), orderIds.get(0));
+        assertThat(stock()).isEqualTo(6);
+
+        assertThat(orderExpiryService.sweep(System.currentTimeMillis() + timeoutMs + 1_000)).isEqualTo(2);
+        assertThat(stock()).isEqualTo(10);
+        assertThat(orderExpiryService.sweep(System.currentTimeMillis() + timeoutMs + 1_000)).isZero();
+        assertThat(stock()).isEqualTo(10);
+    }
+
+    @Test
+    @DisplayName("其他事务锁住的订单被跳过而不是阻塞等待")
+    void lockedOrdersAreSkipped() throws Exception {
+        Long lockedId = orderService.create(buyer.getUsername(), buildRequest(1)).id;
+        Long freeId = orderService.create(buyer.getUsername(), buildRequest(1)).id;
+
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> holder = CompletableFuture.runAsync(() ->
+                new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                    jdbcTemplate.queryForObject("SELECT id FROM order_groups WHERE id = ? FOR UPDATE", Long.class, lockedId);
+                    locked.countDown();
+                    try {
+                        release.await(30, TimeUnit.SECONDS);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }));
+        assertThat(locked.await(30, TimeUnit.SECONDS)).isTrue();
+        try {
+            assertThat(orderExpiryService.sweep(System.currentTimeMillis() + timeoutMs + 1_000)).isEqualTo(1);
+            assertThat(status(lockedId)).isEqualTo("CREATED");
+            assertThat(status(freeId)).isEqualTo("CANCELLED");
+        } finally {
+            release.countDown();
+            holder.get(30, TimeUnit.SECONDS);
+        }
+        assertThat(orderExpiryService.sweep(System.currentTimeMillis() + timeoutMs + 1_000)).isEqualTo(1);
+        assertThat(stock()).isEqualTo(10);
+    }
+
+    @Test
+    @DisplayName("超时关闭认领订单后，商户发货等待其提交并因订单已取消而被拒绝")
+    void shipWaitsForExpiryAndRejectsCancelledOrder() throws Exception {
+        long placedAt = System.currentTimeMillis();
+        OrderDtos.OrderDetail order = orderService.create(buyer.getUsername(), buildRequest(2));
+        Long shopOrderId = order.shopOrders.get(0).id;
+
+        // 在外层事务中执行超时关闭，认领的行锁保持到外层事务提交
+        CountDownLatch claimed = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> expiry = CompletableFuture.runAsync(() ->
+                new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                    assertThat(orderExpiryService.expireDue(placedAt + timeoutMs + 5_000)).isEqualTo(1);
+                    claimed.countDown();
+                    try {
+                        release.await(30, TimeUnit.SECONDS);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }));
+        assertThat(claimed.await(30, TimeUnit.SECONDS)).isTrue();
+
+        CompletableFuture<OrderDtos.ShopOrderDetail> shipping = CompletableFuture.supplyAsync(() ->
+                shopOrderService.ship(merchant.getUsername(), shopOrderId, new OrderDtos.ShipRequest()));
+        Thread.sleep(200);
+        assertThat(shipping).isNotDone();
+        release.countDown();
+        expiry.get(30, TimeUnit.SECONDS);
+
+        assertThatThrownBy(() -> shipping.get(30, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .cause()
+                .isInstanceOfSatisfying(ResponseStatusException.class, ex -> {
+                    assertThat(ex.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+                    assertThat(ex.getReason()).isEqualTo("已取消订单无法发货");
+                });
+        assertThat(status(order.id)).isEqualTo("CANCELLED");
+        assertThat(jdbcTemplate.queryForList("SELECT status FROM shop_orders WHERE id = ?", String.class, shopOrderId))
+                .containsExactly("CANCELLED");
+        assertThat(stock()).isEqualTo(10);
+    }
+
+    private String status(Long orderGroupId) {
+        return jdbcTemplate.queryForObject("SELECT status FROM order_groups WHERE id = ?", String.class, orderGroupId);
+    }
+
+    private int stock() {
+        return jdbcTemplate.queryForObject("SELECT stock FROM products WHERE id = ?", Integer.class, productId);
+    }
+
+    private OrderDtos.CreateOrderRequest buildRequest(int quantity) {
+        OrderDtos.CreateOrderRequest request = new OrderDtos.CreateOrderRequest();
+        request.shippingAddress = "杭州市西湖区文三路 1 号";
+        OrderDtos.CreateOrderRequest.Item item = new OrderDtos.CreateOrderRequest.Item();
+        item.productId = productId;
+        item.quantity = quantity;
+        request.items = List.of(item);
+        return request;
+    }
+}
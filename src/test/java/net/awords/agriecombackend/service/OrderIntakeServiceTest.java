@@ -0,0 +1,282 @@
+package net.awords.agriecombackend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.awords.agriecombackend.dto.order.OrderDtos;
+import net.awords.agriecombackend.dto.product.ProductDtos;
+import net.awords.agriecombackend.dto.shop.ShopDtos;
+import net.awords.agriecombackend.entity.Shop;
+import net.awords.agriecombackend.entity.User;
+import net.awords.agriecombackend.repository.OrderGroupRepository;
+import net.awords.agriecombackend.repository.ShopRepository;
+import net.awords.agriecombackend.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.jdbc.JdbcTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 异步下单由后台线程提交事务，因此本测试不使用 @Transactional，改为在每个用例后清表。
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class OrderIntakeServiceTest {
+
+    @Autowired
+    private OrderIntakeService orderIntakeService;
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private ShopService shopService;
+    @Autowired
+    private ShopAdminService shopAdminService;
+    @Autowired
+    private ShopProductService shopProductService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ShopRepository shopRepository;
+    @Autowired
+    private OrderGroupRepository orderGroupRepository;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User buyer;
+    private Long productId;
+
+    @BeforeEach
+    void setUp() {
+        buyer = new User();
+        buyer.setUsername("intake-buyer");
+        buyer.setPassword("pwd");
+        userRepository.save(buyer);
+
+        User merchant = new User();
+        merchant.setUsername("intake-merchant");
+        merchant.setPassword("pwd");
+        userRepository.save(merchant);
+
+        ShopDtos.CreateRequest shopRequest = new ShopDtos.CreateRequest();
+        shopRequest.name = "排队农场";
+        shopRequest.description = "异步下单测试店铺";
+        shopService.applyForShop(merchant.getUsername(), shopRequest);
+        Shop shop = shopRepository.findByOwnerId(merchant.getId()).orElseThrow();
+        shopAdminService.approve(shop.getId());
+
+        ProductDtos.CreateRequest request = new ProductDtos.CreateRequest();
+        request.name = "排队西瓜";
+        request.description = "排队西瓜";
+        request.price = new BigDecimal("12.00");
+        request.stock = 20;
+        request.category = "fruits";
+        request.origin = "Asia";
+        productId = shopProductService.create(merchant.getUsername(), request).id;
+    }
+
+    @AfterEach
+    void tearDown() {
+        JdbcTestUtils.deleteFromTables(jdbcTemplate,
+                "order_items", "shop_orders", "order_groups", "cart_items", "products",
+                "shops", "user_roles", "user_addresses", "users", "roles");
+    }
+
+    @Test
+    @DisplayName("批量提交的订单中库存不足的单笔失败，不影响同批其他订单")
+    void batchCommitIsolatesFailedTickets() throws Exception {
+        List<OrderDtos.OrderTicket> tickets = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            OrderDtos.OrderTicket ticket = orderIntakeService.submit(buyer.getUsername(), buildRequest(1));
+            assertThat(ticket.status).isEqualTo(OrderIntakeService.QUEUED);
+            tickets.add(ticket);
+        }
+
+        int completed = 0;
+        int failed = 0;
+        for (OrderDtos.OrderTicket ticket : tickets) {
+            try {
+                orderIntakeService.result(ticket.ticket).get(30, TimeUnit.SECONDS);
+                completed++;
+            } catch (ExecutionException ex) {
+                assertThat(ex.getCause()).isInstanceOfSatisfying(ResponseStatusException.class,
+                        cause -> assertThat(cause.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST));
+                assertThat(ex.getCause()).hasMessageContaining("库存不足");
+                failed++;
+            }
+        }
+
+        assertThat(completed).isEqualTo(20);
+        assertThat(failed).isEqualTo(10);
+        assertThat(jdbcTemplate.queryForObject("SELECT stock FROM products WHERE id = ?", Integer.class, productId)).isZero();
+        assertThat(JdbcTestUtils.countRowsInTable(jdbcTemplate, "order_groups")).isEqualTo(20);
+
+        OrderDtos.OrderTicket polled = orderIntakeService.get(buyer.getUsername(), tickets.get(0).ticket);
+        assertThat(polled.status).isEqualTo(OrderIntakeService.COMPLETED);
+        assertThat(orderService.get(buyer.getUsername(), polled.orderId).totalAmount).isEqualByComparingTo("12.00");
+    }
+
+    @Test
+    @DisplayName("非法请求在入队前即被拒绝")
+    void invalidRequestRejectedBeforeQueueing() {
+        assertThatThrownBy(() -> orderIntakeService.submit(buyer.getUsername(), buildRequest(0)))
+                .isInstanceOf(ResponseStatusException.class)
+                .hasMessageContaining("商品或数量非法");
+    }
+
+    @Test
+    @DisplayName("队列已满时返回 503 形成背压")
+    void fullQueueAppliesBackpressure() throws Exception {
+        OrderIntakeService stalled = newStalledService(1);
+        List<OrderDtos.OrderTicket> accepted = new ArrayList<>();
+        try {
+            whileProductLocked(() ->
+                    // 唯一的工作线程阻塞在扣减上，队列容量为 1，第三笔之前必然被拒绝
+                    assertThatThrownBy(() -> {
+                        for (int i = 0; i < 3; i++) {
+                            accepted.add(stalled.submit(buyer.getUsername(), buildRequest(1)));
+                        }
+                    }).isInstanceOfSatisfying(ResponseStatusException.class,
+                            ex -> assertThat(ex.getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE)));
+        } finally {
+            stalled.stop();
+        }
+        for (OrderDtos.OrderTicket ticket : accepted) {
+            assertThat(stalled.result(ticket.ticket)).isCompleted();
+        }
+    }
+
+    @Test
+    @DisplayName("停机时拒绝新请求，并处理完队列中已受理的订单")
+    void stopDrainsQueuedTickets() throws Exception {
+        OrderIntakeService stalled = newStalledService(10);
+        List<OrderDtos.OrderTicket> accepted = new ArrayList<>();
+        CompletableFuture<Void> stopping = new CompletableFuture<>();
+        whileProductLocked(() -> {
+            for (int i = 0; i < 3; i++) {
+                accepted.add(stalled.submit(buyer.getUsername(), buildRequest(1)));
+            }
+            stopping.completeAsync(() -> {
+                try {
+                    stalled.stop();
+                } catch (InterruptedException ex) {
+                    throw new IllegalStateException(ex);
+                }
+                return null;
+            });
+            // 停机开始后立即拒绝新请求，而已入队的凭证仍在等待行锁；停机生效前受理的探测请求同样须被处理
+            await(() -> {
+                try {
+                    accepted.add(stalled.submit(buyer.getUsername(), buildRequest(1)));
+                    return false;
+                } catch (ResponseStatusException ex) {
+                    return ex.getStatusCode() == HttpStatus.SERVICE_UNAVAILABLE;
+                }
+            });
+            assertThat(stopping).isNotDone();
+        });
+        stopping.get(30, TimeUnit.SECONDS);
+
+        for (OrderDtos.OrderTicket ticket : accepted) {
+            assertThat(stalled.result(ticket.ticket)).isCompleted();
+        }
+        assertThat(JdbcTestUtils.countRowsInTable(jdbcTemplate, "order_groups")).isEqualTo(accepted.size());
+    }
+
+    @Test
+    @DisplayName("未配置工作线程时拒绝受理，避免凭证永远停留在排队状态")
+    void noWorkersRejectsSubmissions() {
+        OrderIntakeService idle = new OrderIntakeService(orderService, orderGroupRepository, userRepository,
+                transactionManager, new SimpleMeterRegistry(), 10, 0, 10, 0, 60_000);
+        idle.start();
+
+        assertThat(rejectsWithUnavailable(idle)).isTrue();
+    }
+
+    @Test
+    @DisplayName("其他用户无法查询不属于自己的凭证")
+    void ticketIsScopedToBuyer() throws Exception {
+        OrderDtos.OrderTicket ticket = orderIntakeService.submit(buyer.getUsername(), buildRequest(1));
+        CompletableFuture<Long> result = orderIntakeService.result(ticket.ticket);
+        result.get(30, TimeUnit.SECONDS);
+
+        User other = new User();
+        other.setUsername("intake-other");
+        other.setPassword("pwd");
+        userRepository.save(other);
+
+        assertThatThrownBy(() -> orderIntakeService.get(other.getUsername(), ticket.ticket))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        ex -> assertThat(ex.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND));
+    }
+
+    private OrderIntakeService newStalledService(int queueCapacity) {
+        OrderIntakeService service = new OrderIntakeService(orderService, orderGroupRepository, userRepository,
+                transactionManager, new SimpleMeterRegistry(), queueCapacity, 1, 1, 0, 60_000);
+        service.start();
+        return service;
+    }
+
+    /**
+     * 在持有商品行锁的事务中执行，期间工作线程的库存扣减会阻塞。
+     */
+    private void whileProductLocked(Runnable action) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            jdbcTemplate.update("UPDATE products SET stock = stock WHERE id = ?", productId);
+            action.run();
+        });
+    }
+
+    private boolean rejectsWithUnavailable(OrderIntakeService service) {
+        try {
+            service.submit(buyer.getUsername(), buildRequest(1));
+            return false;
+        } catch (ResponseStatusException ex) {
+            return ex.getStatusCode() == HttpStatus.SERVICE_UNAVAILABLE;
+        }
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("condition not met within 5s");
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new AssertionError(ex);
+            }
+        }
+    }
+
+    private OrderDtos.CreateOrderRequest buildRequest(int quantity) {
+        OrderDtos.CreateOrderRequest request = new OrderDtos.CreateOrderRequest();
+        request.shippingAddress = "杭州市西湖区文三路 1 号";
+        OrderDtos.CreateOrderRequest.Item item = new OrderDtos.CreateOrderRequest.Item();
+        item.productId = productId;
+        item.quantity = quantity;
+        request.items = List.of(item);
+        return request;
+    }
+}
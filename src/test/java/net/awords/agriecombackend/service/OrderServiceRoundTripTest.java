@@ -0,0 +1,155 @@
+package net.awords.agriecombackend.service;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import net.awords.agriecombackend.dto.order.OrderDtos;
+import net.awords.agriecombackend.dto.product.ProductDtos;
+import net.awords.agriecombackend.dto.shop.ShopDtos;
+import net.awords.agriecombackend.entity.Shop;
+import net.awords.agriecombackend.entity.User;
+import net.awords.agriecombackend.repository.ShopRepository;
+import net.awords.agriecombackend.repository.UserRepository;
+import org.hibernate.Session;
+import org.hibernate.SessionEventListener;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 统计一次多店铺下单中 Hibernate 发往数据库的语句/批次数，对比逐行插入与 JDBC 批量插入。
+ * <p>
+ * 逐行一侧以 {@code setJdbcBatchSize(1)} 近似改用序列之前的 IDENTITY 主键：两者都是每行一次 INSERT，
+ * 但 IDENTITY 下主键随 INSERT 返回、插入发生在 persist 时而非 flush 时，这里并未实际切回旧的 ID 策略，
+ * 只比较往返次数，不比较耗时。
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@Transactional
+class OrderServiceRoundTripTest {
+
+    private static final int SHOPS = 4;
+    private static final int PRODUCTS_PER_SHOP = 5;
+
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private ShopService shopService;
+    @Autowired
+    private ShopAdminService shopAdminService;
+    @Autowired
+    private ShopProductService shopProductService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ShopRepository shopRepository;
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private User buyer;
+    private final List<Long> productIds = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        buyer = new User();
+        buyer.setUsername("round-trip-buyer");
+        buyer.setPassword("pwd");
+        userRepository.save(buyer);
+
+        for (int s = 0; s < SHOPS; s++) {
+            User merchant = new User();
+            merchant.setUsername("round-trip-merchant-" + s);
+            merchant.setPassword("pwd");
+            userRepository.save(merchant);
+
+            ShopDtos.CreateRequest shopRequest = new ShopDtos.CreateRequest();
+            shopRequest.name = "批量农场" + s;
+            shopRequest.description = "批量插入测试店铺";
+            shopService.applyForShop(merchant.getUsername(), shopRequest);
+            Shop shop = shopRepository.findByOwnerId(merchant.getId()).orElseThrow();
+            shopAdminService.approve(shop.getId());
+
+            for (int p = 0; p < PRODUCTS_PER_SHOP; p++) {
+                ProductDtos.CreateRequest request = new ProductDtos.CreateRequest();
+                request.name = "批量商品" + s + "-" + p;
+                request.description = request.name;
+                request.price = new BigDecimal("3.00");
+                request.stock = 100;
+                request.category = "vegetables";
+                request.origin = "Asia";
+                productIds.add(shopProductService.create(merchant.getUsername(), request).id);
+            }
+        }
+        entityManager.flush();
+        // 预热：让各序列先取到一段 ID，避免首单的序列调用干扰对比
+        orderService.create(buyer.getUsername(), buildRequest());
+        entityManager.flush();
+    }
+
+    @Test
+    @DisplayName("20 行多店铺订单：批量插入的数据库往返次数远少于逐行插入")
+    void batchedInsertsCutRoundTrips() {
+        Session session = entityManager.unwrap(Session.class);
+        RoundTripCounter counter = new RoundTripCounter();
+        session.addEventListeners(counter);
+
+        session.setJdbcBatchSize(1);
+        orderService.create(buyer.getUsername(), buildRequest());
+        entityManager.flush();
+        int rowByRow = counter.reset();
+
+        session.setJdbcBatchSize(null);
+        orderService.create(buyer.getUsername(), buildRequest());
+        entityManager.flush();
+        int batched = counter.reset();
+
+        // 1 个订单组 + 4 个子订单 + 20 个订单项：逐行 25 次 INSERT，批量后每张表一个批次，共 3 个；
+        // 其余语句（查用户、扣库存、取商品、写 outbox 等）两次相同，只有池化序列取段可能落在任一次下单中
+        int rows = 1 + SHOPS + SHOPS * PRODUCTS_PER_SHOP;
+        assertThat(rowByRow - batched).isBetween(rows - 3 - 1, rows - 3 + 1);
+    }
+
+    private OrderDtos.CreateOrderRequest buildRequest() {
+        OrderDtos.CreateOrderRequest request = new OrderDtos.CreateOrderRequest();
+        request.shippingAddress = "杭州市西湖区文三路 1 号";
+        request.items = productIds.stream().map(id -> {
+            OrderDtos.CreateOrderRequest.Item item = new OrderDtos.CreateOrderRequest.Item();
+            item.productId = id;
+            item.quantity = 1;
+            return item;
+        }).toList();
+        return request;
+    }
+
+    /**
+     * 每条单独执行的语句与每个 JDBC 批次各计一次往返。
+     */
+    private static final class RoundTripCounter implements SessionEventListener {
+        private int count;
+
+        @Override
+        public void jdbcExecuteStatementStart() {
+            count++;
+        }
+
+        @Override
+        public void jdbcExecuteBatchStart() {
+            count++;
+        }
+
+        int reset() {
+            int value = count;
+            count = 0;
+            return value;
+        }
+    }
+}
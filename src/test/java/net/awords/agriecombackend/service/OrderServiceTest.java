@@ -1,5 +1,6 @@
 package net.awords.agriecombackend.service;
 
+import net.awords.agriecombackend.dto.SliceResult;
 import net.awords.agriecombackend.dto.order.OrderDtos;
 import net.awords.agriecombackend.dto.product.ProductDtos;
 import net.awords.agriecombackend.dto.shop.ShopDtos;
@@ -22,6 +23,7 @@ import org.springframework.test.context.ActiveProfiles;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -92,7 +94,7 @@ class OrderServiceTest {
         OrderDtos.OrderDetail detail = orderService.create(buyer.getUsername(), request);
 
         assertThat(detail.shopOrders).hasSize(2);
-        assertThat(detail.totalAmount).isEqualByComparingTo("26.00");
+        assertThat(detail.totalAmount).isEqualByComparingTo("38.00");
         assertThat(detail.status).isEqualTo(OrderStatus.CREATED.name());
 
         Product apple = productRepository.findById(appleId).orElseThrow();
@@ -122,7 +124,9 @@ class OrderServiceTest {
     void merchantShipUpdatesStatusAndSales() {
         OrderDtos.OrderDetail detail = orderService.create(buyer.getUsername(), buildRequest());
 
+        // 子订单的生成顺序不固定，按所属商户排列，先 A 后 B
         List<Long> shopOrderIds = shopOrderRepository.findByOrderGroupId(detail.id).stream()
+                .sorted(Comparator.comparing(o -> !o.getShop().getOwner().getId().equals(merchantA.getId())))
                 .map(o -> o.getId())
                 .toList();
         assertThat(shopOrderIds).hasSize(2);
@@ -141,6 +145,30 @@ class OrderServiceTest {
         assertThat(banana.getSales()).isEqualTo(3);
     }
 
+    @Test
+    @DisplayName("买家与商户订单可按游标分页，按下单时间倒序且不统计总数")
+    void scrollOrders() {
+        Long first = orderService.create(buyer.getUsername(), buildRequest()).id;
+        Long second = orderService.create(buyer.getUsername(), buildRequest()).id;
+        Long third = orderService.create(buyer.getUsername(), buildRequest()).id;
+
+        SliceResult<OrderDtos.OrderSummary> page1 = orderService.scroll(buyer.getUsername(), null, 2);
+        assertThat(page1.items).extracting(o -> o.id).containsExactly(third, second);
+        assertThat(page1.hasNext).isTrue();
+        SliceResult<OrderDtos.OrderSummary> page2 = orderService.scroll(buyer.getUsername(), page1.nextCursor, 2);
+        assertThat(page2.items).extracting(o -> o.id).containsExactly(first);
+        assertThat(page2.nextCursor).isNull();
+
+        SliceResult<OrderDtos.ShopOrderSummary> shopPage1 = shopOrderService.scroll(merchantA.getUsername(), null, 2);
+        SliceResult<OrderDtos.ShopOrderSummary> shopPage2 =
+                shopOrderService.scroll(merchantA.getUsername(), shopPage1.nextCursor, 2);
+        assertThat(shopPage1.items).hasSize(2);
+        assertThat(shopPage2.items).hasSize(1);
+        assertThat(shopPage2.hasNext).isFalse();
+        assertThat(shopPage1.items.get(0).id).isGreaterThan(shopPage1.items.get(1).id);
+        assertThat(shopPage1.items.get(1).id).isGreaterThan(shopPage2.items.get(0).id);
+    }
+
     private OrderDtos.CreateOrderRequest buildRequest() {
         OrderDtos.CreateOrderRequest request = new OrderDtos.CreateOrderRequest();
         request.shippingAddress = "上海市浦东新区张江路 123 号";
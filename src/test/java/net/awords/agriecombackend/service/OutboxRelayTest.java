@@ -0,0 +1,259 @@
+package net.awords.agriecombackend.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.awords.agriecombackend.dto.product.ProductDtos;
+import net.awords.agriecombackend.dto.shop.ShopDtos;
+import net.awords.agriecombackend.entity.OutboxEventType;
+import net.awords.agriecombackend.entity.Shop;
+import net.awords.agriecombackend.entity.User;
+import net.awords.agriecombackend.repository.ShopRepository;
+import net.awords.agriecombackend.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.jdbc.JdbcTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 发件箱事件只在事务提交后投递，因此本测试不使用 @Transactional，改为在每个用例后清表。
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class OutboxRelayTest {
+
+    @Autowired
+    private ShopService shopService;
+    @Autowired
+    private ShopAdminService shopAdminService;
+    @Autowired
+    private ShopProductService shopProductService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ShopRepository shopRepository;
+    @Autowired
+    private CacheManager cacheManager;
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User merchant;
+    private Long productId;
+
+    @BeforeEach
+    void setUp() {
+        merchant = new User();
+        merchant.setUsername("outbox-merchant");
+        merchant.setPassword("pwd");
+        userRepository.save(merchant);
+
+        ShopDtos.CreateRequest shopRequest = new ShopDtos.CreateRequest();
+        shopRequest.name = "发件箱农场";
+        shopRequest.description = "发件箱测试店铺";
+        shopService.applyForShop(merchant.getUsername(), shopRequest);
+        Shop shop = shopRepository.findByOwnerId(merchant.getId()).orElseThrow();
+        shopAdminService.approve(shop.getId());
+
+        ProductDtos.CreateRequest request = new ProductDtos.CreateRequest();
+        request.name = "发件箱土豆";
+        request.description = "发件箱土豆";
+        request.price = new BigDecimal("2.50");
+        request.stock = 10;
+        request.category = "vegetables";
+        request.origin = "Asia";
+        productId = shopProductService.create(merchant.getUsername(), request).id;
+        awaitOutboxDrained();
+    }
+
+    @AfterEach
+    void tearDown() {
+        JdbcTestUtils.deleteFromTables(jdbcTemplate,
+                "outbox_events", "order_items", "shop_orders", "order_groups", "cart_items", "product_stock_shards",
+                "products", "shops", "user_roles", "user_addresses", "users", "roles");
+    }
+
+    @Test
+    @DisplayName("商品修改提交后才失效详情缓存，事务内缓存保持不变")
+    void evictsOnlyAfterCommit() throws Exception {
+        Cache productCache = cacheManager.getCache("product:detail");
+        productCache.put(productId, "stale");
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            shopProductService.update(merchant.getUsername(), productId, buildUpdate(20));
+            assertThat(JdbcTestUtils.countRowsInTableWhere(jdbcTemplate, "outbox_events",
+                    "event_type = 'PRODUCT_CHANGED' AND aggregate_id = " + productId)).isEqualTo(1);
+            assertThat(productCache.get(productId)).isNotNull();
+        });
+
+        awaitOutboxDrained();
+        assertThat(productCache.get(productId)).isNull();
+    }
+
+    @Test
+    @DisplayName("事务回滚时事件随之丢弃，缓存不被失效")
+    void rollbackDiscardsEvents() {
+        Cache productCache = cacheManager.getCache("product:detail");
+        productCache.put(productId, "cached");
+
+        assertThatThrownBy(() -> new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            shopProductService.update(merchant.getUsername(), productId, buildUpdate(20));
+            throw new IllegalStateException("rollback");
+        })).hasMessage("rollback");
+
+        assertThat(JdbcTestUtils.countRowsInTable(jdbcTemplate, "outbox_events")).isZero();
+        assertThat(productCache.get(productId)).isNotNull();
+    }
+
+    @Test
+    @DisplayName("处理器失败时整批保留，重试后按写入顺序投递并删除")
+    void failedBatchIsRetriedInOrder() throws Exception {
+        for (long aggregateId = 1; aggregateId <= 3; aggregateId++) {
+            jdbcTemplate.update("INSERT INTO outbox_events (event_type, aggregate_id, payload, created_at) "
+                    + "VALUES ('ORDER_PLACED', ?, '{\"productIds\":[1],\"shopIds\":[2]}', CURRENT_TIMESTAMP)", aggregateId);
+        }
+
+        OutboxRelay failing = newRelay(List.of(messages -> {
+            throw new IllegalStateException("consumer down");
+        }));
+        failing.relay();
+        failing.stop();
+        assertThat(JdbcTestUtils.countRowsInTableWhere(jdbcTemplate, "outbox_events", "attempts = 1")).isEqualTo(3);
+
+        List<OutboxMessage> received = Collections.synchronizedList(new ArrayList<>());
+        OutboxRelay healthy = newRelay(List.of(received::addAll));
+        assertThat(healthy.relayPending()).isEqualTo(3);
+        healthy.stop();
+        assertThat(received).extracting(OutboxMessage::aggregateId).containsExactly(1L, 2L, 3L);
+        assertThat(received.get(0).type()).isEqualTo(OutboxEventType.ORDER_PLACED);
+        assertThat(received.get(0).productIds()).containsExactly(1L);
+        assertThat(JdbcTestUtils.countRowsInTable(jdbcTemplate, "outbox_events")).isZero();
+    }
+
+    @Test
+    @DisplayName("始终失败的事件不阻塞其后的事件，达到重试上限后被搁置")
+    void poisonEventsAreSetAside() throws Exception {
+        insertEvent(1, "{\"productIds\":[1]}");
+        insertEvent(2, "not json");
+        insertEvent(3, "{\"productIds\":[3]}");
+
+        List<OutboxMessage> received = Collections.synchronizedList(new ArrayList<>());
+        OutboxRelay relay = newRelay(List.of(messages -> {
+            if (messages.stream().anyMatch(m -> m.aggregateId() == 1L)) {
+                throw new IllegalStateException("consumer rejects event");
+            }
+            received.addAll(messages);
+        }));
+        try {
+            assertThat(relay.relayPending()).isEqualTo(1);
+            assertThat(received).extracting(OutboxMessage::aggregateId).containsExactly(3L);
+            assertThat(jdbcTemplate.queryForList("SELECT aggregate_id FROM outbox_events WHERE attempts = 1 ORDER BY id",
+                    Long.class)).containsExactly(1L, 2L);
+
+            // 退避为 0，继续重试直到达到上限 3 次，之后不再认领
+            assertThat(relay.relayPending()).isZero();
+            assertThat(relay.relayPending()).isZero();
+            assertThat(relay.relayPending()).isZero();
+        } finally {
+            relay.stop();
+        }
+        assertThat(JdbcTestUtils.countRowsInTableWhere(jdbcTemplate, "outbox_events",
+                "attempts = 3 AND last_error IS NOT NULL")).isEqualTo(2);
+        assertThat(received).hasSize(1);
+    }
+
+    @Test
+    @DisplayName("同一批事件并行交给各处理器，按事件类型过滤")
+    void handlersRunInParallel() throws Exception {
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        List<OutboxMessage> shipped = Collections.synchronizedList(new ArrayList<>());
+        OutboxEventHandler first = messages -> await(barrier);
+        OutboxEventHandler second = new OutboxEventHandler() {
+            @Override
+            public boolean supports(OutboxEventType type) {
+                return type == OutboxEventType.ORDER_SHIPPED;
+            }
+
+            @Override
+            public void handle(List<OutboxMessage> messages) {
+                await(barrier);
+                shipped.addAll(messages);
+            }
+        };
+        OutboxRelay relay = newRelay(List.of(first, second));
+        try {
+            relay.dispatch(List.of(
+                    new OutboxMessage(1, OutboxEventType.ORDER_PLACED, 10, List.of(), List.of(), List.of()),
+                    new OutboxMessage(2, OutboxEventType.ORDER_SHIPPED, 11, List.of(), List.of(), List.of())));
+        } finally {
+            relay.stop();
+        }
+        // 两个处理器须同时到达屏障，串行执行会超时失败
+        assertThat(shipped).extracting(OutboxMessage::aggregateId).containsExactly(11L);
+    }
+
+    private OutboxRelay newRelay(List<OutboxEventHandler> handlers) {
+        OutboxRelay relay = new OutboxRelay(jdbcTemplate, objectMapper, transactionManager, handlers,
+                new SimpleMeterRegistry(), 100, 2, 3, 0);
+        relay.start();
+        return relay;
+    }
+
+    private void insertEvent(long aggregateId, String payload) {
+        jdbcTemplate.update("INSERT INTO outbox_events (event_type, aggregate_id, payload, created_at) "
+                + "VALUES ('ORDER_PLACED', ?, ?, CURRENT_TIMESTAMP)", aggregateId, payload);
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await(10, TimeUnit.SECONDS);
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private void awaitOutboxDrained() {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (JdbcTestUtils.countRowsInTable(jdbcTemplate, "outbox_events") > 0) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private ProductDtos.UpdateRequest buildUpdate(int stock) {
+        ProductDtos.UpdateRequest request = new ProductDtos.UpdateRequest();
+        request.name = "发件箱土豆";
+        request.description = "发件箱土豆";
+        request.price = new BigDecimal("2.50");
+        request.stock = stock;
+        request.category = "vegetables";
+        request.origin = "Asia";
+        return request;
+    }
+}
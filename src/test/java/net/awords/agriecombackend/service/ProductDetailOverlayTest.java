@@ -0,0 +1,208 @@
+package net.awords.agriecombackend.service;
+
+import net.awords.agriecombackend.config.CircuitBreaker;
+import net.awords.agriecombackend.config.HotKeyDetector;
+import net.awords.agriecombackend.dto.order.OrderDtos;
+import net.awords.agriecombackend.dto.product.ProductDtos;
+import net.awords.agriecombackend.dto.shop.ShopDtos;
+import net.awords.agriecombackend.entity.Shop;
+import net.awords.agriecombackend.entity.User;
+import net.awords.agriecombackend.repository.ProductRepository;
+import net.awords.agriecombackend.repository.ShopRepository;
+import net.awords.agriecombackend.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.jdbc.JdbcTestUtils;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 实时库存与销量在事务提交后更新，因此本测试不使用 @Transactional，改为在每个用例后清表。
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class ProductDetailOverlayTest {
+
+    @Autowired
+    private ProductQueryService productQueryService;
+    @Autowired
+    private OrderService orderService;
+    @Autowired
+    private ShopOrderService shopOrderService;
+    @Autowired
+    private ShopService shopService;
+    @Autowired
+    private ShopAdminService shopAdminService;
+    @Autowired
+    private ShopProductService shopProductService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ShopRepository shopRepository;
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private ProductLiveStatsStore liveStatsStore;
+    @Autowired
+    private CircuitBreaker circuitBreaker;
+    @Autowired
+    private HotKeyDetector hotKeyDetector;
+    @Autowired
+    private CacheManager cacheManager;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User buyer;
+    private User merchant;
+    private Long productId;
+
+    @BeforeEach
+    void setUp() {
+        buyer = new User();
+        buyer.setUsername("overlay-buyer");
+        buyer.setPassword("pwd");
+        userRepository.save(buyer);
+
+        merchant = new User();
+        merchant.setUsername("overlay-merchant");
+        merchant.setPassword("pwd");
+        userRepository.save(merchant);
+
+        ShopDtos.CreateRequest shopRequest = new ShopDtos.CreateRequest();
+        shopRequest.name = "实时库存农场";
+        shopRequest.description = "实时库存测试店铺";
+        shopService.applyForShop(merchant.getUsername(), shopRequest);
+        Shop shop = shopRepository.findByOwnerId(merchant.getId()).orElseThrow();
+        shopAdminService.approve(shop.getId());
+
+        ProductDtos.CreateRequest request = new ProductDtos.CreateRequest();
+        request.name = "实时玉米";
+        request.description = "实时玉米";
+        request.price = new BigDecimal("4.00");
+        request.stock = 10;
+        request.category = "grains";
+        request.origin = "Asia";
+        productId = shopProductService.create(merchant.getUsername(), request).id;
+        awaitOutboxDrained();
+    }
+
+    @AfterEach
+    void tearDown() {
+        JdbcTestUtils.deleteFromTables(jdbcTemplate,
+                "outbox_events", "order_items", "shop_orders", "order_groups", "cart_items", "product_stock_shards",
+                "products", "shops", "user_roles", "user_addresses", "users", "roles");
+    }
+
+    @Test
+    @DisplayName("下单、发货与取消只更新实时库存与销量，静态详情缓存保持不变")
+    void orderFlowKeepsStaticDetailCached() {
+        ProductDtos.Detail initial = productQueryService.detail(productId);
+        assertThat(initial.stock).isEqualTo(10);
+        assertThat(initial.sales).isZero();
+        Object cachedBefore = cacheManager.getCache("product:detail").get(productId).get();
+
+        OrderDtos.OrderDetail order = orderService.create(buyer.getUsername(), buildOrder(3));
+        awaitOutboxDrained();
+        assertThat(productQueryService.detail(productId).stock).isEqualTo(7);
+
+        shopOrderService.ship(merchant.getUsername(), order.shopOrders.get(0).id, new OrderDtos.ShipRequest());
+        awaitOutboxDrained();
+        assertThat(productQueryService.detail(productId).sales).isEqualTo(3);
+
+        Long cancelled = orderService.create(buyer.getUsername(), buildOrder(2)).id;
+        orderService.cancel(buyer.getUsername(), cancelled);
+        awaitOutboxDrained();
+        ProductDtos.Detail latest = productQueryService.detail(productId);
+
+        assertThat(latest.stock).isEqualTo(7);
+        assertThat(latest.name).isEqualTo("实时玉米");
+        assertThat(cacheManager.getCache("product:detail").get(productId).get()).isSameAs(cachedBefore);
+    }
+
+    @Test
+    @DisplayName("缓存的静态详情不含实时字段，返回值为合并后的新对象")
+    void cachedStaticPartIsNotMutated() {
+        ProductDtos.Detail detail = productQueryService.detail(productId);
+        detail.stock = -1;
+
+        ProductDtos.Detail cached = (ProductDtos.Detail) cacheManager.getCache("product:detail").get(productId).get();
+        assertThat(cached.stock).isNull();
+        assertThat(cached.sales).isNull();
+        assertThat(productQueryService.detail(productId).stock).isEqualTo(10);
+    }
+
+    @Test
+    @DisplayName("商户修改商品后静态详情与实时库存均以数据库为准重新载入")
+    void merchantEditRefreshesBothParts() {
+        productQueryService.detail(productId);
+
+        ProductDtos.UpdateRequest request = new ProductDtos.UpdateRequest();
+        request.name = "新季玉米";
+        request.description = "新季玉米";
+        request.price = new BigDecimal("4.00");
+        request.stock = 50;
+        request.category = "grains";
+        request.origin = "Asia";
+        shopProductService.update(merchant.getUsername(), productId, request);
+        awaitOutboxDrained();
+
+        ProductDtos.Detail detail = productQueryService.detail(productId);
+        assertThat(detail.name).isEqualTo("新季玉米");
+        assertThat(detail.stock).isEqualTo(50);
+    }
+
+    @Test
+    @DisplayName("载入实时数据的读库与写入之间有订单提交时放弃写入，下次读取以数据库为准")
+    void incrementDuringLoadDiscardsStaleValue() {
+        ProductRepository interleaving = mock(ProductRepository.class);
+        ProductLiveStatsService liveStats = new ProductLiveStatsService(liveStatsStore, interleaving, circuitBreaker,
+                hotKeyDetector, 60_000, 1_000, 100);
+        when(interleaving.findLiveStatsById(productId)).thenAnswer(invocation -> {
+            Optional<ProductRepository.LiveStatsView> beforeOrder = productRepository.findLiveStatsById(productId);
+            // 读库之后、写入存储之前，另一笔订单提交，其增量因条目尚不存在而落空
+            orderService.create(buyer.getUsername(), buildOrder(3));
+            return beforeOrder;
+        });
+
+        assertThat(liveStats.get(productId).stock()).isEqualTo(10);
+        assertThat(liveStatsStore.get(productId)).isNull();
+        assertThat(productQueryService.detail(productId).stock).isEqualTo(7);
+        assertThat(liveStatsStore.get(productId).stock()).isEqualTo(7);
+    }
+
+    private void awaitOutboxDrained() {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (JdbcTestUtils.countRowsInTable(jdbcTemplate, "outbox_events") > 0) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private OrderDtos.CreateOrderRequest buildOrder(int quantity) {
+        OrderDtos.CreateOrderRequest request = new OrderDtos.CreateOrderRequest();
+        request.shippingAddress = "杭州市西湖区文三路 1 号";
+        OrderDtos.CreateOrderRequest.Item item = new OrderDtos.CreateOrderRequest.Item();
+        item.productId = productId;
+        item.quantity = quantity;
+        request.items = List.of(item);
+        return request;
+    }
+}
@@ -0,0 +1,144 @@
+package net.awords.agriecombackend.service;
+
+import net.awords.agriecombackend.entity.ShopStatus;
+import net.awords.agriecombackend.repository.ProductSearchRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 比较一百万件商品上分面计数的两种做法：筛选位图求交集基数（{@link ProductFilterBitmaps#facets}），
+ * 与逐个商品扫描列值、一次遍历累加全部分面（相当于数据库的分组查询在内存中执行）。不属于单元测试，需手动运行：
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/test-classpath.txt
+ * java -Xmx2g -cp target/test-classes:target/classes:$(cat target/test-classpath.txt) \
+ *     net.awords.agriecombackend.service.ProductFacetBenchmark
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProductFacetBenchmark {
+
+    private static final int CATEGORIES = 50;
+    private static final int ORIGINS = 300;
+    private static final int SHOPS = 2_000;
+    private static final List<BigDecimal> PRICE_BOUNDS = List.of(new BigDecimal("10"), new BigDecimal("20"),
+            new BigDecimal("50"), new BigDecimal("100"), new BigDecimal("200"));
+
+    @Param({"1000000"})
+    public int products;
+
+    /**
+     * none：只看上线店铺；category-price：另按分类与价格上限筛选。
+     */
+    @Param({"none", "category-price"})
+    public String filter;
+
+    private ProductFilterBitmaps bitmaps;
+    private ProductSearchRepository.Criteria criteria;
+    private int[] categoryColumn;
+    private int[] originColumn;
+    private int[] shopColumn;
+    private BigDecimal[] priceColumn;
+    private boolean[] activeShops;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        bitmaps = new ProductFilterBitmaps();
+        activeShops = new boolean[SHOPS];
+        for (int shop = 0; shop < SHOPS; shop++) {
+            activeShops[shop] = random.nextInt(10) > 0;
+            bitmaps.setShopStatus(shop, activeShops[shop] ? ShopStatus.ACTIVE : ShopStatus.SUSPENDED);
+        }
+        categoryColumn = new int[products];
+        originColumn = new int[products];
+        shopColumn = new int[products];
+        priceColumn = new BigDecimal[products];
+        for (int i = 0; i < products; i++) {
+            categoryColumn[i] = random.nextInt(CATEGORIES);
+            originColumn[i] = random.nextInt(ORIGINS);
+            shopColumn[i] = random.nextInt(SHOPS);
+            priceColumn[i] = BigDecimal.valueOf(100 + random.nextInt(50_000), 2);
+            bitmaps.add(i, "category-" + categoryColumn[i], "origin-" + originColumn[i], shopColumn[i],
+                    priceColumn[i]);
+        }
+        criteria = "none".equals(filter)
+                ? new ProductSearchRepository.Criteria(null, null, null, null, null, null, ShopStatus.ACTIVE, false)
+                : new ProductSearchRepository.Criteria(null, "category-7", null, null, new BigDecimal("80"), null,
+                ShopStatus.ACTIVE, false);
+    }
+
+    @Benchmark
+    public ProductFacetCounts bitmap() {
+        ProductSearchRepository.Criteria unfaceted = new ProductSearchRepository.Criteria(null, null, null, null,
+                null, criteria.shopId(), criteria.shopStatus(), false);
+        return bitmaps.facets(bitmaps.filter(unfaceted), criteria, PRICE_BOUNDS);
+    }
+
+    @Benchmark
+    public ProductFacetCounts scan() {
+        int category = criteria.category() == null ? -1 : Integer.parseInt(criteria.category().substring(9));
+        BigDecimal priceMax = criteria.priceMax();
+        long[] categories = new long[CATEGORIES];
+        long[] origins = new long[ORIGINS];
+        long[] buckets = new long[PRICE_BOUNDS.size() + 1];
+        long total = 0;
+        for (int i = 0; i < products; i++) {
+            if (!activeShops[shopColumn[i]]) {
+                continue;
+            }
+            boolean inCategory = category < 0 || categoryColumn[i] == category;
+            boolean inPrice = priceMax == null || priceColumn[i].compareTo(priceMax) <= 0;
+            if (inPrice) {
+                categories[categoryColumn[i]]++;
+            }
+            if (inCategory) {
+                int position = Collections.binarySearch(PRICE_BOUNDS, priceColumn[i]);
+                buckets[position >= 0 ? position + 1 : -position - 1]++;
+                if (inPrice) {
+                    origins[originColumn[i]]++;
+                    total++;
+                }
+            }
+        }
+        return new ProductFacetCounts(toMap("category-", categories), toMap("origin-", origins), buckets, total);
+    }
+
+    private static Map<String, Long> toMap(String prefix, long[] counts) {
+        Map<String, Long> map = new HashMap<>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                map.put(prefix + i, counts[i]);
+            }
+        }
+        return map;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ProductFacetBenchmark.class.getSimpleName()).build()).run();
+    }
+}
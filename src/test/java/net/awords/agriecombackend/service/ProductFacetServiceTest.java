@@ -0,0 +1,171 @@
+package net.awords.agriecombackend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.awords.agriecombackend.config.CacheInvalidationBus;
+import net.awords.agriecombackend.dto.product.ProductDtos;
+import net.awords.agriecombackend.dto.product.ProductDtos.CreateRequest;
+import net.awords.agriecombackend.dto.shop.ShopDtos;
+import net.awords.agriecombackend.entity.Role;
+import net.awords.agriecombackend.entity.Shop;
+import net.awords.agriecombackend.entity.User;
+import net.awords.agriecombackend.repository.ProductRepository;
+import net.awords.agriecombackend.repository.ProductSearchRepository;
+import net.awords.agriecombackend.repository.RoleRepository;
+import net.awords.agriecombackend.repository.ShopRepository;
+import net.awords.agriecombackend.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@Transactional
+class ProductFacetServiceTest {
+
+    @Autowired
+    private ProductFacetService productFacetService;
+    @Autowired
+    private ProductSearchRepository productSearchRepository;
+    @Autowired
+    private ProductListCache productListCache;
+    @Autowired
+    private ShopService shopService;
+    @Autowired
+    private ShopAdminService shopAdminService;
+    @Autowired
+    private ShopProductService shopProductService;
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private RoleRepository roleRepository;
+    @Autowired
+    private ShopRepository shopRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private CacheInvalidationBus bus;
+
+    private User merchant;
+    private Long shopId;
+
+    @BeforeEach
+    void setUp() {
+        Role userRole = new Role();
+        userRole.setName("USER");
+        roleRepository.save(userRole);
+
+        merchant = new User();
+        merchant.setUsername("facet-merchant");
+        merchant.setPassword("pwd");
+        merchant.setRoles(new HashSet<>(Set.of(userRole)));
+        userRepository.save(merchant);
+
+        ShopDtos.CreateRequest shopRequest = new ShopDtos.CreateRequest();
+        shopRequest.name = "燕赵果蔬";
+        shopRequest.description = "产地直发";
+        shopRequest.logoUrl = "https://cdn.example.com/logo-facet.png";
+        shopService.applyForShop(merchant.getUsername(), shopRequest);
+        Shop shop = shopRepository.findByOwnerId(merchant.getId()).orElseThrow();
+        shopAdminService.approve(shop.getId());
+        shopId = shop.getId();
+
+        createProduct("红富士", "脆甜", "Fruits", "山东", "8.00");
+        createProduct("鸭梨", "山东风味", "fruits", "河北", "15.00");
+        createProduct("大白菜", "冬储", "vegetables", "山东", "3.00");
+        createProduct("樱桃", "个大", "fruits", "山东", "30.00");
+        createProduct("散装菜籽", "无产地信息", "seeds", null, "200.00");
+        productRepository.flush();
+    }
+
+    @Test
+    @DisplayName("一次分组查询统计分面：每个分面不受自身条件约束，总数满足全部条件")
+    void databaseFacets() {
+        ProductDtos.Facets facets = productFacetService.facets(query(null, "fruits", null, new BigDecimal("20")));
+
+        assertThat(facets.categories).extracting(f -> f.value, f -> f.count)
+                .containsExactly(tuple("fruits", 2L), tuple("vegetables", 1L));
+        assertThat(facets.origins).extracting(f -> f.value, f -> f.count)
+                .containsExactly(tuple("山东", 1L), tuple("河北", 1L));
+        assertThat(facets.priceBuckets).extracting(b -> b.count).containsExactly(1L, 1L, 1L, 0L, 0L, 0L);
+        assertThat(facets.priceBuckets.get(0).min).isNull();
+        assertThat(facets.priceBuckets.get(5).min).isEqualByComparingTo("200");
+        assertThat(facets.priceBuckets.get(5).max).isNull();
+        assertThat(facets.total).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("关键字与店铺条件同列表查询，空值不计入分面")
+    void keywordAndShopFilters() {
+        ProductDtos.Facets facets = productFacetService.facets(query("山东", null, null, null));
+
+        assertThat(facets.categories).extracting(f -> f.value, f -> f.count)
+                .containsExactly(tuple("fruits", 3L), tuple("vegetables", 1L));
+        assertThat(facets.total).isEqualTo(4);
+
+        ProductDtos.Facets all = productFacetService.facets(query(null, null, null, null));
+        assertThat(all.origins).extracting(f -> f.count).containsExactly(3L, 1L);
+        assertThat(all.priceBuckets).extracting(b -> b.count).containsExactly(2L, 1L, 1L, 0L, 0L, 1L);
+        assertThat(all.total).isEqualTo(5);
+
+        ProductQueryService.ProductQuery otherShop = new ProductQueryService.ProductQuery(0, 1, null, null, null,
+                null, null, shopId + 1, null, true);
+        assertThat(productFacetService.facets(otherShop).total).isZero();
+        assertThat(productFacetService.facets(otherShop).categories).isEmpty();
+    }
+
+    @Test
+    @DisplayName("索引可用时在筛选位图上计数，结果与数据库分组查询一致")
+    void indexMatchesDatabase() {
+        ProductSearchIndex index = new ProductSearchIndex(jdbcTemplate, transactionManager, bus,
+                new SimpleMeterRegistry(), "index");
+        index.rebuild();
+        ProductFacetService indexed = new ProductFacetService(index, productSearchRepository, productListCache,
+                List.of(new BigDecimal("200"), new BigDecimal("10"), new BigDecimal("20"), new BigDecimal("50"),
+                        new BigDecimal("100")));
+
+        for (ProductQueryService.ProductQuery query : List.of(
+                query(null, null, null, null),
+                query(null, "fruits", null, new BigDecimal("20")),
+                query(null, "fruits", "山东", null),
+                query("山东", null, null, new BigDecimal("10")),
+                query(null, "none", null, null))) {
+            assertThat(indexed.facets(query)).usingRecursiveComparison()
+                    .isEqualTo(productFacetService.facets(query));
+        }
+    }
+
+    private static ProductQueryService.ProductQuery query(String keyword, String category, String origin,
+                                                          BigDecimal priceMax) {
+        return new ProductQueryService.ProductQuery(0, 20, null, category, origin, null, priceMax, null, keyword,
+                true);
+    }
+
+    private void createProduct(String name, String description, String category, String origin, String price) {
+        CreateRequest request = new CreateRequest();
+        request.name = name;
+        request.description = description;
+        request.price = new BigDecimal(price);
+        request.stock = 10;
+        request.category = category;
+        request.origin = origin;
+        shopProductService.create(merchant.getUsername(), request);
+    }
+}
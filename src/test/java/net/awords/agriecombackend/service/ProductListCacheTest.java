@@ -0,0 +1,202 @@
+package net.awords.agriecombackend.service;
+
+import jakarta.persistence.EntityManagerFactory;
+import net.awords.agriecombackend.dto.product.ProductDtos;
+import net.awords.agriecombackend.dto.shop.ShopDtos;
+import net.awords.agriecombackend.entity.Shop;
+import net.awords.agriecombackend.entity.User;
+import net.awords.agriecombackend.repository.ShopRepository;
+import net.awords.agriecombackend.repository.UserRepository;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.jdbc.JdbcTestUtils;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 列表缓存只在只读事务中生效、由提交后的发件箱事件失效，因此本测试不使用 @Transactional，改为在每个用例后清表。
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class ProductListCacheTest {
+
+    @Autowired
+    private ProductQueryService productQueryService;
+    @Autowired
+    private ShopService shopService;
+    @Autowired
+    private ShopAdminService shopAdminService;
+    @Autowired
+    private ShopProductService shopProductService;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private ShopRepository shopRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User merchant;
+    private Long shopId;
+    private Long appleId;
+
+    @BeforeEach
+    void setUp() {
+        merchant = new User();
+        merchant.setUsername("list-cache-merchant");
+        merchant.setPassword("pwd");
+        userRepository.save(merchant);
+
+        ShopDtos.CreateRequest shopRequest = new ShopDtos.CreateRequest();
+        shopRequest.name = "列表缓存农场";
+        shopRequest.description = "列表缓存测试店铺";
+        shopService.applyForShop(merchant.getUsername(), shopRequest);
+        Shop shop = shopRepository.findByOwnerId(merchant.getId()).orElseThrow();
+        shopAdminService.approve(shop.getId());
+        shopId = shop.getId();
+
+        appleId = shopProductService.create(merchant.getUsername(), buildRequest("列表苹果", "fruits")).id;
+        shopProductService.create(merchant.getUsername(), buildRequest("列表白菜", "vegetables"));
+        awaitOutboxDrained();
+    }
+
+    @AfterEach
+    void tearDown() {
+        JdbcTestUtils.deleteFromTables(jdbcTemplate,
+                "outbox_events", "order_items", "shop_orders", "order_groups", "cart_items", "product_stock_shards",
+                "products", "shops", "user_roles", "user_addresses", "users", "roles");
+    }
+
+    @Test
+    @DisplayName("等价查询规范化后命中同一缓存项，不再访问数据库")
+    void equivalentQueriesShareCacheEntry() {
+        ProductDtos.PageResult<ProductDtos.PublicSummary> first = productQueryService.list(query(" Fruits ", null, "5.0"));
+        assertThat(first.items).extracting(summary -> summary.id).containsExactly(appleId);
+
+        long before = statementCount();
+        ProductDtos.PageResult<ProductDtos.PublicSummary> second = productQueryService.list(query("fruits", null, "5.00"));
+
+        assertThat(statementCount() - before).isZero();
+        assertThat(second.items).extracting(summary -> summary.id).containsExactly(appleId);
+        assertThat(ProductListCache.key(query(" Fruits ", null, "5.0").normalize()))
+                .isEqualTo(ProductListCache.key(query("fruits", null, "5.00").normalize()));
+    }
+
+    @Test
+    @DisplayName("商品变更只失效所在店铺、分类与全局切片，其他分类的缓存保留")
+    void changeInvalidatesOnlyAffectedSlices() {
+        productQueryService.list(query("fruits", null, null));
+        productQueryService.list(query("vegetables", null, null));
+        productQueryService.list(query(null, null, null));
+
+        shopProductService.update(merchant.getUsername(), appleId, buildUpdate("列表红苹果", "fruits"));
+        awaitOutboxDrained();
+
+        long before = statementCount();
+        productQueryService.list(query("vegetables", null, null));
+        assertThat(statementCount() - before).isZero();
+
+        assertThat(productQueryService.list(query("fruits", null, null)).items)
+                .extracting(summary -> summary.name).containsExactly("列表红苹果");
+        assertThat(productQueryService.list(query(null, null, null)).items)
+                .extracting(summary -> summary.name).contains("列表红苹果");
+        assertThat(statementCount() - before).isPositive();
+    }
+
+    @Test
+    @DisplayName("修改分类时新旧分类的列表缓存都失效")
+    void categoryMoveInvalidatesBothCategories() {
+        assertThat(productQueryService.list(query("fruits", null, null)).items).hasSize(1);
+        assertThat(productQueryService.list(query("vegetables", null, null)).items).hasSize(1);
+
+        shopProductService.update(merchant.getUsername(), appleId, buildUpdate("列表苹果", "vegetables"));
+        awaitOutboxDrained();
+
+        assertThat(productQueryService.list(query("fruits", null, null)).items).isEmpty();
+        assertThat(productQueryService.list(query("vegetables", null, null)).items).hasSize(2);
+    }
+
+    @Test
+    @DisplayName("店铺封禁后按店铺筛选的列表缓存失效")
+    void shopSuspensionInvalidatesShopSlice() {
+        ProductDtos.PageResult<ProductDtos.PublicSummary> before = productQueryService.list(query(null, shopId, null));
+        assertThat(before.items).hasSize(2);
+
+        shopAdminService.suspend(shopId);
+        awaitOutboxDrained();
+
+        assertThat(productQueryService.list(query(null, shopId, null)).items).isEmpty();
+    }
+
+    @Test
+    @DisplayName("过短的关键字搜索不走缓存")
+    void shortKeywordBypassesCache() {
+        ProductQueryService.ProductQuery single = query(null, null, null).withKeyword("苹");
+        productQueryService.list(single);
+
+        long before = statementCount();
+        productQueryService.list(single);
+        assertThat(statementCount() - before).isPositive();
+
+        ProductQueryService.ProductQuery longer = query(null, null, null).withKeyword("苹果");
+        productQueryService.list(longer);
+        before = statementCount();
+        assertThat(productQueryService.list(longer).items).extracting(summary -> summary.id).containsExactly(appleId);
+        assertThat(statementCount() - before).isZero();
+    }
+
+    private long statementCount() {
+        return entityManagerFactory.unwrap(SessionFactory.class).getStatistics().getPrepareStatementCount();
+    }
+
+    private ProductQueryService.ProductQuery query(String category, Long shopId, String priceMin) {
+        return new ProductQueryService.ProductQuery(0, 20, Sort.by(Sort.Direction.DESC, "publishedAt"), category, null,
+                priceMin == null ? null : new BigDecimal(priceMin), null, shopId, null, true);
+    }
+
+    private void awaitOutboxDrained() {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (JdbcTestUtils.countRowsInTable(jdbcTemplate, "outbox_events") > 0) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private ProductDtos.CreateRequest buildRequest(String name, String category) {
+        ProductDtos.CreateRequest request = new ProductDtos.CreateRequest();
+        request.name = name;
+        request.description = name;
+        request.price = new BigDecimal("8.00");
+        request.stock = 10;
+        request.category = category;
+        request.origin = "Asia";
+        return request;
+    }
+
+    private ProductDtos.UpdateRequest buildUpdate(String name, String category) {
+        ProductDtos.UpdateRequest request = new ProductDtos.UpdateRequest();
+        request.name = name;
+        request.description = name;
+        request.price = new BigDecimal("8.00");
+        request.stock = 10;
+        request.category = category;
+        request.origin = "Asia";
+        return request;
+    }
+}
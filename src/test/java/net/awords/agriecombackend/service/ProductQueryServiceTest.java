@@ -1,5 +1,8 @@
 package net.awords.agriecombackend.service;
 
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import net.awords.agriecombackend.dto.SliceResult;
 import net.awords.agriecombackend.dto.product.ProductDtos;
 import net.awords.agriecombackend.dto.product.ProductDtos.CreateRequest;
 import net.awords.agriecombackend.dto.shop.ShopDtos;
@@ -8,23 +11,36 @@ import net.awords.agriecombackend.entity.Role;
 import net.awords.agriecombackend.entity.Shop;
 import net.awords.agriecombackend.entity.User;
 import net.awords.agriecombackend.repository.ProductRepository;
+import net.awords.agriecombackend.repository.ProductSearchRepository;
 import net.awords.agriecombackend.repository.RoleRepository;
+import net.awords.agriecombackend.repository.SearchDialect;
 import net.awords.agriecombackend.repository.ShopRepository;
 import net.awords.agriecombackend.repository.UserRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
 
+import javax.sql.DataSource;
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @SpringBootTest
 @ActiveProfiles("test")
@@ -47,6 +63,10 @@ class ProductQueryServiceTest {
     private RoleRepository roleRepository;
     @Autowired
     private ShopRepository shopRepository;
+    @Autowired
+    private EntityManager entityManager;
+    @Autowired
+    private DataSource dataSource;
 
     private User merchant;
     private Long shopId;
@@ -138,6 +158,71 @@ class ProductQueryServiceTest {
         assertThat(page.items.get(0).name).isEqualTo("有机苹果");
     }
 
+    @Test
+    @DisplayName("全文检索模式下以名称子串兜底，不切分中文的分词也能命中包含关键字的名称")
+    void fullTextSearchFallsBackToNameSubstring() {
+        // H2 不支持 tsvector，这里只截获 PostgreSQL 全文检索模式生成的 SQL 与参数
+        EntityManager capturing = mock(EntityManager.class);
+        Query query = mock(Query.class);
+        when(capturing.createNativeQuery(anyString())).thenReturn(query);
+        when(query.getResultList()).thenReturn(List.of());
+        SearchDialect fullText = new SearchDialect(entityManager, dataSource, "full_text", 0.3);
+        assertThat(fullText.mode()).isEqualTo(SearchDialect.Mode.FULL_TEXT);
+
+        new ProductSearchRepository(capturing, fullText).search(
+                new ProductSearchRepository.Criteria("苹果", null, null, null, null, null, null, false),
+                PageRequest.of(0, 10, Sort.by(Sort.Direction.DESC, ProductSearchRepository.RELEVANCE)));
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(capturing).createNativeQuery(sql.capture());
+        assertThat(sql.getValue())
+                .contains("(p.search_vector @@ q OR lower(p.name) LIKE :pattern)")
+                .contains("ORDER BY (ts_rank(p.search_vector, q) + CASE WHEN lower(p.name) LIKE :pattern THEN 1.0 ELSE 0 END) DESC");
+        verify(query).setParameter("keyword", "苹果");
+        verify(query).setParameter("pattern", "%苹果%");
+    }
+
+    @Test
+    @DisplayName("关键字搜索可按相关度排序：名称命中优先于分类与产地，其次为描述")
+    void searchByRelevance() {
+        Long byDescription = createProduct("红富士", "来自山东的苹果", "fruits", "Asia");
+        Long byName = createProduct("山东大葱", "葱香浓郁", "vegetables", "Asia");
+        Long byOrigin = createProduct("烟台樱桃", "个大汁多", "fruits", "山东烟台");
+
+        ProductQueryService.ProductQuery query = new ProductQueryService.ProductQuery(
+                0, 10, Sort.by(Sort.Direction.DESC, ProductQueryService.RELEVANCE),
+                null, null, null, null, null, "山东", true);
+        ProductDtos.PageResult<ProductDtos.PublicSummary> page = productQueryService.list(query);
+
+        assertThat(page.items).extracting(ps -> ps.id).containsExactly(byName, byOrigin, byDescription);
+        assertThat(page.totalElements).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("模糊搜索按名称相似度匹配，容忍错别字")
+    void fuzzySearchToleratesTypos() {
+        ProductQueryService.ProductQuery exact = new ProductQueryService.ProductQuery(
+                0, 10, Sort.by(Sort.Direction.DESC, ProductQueryService.RELEVANCE),
+                null, null, null, null, shopId, "香甜香焦", true);
+        ProductQueryService.ProductQuery fuzzy = new ProductQueryService.ProductQuery(
+                0, 10, Sort.by(Sort.Direction.DESC, ProductQueryService.RELEVANCE),
+                null, null, null, null, shopId, "香甜香焦", true, true);
+
+        assertThat(productQueryService.list(exact).items).isEmpty();
+        assertThat(productQueryService.list(fuzzy).items).extracting(ps -> ps.id).containsExactly(bananaId);
+    }
+
+    @Test
+    @DisplayName("未带关键字时忽略相关度排序")
+    void relevanceIgnoredWithoutKeyword() {
+        ProductQueryService.ProductQuery query = new ProductQueryService.ProductQuery(
+                0, 10, Sort.by(Sort.Direction.DESC, ProductQueryService.RELEVANCE),
+                null, null, null, null, shopId, null, true);
+        ProductDtos.PageResult<ProductDtos.PublicSummary> page = productQueryService.list(query);
+
+        assertThat(page.items).extracting(ps -> ps.id).containsExactlyInAnyOrder(appleId, bananaId);
+    }
+
     @Test
     @DisplayName("可按销量降序排序")
     void sortBySales() {
@@ -157,6 +242,47 @@ class ProductQueryServiceTest {
         assertThat(page.items).extracting(ps -> ps.id).containsExactly(appleId, bananaId);
     }
 
+    @Test
+    @DisplayName("游标分页按排序键与 ID 定位下一页，同值按 ID 排列且不重复不遗漏")
+    void scrollWithKeysetCursor() {
+        Long first = createProduct("散装红枣", "新疆和田", "dried", "Asia");
+        Long second = createProduct("散装核桃", "云南漾濞", "dried", "Asia");
+
+        assertThat(scrollAll(Sort.by(Sort.Direction.ASC, "price"), null, 2))
+                .containsExactly(bananaId, first, second, appleId);
+        assertThat(scrollAll(Sort.by(Sort.Direction.DESC, "sales"), null, 1))
+                .containsExactly(appleId, bananaId, second, first);
+
+        ProductQueryService.ProductQuery query = new ProductQueryService.ProductQuery(
+                0, 4, Sort.by(Sort.Direction.ASC, "price"), null, null, null, null, null, null, true);
+        SliceResult<ProductDtos.PublicSummary> all = productQueryService.scroll(query, null);
+        assertThat(all.items).hasSize(4);
+        assertThat(all.hasNext).isFalse();
+        assertThat(all.nextCursor).isNull();
+    }
+
+    @Test
+    @DisplayName("相关度排序的游标记录偏移量；换了排序方式的游标无效")
+    void scrollByRelevanceAndRejectForeignCursor() {
+        Long byDescription = createProduct("红富士", "来自山东的苹果", "fruits", "Asia");
+        Long byName = createProduct("山东大葱", "葱香浓郁", "vegetables", "Asia");
+        Long byOrigin = createProduct("烟台樱桃", "个大汁多", "fruits", "山东烟台");
+
+        Sort relevance = Sort.by(Sort.Direction.DESC, ProductQueryService.RELEVANCE);
+        assertThat(scrollAll(relevance, "山东", 2)).containsExactly(byName, byOrigin, byDescription);
+
+        ProductQueryService.ProductQuery byPrice = new ProductQueryService.ProductQuery(
+                0, 1, Sort.by(Sort.Direction.ASC, "price"), null, null, null, null, null, null, true);
+        String priceCursor = productQueryService.scroll(byPrice, null).nextCursor;
+        ProductQueryService.ProductQuery bySales = new ProductQueryService.ProductQuery(
+                0, 1, Sort.by(Sort.Direction.DESC, "sales"), null, null, null, null, null, null, true);
+        assertThatThrownBy(() -> productQueryService.scroll(bySales, priceCursor))
+                .isInstanceOf(ResponseStatusException.class)
+                .hasMessageContaining("无效的分页游标");
+        assertThatThrownBy(() -> productQueryService.scroll(bySales, "not-a-cursor"))
+                .isInstanceOf(ResponseStatusException.class);
+    }
+
     @Test
     @DisplayName("商品详情包含分类与产地信息")
     void detailContainsExtendedFields() {
@@ -165,4 +291,28 @@ class ProductQueryServiceTest {
         assertThat(detail.origin).isEqualTo("Europe");
         assertThat(detail.shopId).isEqualTo(shopId);
     }
+
+    private List<Long> scrollAll(Sort sort, String keyword, int size) {
+        ProductQueryService.ProductQuery query = new ProductQueryService.ProductQuery(
+                0, size, sort, null, null, null, null, null, keyword, true);
+        List<Long> ids = new ArrayList<>();
+        String cursor = null;
+        do {
+            SliceResult<ProductDtos.PublicSummary> slice = productQueryService.scroll(query, cursor);
+            slice.items.forEach(item -> ids.add(item.id));
+            cursor = slice.nextCursor;
+        } while (cursor != null);
+        return ids;
+    }
+
+    private Long createProduct(String name, String description, String category, String origin) {
+        CreateRequest request = new CreateRequest();
+        request.name = name;
+        request.description = description;
+        request.price = new BigDecimal("9.90");
+        request.stock = 10;
+        request.category = category;
+        request.origin = origin;
+        return shopProductService.create(merchant.getUsername(), request).id;
+    }
 }
@@ -0,0 +1,239 @@
+package net.awords.agriecombackend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.awords.agriecombackend.config.CacheInvalidationBus;
+import net.awords.agriecombackend.dto.product.ProductDtos;
+import net.awords.agriecombackend.dto.product.ProductDtos.CreateRequest;
+import net.awords.agriecombackend.dto.shop.ShopDtos;
+import net.awords.agriecombackend.entity.OutboxEventType;
+import net.awords.agriecombackend.entity.Role;
+import net.awords.agriecombackend.entity.Shop;
+import net.awords.agriecombackend.entity.ShopStatus;
+import net.awords.agriecombackend.entity.User;
+import net.awords.agriecombackend.repository.ProductRepository;
+import net.awords.agriecombackend.repository.ProductSearchRepository;
+import net.awords.agriecombackend.repository.RoleRepository;
+import net.awords.agriecombackend.repository.ShopRepository;
+import net.awords.agriecombackend.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@Transactional
+class ProductSearchIndexTest {
+
+    @Autowired
+    private ShopService shopService;
+    @Autowired
+    private ShopAdminService shopAdminService;
+    @Autowired
+    private ShopProductService shopProductService;
+    @Autowired
+    private ProductRepository productRepository;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private RoleRepository roleRepository;
+    @Autowired
+    private ShopRepository shopRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private CacheInvalidationBus bus;
+
+    private User merchant;
+    private Long shopId;
+    private Long byName;
+    private Long byOrigin;
+    private Long byDescription;
+    private ProductSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        Role userRole = new Role();
+        userRole.setName("USER");
+        roleRepository.save(userRole);
+
+        merchant = new User();
+        merchant.setUsername("index-merchant");
+        merchant.setPassword("pwd");
+        merchant.setRoles(new HashSet<>(Set.of(userRole)));
+        userRepository.save(merchant);
+
+        ShopDtos.CreateRequest shopRequest = new ShopDtos.CreateRequest();
+        shopRequest.name = "齐鲁农场";
+        shopRequest.description = "山东特产";
+        shopRequest.logoUrl = "https://cdn.example.com/logo-index.png";
+        shopService.applyForShop(merchant.getUsername(), shopRequest);
+        Shop shop = shopRepository.findByOwnerId(merchant.getId()).orElseThrow();
+        shopAdminService.approve(shop.getId());
+        shopId = shop.getId();
+
+        byDescription = createProduct("红富士", "来自山东的苹果", "fruits", "Asia", "8.00");
+        byName = createProduct("山东大葱", "葱香浓郁", "vegetables", "Asia", "3.00");
+        byOrigin = createProduct("烟台樱桃", "个大汁多", "fruits", "山东烟台", "30.00");
+        productRepository.flush();
+
+        index = new ProductSearchIndex(jdbcTemplate, transactionManager, bus, new SimpleMeterRegistry(), "index");
+        index.rebuild();
+    }
+
+    @Test
+    @DisplayName("全量构建后按 BM25 相关度排序：名称命中优先于分类与产地，其次为描述")
+    void rankByRelevance() {
+        assertThat(index.isReady()).isTrue();
+
+        List<Long> ids = search("山东", null, ProductSearchRepository.RELEVANCE);
+
+        assertThat(ids).containsExactly(byName, byOrigin, byDescription);
+    }
+
+    @Test
+    @DisplayName("筛选条件与排序字段同数据库检索")
+    void filterAndSort() {
+        List<Long> ids = search("山东", "fruits", "price");
+
+        assertThat(ids).containsExactly(byOrigin, byDescription);
+        assertThat(search("山东 苹果", null, ProductSearchRepository.RELEVANCE)).containsExactly(byDescription);
+        assertThat(search("不存在", null, ProductSearchRepository.RELEVANCE)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("中文按相邻二元组匹配，单字查询也能命中")
+    void chineseBigrams() {
+        Long organic = createProduct("有机苹果", "脆甜多汁", "fruits", "Asia", "12.00");
+        productRepository.flush();
+        index.refresh(List.of(organic));
+
+        assertThat(search("有机苹果", null, ProductSearchRepository.RELEVANCE)).containsExactly(organic);
+        assertThat(search("机苹", null, ProductSearchRepository.RELEVANCE)).containsExactly(organic);
+        assertThat(search("果苹", null, ProductSearchRepository.RELEVANCE)).isEmpty();
+        assertThat(search("葱", null, ProductSearchRepository.RELEVANCE)).containsExactly(byName);
+    }
+
+    @Test
+    @DisplayName("名称、分类与产地可按全拼或首字母检索")
+    void pinyinAndInitials() {
+        Long organic = createProduct("有机苹果", "脆甜多汁", "fruits", "Asia", "12.00");
+        productRepository.flush();
+        index.refresh(List.of(organic));
+
+        assertThat(search("pingguo", null, ProductSearchRepository.RELEVANCE)).containsExactly(organic);
+        assertThat(search("pg", null, ProductSearchRepository.RELEVANCE)).containsExactly(organic);
+        assertThat(search("youjipingguo", null, ProductSearchRepository.RELEVANCE)).containsExactly(organic);
+        assertThat(search("shandong", null, ProductSearchRepository.RELEVANCE)).containsExactlyInAnyOrder(byName, byOrigin);
+        assertThat(search("有机 pg", null, ProductSearchRepository.RELEVANCE)).containsExactly(organic);
+    }
+
+    @Test
+    @DisplayName("商品修改与删除经发件箱事件增量更新索引")
+    void productChangesUpdateIndex() {
+        ProductDtos.UpdateRequest update = new ProductDtos.UpdateRequest();
+        update.name = "章丘大葱";
+        update.description = "葱白长";
+        update.price = new BigDecimal("3.00");
+        update.stock = 10;
+        update.category = "vegetables";
+        update.origin = "Asia";
+        shopProductService.update(merchant.getUsername(), byName, update);
+        shopProductService.delete(merchant.getUsername(), byOrigin);
+        productRepository.flush();
+
+        index.handle(List.of(message(OutboxEventType.PRODUCT_CHANGED, byName),
+                message(OutboxEventType.PRODUCT_CHANGED, byOrigin)));
+
+        assertThat(search("山东", null, ProductSearchRepository.RELEVANCE)).containsExactly(byDescription);
+        assertThat(search("章丘", null, ProductSearchRepository.RELEVANCE)).containsExactly(byName);
+    }
+
+    @Test
+    @DisplayName("店铺下线后其商品不再出现在只看上线店铺的结果中")
+    void shopStatusChangeUpdatesIndex() {
+        Shop shop = shopRepository.findById(shopId).orElseThrow();
+        shop.setStatus(ShopStatus.SUSPENDED);
+        shopRepository.flush();
+
+        index.handle(List.of(new OutboxMessage(0, OutboxEventType.SHOP_STATUS_CHANGED, shopId,
+                List.of(byName, byOrigin, byDescription), List.of(shopId), List.of())));
+
+        assertThat(search("山东", null, ProductSearchRepository.RELEVANCE)).isEmpty();
+        assertThat(search(null, "fruits", "price")).isEmpty();
+        assertThat(index.search(new ProductSearchRepository.Criteria("山东", null, null, null, null, shopId, null, false),
+                PageRequest.of(0, 10)).getTotalElements()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("不带关键字时按位图筛选分类、产地、价格区间与店铺，并按排序字段分页")
+    void filterWithoutKeyword() {
+        Long cherry = createProduct("大樱桃", "早熟", "fruits", "山东烟台", "25.00");
+        productRepository.flush();
+        index.refresh(List.of(cherry));
+
+        assertThat(filter(null, null, null, "price", 0)).containsExactly(byOrigin, cherry);
+        assertThat(filter(null, null, null, "price", 1)).containsExactly(byDescription, byName);
+        assertThat(filter("fruits", "山东烟台", null, "price", 0)).containsExactly(byOrigin, cherry);
+        assertThat(filter("fruits", null, new BigDecimal("8.00"), "price", 0)).containsExactly(byDescription);
+        assertThat(index.search(new ProductSearchRepository.Criteria(null, null, null, null, null, shopId + 1,
+                null, false), PageRequest.of(0, 10)).getTotalElements()).isZero();
+    }
+
+    @Test
+    @DisplayName("未启用时不处理事件，也不参与检索")
+    void disabledIndexIsNeverReady() {
+        ProductSearchIndex disabled = new ProductSearchIndex(jdbcTemplate, transactionManager, bus,
+                new SimpleMeterRegistry(), "database");
+
+        assertThat(disabled.isReady()).isFalse();
+        assertThat(disabled.supports(OutboxEventType.PRODUCT_CHANGED)).isFalse();
+    }
+
+    private List<Long> search(String keyword, String category, String sortField) {
+        return index.search(new ProductSearchRepository.Criteria(keyword, category, null, null, null, null,
+                        ShopStatus.ACTIVE, false), PageRequest.of(0, 10, Sort.by(Sort.Direction.DESC, sortField)))
+                .getContent().stream()
+                .map(summary -> summary.id)
+                .toList();
+    }
+
+    private List<Long> filter(String category, String origin, BigDecimal priceMax, String sortField, int page) {
+        return index.search(new ProductSearchRepository.Criteria(null, category, origin, null, priceMax, null,
+                        ShopStatus.ACTIVE, false), PageRequest.of(page, 2, Sort.by(Sort.Direction.DESC, sortField)))
+                .getContent().stream()
+                .map(summary -> summary.id)
+                .toList();
+    }
+
+    private static OutboxMessage message(OutboxEventType type, Long... productIds) {
+        return new OutboxMessage(0, type, productIds[0], List.of(productIds), List.of(), List.of());
+    }
+
+    private Long createProduct(String name, String description, String category, String origin, String price) {
+        CreateRequest request = new CreateRequest();
+        request.name = name;
+        request.description = description;
+        request.price = new BigDecimal(price);
+        request.stock = 10;
+        request.category = category;
+        request.origin = origin;
+        return shopProductService.create(merchant.getUsername(), request).id;
+    }
+}
@@ -1,5 +1,6 @@
 package net.awords.agriecombackend.service;
 
+import net.awords.agriecombackend.dto.SliceResult;
 import net.awords.agriecombackend.dto.shop.ShopDtos;
 import net.awords.agriecombackend.entity.Product;
 import net.awords.agriecombackend.entity.Role;
@@ -107,6 +108,40 @@ class ShopPublicServiceTest {
         assertThat(emptyPage.items).isEmpty();
     }
 
+    @Test
+    @DisplayName("店铺关键字容忍错别字，按名称相似度排序")
+    void searchBySimilarity() {
+        Long closeMatch = createActiveShop("similar-merchant-1", "绿色农庄");
+        Long bestMatch = createActiveShop("similar-merchant-2", "绿色农场直供");
+
+        ShopDtos.PublicPage page = shopPublicService.list(0, 10, "绿色农场");
+
+        assertThat(page.items).extracting(item -> item.id).containsExactly(bestMatch, closeMatch);
+        assertThat(page.totalElements).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("店铺列表可按游标分页：无关键字按创建时间倒序，关键字按相似度")
+    void scrollShops() {
+        Long closeMatch = createActiveShop("scroll-merchant-1", "绿色农庄");
+        Long bestMatch = createActiveShop("scroll-merchant-2", "绿色农场直供");
+
+        SliceResult<ShopDtos.PublicSummary> page1 = shopPublicService.scroll(null, 2, null);
+        assertThat(page1.items).extracting(item -> item.id).containsExactly(bestMatch, closeMatch);
+        SliceResult<ShopDtos.PublicSummary> page2 = shopPublicService.scroll(page1.nextCursor, 2, null);
+        assertThat(page2.items).extracting(item -> item.id).containsExactly(shopId);
+        assertThat(page2.items.get(0).productCount).isEqualTo(2);
+        assertThat(page2.hasNext).isFalse();
+
+        SliceResult<ShopDtos.PublicSummary> similar1 = shopPublicService.scroll(null, 1, "绿色农场");
+        SliceResult<ShopDtos.PublicSummary> similar2 = shopPublicService.scroll(similar1.nextCursor, 1, "绿色农场");
+        assertThat(similar1.items).extracting(item -> item.id).containsExactly(bestMatch);
+        assertThat(similar2.items).extracting(item -> item.id).containsExactly(closeMatch);
+        assertThat(similar2.nextCursor).isNull();
+        assertThatThrownBy(() -> shopPublicService.scroll(page1.nextCursor, 2, "绿色农场"))
+                .isInstanceOf(ResponseStatusException.class);
+    }
+
     @Test
     @DisplayName("买家查看店铺主页包含商品")
     void getPublicDetail() {
@@ -125,4 +160,21 @@ class ShopPublicServiceTest {
                 .isInstanceOf(ResponseStatusException.class)
                 .hasMessageContaining("不存在或未上线");
     }
+
+    private Long createActiveShop(String username, String name) {
+        User owner = new User();
+        owner.setUsername(username);
+        owner.setPassword("pwd");
+        owner.setRoles(new HashSet<>(merchant.getRoles()));
+        userRepository.save(owner);
+
+        ShopDtos.CreateRequest req = new ShopDtos.CreateRequest();
+        req.name = name;
+        req.description = "测试店铺";
+        req.logoUrl = "https://cdn.example.com/logo-" + username + ".png";
+        shopService.applyForShop(username, req);
+        Shop shop = shopRepository.findByOwnerId(owner.getId()).orElseThrow();
+        shopAdminService.approve(shop.getId());
+        return shop.getId();
+    }
 }